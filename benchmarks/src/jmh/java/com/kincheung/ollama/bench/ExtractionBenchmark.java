@@ -0,0 +1,44 @@
+package com.kincheung.ollama.bench;
+
+import com.kincheung.ollama.core.JavaCodeExtractor;
+import com.kincheung.ollama.core.TestSourceWriter;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Extraction of the Java code from single- and multi-fence model responses,
+ * and assembly of the final test file content.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExtractionBenchmark {
+    @Param({"1024", "16384", "131072", "524288"})
+    public int testBytes;
+
+    @Param({"0", "4"})
+    public int extraFences;
+
+    private String response;
+    private String testCode;
+
+    @Setup
+    public void setUp() {
+        testCode = Payloads.javaClass(testBytes);
+        response = Payloads.modelResponse(testCode, extraFences);
+    }
+
+    @Benchmark
+    public String extractJavaCode() {
+        return JavaCodeExtractor.extractJavaCode(response);
+    }
+
+    @Benchmark
+    public String assembleTestFile() {
+        return TestSourceWriter.assembleTestFile("com.acme.orders", testCode);
+    }
+}
@@ -0,0 +1,57 @@
+package com.kincheung.ollama.bench;
+
+import com.google.gson.Gson;
+import com.kincheung.ollama.model.OllamaRequest;
+import com.kincheung.ollama.model.OllamaResponse;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Request serialization and response deserialization with a shared static Gson,
+ * as done by the Ollama client.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonBenchmark {
+    private static final Gson gson = new Gson();
+
+    @Param({"1024", "16384", "131072", "524288"})
+    public int payloadBytes;
+
+    private OllamaRequest request;
+    private String responseJson;
+
+    @Setup
+    public void setUp() {
+        request = new OllamaRequest();
+        request.setModel("qwen2.5-coder:7b");
+        request.setPrompt(Payloads.javaClass(payloadBytes));
+        request.setStream(false);
+
+        String response = Payloads.modelResponse(Payloads.javaClass(payloadBytes), 2);
+        responseJson = "{\"model\":\"qwen2.5-coder:7b\",\"created_at\":\"2024-05-01T10:00:00Z\",\"response\":\""
+                + Payloads.jsonEscape(response) + "\",\"done\":true,\"total_duration\":5000000000,"
+                + "\"prompt_eval_count\":512,\"eval_count\":2048}";
+    }
+
+    @Benchmark
+    public String serializeRequest() {
+        return gson.toJson(request);
+    }
+
+    @Benchmark
+    public OllamaResponse deserializeResponseFromString() {
+        return gson.fromJson(responseJson, OllamaResponse.class);
+    }
+
+    @Benchmark
+    public OllamaResponse deserializeResponseFromReader() {
+        return gson.fromJson(new StringReader(responseJson), OllamaResponse.class);
+    }
+}
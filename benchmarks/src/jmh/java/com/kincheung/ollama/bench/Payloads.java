@@ -0,0 +1,89 @@
+package com.kincheung.ollama.bench;
+
+/**
+ * Deterministic synthetic payloads of a given size for the benchmarks.
+ */
+public class Payloads {
+
+    /**
+     * Builds the source of a realistic service class of roughly the given size:
+     * imports, injected fields, Javadoc and methods with branching bodies.
+     *
+     * @param targetBytes The approximate size of the source in bytes
+     * @return The class source
+     */
+    public static String javaClass(int targetBytes) {
+        StringBuilder source = new StringBuilder(targetBytes + 512);
+        source.append("package com.acme.orders;\n\n")
+                .append("import java.math.BigDecimal;\n")
+                .append("import java.util.List;\n")
+                .append("import java.util.Optional;\n\n")
+                .append("/**\n * Handles order placement and billing.\n */\n")
+                .append("public class OrderService {\n")
+                .append("    private final OrderRepository orderRepository;\n")
+                .append("    private final PaymentGateway paymentGateway;\n\n")
+                .append("    public OrderService(OrderRepository orderRepository, PaymentGateway paymentGateway) {\n")
+                .append("        this.orderRepository = orderRepository;\n")
+                .append("        this.paymentGateway = paymentGateway;\n")
+                .append("    }\n");
+
+        for (int i = 0; source.length() < targetBytes - 2; i++) {
+            source.append("\n    /**\n     * Applies discount rule ").append(i).append(" to the order.\n")
+                    .append("     *\n     * @param orderId The order\n     * @return The discounted total\n     */\n")
+                    .append("    public BigDecimal applyDiscount").append(i).append("(long orderId, List<String> codes) {\n")
+                    .append("        Optional<Order> order = orderRepository.findById(orderId);\n")
+                    .append("        if (order.isEmpty()) {\n")
+                    .append("            throw new IllegalArgumentException(\"Unknown order \" + orderId);\n")
+                    .append("        }\n")
+                    .append("        BigDecimal total = order.get().getTotal();\n")
+                    .append("        for (String code : codes) {\n")
+                    .append("            if (code.startsWith(\"RULE").append(i).append("\")) {\n")
+                    .append("                total = total.multiply(BigDecimal.valueOf(0.9));\n")
+                    .append("            }\n")
+                    .append("        }\n")
+                    .append("        paymentGateway.authorize(orderId, total);\n")
+                    .append("        return total;\n")
+                    .append("    }\n");
+        }
+        return source.append("}\n").toString();
+    }
+
+    /**
+     * Builds a model response that wraps a generated test in prose and code fences.
+     *
+     * @param testCode The generated test code
+     * @param extraFences Number of additional, non-Java fenced blocks around the test
+     * @return The response text
+     */
+    public static String modelResponse(String testCode, int extraFences) {
+        StringBuilder response = new StringBuilder(testCode.length() + 1024);
+        response.append("Here is a comprehensive JUnit 5 test class for the service.\n\n");
+        for (int i = 0; i < extraFences / 2; i++) {
+            response.append("First add the dependency:\n\n```xml\n<dependency>\n  <groupId>org.mockito</groupId>\n")
+                    .append("  <artifactId>mockito-core</artifactId>\n</dependency>\n```\n\n");
+        }
+        response.append("```java\n").append(testCode).append("\n```\n\n");
+        for (int i = 0; i < extraFences - extraFences / 2; i++) {
+            response.append("Run it with:\n\n```bash\n./gradlew test --tests OrderServiceTest\n```\n\n");
+        }
+        return response.append("These tests cover the happy path and the error cases.\n").toString();
+    }
+
+    /**
+     * Escapes a string as a JSON string literal body.
+     */
+    public static String jsonEscape(String text) {
+        StringBuilder escaped = new StringBuilder(text.length() + text.length() / 8);
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"': escaped.append("\\\""); break;
+                case '\\': escaped.append("\\\\"); break;
+                case '\n': escaped.append("\\n"); break;
+                case '\t': escaped.append("\\t"); break;
+                default: escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+}
@@ -0,0 +1,40 @@
+package com.kincheung.ollama.bench;
+
+import com.kincheung.ollama.core.PromptBuilder;
+import com.kincheung.ollama.core.TokenEstimator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prompt construction and local token estimation for classes of various sizes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PromptBenchmark {
+    @Param({"1024", "16384", "131072", "524288"})
+    public int classBytes;
+
+    private String classCode;
+    private String prompt;
+
+    @Setup
+    public void setUp() {
+        classCode = Payloads.javaClass(classBytes);
+        prompt = PromptBuilder.buildPrompt("OrderService", classCode, "", true, true);
+    }
+
+    @Benchmark
+    public String buildPrompt() {
+        return PromptBuilder.buildPrompt("OrderService", classCode, "", true, true);
+    }
+
+    @Benchmark
+    public int estimateTokens() {
+        return TokenEstimator.estimateTokens(prompt);
+    }
+}
@@ -0,0 +1,66 @@
+package com.kincheung.ollama.bench;
+
+import com.kincheung.ollama.core.VectorIndex;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Nearest-neighbour lookup in the test example index at the size of a large
+ * monorepo: 50k test classes with 768-dimensional embeddings, clustered
+ * around topics the way embeddings of real tests are.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class VectorIndexBenchmark {
+    private static final int DIMENSION = 768;
+    private static final int TOPICS = 300;
+
+    @Param({"2000", "50000"})
+    public int size;
+
+    private VectorIndex index;
+    private float[][] queries;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        float[][] topics = new float[TOPICS][];
+        for (int i = 0; i < TOPICS; i++) {
+            topics[i] = gaussian(random, null);
+        }
+
+        index = new VectorIndex(DIMENSION);
+        for (int i = 0; i < size; i++) {
+            index.put("Test" + i + ".java", i, gaussian(random, topics[random.nextInt(TOPICS)]));
+        }
+        if (index.needsTraining()) {
+            index.train();
+        }
+
+        queries = new float[64][];
+        for (int i = 0; i < queries.length; i++) {
+            queries[i] = gaussian(random, topics[random.nextInt(TOPICS)]);
+        }
+    }
+
+    @Benchmark
+    public List<VectorIndex.Match> searchTop3() {
+        return index.search(queries[next++ & (queries.length - 1)], 3);
+    }
+
+    private static float[] gaussian(Random random, float[] center) {
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = (center != null ? center[i] : 0) + (float) random.nextGaussian() * (center != null ? 0.8f : 1f);
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,118 @@
+package com.kincheung.ollama.cli;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Command line options of the headless test generator.
+ */
+public class HeadlessOptions {
+    static final String USAGE = String.join("\n",
+            "Usage: ollama-test-generator [options]",
+            "",
+            "  --source <dir>       Source root to scan (default: src/main/java)",
+            "  --tests <dir>        Test source root to write to (default: src/test/java)",
+            "  --endpoint <url>     Ollama URL, repeat to spread the work over several servers",
+            "                       (default: http://localhost:11434)",
+            "  --model <name>       Model name (default: qwen2.5-coder:7b)",
+            "  --parallel <n>       Concurrent requests per endpoint (default: 1)",
+            "  --timeout <seconds>  Request timeout (default: 300)",
+            "  --no-mockito         Don't use Mockito in generated tests",
+            "  --no-comments        Don't include comments in generated tests",
+            "  --overwrite          Regenerate tests that already exist",
+            "  --structured         Request structured JSON output (Ollama 0.5+) instead of free-form code",
+            "  --help               Show this help");
+
+    Path sourceRoot = Paths.get("src/main/java");
+    Path testRoot = Paths.get("src/test/java");
+    List<String> endpoints = new ArrayList<>();
+    String model = "qwen2.5-coder:7b";
+    int parallel = 1;
+    int timeoutSeconds = 300;
+    boolean useMockito = true;
+    boolean includeComments = true;
+    boolean overwrite;
+    boolean structured;
+    boolean help;
+
+    /**
+     * Parses the command line.
+     *
+     * @param args The command line arguments
+     * @return The parsed options
+     * @throws IllegalArgumentException If an option is unknown or its value is missing or invalid
+     */
+    static HeadlessOptions parse(String[] args) {
+        HeadlessOptions options = new HeadlessOptions();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "--source":
+                    options.sourceRoot = Paths.get(value(args, ++i, arg));
+                    break;
+                case "--tests":
+                    options.testRoot = Paths.get(value(args, ++i, arg));
+                    break;
+                case "--endpoint":
+                    options.endpoints.add(stripTrailingSlash(value(args, ++i, arg)));
+                    break;
+                case "--model":
+                    options.model = value(args, ++i, arg);
+                    break;
+                case "--parallel":
+                    options.parallel = positiveInt(value(args, ++i, arg), arg);
+                    break;
+                case "--timeout":
+                    options.timeoutSeconds = positiveInt(value(args, ++i, arg), arg);
+                    break;
+                case "--no-mockito":
+                    options.useMockito = false;
+                    break;
+                case "--no-comments":
+                    options.includeComments = false;
+                    break;
+                case "--overwrite":
+                    options.overwrite = true;
+                    break;
+                case "--structured":
+                    options.structured = true;
+                    break;
+                case "--help":
+                case "-h":
+                    options.help = true;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+        if (options.endpoints.isEmpty()) {
+            options.endpoints.add("http://localhost:11434");
+        }
+        return options;
+    }
+
+    private static String value(String[] args, int index, String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + option);
+        }
+        return args[index];
+    }
+
+    private static int positiveInt(String value, String option) {
+        try {
+            int parsed = Integer.parseInt(value);
+            if (parsed > 0) {
+                return parsed;
+            }
+        } catch (NumberFormatException ignored) {
+            // Reported below
+        }
+        throw new IllegalArgumentException(option + " must be a positive number: " + value);
+    }
+
+    private static String stripTrailingSlash(String url) {
+        return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    }
+}
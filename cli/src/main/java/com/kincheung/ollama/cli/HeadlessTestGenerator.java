@@ -0,0 +1,176 @@
+package com.kincheung.ollama.cli;
+
+import com.kincheung.ollama.core.GenerationTrace;
+import com.kincheung.ollama.core.JavaCodeExtractor;
+import com.kincheung.ollama.core.JavaSourceScanner;
+import com.kincheung.ollama.core.OllamaClient;
+import com.kincheung.ollama.core.PromptBuilder;
+import com.kincheung.ollama.core.StructuredTest;
+import com.kincheung.ollama.core.StructuredTestParser;
+import com.kincheung.ollama.core.TestSourceWriter;
+import com.kincheung.ollama.core.TokenEstimator;
+import com.kincheung.ollama.model.OllamaRequest;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generates missing unit tests for a source tree without an IDE, e.g. on a build agent.
+ * Classes without a test file are queued smallest first and processed by a fixed
+ * number of workers per Ollama endpoint; each worker writes its result to disk
+ * as soon as it arrives.
+ */
+public class HeadlessTestGenerator {
+    private final HeadlessOptions options;
+    private final AtomicInteger completed = new AtomicInteger();
+    private final AtomicInteger written = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+
+    public HeadlessTestGenerator(HeadlessOptions options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        HeadlessOptions options;
+        try {
+            options = HeadlessOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(HeadlessOptions.USAGE);
+            System.exit(2);
+            return;
+        }
+        if (options.help) {
+            System.out.println(HeadlessOptions.USAGE);
+            return;
+        }
+        System.exit(new HeadlessTestGenerator(options).run());
+    }
+
+    /**
+     * Runs the generation.
+     *
+     * @return The process exit code: 0 if every test was written, 1 otherwise
+     * @throws IOException If the source tree could not be scanned
+     * @throws InterruptedException If the run was interrupted
+     */
+    public int run() throws IOException, InterruptedException {
+        List<Job> jobs = new ArrayList<>();
+        for (JavaSourceScanner.SourceClass sourceClass : JavaSourceScanner.scan(options.sourceRoot)) {
+            String testClassName = sourceClass.getClassName() + "Test";
+            Path testFile = TestSourceWriter.testFilePath(options.testRoot, sourceClass.getPackageName(), testClassName);
+            if (options.overwrite || !Files.exists(testFile)) {
+                jobs.add(new Job(sourceClass, testClassName));
+            }
+        }
+        // Shortest job first, so most results land early
+        jobs.sort(Comparator.comparingInt(job -> job.estimatedTokens));
+
+        System.out.println("Generating " + jobs.size() + " tests using " + options.endpoints.size()
+                + " endpoint(s) with " + options.parallel + " request(s) each");
+        if (jobs.isEmpty()) {
+            return 0;
+        }
+
+        BlockingQueue<Job> queue = new LinkedBlockingQueue<>(jobs);
+        ExecutorService workers = Executors.newFixedThreadPool(options.endpoints.size() * options.parallel);
+        for (String endpoint : options.endpoints) {
+            OllamaClient client = new OllamaClient(endpoint, options.timeoutSeconds);
+            for (int i = 0; i < options.parallel; i++) {
+                workers.execute(() -> work(client, queue, jobs.size()));
+            }
+        }
+        workers.shutdown();
+        workers.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+
+        System.out.println("Done: " + written.get() + " written, " + failed.get() + " failed");
+        return failed.get() == 0 ? 0 : 1;
+    }
+
+    private void work(OllamaClient client, BlockingQueue<Job> queue, int total) {
+        Job job;
+        while ((job = queue.poll()) != null) {
+            long start = System.nanoTime();
+            GenerationTrace trace = GenerationTrace.start(job.testClassName);
+            trace.setModel(options.model);
+            String outcome;
+            try {
+                OllamaRequest request = new OllamaRequest();
+                request.setModel(options.model);
+                request.setPrompt(job.prompt);
+
+                String testCode;
+                if (options.structured) {
+                    request.setFormat(StructuredTest.schema());
+                    StructuredTestParser parser = new StructuredTestParser(null);
+                    client.generateStream(request, parser::feed, trace).get();
+                    if (parser.getResult().getTestMethods().isEmpty()) {
+                        throw new IllegalStateException("No test methods in the response");
+                    }
+                    testCode = parser.getResult().toJavaSource(job.testClassName);
+                } else {
+                    request.setStream(false);
+                    String response = client.generate(request, trace).get().getResponse();
+                    testCode = JavaCodeExtractor.extractJavaCode(response);
+                    // Prose or a truncated class would be committed as an uncompilable test file
+                    if (!JavaCodeExtractor.looksLikeJavaClass(testCode)) {
+                        throw new IllegalStateException("The response is not a complete Java class");
+                    }
+                }
+                Path file = TestSourceWriter.write(
+                        options.testRoot,
+                        job.sourceClass.getPackageName(),
+                        job.testClassName,
+                        testCode,
+                        options.overwrite);
+                if (file != null) {
+                    written.incrementAndGet();
+                    outcome = "written to " + file;
+                } else {
+                    outcome = "skipped, already exists";
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                trace.finish("cancelled");
+                return;
+            } catch (Exception e) {
+                failed.incrementAndGet();
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                outcome = "FAILED: " + cause.getMessage();
+            }
+            trace.finish(outcome);
+            long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            System.out.printf("[%d/%d] %s %s (%d ms, %s)%n",
+                    completed.incrementAndGet(), total, job.sourceClass.getQualifiedName(), outcome, millis, client.getBaseUrl());
+        }
+    }
+
+    /**
+     * A class queued for generation, with its prompt built up front.
+     */
+    private class Job {
+        private final JavaSourceScanner.SourceClass sourceClass;
+        private final String testClassName;
+        private final String prompt;
+        private final int estimatedTokens;
+
+        Job(JavaSourceScanner.SourceClass sourceClass, String testClassName) {
+            this.sourceClass = sourceClass;
+            this.testClassName = testClassName;
+            String classPrompt = PromptBuilder.buildPrompt(
+                    sourceClass.getClassName(), sourceClass.getSource(), "", options.useMockito, options.includeComments);
+            this.prompt = options.structured ? PromptBuilder.withStructuredOutput(classPrompt) : classPrompt;
+            this.estimatedTokens = TokenEstimator.estimateTokens(prompt);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.kincheung.ollama.core;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event spanning a whole test generation, from the first stage to the outcome.
+ */
+@Name("com.kincheung.ollama.Generation")
+@Label("Test Generation")
+@Category({"Ollama Test Generator"})
+@Description("Generating one test class, from reading the class to writing the test")
+@StackTrace(false)
+class GenerationEvent extends Event {
+    @Label("Generation Id")
+    long generationId;
+
+    @Label("Test Class")
+    String testClassName;
+
+    @Label("Model")
+    String model;
+
+    @Label("Outcome")
+    String outcome;
+}
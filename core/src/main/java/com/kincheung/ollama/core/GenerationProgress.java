@@ -0,0 +1,134 @@
+package com.kincheung.ollama.core;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Progress of a generation request, estimated from the model's {@link ModelRates},
+ * the estimated prompt size and, once the response streams in, the number of
+ * tokens received so far and the rate at which they arrive. Updated by the
+ * thread sending and reading the request, and polled by whoever shows the
+ * progress. A retried or escalated request begins it again.
+ */
+public class GenerationProgress {
+    // Observed decode rates are trusted once this many tokens have arrived
+    private static final int MIN_OBSERVED_TOKENS = 16;
+    // How much longer than received so far a response is assumed to get once it exceeds the estimate
+    private static final double OVERRUN_FACTOR = 1.1;
+
+    private final AtomicInteger tokens = new AtomicInteger();
+    private volatile ModelRates rates;
+    private volatile int promptTokens;
+    private volatile long startNanos;
+    private volatile long firstTokenNanos;
+    private volatile boolean done;
+
+    /**
+     * Begins tracking a request that is about to be sent.
+     *
+     * @param rates The rates of the model the request is sent to
+     * @param estimatedPromptTokens The {@link TokenEstimator} estimate of the prompt
+     */
+    public void begin(@NotNull ModelRates rates, int estimatedPromptTokens) {
+        tokens.set(0);
+        firstTokenNanos = 0;
+        promptTokens = estimatedPromptTokens;
+        startNanos = System.nanoTime();
+        done = false;
+        this.rates = rates;
+    }
+
+    /**
+     * Records a streamed fragment of the response; Ollama streams one token per fragment.
+     */
+    public void fragment() {
+        if (tokens.getAndIncrement() == 0) {
+            firstTokenNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * Marks the request as complete.
+     */
+    public void finish() {
+        done = true;
+    }
+
+    /**
+     * Returns whether a request has begun.
+     */
+    public boolean isStarted() {
+        return rates != null;
+    }
+
+    /**
+     * Returns the number of tokens received so far.
+     */
+    public int getTokens() {
+        return tokens.get();
+    }
+
+    /**
+     * Estimates the progress of the current request.
+     *
+     * @return The estimate; complete if the request has finished, empty if none has begun
+     */
+    @NotNull
+    public Estimate estimate() {
+        ModelRates current = rates;
+        if (current == null) {
+            return new Estimate(0, -1);
+        }
+        if (done) {
+            return new Estimate(1, 0);
+        }
+
+        long now = System.nanoTime();
+        double elapsed = (now - startNanos) / 1e9;
+        double expectedTokens = current.completionTokens(promptTokens);
+        double decodeSecondsPerToken = current.getDecodeSecondsPerToken();
+        int received = tokens.get();
+
+        double remaining;
+        if (received == 0) {
+            double prefillLeft = Math.max(0, current.prefillSeconds(promptTokens) - elapsed);
+            remaining = prefillLeft + expectedTokens * decodeSecondsPerToken;
+        } else {
+            double decodeElapsed = (now - firstTokenNanos) / 1e9;
+            if (received >= MIN_OBSERVED_TOKENS && decodeElapsed > 0) {
+                decodeSecondsPerToken = decodeElapsed / received;
+            }
+            remaining = (Math.max(expectedTokens, received * OVERRUN_FACTOR) - received) * decodeSecondsPerToken;
+        }
+        double total = elapsed + remaining;
+        return new Estimate(total > 0 ? elapsed / total : 0, Math.round(remaining));
+    }
+
+    /**
+     * An estimate of how far a request has come.
+     */
+    public static class Estimate {
+        private final double fraction;
+        private final long remainingSeconds;
+
+        Estimate(double fraction, long remainingSeconds) {
+            this.fraction = fraction;
+            this.remainingSeconds = remainingSeconds;
+        }
+
+        /**
+         * Returns the fraction done, between 0 and 1.
+         */
+        public double getFraction() {
+            return fraction;
+        }
+
+        /**
+         * Returns the estimated seconds until the request completes, or -1 if unknown.
+         */
+        public long getRemainingSeconds() {
+            return remainingSeconds;
+        }
+    }
+}
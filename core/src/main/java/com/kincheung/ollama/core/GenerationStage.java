@@ -0,0 +1,31 @@
+package com.kincheung.ollama.core;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The stages of generating a test class, as recorded by {@link GenerationTrace}.
+ */
+public enum GenerationStage {
+    SNAPSHOT("Read-action snapshot"),
+    PROMPT("Prompt build"),
+    QUEUE("Queue wait"),
+    FIRST_TOKEN("Time to first token"),
+    DECODE("Decode"),
+    EXTRACTION("Extraction"),
+    VALIDATION("Validation"),
+    TEST_RUN("Test run"),
+    FORMAT("Formatting"),
+    EDT_WAIT("EDT wait"),
+    WRITE("PSI write");
+
+    private final String label;
+
+    GenerationStage(String label) {
+        this.label = label;
+    }
+
+    @NotNull
+    public String getLabel() {
+        return label;
+    }
+}
@@ -0,0 +1,43 @@
+package com.kincheung.ollama.core;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for one stage of a test generation.
+ */
+@Name("com.kincheung.ollama.GenerationStage")
+@Label("Test Generation Stage")
+@Category({"Ollama Test Generator"})
+@Description("One stage of generating a test class")
+@StackTrace(false)
+class GenerationStageEvent extends Event {
+    @Label("Generation Id")
+    @Description("Shared by all stages of one generation")
+    long generationId;
+
+    @Label("Stage")
+    String stage;
+
+    @Label("Test Class")
+    String testClassName;
+
+    @Label("Model")
+    String model;
+
+    @Label("Input Characters")
+    int inputChars;
+
+    @Label("Output Characters")
+    int outputChars;
+
+    @Label("Prompt Tokens")
+    int promptTokens;
+
+    @Label("Output Tokens")
+    int outputTokens;
+}
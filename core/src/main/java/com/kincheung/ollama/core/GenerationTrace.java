@@ -0,0 +1,212 @@
+package com.kincheung.ollama.core;
+
+import jdk.jfr.EventType;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records the stages of one test generation as Java Flight Recorder events, so
+ * that a recording shows a timeline per generation: the stage events share the
+ * generation id of the enclosing generation event. Stages may begin and end on
+ * different threads.
+ * <p>
+ * When no recording has the stage events enabled, beginning and ending a stage
+ * is a flag check, without allocation; callers should also skip any work done
+ * only for the event, such as counting tokens, unless {@link Span#isRecording()}.
+ */
+public class GenerationTrace {
+    private static final AtomicLong NEXT_ID = new AtomicLong(1);
+    private static final EventType STAGE_EVENT_TYPE = EventType.getEventType(GenerationStageEvent.class);
+    private static final Span NOT_RECORDING = new Span(null);
+
+    private final long id = NEXT_ID.getAndIncrement();
+    private final String testClassName;
+    private final GenerationEvent event = new GenerationEvent();
+    private volatile String model = "";
+
+    private GenerationTrace(@NotNull String testClassName) {
+        this.testClassName = testClassName;
+        event.begin();
+    }
+
+    /**
+     * Starts tracing a generation.
+     *
+     * @param testClassName The name of the test class being generated, or a description of the work
+     * @return The trace
+     */
+    @NotNull
+    public static GenerationTrace start(@NotNull String testClassName) {
+        return new GenerationTrace(testClassName);
+    }
+
+    /**
+     * Sets the model of the following stages, e.g. after routing or escalation.
+     */
+    public void setModel(@NotNull String model) {
+        this.model = model;
+    }
+
+    /**
+     * Begins a stage.
+     *
+     * @param stage The stage
+     * @return The span to end once the stage is over
+     */
+    @NotNull
+    public Span stage(@NotNull GenerationStage stage) {
+        return stage(stage, model);
+    }
+
+    /**
+     * Ends the generation.
+     *
+     * @param outcome A short description of the result, e.g. "written" or "failed"
+     */
+    public void finish(@NotNull String outcome) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.generationId = id;
+            event.testClassName = testClassName;
+            event.model = model;
+            event.outcome = outcome;
+            event.commit();
+        }
+    }
+
+    @NotNull
+    RequestTrace request(@NotNull String model) {
+        return new RequestTrace(this, model);
+    }
+
+    @NotNull
+    private Span stage(@NotNull GenerationStage stage, @NotNull String stageModel) {
+        if (!STAGE_EVENT_TYPE.isEnabled()) {
+            return NOT_RECORDING;
+        }
+        GenerationStageEvent stageEvent = new GenerationStageEvent();
+        stageEvent.generationId = id;
+        stageEvent.stage = stage.getLabel();
+        stageEvent.testClassName = testClassName;
+        stageEvent.model = stageModel;
+        stageEvent.begin();
+        return new Span(stageEvent);
+    }
+
+    /**
+     * One stage of a generation. Sizes and token counts are optional.
+     */
+    public static class Span {
+        @Nullable
+        private final GenerationStageEvent event;
+        private boolean ended;
+
+        private Span(@Nullable GenerationStageEvent event) {
+            this.event = event;
+        }
+
+        /**
+         * Returns whether the stage is recorded; sizes and counts that are costly
+         * to compute should only be computed if it is.
+         */
+        public boolean isRecording() {
+            return event != null;
+        }
+
+        public void setInputChars(int inputChars) {
+            if (event != null) {
+                event.inputChars = inputChars;
+            }
+        }
+
+        public void setOutputChars(int outputChars) {
+            if (event != null) {
+                event.outputChars = outputChars;
+            }
+        }
+
+        public void setPromptTokens(int promptTokens) {
+            if (event != null) {
+                event.promptTokens = promptTokens;
+            }
+        }
+
+        public void setOutputTokens(int outputTokens) {
+            if (event != null) {
+                event.outputTokens = outputTokens;
+            }
+        }
+
+        /**
+         * Ends the stage. Later calls have no effect.
+         */
+        public void end() {
+            if (event == null) {
+                return;
+            }
+            synchronized (this) {
+                if (ended) {
+                    return;
+                }
+                ended = true;
+            }
+            event.end();
+            if (event.shouldCommit()) {
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * The network stages of one HTTP request of a generation: waiting to be sent,
+     * waiting for the first token and decoding. Driven by {@link OllamaClient}.
+     */
+    static class RequestTrace {
+        private final GenerationTrace trace;
+        private final String model;
+        private GenerationStage openStage;
+        private Span open = NOT_RECORDING;
+
+        private RequestTrace(@NotNull GenerationTrace trace, @NotNull String model) {
+            this.trace = trace;
+            this.model = model;
+        }
+
+        synchronized void queued() {
+            begin(GenerationStage.QUEUE);
+        }
+
+        synchronized void sent() {
+            if (openStage == GenerationStage.QUEUE) {
+                begin(GenerationStage.FIRST_TOKEN);
+            }
+        }
+
+        synchronized void firstFragment() {
+            if (openStage == GenerationStage.FIRST_TOKEN) {
+                begin(GenerationStage.DECODE);
+            }
+        }
+
+        synchronized void done(long promptTokens, long outputTokens, int outputChars) {
+            open.setPromptTokens((int) promptTokens);
+            open.setOutputTokens((int) outputTokens);
+            open.setOutputChars(outputChars);
+            end();
+        }
+
+        synchronized void end() {
+            open.end();
+            open = NOT_RECORDING;
+            openStage = null;
+        }
+
+        private void begin(@NotNull GenerationStage stage) {
+            open.end();
+            openStage = stage;
+            open = trace.stage(stage, model);
+        }
+    }
+}
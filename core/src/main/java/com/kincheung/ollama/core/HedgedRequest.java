@@ -0,0 +1,122 @@
+package com.kincheung.ollama.core;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Races a request against a backup that is only sent if the first one hasn't
+ * succeeded by a deadline, to cut tail latency without doubling the load.
+ * <p>
+ * The result is the first attempt that completes successfully; the other one
+ * is then cancelled, which for {@link OllamaClient} futures aborts the HTTP call
+ * and stops the generation on the server. If the first attempt fails before
+ * the deadline, the backup is sent right away. The result only fails once
+ * both attempts have failed, and cancelling it cancels both.
+ */
+public class HedgedRequest<T> {
+    private final CompletableFuture<T> result = new CompletableFuture<>();
+    private final List<CompletableFuture<T>> attempts = new ArrayList<>(2);
+    private final Supplier<CompletableFuture<T>> backup;
+    private ScheduledFuture<?> timer;
+    private boolean backupStarted;
+    private int failures;
+
+    private HedgedRequest(@NotNull Supplier<CompletableFuture<T>> backup) {
+        this.backup = backup;
+    }
+
+    /**
+     * Sends the primary request now and the backup request after the delay, unless
+     * the primary has succeeded by then.
+     *
+     * @param primary Sends the primary request
+     * @param backup Sends the backup request
+     * @param delayMillis How long to wait for the primary before sending the backup
+     * @param scheduler Scheduler for the deadline
+     * @return A future completed with the first successful result
+     */
+    public static <T> CompletableFuture<T> hedge(
+            @NotNull Supplier<CompletableFuture<T>> primary,
+            @NotNull Supplier<CompletableFuture<T>> backup,
+            long delayMillis,
+            @NotNull ScheduledExecutorService scheduler) {
+        HedgedRequest<T> request = new HedgedRequest<>(backup);
+        request.result.whenComplete((value, error) -> request.cancelAttempts());
+        request.start(primary);
+        synchronized (request) {
+            if (!request.backupStarted && !request.result.isDone()) {
+                request.timer = scheduler.schedule(request::startBackup, Math.max(0, delayMillis), TimeUnit.MILLISECONDS);
+            }
+        }
+        return request.result;
+    }
+
+    private void startBackup() {
+        synchronized (this) {
+            if (backupStarted || result.isDone()) {
+                return;
+            }
+            backupStarted = true;
+        }
+        start(backup);
+    }
+
+    private void start(@NotNull Supplier<CompletableFuture<T>> sender) {
+        CompletableFuture<T> attempt;
+        try {
+            attempt = sender.get();
+        } catch (RuntimeException e) {
+            attempt = CompletableFuture.failedFuture(e);
+        }
+        synchronized (this) {
+            if (!result.isDone()) {
+                attempts.add(attempt);
+            }
+        }
+        if (result.isDone()) {
+            attempt.cancel(true);
+            return;
+        }
+        attempt.whenComplete(this::finished);
+    }
+
+    private void finished(T value, Throwable error) {
+        if (result.isDone()) {
+            return;
+        }
+        if (error == null) {
+            result.complete(value);
+            return;
+        }
+        boolean failed;
+        synchronized (this) {
+            failures++;
+            failed = backupStarted && failures >= 2;
+        }
+        if (failed) {
+            result.completeExceptionally(error);
+        } else {
+            startBackup();
+        }
+    }
+
+    private void cancelAttempts() {
+        List<CompletableFuture<T>> started;
+        synchronized (this) {
+            if (timer != null) {
+                timer.cancel(false);
+            }
+            started = new ArrayList<>(attempts);
+        }
+        for (CompletableFuture<T> attempt : started) {
+            attempt.cancel(true);
+        }
+    }
+}
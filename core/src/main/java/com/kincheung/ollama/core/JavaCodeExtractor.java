@@ -0,0 +1,88 @@
+package com.kincheung.ollama.core;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Extracts Java source code from model responses.
+ */
+public class JavaCodeExtractor {
+    public static final String PACKED_SECTION_START = "### BEGIN ";
+    public static final String PACKED_SECTION_END = "### END ";
+    private static final Pattern CLASS_DECLARATION = Pattern.compile("(^|\\s)class\\s+[A-Za-z_$][\\w$]*");
+
+    /**
+     * Extract Java code from the response, removing any markdown formatting.
+     * 
+     * @param text The response text that might contain markdown
+     * @return The cleaned Java code
+     */
+    public static String extractJavaCode(String text) {
+        // If the response is wrapped in markdown code blocks, extract the Java code
+        if (text.contains("```java")) {
+            int start = text.indexOf("```java") + 7;
+            int end = text.lastIndexOf("```");
+            if (end > start) {
+                return text.substring(start, end).trim();
+            }
+        }
+        
+        // If there's just a generic code block
+        if (text.contains("```")) {
+            int start = text.indexOf("```") + 3;
+            int end = text.lastIndexOf("```");
+            if (end > start) {
+                return text.substring(start, end).trim();
+            }
+        }
+        
+        // Otherwise return the whole text
+        return text;
+    }
+
+    /**
+     * Cheap check that extracted code is a complete class declaration, without parsing it.
+     * Catches prose-only answers and completions that were cut off.
+     *
+     * @param code The extracted code
+     * @return True if the code declares a class and ends with a closing brace
+     */
+    public static boolean looksLikeJavaClass(String code) {
+        return CLASS_DECLARATION.matcher(code).find() && code.stripTrailing().endsWith("}");
+    }
+
+    /**
+     * Splits the response to a packed prompt into the test classes it contains.
+     * A section missing its end line runs up to the next section. Sections that
+     * are missing, incomplete or don't declare the expected class are left out,
+     * so the caller can fall back to a separate request for those classes.
+     *
+     * @param text The response text
+     * @param testClassNames The names of the expected test classes
+     * @return The extracted code of each well-formed section, keyed by test class name
+     */
+    public static Map<String, String> splitPackedResponse(String text, List<String> testClassNames) {
+        Map<String, String> sections = new LinkedHashMap<>();
+        for (String testClassName : testClassNames) {
+            String name = Pattern.quote(testClassName);
+            Matcher start = Pattern.compile("(?m)^[ \\t#*]*BEGIN\\s+" + name + "\\b.*$").matcher(text);
+            if (!start.find()) {
+                continue;
+            }
+            int end = text.length();
+            Matcher sectionEnd = Pattern.compile("(?m)^[ \\t#*]*(END\\s+" + name + "\\b|BEGIN\\s)").matcher(text);
+            if (sectionEnd.find(start.end())) {
+                end = sectionEnd.start();
+            }
+
+            String code = extractJavaCode(text.substring(start.end(), end)).trim();
+            if (looksLikeJavaClass(code) && Pattern.compile("\\bclass\\s+" + name + "\\b").matcher(code).find()) {
+                sections.put(testClassName, code);
+            }
+        }
+        return sections;
+    }
+}
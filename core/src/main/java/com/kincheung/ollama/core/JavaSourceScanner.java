@@ -0,0 +1,109 @@
+package com.kincheung.ollama.core;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Finds testable top-level classes in a source tree without a Java parser.
+ * Mirrors the rules the plugin's inspection uses: interfaces, enums, records,
+ * annotations and test classes are skipped.
+ */
+public class JavaSourceScanner {
+    private static final Pattern PACKAGE = Pattern.compile("(?m)^\\s*package\\s+([\\w.]+)\\s*;");
+    private static final Pattern TOP_LEVEL_TYPE = Pattern.compile(
+            "(?m)^(?:@[\\w.]+(?:\\([^)]*\\))?\\s+)*(?:(?:public|protected|private|abstract|final|sealed|non-sealed|static|strictfp)\\s+)*"
+                    + "(class|interface|enum|record|@interface)\\s+(\\w+)");
+
+    /**
+     * Scans all Java files below the source root.
+     *
+     * @param sourceRoot The source root to scan
+     * @return The classes found, in file order
+     * @throws IOException If the tree could not be read
+     */
+    @NotNull
+    public static List<SourceClass> scan(@NotNull Path sourceRoot) throws IOException {
+        List<SourceClass> classes = new ArrayList<>();
+        try (Stream<Path> files = Files.walk(sourceRoot)) {
+            for (Path file : (Iterable<Path>) files.filter(path -> path.toString().endsWith(".java")).sorted()::iterator) {
+                String source = Files.readString(file, StandardCharsets.UTF_8);
+                classes.addAll(parse(file, source));
+            }
+        }
+        return classes;
+    }
+
+    /**
+     * Finds the testable top-level classes in one source file.
+     *
+     * @param file The file the source was read from
+     * @param source The file content
+     * @return The testable classes declared in the file
+     */
+    @NotNull
+    public static List<SourceClass> parse(@NotNull Path file, @NotNull String source) {
+        Matcher packageMatcher = PACKAGE.matcher(source);
+        String packageName = packageMatcher.find() ? packageMatcher.group(1) : "";
+
+        List<SourceClass> classes = new ArrayList<>();
+        Matcher typeMatcher = TOP_LEVEL_TYPE.matcher(source);
+        while (typeMatcher.find()) {
+            String kind = typeMatcher.group(1);
+            String name = typeMatcher.group(2);
+            if (!"class".equals(kind) || name.endsWith("Test") || name.startsWith("Test")) {
+                continue;
+            }
+            classes.add(new SourceClass(file, packageName, name, source));
+        }
+        return classes;
+    }
+
+    /**
+     * A top-level class found in a source file.
+     */
+    public static class SourceClass {
+        private final Path file;
+        private final String packageName;
+        private final String className;
+        private final String source;
+
+        public SourceClass(Path file, String packageName, String className, String source) {
+            this.file = file;
+            this.packageName = packageName;
+            this.className = className;
+            this.source = source;
+        }
+
+        public Path getFile() {
+            return file;
+        }
+
+        public String getPackageName() {
+            return packageName;
+        }
+
+        public String getClassName() {
+            return className;
+        }
+
+        /**
+         * Returns the content of the whole source file the class is declared in.
+         */
+        public String getSource() {
+            return source;
+        }
+
+        public String getQualifiedName() {
+            return packageName.isEmpty() ? className : packageName + "." + className;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.kincheung.ollama.core;
+
+import java.util.Arrays;
+
+/**
+ * Thread-safe window of the most recent request latencies, used to derive
+ * percentile deadlines.
+ */
+public class LatencyTracker {
+    private final long[] samples;
+    private final int minSamples;
+    private int count;
+    private int next;
+
+    /**
+     * @param capacity The number of most recent samples to keep
+     * @param minSamples The number of samples needed before percentiles are reported
+     */
+    public LatencyTracker(int capacity, int minSamples) {
+        this.samples = new long[capacity];
+        this.minSamples = minSamples;
+    }
+
+    /**
+     * Records the latency of a completed request.
+     *
+     * @param millis The latency in milliseconds
+     */
+    public synchronized void record(long millis) {
+        samples[next] = millis;
+        next = (next + 1) % samples.length;
+        count = Math.min(count + 1, samples.length);
+    }
+
+    /**
+     * Returns the given percentile of the recorded latencies.
+     *
+     * @param percentile The percentile, between 0 and 100
+     * @return The latency in milliseconds, or -1 if too few samples were recorded
+     */
+    public synchronized long percentile(double percentile) {
+        if (count < minSamples || count == 0) {
+            return -1;
+        }
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100.0 * count) - 1;
+        return sorted[Math.max(0, Math.min(count - 1, index))];
+    }
+
+    public synchronized int size() {
+        return count;
+    }
+}
@@ -0,0 +1,138 @@
+package com.kincheung.ollama.core;
+
+/**
+ * The generation speed of one model on one machine, learned from the timings
+ * Ollama reports with every response: seconds per prompt token and per generated
+ * token, the fixed overhead of a request (model load, scheduling), and how many
+ * prompt and generated tokens a prompt of a given estimated size turns into.
+ * Until the first response has been recorded, typical local rates are assumed.
+ * Recent responses weigh more, so the rates follow model and hardware changes.
+ * <p>
+ * A bean with getters and setters so that it can be persisted.
+ */
+public class ModelRates {
+    private static final double DEFAULT_PROMPT_SECONDS_PER_TOKEN = 0.002;
+    private static final double DEFAULT_DECODE_SECONDS_PER_TOKEN = 0.04;
+    private static final double DEFAULT_OVERHEAD_SECONDS = 0.5;
+    private static final double DEFAULT_COMPLETION_RATIO = 1.5;
+    private static final int MIN_COMPLETION_TOKENS = 256;
+    // Weight of a new sample once a few have been recorded
+    private static final double MIN_SAMPLE_WEIGHT = 0.2;
+
+    private double promptSecondsPerToken = DEFAULT_PROMPT_SECONDS_PER_TOKEN;
+    private double decodeSecondsPerToken = DEFAULT_DECODE_SECONDS_PER_TOKEN;
+    private double overheadSeconds = DEFAULT_OVERHEAD_SECONDS;
+    private double promptTokenRatio = 1.0;
+    private double completionRatio = DEFAULT_COMPLETION_RATIO;
+    private int samples;
+
+    /**
+     * Records the timings of a completed response.
+     *
+     * @param estimatedPromptTokens The {@link TokenEstimator} estimate of the prompt
+     * @param promptEvalCount The prompt tokens Ollama evaluated
+     * @param promptEvalNanos The time Ollama spent evaluating them
+     * @param evalCount The tokens Ollama generated
+     * @param evalNanos The time Ollama spent generating them
+     * @param totalNanos The total time Ollama spent on the request
+     */
+    public synchronized void record(
+            int estimatedPromptTokens,
+            long promptEvalCount,
+            long promptEvalNanos,
+            long evalCount,
+            long evalNanos,
+            long totalNanos) {
+        if (estimatedPromptTokens <= 0 || evalCount <= 0 || evalNanos <= 0) {
+            return;
+        }
+        double weight = Math.max(MIN_SAMPLE_WEIGHT, 1.0 / (samples + 1));
+        // Ollama reuses cached prompt prefixes, so fewer tokens than sent may be evaluated
+        if (promptEvalCount > 0 && promptEvalNanos > 0) {
+            promptSecondsPerToken = blend(promptSecondsPerToken, promptEvalNanos / 1e9 / promptEvalCount, weight);
+            promptTokenRatio = blend(promptTokenRatio, (double) promptEvalCount / estimatedPromptTokens, weight);
+        }
+        decodeSecondsPerToken = blend(decodeSecondsPerToken, evalNanos / 1e9 / evalCount, weight);
+        completionRatio = blend(completionRatio, (double) evalCount / estimatedPromptTokens, weight);
+        if (totalNanos > 0) {
+            overheadSeconds = blend(overheadSeconds, Math.max(0, totalNanos - promptEvalNanos - evalNanos) / 1e9, weight);
+        }
+        samples++;
+    }
+
+    /**
+     * Estimates how long a generation takes from sending the prompt to the last token.
+     *
+     * @param estimatedPromptTokens The {@link TokenEstimator} estimate of the prompt
+     * @return The estimated duration in seconds
+     */
+    public synchronized double estimateSeconds(int estimatedPromptTokens) {
+        return prefillSeconds(estimatedPromptTokens) + completionTokens(estimatedPromptTokens) * decodeSecondsPerToken;
+    }
+
+    /**
+     * Estimates the time until the first token: the overhead and the prompt evaluation.
+     */
+    synchronized double prefillSeconds(int estimatedPromptTokens) {
+        return overheadSeconds + estimatedPromptTokens * promptTokenRatio * promptSecondsPerToken;
+    }
+
+    /**
+     * Estimates how many tokens the model generates for a prompt of the given size.
+     */
+    synchronized double completionTokens(int estimatedPromptTokens) {
+        return Math.max(MIN_COMPLETION_TOKENS, estimatedPromptTokens * completionRatio);
+    }
+
+    private static double blend(double current, double sample, double weight) {
+        return current + (sample - current) * weight;
+    }
+
+    public synchronized double getPromptSecondsPerToken() {
+        return promptSecondsPerToken;
+    }
+
+    public synchronized void setPromptSecondsPerToken(double promptSecondsPerToken) {
+        this.promptSecondsPerToken = promptSecondsPerToken;
+    }
+
+    public synchronized double getDecodeSecondsPerToken() {
+        return decodeSecondsPerToken;
+    }
+
+    public synchronized void setDecodeSecondsPerToken(double decodeSecondsPerToken) {
+        this.decodeSecondsPerToken = decodeSecondsPerToken;
+    }
+
+    public synchronized double getOverheadSeconds() {
+        return overheadSeconds;
+    }
+
+    public synchronized void setOverheadSeconds(double overheadSeconds) {
+        this.overheadSeconds = overheadSeconds;
+    }
+
+    public synchronized double getPromptTokenRatio() {
+        return promptTokenRatio;
+    }
+
+    public synchronized void setPromptTokenRatio(double promptTokenRatio) {
+        this.promptTokenRatio = promptTokenRatio;
+    }
+
+    public synchronized double getCompletionRatio() {
+        return completionRatio;
+    }
+
+    public synchronized void setCompletionRatio(double completionRatio) {
+        this.completionRatio = completionRatio;
+    }
+
+    public synchronized int getSamples() {
+        return samples;
+    }
+
+    public synchronized void setSamples(int samples) {
+        this.samples = samples;
+    }
+}
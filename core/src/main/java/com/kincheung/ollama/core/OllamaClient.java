@@ -0,0 +1,341 @@
+package com.kincheung.ollama.core;
+
+import com.google.gson.Gson;
+import com.kincheung.ollama.model.OllamaEmbedRequest;
+import com.kincheung.ollama.model.OllamaEmbedResponse;
+import com.kincheung.ollama.model.OllamaRequest;
+import com.kincheung.ollama.model.OllamaResponse;
+import okhttp3.*;
+import okio.BufferedSource;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Proxy;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Minimal asynchronous client for the Ollama HTTP API.
+ * Futures are completed on OkHttp's dispatcher threads, and cancelling a
+ * returned future cancels the underlying HTTP call.
+ * <p>
+ * Besides {@code http://} and {@code https://} URLs, the base URL may be
+ * {@code h2c://host:port} for HTTP/2 with prior knowledge, which multiplexes
+ * concurrent generations over one connection, or {@code unix:///path/to/socket}
+ * for HTTP/1.1 over a Unix domain socket. All clients share one connection pool
+ * and one dispatcher, so connections and threads are reused across clients for
+ * the same server, and the OkHttp client of each base URL and timeout is built
+ * only once, so an instance per request costs no more than a map lookup.
+ * <p>
+ * Generate requests can be given a {@link GenerationTrace}, which then records
+ * the time spent queued in OkHttp's dispatcher and connecting, waiting for the
+ * first token, and decoding.
+ */
+public class OllamaClient {
+    private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+    private static final Gson gson = new Gson();
+    private static final String H2C_SCHEME = "h2c://";
+    private static final String UNIX_SCHEME = "unix://";
+    private static final String UNIX_HOST_URL = "http://localhost";
+    // One instance per socket path and for the DNS, so that pooled connections match
+    private static final Map<Path, UnixDomainSocketFactory> UNIX_SOCKET_FACTORIES = new ConcurrentHashMap<>();
+    private static final Dns UNIX_DNS = hostname -> List.of(InetAddress.getLoopbackAddress());
+    private static final EventListener.Factory TRACE_LISTENER_FACTORY = call -> {
+        GenerationTrace.RequestTrace trace = call.request().tag(GenerationTrace.RequestTrace.class);
+        return trace != null ? new TraceListener(trace) : EventListener.NONE;
+    };
+    // Clients derived from it with newBuilder() share its connection pool and dispatcher
+    private static final OkHttpClient BASE_CLIENT = new OkHttpClient.Builder()
+            .eventListenerFactory(TRACE_LISTENER_FACTORY)
+            .connectTimeout(10, TimeUnit.SECONDS)
+            .build();
+    // Keyed by timeout and base URL
+    private static final Map<String, OkHttpClient> CLIENTS = new ConcurrentHashMap<>();
+
+    private final String baseUrl;
+    private final String httpUrl;
+    private final OkHttpClient client;
+
+    /**
+     * @param baseUrl The Ollama base URL, e.g. http://localhost:11434, h2c://localhost:8080 or unix:///run/ollama.sock
+     * @param timeoutSeconds Read and write timeout for requests
+     */
+    public OllamaClient(@NotNull String baseUrl, int timeoutSeconds) {
+        this.baseUrl = baseUrl;
+        if (baseUrl.startsWith(UNIX_SCHEME)) {
+            httpUrl = UNIX_HOST_URL;
+        } else if (baseUrl.startsWith(H2C_SCHEME)) {
+            httpUrl = "http://" + baseUrl.substring(H2C_SCHEME.length());
+        } else {
+            httpUrl = baseUrl;
+        }
+        this.client = CLIENTS.computeIfAbsent(timeoutSeconds + " " + baseUrl, key -> newClient(baseUrl, timeoutSeconds));
+    }
+
+    @NotNull
+    private static OkHttpClient newClient(@NotNull String baseUrl, int timeoutSeconds) {
+        OkHttpClient.Builder builder = BASE_CLIENT.newBuilder()
+                .writeTimeout(timeoutSeconds, TimeUnit.SECONDS)
+                .readTimeout(timeoutSeconds, TimeUnit.SECONDS);
+        if (baseUrl.startsWith(UNIX_SCHEME)) {
+            Path socketPath = Paths.get(baseUrl.substring(UNIX_SCHEME.length()));
+            builder.socketFactory(UNIX_SOCKET_FACTORIES.computeIfAbsent(socketPath, UnixDomainSocketFactory::new))
+                    .dns(UNIX_DNS)
+                    .proxy(Proxy.NO_PROXY);
+        } else if (baseUrl.startsWith(H2C_SCHEME)) {
+            builder.protocols(List.of(Protocol.H2_PRIOR_KNOWLEDGE));
+        }
+        return builder.build();
+    }
+
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    /**
+     * Sends a non-streaming request to the generate endpoint.
+     *
+     * @param request The request to send
+     * @return A CompletableFuture with the parsed response
+     */
+    public CompletableFuture<OllamaResponse> generate(@NotNull OllamaRequest request) {
+        return generate(request, null);
+    }
+
+    /**
+     * Sends a non-streaming request to the generate endpoint, recording its network
+     * stages in the trace. Without streaming, the wait for the first token includes decoding.
+     *
+     * @param request The request to send
+     * @param trace The generation the request belongs to, may be null
+     * @return A CompletableFuture with the parsed response
+     */
+    public CompletableFuture<OllamaResponse> generate(@NotNull OllamaRequest request, @Nullable GenerationTrace trace) {
+        GenerationTrace.RequestTrace requestTrace = trace != null ? trace.request(request.getModel()) : null;
+        return post("/api/generate", request, requestTrace, body -> {
+            OllamaResponse response = gson.fromJson(body.charStream(), OllamaResponse.class);
+            if (requestTrace != null) {
+                requestTrace.done(response.getPromptEvalCount(), response.getEvalCount(),
+                        response.getResponse() != null ? response.getResponse().length() : 0);
+            }
+            return response;
+        });
+    }
+
+    /**
+     * Sends a streaming request to the generate endpoint, passing each fragment of
+     * the response to the consumer as soon as it is decoded. The consumer is called
+     * in stream order on OkHttp's dispatcher thread. The read timeout applies to the
+     * gap between fragments rather than to the whole response.
+     *
+     * @param request The request to send; it is switched to streaming
+     * @param fragmentConsumer Receives each fragment of the response text
+     * @return A CompletableFuture with the final chunk, whose response is the whole response text
+     */
+    public CompletableFuture<OllamaResponse> generateStream(
+            @NotNull OllamaRequest request,
+            @NotNull Consumer<String> fragmentConsumer) {
+        return generateStream(request, fragmentConsumer, null);
+    }
+
+    /**
+     * Sends a streaming request to the generate endpoint, recording its network
+     * stages in the trace; see {@link #generateStream(OllamaRequest, Consumer)}.
+     *
+     * @param request The request to send; it is switched to streaming
+     * @param fragmentConsumer Receives each fragment of the response text
+     * @param trace The generation the request belongs to, may be null
+     * @return A CompletableFuture with the final chunk, whose response is the whole response text
+     */
+    public CompletableFuture<OllamaResponse> generateStream(
+            @NotNull OllamaRequest request,
+            @NotNull Consumer<String> fragmentConsumer,
+            @Nullable GenerationTrace trace) {
+        request.setStream(true);
+        GenerationTrace.RequestTrace requestTrace = trace != null ? trace.request(request.getModel()) : null;
+        return post("/api/generate", request, requestTrace, body -> {
+            BufferedSource source = body.source();
+            StringBuilder text = new StringBuilder();
+            String line;
+            while ((line = source.readUtf8Line()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                OllamaResponse chunk = gson.fromJson(line, OllamaResponse.class);
+                if (chunk.getError() != null) {
+                    throw new IOException("Error from Ollama: " + chunk.getError());
+                }
+                String fragment = chunk.getResponse();
+                if (fragment != null && !fragment.isEmpty()) {
+                    if (requestTrace != null && text.length() == 0) {
+                        requestTrace.firstFragment();
+                    }
+                    text.append(fragment);
+                    fragmentConsumer.accept(fragment);
+                }
+                if (chunk.isDone()) {
+                    chunk.setResponse(text.toString());
+                    if (requestTrace != null) {
+                        requestTrace.done(chunk.getPromptEvalCount(), chunk.getEvalCount(), text.length());
+                    }
+                    return chunk;
+                }
+            }
+            throw new IOException("Ollama closed the stream before the response was done");
+        });
+    }
+
+    /**
+     * Computes embeddings with the embed endpoint.
+     *
+     * @param model The embedding model, e.g. nomic-embed-text
+     * @param inputs The texts to embed
+     * @return A CompletableFuture with one embedding per input, in input order
+     */
+    public CompletableFuture<float[][]> embed(@NotNull String model, @NotNull List<String> inputs) {
+        OllamaEmbedRequest request = new OllamaEmbedRequest();
+        request.setModel(model);
+        request.setInput(inputs);
+        CompletableFuture<OllamaEmbedResponse> response = post("/api/embed", request, OllamaEmbedResponse.class);
+        CompletableFuture<float[][]> future = response.thenApply(embedResponse -> {
+            float[][] embeddings = embedResponse.getEmbeddings();
+            if (embeddings == null || embeddings.length != inputs.size()) {
+                throw new IllegalStateException("Expected " + inputs.size() + " embeddings from " + model);
+            }
+            return embeddings;
+        });
+        future.whenComplete((result, error) -> {
+            if (future.isCancelled()) {
+                response.cancel(true);
+            }
+        });
+        return future;
+    }
+
+    private <T> CompletableFuture<T> post(@NotNull String path, @NotNull Object request, @NotNull Class<T> responseType) {
+        return post(path, request, null, body -> gson.fromJson(body.charStream(), responseType));
+    }
+
+    private <T> CompletableFuture<T> post(
+            @NotNull String path,
+            @NotNull Object request,
+            @Nullable GenerationTrace.RequestTrace requestTrace,
+            @NotNull BodyReader<T> bodyReader) {
+        RequestBody body = RequestBody.create(gson.toJson(request), JSON);
+        Request httpRequest = new Request.Builder()
+                .url(httpUrl + path)
+                .post(body)
+                .tag(GenerationTrace.RequestTrace.class, requestTrace)
+                .build();
+
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Call call = client.newCall(httpRequest);
+        future.whenComplete((result, error) -> {
+            if (future.isCancelled()) {
+                call.cancel();
+            }
+        });
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(@NotNull Call call, @NotNull IOException e) {
+                future.completeExceptionally(e);
+            }
+
+            @Override
+            public void onResponse(@NotNull Call call, @NotNull Response response) {
+                try (ResponseBody responseBody = response.body()) {
+                    if (!response.isSuccessful() || responseBody == null) {
+                        future.completeExceptionally(new IOException(
+                                "Error from Ollama: " + response.code() + " - " + response.message()));
+                        return;
+                    }
+                    future.complete(bodyReader.read(responseBody));
+                } catch (Exception e) {
+                    future.completeExceptionally(e);
+                }
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     * Checks if Ollama is reachable.
+     *
+     * @return A CompletableFuture that completes with true if Ollama is reachable
+     */
+    public CompletableFuture<Boolean> isAvailable() {
+        Request request = new Request.Builder()
+                .url(httpUrl + "/api/tags")
+                .build();
+
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        client.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onFailure(@NotNull Call call, @NotNull IOException e) {
+                future.complete(false);
+            }
+
+            @Override
+            public void onResponse(@NotNull Call call, @NotNull Response response) {
+                boolean isAvailable = response.isSuccessful();
+                response.close();
+                future.complete(isAvailable);
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     * Reads a successful response body into a result.
+     */
+    private interface BodyReader<T> {
+        T read(@NotNull ResponseBody body) throws IOException;
+    }
+
+    /**
+     * Drives the network stages of a traced request from OkHttp's call events.
+     */
+    private static class TraceListener extends EventListener {
+        private final GenerationTrace.RequestTrace trace;
+
+        TraceListener(@NotNull GenerationTrace.RequestTrace trace) {
+            this.trace = trace;
+        }
+
+        @Override
+        public void callStart(@NotNull Call call) {
+            // Called on enqueue, before the call waits for a dispatcher thread
+            trace.queued();
+        }
+
+        @Override
+        public void requestHeadersStart(@NotNull Call call) {
+            trace.sent();
+        }
+
+        @Override
+        public void callEnd(@NotNull Call call) {
+            trace.end();
+        }
+
+        @Override
+        public void callFailed(@NotNull Call call, @NotNull IOException e) {
+            trace.end();
+        }
+
+        @Override
+        public void canceled(@NotNull Call call) {
+            trace.end();
+        }
+    }
+}
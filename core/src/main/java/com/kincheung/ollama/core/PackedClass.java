@@ -0,0 +1,39 @@
+package com.kincheung.ollama.core;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * One of several small classes whose tests are generated with a single request.
+ */
+public class PackedClass {
+    private final String className;
+    private final String classCode;
+    private final String collaboratorContext;
+
+    /**
+     * @param className The name of the class
+     * @param classCode The source code of the class
+     * @param collaboratorContext Signature summaries of the class's collaborators, may be empty
+     */
+    public PackedClass(@NotNull String className, @NotNull String classCode, @NotNull String collaboratorContext) {
+        this.className = className;
+        this.classCode = classCode;
+        this.collaboratorContext = collaboratorContext;
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    public String getTestClassName() {
+        return className + "Test";
+    }
+
+    public String getClassCode() {
+        return classCode;
+    }
+
+    public String getCollaboratorContext() {
+        return collaboratorContext;
+    }
+}
@@ -0,0 +1,201 @@
+package com.kincheung.ollama.core;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Builds the prompts sent to Ollama for test generation.
+ * Has no IDE dependencies so it can be shared by the plugin and the headless runner.
+ */
+public class PromptBuilder {
+    /**
+     * Version of the prompts. Increase it when a change to the prompts changes the
+     * tests they produce, so that tests cached from the old prompts aren't reused.
+     */
+    public static final int TEMPLATE_VERSION = 1;
+
+    /**
+     * Builds the prompt sent to Ollama for generating a test of a class.
+     *
+     * @param className The name of the class
+     * @param classCode The source code of the class
+     * @param collaboratorContext Signature summaries of the class's collaborators, may be empty
+     * @param usesMockito Whether to include Mockito in the generated test
+     * @param includeComments Whether to include comments in the generated test
+     * @return The prompt text
+     */
+    public static String buildPrompt(
+            String className,
+            String classCode,
+            String collaboratorContext,
+            boolean usesMockito,
+            boolean includeComments) {
+        return buildPrompt(className, classCode, collaboratorContext, Collections.emptyList(), usesMockito, includeComments);
+    }
+
+    /**
+     * Builds the prompt sent to Ollama for generating a test of a class, with
+     * existing tests of the project as examples of its conventions.
+     *
+     * @param className The name of the class
+     * @param classCode The source code of the class
+     * @param collaboratorContext Signature summaries of the class's collaborators, may be empty
+     * @param exampleTests Source code of similar existing test classes, may be empty
+     * @param usesMockito Whether to include Mockito in the generated test
+     * @param includeComments Whether to include comments in the generated test
+     * @return The prompt text
+     */
+    public static String buildPrompt(
+            String className,
+            String classCode,
+            String collaboratorContext,
+            List<String> exampleTests,
+            boolean usesMockito,
+            boolean includeComments) {
+        // Build the prompt for the model
+        StringBuilder promptBuilder = new StringBuilder();
+        promptBuilder.append("Generate a JUnit 5 unit test for the following Java class.\n\n");
+        
+        if (usesMockito) {
+            promptBuilder.append("Use Mockito for mocking dependencies.\n");
+        }
+        
+        if (includeComments) {
+            promptBuilder.append("Include clear comments explaining the tests.\n");
+        }
+        
+        promptBuilder.append("\nHere is the class to test:\n\n```java\n");
+        promptBuilder.append(classCode);
+        promptBuilder.append("\n```\n\n");
+        
+        if (collaboratorContext != null && !collaboratorContext.isEmpty()) {
+            promptBuilder.append("The class depends on these collaborators (signatures only, use exactly these methods):\n\n```java\n");
+            promptBuilder.append(collaboratorContext);
+            promptBuilder.append("```\n\n");
+        }
+        
+        if (exampleTests != null && !exampleTests.isEmpty()) {
+            promptBuilder.append("Follow the conventions of these existing tests from the same project (naming, structure, assertion and mocking style):\n\n");
+            for (String exampleTest : exampleTests) {
+                promptBuilder.append("```java\n").append(exampleTest).append("\n```\n\n");
+            }
+        }
+        
+        promptBuilder.append("Generate a complete test class named ").append(className).append("Test with comprehensive test methods for each public method.");
+        
+        return promptBuilder.toString();
+    }
+    
+    /**
+     * Builds one prompt for generating the tests of several small classes, so they
+     * share the instructions and a single request. Each test class is answered in
+     * its own delimited section; see {@link JavaCodeExtractor#splitPackedResponse}.
+     *
+     * @param classes The classes to test
+     * @param usesMockito Whether to include Mockito in the generated tests
+     * @param includeComments Whether to include comments in the generated tests
+     * @return The prompt text
+     */
+    public static String buildPackedPrompt(
+            List<PackedClass> classes,
+            boolean usesMockito,
+            boolean includeComments) {
+        StringBuilder promptBuilder = new StringBuilder();
+        promptBuilder.append("Generate a JUnit 5 unit test class for each of the following ")
+                .append(classes.size()).append(" Java classes.\n\n");
+        
+        if (usesMockito) {
+            promptBuilder.append("Use Mockito for mocking dependencies.\n");
+        }
+        
+        if (includeComments) {
+            promptBuilder.append("Include clear comments explaining the tests.\n");
+        }
+        
+        promptBuilder.append("\nAnswer every class, in the order given. For each class, start a section with the line ")
+                .append(JavaCodeExtractor.PACKED_SECTION_START).append("<test class name>")
+                .append(", then write the complete test class with its imports in a ```java code block, then end the section with the line ")
+                .append(JavaCodeExtractor.PACKED_SECTION_END).append("<test class name>.\n\n");
+        
+        for (int i = 0; i < classes.size(); i++) {
+            PackedClass packedClass = classes.get(i);
+            promptBuilder.append("Class ").append(i + 1).append(": ").append(packedClass.getClassName())
+                    .append(", test class name ").append(packedClass.getTestClassName()).append("\n\n```java\n");
+            promptBuilder.append(packedClass.getClassCode());
+            promptBuilder.append("\n```\n\n");
+            
+            if (!packedClass.getCollaboratorContext().isEmpty()) {
+                promptBuilder.append("It depends on these collaborators (signatures only, use exactly these methods):\n\n```java\n");
+                promptBuilder.append(packedClass.getCollaboratorContext());
+                promptBuilder.append("```\n\n");
+            }
+        }
+        
+        promptBuilder.append("Generate the ").append(classes.size())
+                .append(" test classes with comprehensive test methods for each public method.");
+        
+        return promptBuilder.toString();
+    }
+    
+    /**
+     * Builds the prompt for generating tests of selected methods only.
+     *
+     * @param className The name of the class
+     * @param classSkeleton The class declaration with its fields and constructor signatures
+     * @param methodsCode The source code of the methods to test
+     * @param existingFixture The fields and setup methods of the existing test class, may be empty
+     * @param usesMockito Whether to include Mockito in the generated test
+     * @param includeComments Whether to include comments in the generated test
+     * @return The prompt text
+     */
+    public static String buildMethodsPrompt(
+            String className,
+            String classSkeleton,
+            String methodsCode,
+            String existingFixture,
+            boolean usesMockito,
+            boolean includeComments) {
+        StringBuilder promptBuilder = new StringBuilder();
+        promptBuilder.append("Generate JUnit 5 test methods for the following methods of the Java class ")
+                .append(className).append(".\n\n");
+        
+        if (usesMockito) {
+            promptBuilder.append("Use Mockito for mocking dependencies.\n");
+        }
+        
+        if (includeComments) {
+            promptBuilder.append("Include clear comments explaining the tests.\n");
+        }
+        
+        promptBuilder.append("\nThis is the outline of the class:\n\n```java\n");
+        promptBuilder.append(classSkeleton);
+        promptBuilder.append("\n```\n\nThese are the methods to test:\n\n```java\n");
+        promptBuilder.append(methodsCode);
+        promptBuilder.append("\n```\n\n");
+        
+        if (existingFixture != null && !existingFixture.isEmpty()) {
+            promptBuilder.append("The existing test class already has these fields and setup methods, reuse them:\n\n```java\n");
+            promptBuilder.append(existingFixture);
+            promptBuilder.append("\n```\n\n");
+        }
+        
+        promptBuilder.append("Generate a test class named ").append(className)
+                .append("Test with its imports that contains only test methods for the methods listed above.");
+        
+        return promptBuilder.toString();
+    }
+    
+    /**
+     * Adds the instructions for structured output to a prompt, to be sent with
+     * {@link StructuredTest#schema()} as the format. The model then returns the
+     * parts of the test class as JSON instead of a free-form answer.
+     *
+     * @param prompt A test generation prompt
+     * @return The prompt asking for structured output
+     */
+    public static String withStructuredOutput(String prompt) {
+        return prompt + "\n\nAnswer with a JSON object only, without the class declaration. In \"imports\", list the import statements the test class needs. "
+                + "In \"fixtures\", give its fields and setup methods, each as a complete Java declaration with its annotations. "
+                + "In \"testMethods\", give each test method as a complete Java method with its annotations.";
+    }
+}
@@ -0,0 +1,63 @@
+package com.kincheung.ollama.core;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * Groups small generation jobs so that several of them share one request,
+ * saving the per-request overhead of instruction evaluation, the HTTP round
+ * trip and scheduling.
+ */
+public class PromptPacker {
+    public static final int MAX_CLASSES_PER_PACK = 8;
+
+    /**
+     * Packs jobs into groups whose estimated total tokens (prompt and completion)
+     * stay within the budget. Only jobs estimated at no more than half the budget
+     * are packed, and only with jobs that have the same key, e.g. the same model;
+     * every other job forms a group of its own. Groups are returned in the order
+     * of their first job, so the job order is kept as far as possible.
+     *
+     * @param jobs The jobs, in the order they should run
+     * @param estimatedTokens Estimated total tokens of a job
+     * @param key Jobs are only packed with jobs that have an equal key
+     * @param tokenBudget Maximum estimated total tokens of a group
+     * @return The groups
+     */
+    public static <T> List<List<T>> pack(
+            @NotNull List<T> jobs,
+            @NotNull ToIntFunction<T> estimatedTokens,
+            @NotNull Function<T, ?> key,
+            int tokenBudget) {
+        List<List<T>> groups = new ArrayList<>();
+        Map<Object, List<T>> open = new HashMap<>();
+        Map<Object, Integer> openTokens = new HashMap<>();
+        for (T job : jobs) {
+            int tokens = estimatedTokens.applyAsInt(job);
+            if (tokens > tokenBudget / 2) {
+                groups.add(List.of(job));
+                continue;
+            }
+
+            Object groupKey = Objects.requireNonNullElse(key.apply(job), "");
+            List<T> group = open.get(groupKey);
+            int groupTokens = openTokens.getOrDefault(groupKey, 0);
+            if (group == null || group.size() >= MAX_CLASSES_PER_PACK || groupTokens + tokens > tokenBudget) {
+                group = new ArrayList<>();
+                groups.add(group);
+                open.put(groupKey, group);
+                groupTokens = 0;
+            }
+            group.add(job);
+            openTokens.put(groupKey, groupTokens + tokens);
+        }
+        return groups;
+    }
+}
@@ -0,0 +1,231 @@
+package com.kincheung.ollama.core;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Cache of generated tests in a directory shared by several developers, for
+ * example on a network share, so that a test one of them generated is reused by
+ * everyone generating the same class with the same model and options.
+ * <p>
+ * Entries are content-addressed: the file name is a hash of everything the test
+ * depends on, so an entry never changes once written and concurrent writers of
+ * the same entry write the same content. Each entry is a gzip-compressed file,
+ * written under a temporary name and published with an atomic rename, so readers
+ * never see a partial entry. Reading an entry marks it as recently used; once
+ * the directory grows beyond its size limit, the least recently used entries
+ * are deleted. Any client may prune, so the limit should be the same for all.
+ */
+public class SharedTestCache {
+    private static final String ENTRY_SUFFIX = ".java.gz";
+    private static final String TEMP_SUFFIX = ".tmp";
+    // Walking a network share is slow, so each client prunes at most this often
+    private static final long PRUNE_INTERVAL_MILLIS = 10 * 60 * 1000;
+    // Temporary files this old were left behind by a client that crashed while writing
+    private static final long STALE_TEMP_MILLIS = 60 * 60 * 1000;
+    // Pruning goes below the limit so that it isn't needed again right away
+    private static final double PRUNE_TARGET = 0.9;
+
+    private final Path directory;
+    private final long maxBytes;
+    private final AtomicLong lastPrune = new AtomicLong();
+
+    /**
+     * @param directory The shared directory, created when the first entry is written
+     * @param maxBytes The size the entries may take up in total
+     */
+    public SharedTestCache(@NotNull Path directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Computes the key of an entry from everything the test depends on. The
+     * version of the prompt templates is included, so that changing them doesn't
+     * serve tests generated from the old prompts.
+     *
+     * @param parts The model, the class and the options of the generation
+     * @return The hex-encoded SHA-256 hash of the parts
+     */
+    @NotNull
+    public static String key(@NotNull String... parts) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(String.valueOf(PromptBuilder.TEMPLATE_VERSION).getBytes(StandardCharsets.UTF_8));
+            for (String part : parts) {
+                digest.update((byte) 0);
+                digest.update(part.getBytes(StandardCharsets.UTF_8));
+            }
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    @NotNull
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Reads the test cached under the key and marks it as recently used.
+     *
+     * @return The test code, or null if there is no readable entry
+     * @throws IOException If the directory could not be read
+     */
+    @Nullable
+    public String get(@NotNull String key) throws IOException {
+        Path entry = entryPath(key);
+        String testCode;
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(entry))) {
+            testCode = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (ZipException e) {
+            // Damaged outside this class; the next writer replaces it
+            return null;
+        }
+        try {
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // Read-only shares still serve entries, they are just pruned by age of writing
+        }
+        return testCode;
+    }
+
+    /**
+     * Publishes a test under the key, unless an entry already exists, and prunes
+     * the directory if it hasn't been pruned for a while.
+     *
+     * @throws IOException If the entry could not be written
+     */
+    public void put(@NotNull String key, @NotNull String testCode) throws IOException {
+        Path entry = entryPath(key);
+        if (Files.exists(entry)) {
+            return;
+        }
+        Files.createDirectories(entry.getParent());
+        Path temp = Files.createTempFile(entry.getParent(), key, TEMP_SUFFIX);
+        try {
+            try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(temp))) {
+                out.write(testCode.getBytes(StandardCharsets.UTF_8));
+            }
+            Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+
+        long now = System.currentTimeMillis();
+        long last = lastPrune.get();
+        if (now - last >= PRUNE_INTERVAL_MILLIS && lastPrune.compareAndSet(last, now)) {
+            prune();
+        }
+    }
+
+    /**
+     * Deletes temporary files left behind by crashed writers and, if the entries
+     * take up more than the size limit, the least recently used entries.
+     * Entries deleted concurrently by another client are skipped.
+     *
+     * @throws IOException If the directory could not be listed
+     */
+    public void prune() throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        List<Entry> entries = new ArrayList<>();
+        long totalBytes = 0;
+        try (Stream<Path> files = Files.walk(directory, 2)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                BasicFileAttributes attributes;
+                try {
+                    attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                } catch (NoSuchFileException e) {
+                    continue;
+                }
+                if (!attributes.isRegularFile()) {
+                    continue;
+                }
+                long modified = attributes.lastModifiedTime().toMillis();
+                if (name.endsWith(TEMP_SUFFIX)) {
+                    if (now - modified > STALE_TEMP_MILLIS) {
+                        Files.deleteIfExists(file);
+                    }
+                } else if (name.endsWith(ENTRY_SUFFIX)) {
+                    entries.add(new Entry(file, attributes.size(), modified));
+                    totalBytes += attributes.size();
+                }
+            }
+        }
+        if (totalBytes <= maxBytes) {
+            return;
+        }
+
+        entries.sort(Comparator.comparingLong(entry -> entry.lastUsed));
+        long targetBytes = (long) (maxBytes * PRUNE_TARGET);
+        for (Entry entry : entries) {
+            if (totalBytes <= targetBytes) {
+                break;
+            }
+            try {
+                Files.deleteIfExists(entry.file);
+            } catch (IOException e) {
+                // Being read on a filesystem that doesn't allow deleting open files
+                continue;
+            }
+            totalBytes -= entry.size;
+        }
+    }
+
+    /**
+     * Entries are spread over subdirectories named after the first two characters
+     * of the key, which keeps directory listings on the share short.
+     */
+    @NotNull
+    private Path entryPath(@NotNull String key) {
+        return directory.resolve(key.substring(0, 2)).resolve(key + ENTRY_SUFFIX);
+    }
+
+    private static class Entry {
+        private final Path file;
+        private final long size;
+        private final long lastUsed;
+
+        Entry(Path file, long size, long lastUsed) {
+            this.file = file;
+            this.size = size;
+            this.lastUsed = lastUsed;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.kincheung.ollama.core;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A test class returned as structured JSON output: its imports, its fixtures
+ * (fields and setup methods) and its test methods as separate source fragments.
+ * The schema lists the parts in that order, so Ollama decodes them in that order.
+ */
+public class StructuredTest {
+    private final List<String> imports = new ArrayList<>();
+    private final List<String> fixtures = new ArrayList<>();
+    private final List<String> testMethods = new ArrayList<>();
+
+    /**
+     * Returns the JSON schema to pass as the {@code format} of a generate request.
+     */
+    @NotNull
+    public static JsonObject schema() {
+        JsonObject properties = new JsonObject();
+        JsonArray required = new JsonArray();
+        for (Part part : Part.values()) {
+            JsonObject items = new JsonObject();
+            items.addProperty("type", "string");
+            JsonObject property = new JsonObject();
+            property.addProperty("type", "array");
+            property.add("items", items);
+            properties.add(part.getKey(), property);
+            required.add(part.getKey());
+        }
+
+        JsonObject schema = new JsonObject();
+        schema.addProperty("type", "object");
+        schema.add("properties", properties);
+        schema.add("required", required);
+        return schema;
+    }
+
+    void add(@NotNull Part part, @NotNull String source) {
+        switch (part) {
+            case IMPORT:
+                imports.add(source);
+                break;
+            case FIXTURE:
+                fixtures.add(source);
+                break;
+            case TEST_METHOD:
+                testMethods.add(source);
+                break;
+        }
+    }
+
+    @NotNull
+    public List<String> getImports() {
+        return Collections.unmodifiableList(imports);
+    }
+
+    @NotNull
+    public List<String> getFixtures() {
+        return Collections.unmodifiableList(fixtures);
+    }
+
+    @NotNull
+    public List<String> getTestMethods() {
+        return Collections.unmodifiableList(testMethods);
+    }
+
+    /**
+     * Assembles the parts into the source of a test class, without a package declaration.
+     *
+     * @param testClassName The name of the test class
+     * @return The test class source
+     */
+    @NotNull
+    public String toJavaSource(@NotNull String testClassName) {
+        return toJavaSource(testClassName, imports, fixtures, testMethods);
+    }
+
+    /**
+     * Assembles source fragments into a test class, without a package declaration.
+     * Import entries may be given with or without the {@code import} keyword and
+     * the semicolon.
+     *
+     * @param testClassName The name of the test class
+     * @param imports The imports
+     * @param fixtures The fields and setup methods
+     * @param testMethods The test methods
+     * @return The test class source
+     */
+    @NotNull
+    public static String toJavaSource(
+            @NotNull String testClassName,
+            @NotNull List<String> imports,
+            @NotNull List<String> fixtures,
+            @NotNull List<String> testMethods) {
+        StringBuilder source = new StringBuilder();
+        for (String entry : imports) {
+            String statement = entry.strip();
+            if (statement.isEmpty()) {
+                continue;
+            }
+            if (!statement.startsWith("import ")) {
+                statement = "import " + statement;
+            }
+            source.append(statement).append(statement.endsWith(";") ? "\n" : ";\n");
+        }
+        if (source.length() > 0) {
+            source.append('\n');
+        }
+
+        source.append("public class ").append(testClassName).append(" {\n");
+        appendMembers(source, fixtures);
+        appendMembers(source, testMethods);
+        return source.append("}\n").toString();
+    }
+
+    private static void appendMembers(@NotNull StringBuilder source, @NotNull List<String> members) {
+        for (String member : members) {
+            String code = member.stripIndent().strip();
+            if (code.isEmpty()) {
+                continue;
+            }
+            source.append('\n');
+            for (String line : code.split("\n", -1)) {
+                source.append(line.isBlank() ? "" : "    " + line).append('\n');
+            }
+        }
+    }
+
+    /**
+     * A part of the structured output, named by its key in the schema.
+     */
+    public enum Part {
+        IMPORT("imports"),
+        FIXTURE("fixtures"),
+        TEST_METHOD("testMethods");
+
+        private final String key;
+
+        Part(String key) {
+            this.key = key;
+        }
+
+        @NotNull
+        public String getKey() {
+            return key;
+        }
+
+        @Nullable
+        static Part forKey(@Nullable String key) {
+            for (Part part : values()) {
+                if (part.key.equals(key)) {
+                    return part;
+                }
+            }
+            return null;
+        }
+    }
+}
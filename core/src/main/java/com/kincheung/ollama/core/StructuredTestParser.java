@@ -0,0 +1,175 @@
+package com.kincheung.ollama.core;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Incremental parser for structured test output (see {@link StructuredTest#schema()}).
+ * The response is fed in fragments as it streams in, and each import, fixture and
+ * test method is reported as soon as its JSON string is closed, while later parts
+ * are still being decoded. Only string elements of the top-level arrays are
+ * reported; anything else the model adds is skipped.
+ */
+public class StructuredTestParser {
+    private final Listener listener;
+    private final StructuredTest result = new StructuredTest();
+    // '{' or '[' for each open container, innermost first
+    private final Deque<Character> containers = new ArrayDeque<>();
+    private final StringBuilder string = new StringBuilder();
+    private boolean inString;
+    private boolean stringIsKey;
+    private boolean expectKey;
+    private boolean escape;
+    private int unicodeDigits = -1;
+    private int unicodeValue;
+    private String memberKey;
+    private StructuredTest.Part arrayPart;
+    private boolean complete;
+
+    /**
+     * @param listener Notified of each part as it is completed, may be null
+     */
+    public StructuredTestParser(@Nullable Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Parses the next fragment of the response.
+     *
+     * @param fragment The fragment, in stream order
+     */
+    public void feed(@NotNull CharSequence fragment) {
+        for (int i = 0; i < fragment.length(); i++) {
+            accept(fragment.charAt(i));
+        }
+    }
+
+    /**
+     * Returns the parts parsed so far.
+     */
+    @NotNull
+    public StructuredTest getResult() {
+        return result;
+    }
+
+    /**
+     * Returns whether the top-level object has been closed.
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    private void accept(char c) {
+        if (inString) {
+            acceptInString(c);
+            return;
+        }
+        switch (c) {
+            case '"':
+                inString = true;
+                stringIsKey = expectKey && !containers.isEmpty() && containers.peek() == '{';
+                string.setLength(0);
+                break;
+            case '{':
+                containers.push('{');
+                expectKey = true;
+                break;
+            case '[':
+                if (containers.size() == 1) {
+                    arrayPart = StructuredTest.Part.forKey(memberKey);
+                }
+                containers.push('[');
+                expectKey = false;
+                break;
+            case '}':
+            case ']':
+                if (!containers.isEmpty()) {
+                    containers.pop();
+                }
+                if (containers.size() == 1) {
+                    arrayPart = null;
+                }
+                complete |= containers.isEmpty();
+                expectKey = false;
+                break;
+            case ',':
+                expectKey = !containers.isEmpty() && containers.peek() == '{';
+                break;
+            case ':':
+                expectKey = false;
+                break;
+            default:
+                // Whitespace and literals
+                break;
+        }
+    }
+
+    private void acceptInString(char c) {
+        if (unicodeDigits >= 0) {
+            unicodeValue = unicodeValue * 16 + Character.digit(c, 16);
+            if (++unicodeDigits == 4) {
+                string.append((char) unicodeValue);
+                unicodeDigits = -1;
+            }
+        } else if (escape) {
+            escape = false;
+            switch (c) {
+                case 'n':
+                    string.append('\n');
+                    break;
+                case 't':
+                    string.append('\t');
+                    break;
+                case 'r':
+                    string.append('\r');
+                    break;
+                case 'b':
+                    string.append('\b');
+                    break;
+                case 'f':
+                    string.append('\f');
+                    break;
+                case 'u':
+                    unicodeDigits = 0;
+                    unicodeValue = 0;
+                    break;
+                default:
+                    // \" \\ \/
+                    string.append(c);
+                    break;
+            }
+        } else if (c == '\\') {
+            escape = true;
+        } else if (c == '"') {
+            inString = false;
+            endString(string.toString());
+        } else {
+            string.append(c);
+        }
+    }
+
+    private void endString(@NotNull String value) {
+        if (stringIsKey) {
+            if (containers.size() == 1) {
+                memberKey = value;
+            }
+            return;
+        }
+        if (arrayPart != null && containers.size() == 2 && containers.peek() == '[') {
+            result.add(arrayPart, value);
+            if (listener != null) {
+                listener.onPart(arrayPart, value);
+            }
+        }
+    }
+
+    /**
+     * Receives the parts of a structured test as they are parsed, on the thread feeding the parser.
+     */
+    public interface Listener {
+        void onPart(@NotNull StructuredTest.Part part, @NotNull String source);
+    }
+}
@@ -0,0 +1,97 @@
+package com.kincheung.ollama.core;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Outcome of running a generated test class in a {@link TestWorkerPool}: the
+ * failure message of each failed test method and the names of the passed and
+ * skipped ones, or an error if the class couldn't be compiled or set up.
+ */
+public class TestRunResult {
+    private final Set<String> passed;
+    private final Set<String> skipped;
+    private final Map<String, String> failures;
+    @Nullable
+    private final String error;
+
+    private TestRunResult(Set<String> passed, Set<String> skipped, Map<String, String> failures, @Nullable String error) {
+        this.passed = passed;
+        this.skipped = skipped;
+        this.failures = failures;
+        this.error = error;
+    }
+
+    @NotNull
+    static TestRunResult error(@NotNull String message) {
+        return new TestRunResult(Collections.emptySet(), Collections.emptySet(), Collections.emptyMap(), message);
+    }
+
+    @NotNull
+    public Set<String> getPassed() {
+        return passed;
+    }
+
+    @NotNull
+    public Set<String> getSkipped() {
+        return skipped;
+    }
+
+    /**
+     * Returns the failure message of each failed test method, by method name.
+     */
+    @NotNull
+    public Map<String, String> getFailures() {
+        return failures;
+    }
+
+    /**
+     * Returns why the test class couldn't be run, or null if its methods were run.
+     */
+    @Nullable
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * Collects the answer lines of a worker.
+     */
+    static class Builder {
+        private final Set<String> passed = new LinkedHashSet<>();
+        private final Set<String> skipped = new LinkedHashSet<>();
+        private final Map<String, String> failures = new LinkedHashMap<>();
+        private String error;
+
+        void add(@NotNull String line) {
+            String[] parts = line.split("\t", 3);
+            switch (parts[0]) {
+                case "PASS":
+                    passed.add(parts[1]);
+                    break;
+                case "SKIP":
+                    skipped.add(parts[1]);
+                    break;
+                case "FAIL":
+                    failures.put(parts[1], parts.length > 2 ? parts[2] : "");
+                    break;
+                case "ERROR":
+                    error = parts.length > 1 ? parts[1] : "";
+                    break;
+                default:
+                    // Not part of the protocol
+                    break;
+            }
+        }
+
+        @NotNull
+        TestRunResult build() {
+            return new TestRunResult(passed, skipped, failures, error);
+        }
+    }
+}
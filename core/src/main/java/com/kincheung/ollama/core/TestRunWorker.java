@@ -0,0 +1,405 @@
+package com.kincheung.ollama.core;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Entry point of the forked JVMs {@link TestWorkerPool} runs generated tests in.
+ * A worker is started with the library jars of the module under test, so the
+ * test libraries and the compiler stay loaded and warm between requests. The
+ * module's output directories come with each request, since the project may
+ * have been rebuilt since the last one: each test class is compiled against the
+ * jars and those directories, and loaded together with the module's classes by
+ * class loaders of its own.
+ * <p>
+ * Requests are read from stdin, one per line: the source file, the output
+ * directory, the qualified class name and the module's output directories,
+ * separated by the path separator, all separated by tabs. For each test
+ * method the worker answers {@code PASS}, {@code FAIL} or {@code SKIP}, a tab
+ * and the method name, and for failures a tab and the message; then
+ * {@code DONE}. A class that can't be compiled or set up is answered with
+ * {@code ERROR}, a tab and the message, then {@code DONE}. Whatever the tests
+ * print goes to stderr, so it can't corrupt the answers.
+ * <p>
+ * Tests run without the JUnit Platform, which the module's classpath may not
+ * include: {@code @Test} methods with {@code @BeforeEach}/{@code @AfterEach} and
+ * static {@code @BeforeAll}/{@code @AfterAll} are supported, {@code @Disabled}
+ * and failed assumptions skip a test, and {@code @Mock} fields are initialized
+ * if Mockito is on the classpath. Parameterized, repeated and nested tests are
+ * skipped rather than judged. A test that runs past the timeout is failed and
+ * the worker exits after answering, since its thread can't be stopped.
+ */
+public class TestRunWorker {
+    private static final String JUPITER = "org.junit.jupiter.api.";
+    private static final long METHOD_TIMEOUT_SECONDS = 10;
+
+    private final PrintStream out;
+    private final ExecutorService testThread = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Generated Test");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private boolean stuck;
+
+    private TestRunWorker(PrintStream out) {
+        this.out = out;
+    }
+
+    public static void main(String[] args) throws Exception {
+        PrintStream protocol = new PrintStream(new FileOutputStream(FileDescriptor.out), true, StandardCharsets.UTF_8);
+        System.setOut(System.err);
+        TestRunWorker worker = new TestRunWorker(protocol);
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        String line;
+        while ((line = in.readLine()) != null) {
+            String[] request = line.split("\t", -1);
+            if (request.length == 4) {
+                worker.run(Path.of(request[0]), Path.of(request[1]), request[2], request[3]);
+            } else {
+                worker.error("Malformed request");
+            }
+            protocol.println("DONE");
+            if (worker.stuck) {
+                System.exit(0);
+            }
+        }
+        System.exit(0);
+    }
+
+    private void run(Path sourceFile, Path outputDirectory, String className, String moduleOutput) {
+        String compileError = compile(sourceFile, outputDirectory, moduleOutput);
+        if (compileError != null) {
+            error("Does not compile: " + compileError);
+            return;
+        }
+
+        ClassLoader previous = Thread.currentThread().getContextClassLoader();
+        try (URLClassLoader moduleLoader = new URLClassLoader(urls(moduleOutput), TestRunWorker.class.getClassLoader());
+             URLClassLoader loader = new GeneratedClassLoader(outputDirectory.toUri().toURL(), moduleLoader)) {
+            Thread.currentThread().setContextClassLoader(loader);
+            Class<?> testClass = Class.forName(className, true, loader);
+            runClass(testClass);
+        } catch (Throwable e) {
+            error("Could not load the test class: " + describe(e));
+        } finally {
+            Thread.currentThread().setContextClassLoader(previous);
+        }
+    }
+
+    private static URL[] urls(String path) throws IOException {
+        List<URL> urls = new ArrayList<>();
+        for (String entry : path.split(File.pathSeparator)) {
+            if (!entry.isEmpty()) {
+                urls.add(Path.of(entry).toUri().toURL());
+            }
+        }
+        return urls.toArray(new URL[0]);
+    }
+
+    private static String compile(Path sourceFile, Path outputDirectory, String moduleOutput) {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            return "the module's JDK has no compiler";
+        }
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, Locale.ROOT, StandardCharsets.UTF_8)) {
+            List<String> options = List.of(
+                    "-classpath", moduleOutput.isEmpty()
+                            ? System.getProperty("java.class.path")
+                            : moduleOutput + File.pathSeparator + System.getProperty("java.class.path"),
+                    "-d", outputDirectory.toString(),
+                    "-proc:none", "-nowarn", "-g");
+            boolean compiled = compiler.getTask(null, fileManager, diagnostics, options, null,
+                    fileManager.getJavaFileObjects(sourceFile.toFile())).call();
+            if (compiled) {
+                return null;
+            }
+        } catch (Exception e) {
+            return describe(e);
+        }
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+            if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+                return "line " + diagnostic.getLineNumber() + ": " + diagnostic.getMessage(Locale.ROOT);
+            }
+        }
+        return "unknown error";
+    }
+
+    private void runClass(Class<?> testClass) {
+        if (hasAnnotation(testClass, JUPITER + "Disabled")) {
+            for (Method method : testMethods(testClass)) {
+                result("SKIP", method.getName(), null);
+            }
+            return;
+        }
+        List<Method> beforeAll = lifecycleMethods(testClass, "BeforeAll");
+        List<Method> afterAll = lifecycleMethods(testClass, "AfterAll");
+        List<Method> beforeEach = lifecycleMethods(testClass, "BeforeEach");
+        List<Method> afterEach = lifecycleMethods(testClass, "AfterEach");
+
+        try {
+            for (Method method : beforeAll) {
+                invoke(method, null);
+            }
+        } catch (Throwable e) {
+            error("@BeforeAll failed: " + describe(e));
+            return;
+        }
+
+        for (Method method : testMethods(testClass)) {
+            if (stuck) {
+                result("SKIP", method.getName(), null);
+                continue;
+            }
+            if (hasAnnotation(method, JUPITER + "Disabled") || method.getParameterCount() > 0) {
+                result("SKIP", method.getName(), null);
+                continue;
+            }
+            runMethod(testClass, method, beforeEach, afterEach);
+        }
+
+        for (Method method : afterAll) {
+            try {
+                invoke(method, null);
+            } catch (Throwable e) {
+                // The tests themselves have been judged already
+            }
+        }
+    }
+
+    private void runMethod(Class<?> testClass, Method method, List<Method> beforeEach, List<Method> afterEach) {
+        Future<?> run = testThread.submit(() -> {
+            Object instance = newInstance(testClass);
+            AutoCloseable mocks = openMocks(instance);
+            try {
+                for (Method setUp : beforeEach) {
+                    invoke(setUp, instance);
+                }
+                try {
+                    invoke(method, instance);
+                } finally {
+                    for (Method tearDown : afterEach) {
+                        invoke(tearDown, instance);
+                    }
+                }
+            } finally {
+                if (mocks != null) {
+                    mocks.close();
+                }
+            }
+            return null;
+        });
+        try {
+            run.get(METHOD_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            result("PASS", method.getName(), null);
+        } catch (TimeoutException e) {
+            run.cancel(true);
+            stuck = true;
+            result("FAIL", method.getName(), "Timed out after " + METHOD_TIMEOUT_SECONDS + " seconds");
+        } catch (ExecutionException e) {
+            Throwable cause = unwrap(e.getCause());
+            if (cause.getClass().getName().equals("org.opentest4j.TestAbortedException")) {
+                result("SKIP", method.getName(), null);
+            } else {
+                result("FAIL", method.getName(), describe(cause));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stuck = true;
+            result("FAIL", method.getName(), "Interrupted");
+        }
+    }
+
+    private static Object newInstance(Class<?> testClass) throws Exception {
+        try {
+            Constructor<?> constructor = testClass.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            return constructor.newInstance();
+        } catch (InvocationTargetException e) {
+            throw rethrow(e.getCause());
+        }
+    }
+
+    private static void invoke(Method method, Object instance) throws Exception {
+        try {
+            method.setAccessible(true);
+            method.invoke(instance);
+        } catch (InvocationTargetException e) {
+            throw rethrow(e.getCause());
+        }
+    }
+
+    /**
+     * Lets an assertion error through as it is, so that it is reported with its own message.
+     */
+    private static Exception rethrow(Throwable cause) {
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return cause instanceof Exception ? (Exception) cause : new Exception(cause);
+    }
+
+    /**
+     * Initializes {@code @Mock} fields the way MockitoExtension would, if Mockito is available.
+     */
+    private static AutoCloseable openMocks(Object instance) throws Exception {
+        boolean hasMocks = false;
+        for (Class<?> type = instance.getClass(); type != null && type != Object.class; type = type.getSuperclass()) {
+            for (Field field : type.getDeclaredFields()) {
+                for (Annotation annotation : field.getAnnotations()) {
+                    hasMocks |= annotation.annotationType().getName().startsWith("org.mockito.");
+                }
+            }
+        }
+        if (!hasMocks) {
+            return null;
+        }
+        Class<?> annotations;
+        try {
+            annotations = Class.forName("org.mockito.MockitoAnnotations", true, instance.getClass().getClassLoader());
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+        return (AutoCloseable) annotations.getMethod("openMocks", Object.class).invoke(null, instance);
+    }
+
+    private static List<Method> testMethods(Class<?> testClass) {
+        List<Method> methods = new ArrayList<>();
+        for (Method method : allMethods(testClass)) {
+            if (hasAnnotation(method, JUPITER + "Test")) {
+                methods.add(method);
+            }
+        }
+        return methods;
+    }
+
+    /**
+     * Returns the lifecycle methods of a kind, superclass methods first as in JUnit.
+     */
+    private static List<Method> lifecycleMethods(Class<?> testClass, String kind) {
+        List<Method> methods = new ArrayList<>();
+        for (Method method : allMethods(testClass)) {
+            if (hasAnnotation(method, JUPITER + kind)) {
+                boolean isStatic = Modifier.isStatic(method.getModifiers());
+                if (isStatic == kind.endsWith("All")) {
+                    methods.add(method);
+                }
+            }
+        }
+        return methods;
+    }
+
+    private static List<Method> allMethods(Class<?> testClass) {
+        List<Class<?>> hierarchy = new ArrayList<>();
+        for (Class<?> type = testClass; type != null && type != Object.class; type = type.getSuperclass()) {
+            hierarchy.add(0, type);
+        }
+        List<Method> methods = new ArrayList<>();
+        for (Class<?> type : hierarchy) {
+            Method[] declared = type.getDeclaredMethods();
+            // Declaration order isn't guaranteed by reflection; name order keeps runs reproducible
+            Arrays.sort(declared, Comparator.comparing(Method::getName));
+            for (Method method : declared) {
+                if (!method.isSynthetic()) {
+                    methods.add(method);
+                }
+            }
+        }
+        return methods;
+    }
+
+    private static boolean hasAnnotation(AnnotatedElement element, String annotationName) {
+        for (Annotation annotation : element.getAnnotations()) {
+            if (annotation.annotationType().getName().equals(annotationName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        Throwable cause = error;
+        while (cause instanceof InvocationTargetException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+
+    private static String describe(Throwable error) {
+        String message = error.getMessage();
+        return error.getClass().getName() + (message != null ? ": " + message : "");
+    }
+
+    private void result(String outcome, String methodName, String message) {
+        out.println(outcome + "\t" + methodName + (message != null ? "\t" + oneLine(message) : ""));
+    }
+
+    private void error(String message) {
+        out.println("ERROR\t" + oneLine(message));
+    }
+
+    private static String oneLine(String message) {
+        return message.replace('\t', ' ').replace('\r', ' ').replace('\n', ' ');
+    }
+
+    /**
+     * Loads the classes compiled from the generated source before the module's
+     * own, since the module's test output may hold an older class of the same name.
+     */
+    private static class GeneratedClassLoader extends URLClassLoader {
+        GeneratedClassLoader(URL outputDirectory, ClassLoader parent) {
+            super(new URL[]{outputDirectory}, parent);
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> loaded = findLoadedClass(name);
+                if (loaded == null) {
+                    try {
+                        loaded = findClass(name);
+                    } catch (ClassNotFoundException e) {
+                        return super.loadClass(name, resolve);
+                    }
+                }
+                if (resolve) {
+                    resolveClass(loaded);
+                }
+                return loaded;
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.kincheung.ollama.core;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Assembles generated test sources and writes them below a test source root on disk.
+ */
+public class TestSourceWriter {
+
+    /**
+     * Prepends the package declaration to the generated test code.
+     *
+     * @param packageName The package of the test class, may be empty
+     * @param testCode The generated test code
+     * @return The complete content of the test file
+     */
+    @NotNull
+    public static String assembleTestFile(@NotNull String packageName, @NotNull String testCode) {
+        StringBuilder content = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            content.append("package ").append(packageName).append(";\n\n");
+        }
+        return content.append(testCode).toString();
+    }
+
+    /**
+     * Returns the path a test class is written to below the test root.
+     *
+     * @param testRoot The test source root
+     * @param packageName The package of the test class
+     * @param testClassName The name of the test class
+     * @return The test file path
+     */
+    @NotNull
+    public static Path testFilePath(@NotNull Path testRoot, @NotNull String packageName, @NotNull String testClassName) {
+        Path directory = packageName.isEmpty() ? testRoot : testRoot.resolve(packageName.replace('.', '/'));
+        return directory.resolve(testClassName + ".java");
+    }
+
+    /**
+     * Writes a generated test below the test root, creating package directories as needed.
+     * The file is written to a temporary file first and moved into place, so readers
+     * never see a partially written test.
+     *
+     * @param testRoot The test source root
+     * @param packageName The package of the test class
+     * @param testClassName The name of the test class
+     * @param testCode The generated test code
+     * @param overwrite Whether to replace an existing test file
+     * @return The written file, or null if it already existed and overwrite is false
+     * @throws IOException If the file could not be written
+     */
+    public static Path write(
+            @NotNull Path testRoot,
+            @NotNull String packageName,
+            @NotNull String testClassName,
+            @NotNull String testCode,
+            boolean overwrite) throws IOException {
+        Path target = testFilePath(testRoot, packageName, testClassName);
+        if (!overwrite && Files.exists(target)) {
+            return null;
+        }
+
+        Files.createDirectories(target.getParent());
+        Path temp = Files.createTempFile(target.getParent(), testClassName, ".tmp");
+        try {
+            Files.writeString(temp, assembleTestFile(packageName, testCode), StandardCharsets.UTF_8);
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return target;
+    }
+}
@@ -0,0 +1,322 @@
+package com.kincheung.ollama.core;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Runs generated test classes in forked {@link TestRunWorker} JVMs. Workers are
+ * started per JDK and set of library jars and kept warm for the next test class,
+ * so only the first run pays for starting a JVM and loading the test libraries
+ * and the compiler. The directories of the classpath, the module's compiled
+ * classes, are sent with each test class and loaded afresh for it, so a rebuild
+ * of the project is picked up by the next run. Up to the configured number of test classes run at
+ * once, each in its own worker, which spreads a batch over the CPU cores.
+ * Workers that have been idle for a while are stopped, as is a worker that takes
+ * too long for a test class.
+ */
+public class TestWorkerPool implements AutoCloseable {
+    private static final long IDLE_MILLIS = 5 * 60 * 1000;
+    private static final long RUN_TIMEOUT_SECONDS = 120;
+
+    private final int maxWorkers;
+    private final ExecutorService executor;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Test Worker Timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Map<String, Deque<Worker>> idleWorkers = new LinkedHashMap<>();
+    private int liveWorkers;
+    private boolean closed;
+
+    /**
+     * @param maxWorkers The number of test classes that may run at once
+     */
+    public TestWorkerPool(int maxWorkers) {
+        this.maxWorkers = Math.max(1, maxWorkers);
+        this.executor = Executors.newFixedThreadPool(this.maxWorkers, runnable -> {
+            Thread thread = new Thread(runnable, "Test Worker Client");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::stopIdleWorkers, 1, 1, TimeUnit.MINUTES);
+    }
+
+    public int getMaxWorkers() {
+        return maxWorkers;
+    }
+
+    /**
+     * Compiles and runs a generated test class.
+     *
+     * @param javaExecutable The java launcher of the JDK to run the test with
+     * @param classpath The test classpath of the module the test belongs to, output directories included
+     * @param packageName The package of the test class, may be empty
+     * @param testClassName The simple name of the test class
+     * @param testCode The generated test code, without the package declaration
+     * @return A future with the outcome, completed on a pool thread
+     */
+    @NotNull
+    public CompletableFuture<TestRunResult> run(
+            @NotNull Path javaExecutable,
+            @NotNull List<Path> classpath,
+            @NotNull String packageName,
+            @NotNull String testClassName,
+            @NotNull String testCode) {
+        return CompletableFuture.supplyAsync(
+                () -> runNow(javaExecutable, classpath, packageName, testClassName, testCode), executor);
+    }
+
+    private TestRunResult runNow(
+            Path javaExecutable,
+            List<Path> classpath,
+            String packageName,
+            String testClassName,
+            String testCode) {
+        String qualifiedName = packageName.isEmpty() ? testClassName : packageName + "." + testClassName;
+        Path directory = null;
+        Worker worker = null;
+        try {
+            directory = Files.createTempDirectory("ollama-test-run");
+            Path source = TestSourceWriter.testFilePath(directory.resolve("src"), packageName, testClassName);
+            Files.createDirectories(source.getParent());
+            Files.writeString(source, TestSourceWriter.assembleTestFile(packageName, testCode), StandardCharsets.UTF_8);
+            Path classes = Files.createDirectories(directory.resolve("classes"));
+
+            // Jars go on the worker's classpath; directories are rebuilt in place and are loaded per run
+            List<Path> libraries = new ArrayList<>();
+            List<Path> outputDirectories = new ArrayList<>();
+            for (Path entry : classpath) {
+                (Files.isDirectory(entry) ? outputDirectories : libraries).add(entry);
+            }
+            worker = acquire(javaExecutable, libraries);
+            TestRunResult result = worker.run(scheduler, source, classes, qualifiedName, outputDirectories);
+            release(worker, result != null);
+            worker = null;
+            return result != null ? result : TestRunResult.error("The test worker stopped while running " + testClassName);
+        } catch (IOException e) {
+            return TestRunResult.error("Could not run " + testClassName + ": " + e.getMessage());
+        } finally {
+            if (worker != null) {
+                release(worker, false);
+            }
+            if (directory != null) {
+                deleteRecursively(directory);
+            }
+        }
+    }
+
+    @NotNull
+    private Worker acquire(Path javaExecutable, List<Path> classpath) throws IOException {
+        String key = javaExecutable + File.pathSeparator + classpath;
+        synchronized (this) {
+            if (closed) {
+                throw new IOException("The test worker pool is closed");
+            }
+            Deque<Worker> idle = idleWorkers.get(key);
+            Worker worker;
+            while (idle != null && (worker = idle.pollFirst()) != null) {
+                // A worker exits on its own after a test that wouldn't stop
+                if (worker.process.isAlive()) {
+                    return worker;
+                }
+                liveWorkers--;
+            }
+            // Make room by stopping the longest idle worker of another module
+            if (liveWorkers >= maxWorkers) {
+                idleWorkers.values().stream()
+                        .flatMap(Deque::stream)
+                        .min(Comparator.comparingLong(candidate -> candidate.idleSince))
+                        .ifPresent(this::stopIdle);
+            }
+            liveWorkers++;
+        }
+        try {
+            return Worker.start(key, javaExecutable, classpath);
+        } catch (IOException e) {
+            synchronized (this) {
+                liveWorkers--;
+            }
+            throw e;
+        }
+    }
+
+    private synchronized void release(@NotNull Worker worker, boolean reusable) {
+        if (reusable && !closed && worker.process.isAlive()) {
+            worker.idleSince = System.currentTimeMillis();
+            idleWorkers.computeIfAbsent(worker.key, key -> new ArrayDeque<>()).addFirst(worker);
+        } else {
+            worker.stop();
+            liveWorkers--;
+        }
+    }
+
+    private synchronized void stopIdle(@NotNull Worker worker) {
+        Deque<Worker> idle = idleWorkers.get(worker.key);
+        if (idle != null && idle.remove(worker)) {
+            worker.stop();
+            liveWorkers--;
+        }
+    }
+
+    private synchronized void stopIdleWorkers() {
+        long now = System.currentTimeMillis();
+        List<Worker> expired = new ArrayList<>();
+        for (Deque<Worker> idle : idleWorkers.values()) {
+            for (Worker worker : idle) {
+                if (now - worker.idleSince > IDLE_MILLIS || !worker.process.isAlive()) {
+                    expired.add(worker);
+                }
+            }
+        }
+        expired.forEach(this::stopIdle);
+    }
+
+    /**
+     * Stops all idle workers; running test classes finish and then stop their workers.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            for (Deque<Worker> idle : idleWorkers.values()) {
+                for (Worker worker : idle) {
+                    worker.stop();
+                    liveWorkers--;
+                }
+            }
+            idleWorkers.clear();
+        }
+        scheduler.shutdownNow();
+        executor.shutdown();
+    }
+
+    private static void deleteRecursively(@NotNull Path directory) {
+        try (Stream<Path> files = Files.walk(directory)) {
+            List<Path> paths = new ArrayList<>();
+            files.forEach(paths::add);
+            Collections.reverse(paths);
+            for (Path path : paths) {
+                Files.deleteIfExists(path);
+            }
+        } catch (IOException e) {
+            // Left in the temp directory
+        }
+    }
+
+    /**
+     * A running worker JVM and the pipes to it.
+     */
+    private static class Worker {
+        private final String key;
+        private final Process process;
+        private final Writer requests;
+        private final BufferedReader answers;
+        private long idleSince;
+
+        private Worker(String key, Process process) {
+            this.key = key;
+            this.process = process;
+            this.requests = new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8);
+            this.answers = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+        }
+
+        static Worker start(String key, Path javaExecutable, List<Path> classpath) throws IOException {
+            StringBuilder path = new StringBuilder();
+            for (Path entry : classpath) {
+                path.append(entry).append(File.pathSeparator);
+            }
+            path.append(workerLocation());
+            ProcessBuilder builder = new ProcessBuilder(
+                    javaExecutable.toString(),
+                    "-XX:+UseSerialGC",
+                    "-XX:TieredStopAtLevel=1",
+                    "-Xshare:auto",
+                    "-Djava.awt.headless=true",
+                    "-cp", path.toString(),
+                    TestRunWorker.class.getName());
+            builder.redirectError(ProcessBuilder.Redirect.DISCARD);
+            return new Worker(key, builder.start());
+        }
+
+        /**
+         * Sends a test class to the worker and reads the answer.
+         *
+         * @return The outcome, or null if the worker died or was stopped for taking too long
+         */
+        @Nullable
+        TestRunResult run(
+                ScheduledExecutorService scheduler,
+                Path source,
+                Path classes,
+                String qualifiedName,
+                List<Path> outputDirectories) throws IOException {
+            StringBuilder directories = new StringBuilder();
+            for (Path directory : outputDirectories) {
+                if (directories.length() > 0) {
+                    directories.append(File.pathSeparator);
+                }
+                directories.append(directory);
+            }
+            ScheduledFuture<?> timeout = scheduler.schedule(process::destroyForcibly, RUN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            try {
+                requests.write(source + "\t" + classes + "\t" + qualifiedName + "\t" + directories + "\n");
+                requests.flush();
+                TestRunResult.Builder result = new TestRunResult.Builder();
+                String line;
+                while ((line = answers.readLine()) != null) {
+                    if (line.equals("DONE")) {
+                        return result.build();
+                    }
+                    result.add(line);
+                }
+                return null;
+            } catch (IOException e) {
+                if (!process.isAlive()) {
+                    return null;
+                }
+                throw e;
+            } finally {
+                timeout.cancel(false);
+            }
+        }
+
+        void stop() {
+            process.destroy();
+        }
+
+        private static String workerLocation() throws IOException {
+            try {
+                return Path.of(TestRunWorker.class.getProtectionDomain().getCodeSource().getLocation().toURI()).toString();
+            } catch (URISyntaxException | SecurityException e) {
+                throw new IOException("Could not locate the test worker classes", e);
+            }
+        }
+    }
+}
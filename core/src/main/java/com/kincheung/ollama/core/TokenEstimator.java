@@ -0,0 +1,66 @@
+package com.kincheung.ollama.core;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Cheap local approximation of how many tokens a model tokenizer produces for a text.
+ * Code tokenizers typically emit one token per punctuation character and split
+ * identifiers and numbers into chunks of a few characters, which is what this
+ * estimator counts. It runs in a single pass without allocating.
+ */
+public class TokenEstimator {
+    private static final int CHARS_PER_WORD_TOKEN = 4;
+
+    /**
+     * Estimates the number of tokens in the given text.
+     *
+     * @param text The text to estimate
+     * @return The estimated token count
+     */
+    public static int estimateTokens(@NotNull CharSequence text) {
+        int tokens = 0;
+        int wordLength = 0;
+        boolean inWhitespace = false;
+
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c) || c == '_') {
+                wordLength++;
+                inWhitespace = false;
+                continue;
+            }
+
+            tokens += wordTokens(wordLength);
+            wordLength = 0;
+
+            if (Character.isWhitespace(c)) {
+                // Runs of indentation usually collapse into a single token
+                if (!inWhitespace || c == '\n') {
+                    tokens++;
+                }
+                inWhitespace = true;
+            } else {
+                tokens++;
+                inWhitespace = false;
+            }
+        }
+
+        return tokens + wordTokens(wordLength);
+    }
+
+    /**
+     * Estimates how many tokens a model will generate for a test of a class
+     * whose prompt has the given size. Generated tests are typically somewhat
+     * longer than the class under test.
+     *
+     * @param promptTokens The estimated prompt token count
+     * @return The estimated completion token count
+     */
+    public static int estimateCompletionTokens(int promptTokens) {
+        return Math.max(256, promptTokens + promptTokens / 2);
+    }
+
+    private static int wordTokens(int wordLength) {
+        return (wordLength + CHARS_PER_WORD_TOKEN - 1) / CHARS_PER_WORD_TOKEN;
+    }
+}
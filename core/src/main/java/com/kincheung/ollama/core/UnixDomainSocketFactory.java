@@ -0,0 +1,284 @@
+package com.kincheung.ollama.core;
+
+import org.jetbrains.annotations.NotNull;
+
+import javax.net.SocketFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+
+/**
+ * Socket factory that connects every socket to the same Unix domain socket,
+ * whatever host and port it is asked for, so that OkHttp can talk HTTP over it.
+ * The sockets honour {@link Socket#setSoTimeout(int)}, which OkHttp relies on
+ * for its read timeouts and connection health checks.
+ */
+public class UnixDomainSocketFactory extends SocketFactory {
+    private final Path path;
+
+    public UnixDomainSocketFactory(@NotNull Path path) {
+        this.path = path;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    @Override
+    public Socket createSocket() {
+        return new UnixDomainSocket(path);
+    }
+
+    @Override
+    public Socket createSocket(String host, int port) throws IOException {
+        return connected();
+    }
+
+    @Override
+    public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+        return connected();
+    }
+
+    @Override
+    public Socket createSocket(InetAddress host, int port) throws IOException {
+        return connected();
+    }
+
+    @Override
+    public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) throws IOException {
+        return connected();
+    }
+
+    private Socket connected() throws IOException {
+        Socket socket = createSocket();
+        socket.connect(null);
+        return socket;
+    }
+
+    /**
+     * A {@link Socket} backed by a non-blocking Unix domain {@link SocketChannel};
+     * blocking reads and writes wait on selectors so that they can time out.
+     */
+    private static class UnixDomainSocket extends Socket {
+        private final Path path;
+        private final Object readLock = new Object();
+        private final Object writeLock = new Object();
+        private SocketChannel channel;
+        private Selector readSelector;
+        private Selector writeSelector;
+        private volatile int soTimeout;
+        private volatile boolean closed;
+        private volatile boolean inputShutdown;
+        private volatile boolean outputShutdown;
+
+        UnixDomainSocket(@NotNull Path path) {
+            this.path = path;
+        }
+
+        @Override
+        public void connect(SocketAddress endpoint) throws IOException {
+            connect(endpoint, 0);
+        }
+
+        @Override
+        public synchronized void connect(SocketAddress endpoint, int timeout) throws IOException {
+            if (closed) {
+                throw new ClosedChannelException();
+            }
+            channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+            try {
+                channel.connect(UnixDomainSocketAddress.of(path));
+                channel.configureBlocking(false);
+                readSelector = Selector.open();
+                writeSelector = Selector.open();
+                channel.register(readSelector, SelectionKey.OP_READ);
+                channel.register(writeSelector, SelectionKey.OP_WRITE);
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            checkConnected();
+            return new InputStream() {
+                @Override
+                public int read() throws IOException {
+                    byte[] single = new byte[1];
+                    return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+                }
+
+                @Override
+                public int read(byte[] bytes, int offset, int length) throws IOException {
+                    if (length == 0) {
+                        return 0;
+                    }
+                    ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+                    synchronized (readLock) {
+                        long timeoutMillis = soTimeout;
+                        long deadline = System.currentTimeMillis() + timeoutMillis;
+                        while (true) {
+                            int read = channel.read(buffer);
+                            if (read != 0) {
+                                return read;
+                            }
+                            long wait = 0;
+                            if (timeoutMillis > 0) {
+                                wait = deadline - System.currentTimeMillis();
+                                if (wait <= 0) {
+                                    throw new SocketTimeoutException("Read timed out");
+                                }
+                            }
+                            readSelector.select(wait);
+                            readSelector.selectedKeys().clear();
+                            if (closed) {
+                                throw new ClosedChannelException();
+                            }
+                        }
+                    }
+                }
+
+                @Override
+                public void close() throws IOException {
+                    UnixDomainSocket.this.close();
+                }
+            };
+        }
+
+        @Override
+        public OutputStream getOutputStream() throws IOException {
+            checkConnected();
+            return new OutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    write(new byte[]{(byte) b}, 0, 1);
+                }
+
+                @Override
+                public void write(byte[] bytes, int offset, int length) throws IOException {
+                    ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+                    synchronized (writeLock) {
+                        while (buffer.hasRemaining()) {
+                            if (channel.write(buffer) == 0) {
+                                writeSelector.select();
+                                writeSelector.selectedKeys().clear();
+                                if (closed) {
+                                    throw new ClosedChannelException();
+                                }
+                            }
+                        }
+                    }
+                }
+
+                @Override
+                public void close() throws IOException {
+                    UnixDomainSocket.this.close();
+                }
+            };
+        }
+
+        @Override
+        public void setSoTimeout(int timeout) {
+            soTimeout = timeout;
+        }
+
+        @Override
+        public int getSoTimeout() {
+            return soTimeout;
+        }
+
+        @Override
+        public void setTcpNoDelay(boolean on) {
+            // Not applicable to Unix domain sockets
+        }
+
+        @Override
+        public boolean isConnected() {
+            return channel != null && channel.isConnected();
+        }
+
+        @Override
+        public boolean isClosed() {
+            return closed;
+        }
+
+        @Override
+        public void shutdownInput() throws IOException {
+            checkConnected();
+            channel.shutdownInput();
+            inputShutdown = true;
+        }
+
+        @Override
+        public void shutdownOutput() throws IOException {
+            checkConnected();
+            channel.shutdownOutput();
+            outputShutdown = true;
+        }
+
+        @Override
+        public boolean isInputShutdown() {
+            return inputShutdown;
+        }
+
+        @Override
+        public boolean isOutputShutdown() {
+            return outputShutdown;
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            // Wake up blocked reads and writes so they notice the close
+            if (readSelector != null) {
+                readSelector.wakeup();
+            }
+            if (writeSelector != null) {
+                writeSelector.wakeup();
+            }
+            if (channel != null) {
+                channel.close();
+            }
+            synchronized (readLock) {
+                if (readSelector != null) {
+                    readSelector.close();
+                }
+            }
+            synchronized (writeLock) {
+                if (writeSelector != null) {
+                    writeSelector.close();
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "UnixDomainSocket[" + path + "]";
+        }
+
+        private void checkConnected() throws IOException {
+            if (closed) {
+                throw new ClosedChannelException();
+            }
+            if (channel == null) {
+                throw new IOException("Not connected to " + path);
+            }
+        }
+    }
+}
@@ -0,0 +1,568 @@
+package com.kincheung.ollama.core;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory nearest-neighbour index of embedding vectors, ranked by cosine similarity.
+ * <p>
+ * Vectors are normalized and stored back to back in one primitive float array,
+ * so a scan touches contiguous memory and produces no garbage. Small indexes
+ * are searched exhaustively. Once the index holds {@link #MIN_TRAINING_SIZE}
+ * vectors, {@link #train()} clusters them with spherical k-means into about
+ * sqrt(n) lists, and a search only scans the lists whose centroids are closest
+ * to the query (an inverted file index). At 50k vectors that is a few thousand
+ * dot products instead of 50k. Training is repeated whenever the index has
+ * doubled in size since, see {@link #needsTraining()}.
+ * <p>
+ * Searches may run concurrently with each other and with updates. Training runs
+ * without blocking searches and only takes the write lock to install the result.
+ */
+public class VectorIndex {
+    static final int MIN_TRAINING_SIZE = 2048;
+    private static final int FILE_MAGIC = 0x4F544958;
+    private static final int FILE_VERSION = 1;
+    private static final int TRAINING_SAMPLES_PER_LIST = 32;
+    private static final int TRAINING_ITERATIONS = 8;
+    private static final int MIN_PROBES = 8;
+
+    private final int dimension;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ReentrantLock mutationLock = new ReentrantLock();
+    private final Map<String, Integer> rowsByKey = new HashMap<>();
+    private float[] vectors;
+    private String[] keys;
+    private long[] versions;
+    private int[] lists;
+    private int size;
+    private float[] centroids;
+    private int listCount;
+    private int trainedSize;
+
+    /**
+     * @param dimension The number of components of each vector
+     */
+    public VectorIndex(int dimension) {
+        this(dimension, 64);
+    }
+
+    private VectorIndex(int dimension, int capacity) {
+        this.dimension = dimension;
+        this.vectors = new float[capacity * dimension];
+        this.keys = new String[capacity];
+        this.versions = new long[capacity];
+        this.lists = new int[capacity];
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the version stored with the key, e.g. the modification time of the embedded file.
+     *
+     * @return The version, or -1 if the key isn't indexed
+     */
+    public long getVersion(@NotNull String key) {
+        lock.readLock().lock();
+        try {
+            Integer row = rowsByKey.get(key);
+            return row != null ? versions[row] : -1;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @NotNull
+    public Set<String> keys() {
+        lock.readLock().lock();
+        try {
+            return new HashSet<>(rowsByKey.keySet());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds or replaces the vector of a key.
+     *
+     * @param key The key, e.g. the path of the embedded file
+     * @param version The version of the embedded content
+     * @param vector The embedding; it is copied and normalized
+     * @throws IllegalArgumentException If the vector has the wrong dimension
+     */
+    public void put(@NotNull String key, long version, @NotNull float[] vector) {
+        if (vector.length != dimension) {
+            throw new IllegalArgumentException("Expected " + dimension + " dimensions but got " + vector.length);
+        }
+        float[] normalized = normalize(vector);
+
+        mutationLock.lock();
+        lock.writeLock().lock();
+        try {
+            Integer existing = rowsByKey.get(key);
+            int row;
+            if (existing != null) {
+                row = existing;
+            } else {
+                ensureCapacity(size + 1);
+                row = size++;
+                rowsByKey.put(key, row);
+                keys[row] = key;
+            }
+            System.arraycopy(normalized, 0, vectors, row * dimension, dimension);
+            versions[row] = version;
+            lists[row] = centroids != null ? nearestCentroid(centroids, listCount, normalized, 0) : -1;
+        } finally {
+            lock.writeLock().unlock();
+            mutationLock.unlock();
+        }
+    }
+
+    /**
+     * Removes a key from the index.
+     *
+     * @return True if the key was indexed
+     */
+    public boolean remove(@NotNull String key) {
+        mutationLock.lock();
+        lock.writeLock().lock();
+        try {
+            Integer row = rowsByKey.remove(key);
+            if (row == null) {
+                return false;
+            }
+            // Move the last row into the gap to keep the rows contiguous
+            int last = --size;
+            if (row != last) {
+                System.arraycopy(vectors, last * dimension, vectors, row * dimension, dimension);
+                keys[row] = keys[last];
+                versions[row] = versions[last];
+                lists[row] = lists[last];
+                rowsByKey.put(keys[row], row);
+            }
+            keys[last] = null;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+            mutationLock.unlock();
+        }
+    }
+
+    /**
+     * Returns true if the index is large enough to benefit from (re)training.
+     */
+    public boolean needsTraining() {
+        lock.readLock().lock();
+        try {
+            return size >= MIN_TRAINING_SIZE && (centroids == null || size >= 2 * trainedSize);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Clusters the indexed vectors and assigns every vector to its nearest cluster.
+     * This takes seconds for tens of thousands of vectors, so call it on a
+     * background thread. Searches continue against the previous clustering
+     * meanwhile, while updates wait for the training to finish.
+     */
+    public void train() {
+        mutationLock.lock();
+        try {
+            // Updates are held off by the mutation lock, so the rows can be read without the read lock
+            int rows = size;
+            if (rows < MIN_TRAINING_SIZE) {
+                return;
+            }
+            int newListCount = Math.max(16, (int) Math.sqrt(rows));
+            float[] newCentroids = kMeans(rows, newListCount);
+            int[] newLists = new int[lists.length];
+            for (int row = 0; row < rows; row++) {
+                newLists[row] = nearestCentroid(newCentroids, newListCount, vectors, row * dimension);
+            }
+
+            lock.writeLock().lock();
+            try {
+                centroids = newCentroids;
+                listCount = newListCount;
+                lists = newLists;
+                trainedSize = rows;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } finally {
+            mutationLock.unlock();
+        }
+    }
+
+    /**
+     * Finds the vectors most similar to the query.
+     *
+     * @param query The query embedding
+     * @param k The maximum number of matches
+     * @return The matches, most similar first
+     */
+    @NotNull
+    public List<Match> search(@NotNull float[] query, int k) {
+        if (query.length != dimension || k <= 0) {
+            return Collections.emptyList();
+        }
+        float[] normalized = normalize(query);
+
+        lock.readLock().lock();
+        try {
+            boolean[] probed = null;
+            if (centroids != null) {
+                probed = probedLists(normalized);
+            }
+
+            // Bounded min-heap of the best rows so far, kept in parallel primitive arrays
+            int[] heapRows = new int[k];
+            float[] heapScores = new float[k];
+            int heapSize = 0;
+            for (int row = 0; row < size; row++) {
+                if (probed != null && (lists[row] < 0 || !probed[lists[row]])) {
+                    continue;
+                }
+                float score = dot(vectors, row * dimension, normalized, 0, dimension);
+                if (heapSize < k) {
+                    heapRows[heapSize] = row;
+                    heapScores[heapSize] = score;
+                    siftUp(heapRows, heapScores, heapSize++);
+                } else if (score > heapScores[0]) {
+                    heapRows[0] = row;
+                    heapScores[0] = score;
+                    siftDown(heapRows, heapScores, heapSize);
+                }
+            }
+
+            Match[] matches = new Match[heapSize];
+            for (int i = heapSize - 1; i >= 0; i--) {
+                matches[i] = new Match(keys[heapRows[0]], heapScores[0]);
+                heapRows[0] = heapRows[i];
+                heapScores[0] = heapScores[i];
+                siftDown(heapRows, heapScores, i);
+            }
+            return Arrays.asList(matches);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Writes the index to a file, replacing it atomically.
+     *
+     * @throws IOException If the file could not be written
+     */
+    public void write(@NotNull Path file) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        lock.readLock().lock();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(FILE_VERSION);
+            out.writeInt(dimension);
+            out.writeInt(size);
+            out.writeInt(centroids != null ? listCount : 0);
+            out.writeInt(trainedSize);
+            ByteBuffer buffer = ByteBuffer.allocate(dimension * Float.BYTES);
+            if (centroids != null) {
+                for (int list = 0; list < listCount; list++) {
+                    writeVector(out, buffer, centroids, list * dimension);
+                }
+            }
+            for (int row = 0; row < size; row++) {
+                out.writeUTF(keys[row]);
+                out.writeLong(versions[row]);
+                out.writeInt(lists[row]);
+                writeVector(out, buffer, vectors, row * dimension);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        try {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Reads an index written with {@link #write(Path)}.
+     *
+     * @return The index, or null if the file isn't an index of this format
+     * @throws IOException If the file could not be read
+     */
+    @Nullable
+    public static VectorIndex read(@NotNull Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION) {
+                return null;
+            }
+            int dimension = in.readInt();
+            int size = in.readInt();
+            int listCount = in.readInt();
+            int trainedSize = in.readInt();
+
+            VectorIndex index = new VectorIndex(dimension, Math.max(64, size));
+            byte[] buffer = new byte[dimension * Float.BYTES];
+            if (listCount > 0) {
+                index.centroids = new float[listCount * dimension];
+                index.listCount = listCount;
+                for (int list = 0; list < listCount; list++) {
+                    readVector(in, buffer, index.centroids, list * dimension);
+                }
+            }
+            for (int row = 0; row < size; row++) {
+                index.keys[row] = in.readUTF();
+                index.versions[row] = in.readLong();
+                index.lists[row] = in.readInt();
+                readVector(in, buffer, index.vectors, row * dimension);
+                index.rowsByKey.put(index.keys[row], row);
+            }
+            index.size = size;
+            index.trainedSize = trainedSize;
+            return index;
+        }
+    }
+
+    private boolean[] probedLists(@NotNull float[] query) {
+        int probes = Math.min(listCount, Math.max(MIN_PROBES, listCount / 16));
+        int[] best = new int[probes];
+        float[] bestScores = new float[probes];
+        int count = 0;
+        for (int list = 0; list < listCount; list++) {
+            float score = dot(centroids, list * dimension, query, 0, dimension);
+            if (count < probes) {
+                best[count] = list;
+                bestScores[count] = score;
+                siftUp(best, bestScores, count++);
+            } else if (score > bestScores[0]) {
+                best[0] = list;
+                bestScores[0] = score;
+                siftDown(best, bestScores, count);
+            }
+        }
+        boolean[] probed = new boolean[listCount];
+        for (int i = 0; i < count; i++) {
+            probed[best[i]] = true;
+        }
+        return probed;
+    }
+
+    @NotNull
+    private float[] kMeans(int rows, int k) {
+        Random random = new Random(rows);
+        int sampleSize = Math.min(rows, k * TRAINING_SAMPLES_PER_LIST);
+        int[] sample = new int[sampleSize];
+        for (int i = 0; i < sampleSize; i++) {
+            sample[i] = (int) ((long) i * rows / sampleSize);
+        }
+
+        float[] result = new float[k * dimension];
+        for (int list = 0; list < k; list++) {
+            System.arraycopy(vectors, sample[random.nextInt(sampleSize)] * dimension, result, list * dimension, dimension);
+        }
+
+        int[] assignment = new int[sampleSize];
+        int[] counts = new int[k];
+        for (int iteration = 0; iteration < TRAINING_ITERATIONS; iteration++) {
+            for (int i = 0; i < sampleSize; i++) {
+                assignment[i] = nearestCentroid(result, k, vectors, sample[i] * dimension);
+            }
+
+            Arrays.fill(result, 0);
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < sampleSize; i++) {
+                int offset = assignment[i] * dimension;
+                int source = sample[i] * dimension;
+                for (int d = 0; d < dimension; d++) {
+                    result[offset + d] += vectors[source + d];
+                }
+                counts[assignment[i]]++;
+            }
+            for (int list = 0; list < k; list++) {
+                if (counts[list] == 0) {
+                    // Reseed an empty cluster rather than losing it
+                    System.arraycopy(vectors, sample[random.nextInt(sampleSize)] * dimension, result, list * dimension, dimension);
+                } else {
+                    normalizeInPlace(result, list * dimension, dimension);
+                }
+            }
+        }
+        return result;
+    }
+
+    private int nearestCentroid(@NotNull float[] centroids, int count, @NotNull float[] vector, int offset) {
+        int best = 0;
+        float bestScore = Float.NEGATIVE_INFINITY;
+        for (int list = 0; list < count; list++) {
+            float score = dot(centroids, list * dimension, vector, offset, dimension);
+            if (score > bestScore) {
+                bestScore = score;
+                best = list;
+            }
+        }
+        return best;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= keys.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, keys.length * 2);
+        vectors = Arrays.copyOf(vectors, newCapacity * dimension);
+        keys = Arrays.copyOf(keys, newCapacity);
+        versions = Arrays.copyOf(versions, newCapacity);
+        lists = Arrays.copyOf(lists, newCapacity);
+    }
+
+    /**
+     * Dot product with four independent accumulators, which lets the JIT keep
+     * several multiply-adds in flight.
+     */
+    private static float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        float s0 = 0;
+        float s1 = 0;
+        float s2 = 0;
+        float s3 = 0;
+        int i = 0;
+        for (; i + 3 < length; i += 4) {
+            s0 += a[aOffset + i] * b[bOffset + i];
+            s1 += a[aOffset + i + 1] * b[bOffset + i + 1];
+            s2 += a[aOffset + i + 2] * b[bOffset + i + 2];
+            s3 += a[aOffset + i + 3] * b[bOffset + i + 3];
+        }
+        for (; i < length; i++) {
+            s0 += a[aOffset + i] * b[bOffset + i];
+        }
+        return s0 + s1 + s2 + s3;
+    }
+
+    @NotNull
+    private static float[] normalize(@NotNull float[] vector) {
+        float[] copy = vector.clone();
+        normalizeInPlace(copy, 0, copy.length);
+        return copy;
+    }
+
+    private static void normalizeInPlace(float[] vector, int offset, int length) {
+        double norm = 0;
+        for (int i = 0; i < length; i++) {
+            norm += vector[offset + i] * vector[offset + i];
+        }
+        if (norm == 0) {
+            return;
+        }
+        float scale = (float) (1 / Math.sqrt(norm));
+        for (int i = 0; i < length; i++) {
+            vector[offset + i] *= scale;
+        }
+    }
+
+    private static void siftUp(int[] rows, float[] scores, int index) {
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (scores[parent] <= scores[index]) {
+                return;
+            }
+            swap(rows, scores, parent, index);
+            index = parent;
+        }
+    }
+
+    private static void siftDown(int[] rows, float[] scores, int size) {
+        int index = 0;
+        while (true) {
+            int smallest = index;
+            int left = 2 * index + 1;
+            int right = left + 1;
+            if (left < size && scores[left] < scores[smallest]) {
+                smallest = left;
+            }
+            if (right < size && scores[right] < scores[smallest]) {
+                smallest = right;
+            }
+            if (smallest == index) {
+                return;
+            }
+            swap(rows, scores, smallest, index);
+            index = smallest;
+        }
+    }
+
+    private static void swap(int[] rows, float[] scores, int i, int j) {
+        int row = rows[i];
+        rows[i] = rows[j];
+        rows[j] = row;
+        float score = scores[i];
+        scores[i] = scores[j];
+        scores[j] = score;
+    }
+
+    private static void writeVector(DataOutputStream out, ByteBuffer buffer, float[] source, int offset) throws IOException {
+        buffer.clear();
+        buffer.asFloatBuffer().put(source, offset, buffer.capacity() / Float.BYTES);
+        out.write(buffer.array());
+    }
+
+    private static void readVector(DataInputStream in, byte[] buffer, float[] target, int offset) throws IOException {
+        in.readFully(buffer);
+        ByteBuffer.wrap(buffer).asFloatBuffer().get(target, offset, buffer.length / Float.BYTES);
+    }
+
+    /**
+     * A search result.
+     */
+    public static class Match {
+        private final String key;
+        private final float similarity;
+
+        Match(String key, float similarity) {
+            this.key = key;
+            this.similarity = similarity;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * Returns the cosine similarity to the query, between -1 and 1.
+         */
+        public float getSimilarity() {
+            return similarity;
+        }
+    }
+}
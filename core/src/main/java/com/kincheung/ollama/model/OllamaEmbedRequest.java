@@ -0,0 +1,27 @@
+package com.kincheung.ollama.model;
+
+import java.util.List;
+
+/**
+ * Represents a request to the Ollama embed endpoint.
+ */
+public class OllamaEmbedRequest {
+    private String model;
+    private List<String> input;
+
+    public String getModel() {
+        return model;
+    }
+
+    public void setModel(String model) {
+        this.model = model;
+    }
+
+    public List<String> getInput() {
+        return input;
+    }
+
+    public void setInput(List<String> input) {
+        this.input = input;
+    }
+}
@@ -0,0 +1,25 @@
+package com.kincheung.ollama.model;
+
+/**
+ * Represents a response from the Ollama embed endpoint: one embedding per input, in input order.
+ */
+public class OllamaEmbedResponse {
+    private String model;
+    private float[][] embeddings;
+
+    public String getModel() {
+        return model;
+    }
+
+    public void setModel(String model) {
+        this.model = model;
+    }
+
+    public float[][] getEmbeddings() {
+        return embeddings;
+    }
+
+    public void setEmbeddings(float[][] embeddings) {
+        this.embeddings = embeddings;
+    }
+}
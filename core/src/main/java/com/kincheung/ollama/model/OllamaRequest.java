@@ -1,5 +1,7 @@
 package com.kincheung.ollama.model;
 
+import com.google.gson.JsonElement;
+
 /**
  * Represents a request to the Ollama API.
  */
@@ -7,6 +9,7 @@ public class OllamaRequest {
     private String model;
     private String prompt;
     private boolean stream;
+    private JsonElement format;
     private Options options;
 
     public String getModel() {
@@ -33,6 +36,17 @@ public class OllamaRequest {
         this.stream = stream;
     }
 
+    public JsonElement getFormat() {
+        return format;
+    }
+
+    /**
+     * Sets the JSON schema the response must follow, or null for free-form output.
+     */
+    public void setFormat(JsonElement format) {
+        this.format = format;
+    }
+
     public Options getOptions() {
         return options;
     }
@@ -1,5 +1,7 @@
 package com.kincheung.ollama.model;
 
+import com.google.gson.annotations.SerializedName;
+
 /**
  * Represents a response from the Ollama API.
  */
@@ -8,12 +10,19 @@ public class OllamaResponse {
     private String response;
     private long createdAt;
     private boolean done;
+    @SerializedName("total_duration")
     private long totalDuration;
+    @SerializedName("load_duration")
     private long loadDuration;
+    @SerializedName("prompt_eval_count")
     private long promptEvalCount;
+    @SerializedName("prompt_eval_duration")
     private long promptEvalDuration;
+    @SerializedName("eval_count")
     private long evalCount;
+    @SerializedName("eval_duration")
     private long evalDuration;
+    private String error;
 
     public String getModel() {
         return model;
@@ -94,4 +103,15 @@ public class OllamaResponse {
     public void setEvalDuration(long evalDuration) {
         this.evalDuration = evalDuration;
     }
+
+    /**
+     * Returns the error Ollama reported in the middle of a stream, if any.
+     */
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
 }
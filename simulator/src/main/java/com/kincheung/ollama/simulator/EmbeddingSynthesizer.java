@@ -0,0 +1,33 @@
+package com.kincheung.ollama.simulator;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Produces deterministic stand-in embeddings by hashing the words of a text
+ * into a fixed number of buckets. Texts sharing identifiers end up close to
+ * each other, which is enough to exercise similarity search end to end.
+ */
+class EmbeddingSynthesizer {
+    static final int DIMENSION = 256;
+
+    private EmbeddingSynthesizer() {
+    }
+
+    @NotNull
+    static float[] embed(@NotNull String text) {
+        float[] embedding = new float[DIMENSION];
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                int hash = text.substring(start, i).toLowerCase().hashCode();
+                // The sign bit spreads words over both directions of each component
+                embedding[Math.floorMod(hash, DIMENSION)] += (hash & 0x40000000) != 0 ? 1 : -1;
+                start = -1;
+            }
+        }
+        return embedding;
+    }
+}
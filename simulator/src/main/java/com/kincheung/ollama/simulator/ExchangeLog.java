@@ -0,0 +1,106 @@
+package com.kincheung.ollama.simulator;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Recorded exchanges with a real Ollama server, stored as one JSON object per
+ * line so a log can be appended to while recording and diffed or trimmed by hand.
+ * Exchanges are looked up by endpoint, model and a hash of the prompt.
+ */
+class ExchangeLog {
+    private static final Gson gson = new GsonBuilder().disableHtmlEscaping().create();
+
+    private final Map<String, String> responses = new HashMap<>();
+    private final Path recordFile;
+
+    /**
+     * @param replayFile Log to answer prompts from, may be null
+     * @param recordFile Log to append new exchanges to, may be null
+     * @throws IOException If the replay log could not be read
+     */
+    ExchangeLog(@Nullable Path replayFile, @Nullable Path recordFile) throws IOException {
+        this.recordFile = recordFile;
+        if (replayFile != null) {
+            List<String> lines = Files.readAllLines(replayFile, StandardCharsets.UTF_8);
+            for (String line : lines) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                JsonObject exchange = gson.fromJson(line, JsonObject.class);
+                responses.put(
+                        key(exchange.get("endpoint").getAsString(), exchange.get("model").getAsString(),
+                                exchange.get("prompt").getAsString()),
+                        exchange.get("response").getAsString());
+            }
+        }
+    }
+
+    /**
+     * @return The recorded response for the prompt, or null if it wasn't recorded
+     */
+    @Nullable
+    synchronized String find(@NotNull String endpoint, @NotNull String model, @NotNull String prompt) {
+        return responses.get(key(endpoint, model, prompt));
+    }
+
+    /**
+     * Remembers an exchange and appends it to the record log, if there is one.
+     *
+     * @throws IOException If the exchange could not be written
+     */
+    synchronized void record(
+            @NotNull String endpoint,
+            @NotNull String model,
+            @NotNull String prompt,
+            @NotNull String response) throws IOException {
+        responses.put(key(endpoint, model, prompt), response);
+        if (recordFile == null) {
+            return;
+        }
+
+        JsonObject exchange = new JsonObject();
+        exchange.addProperty("endpoint", endpoint);
+        exchange.addProperty("model", model);
+        exchange.addProperty("prompt", prompt);
+        exchange.addProperty("response", response);
+        try (BufferedWriter writer = Files.newBufferedWriter(recordFile, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            writer.write(gson.toJson(exchange));
+            writer.newLine();
+        }
+    }
+
+    synchronized int size() {
+        return responses.size();
+    }
+
+    @NotNull
+    private static String key(@NotNull String endpoint, @NotNull String model, @NotNull String prompt) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(prompt.getBytes(StandardCharsets.UTF_8));
+            StringBuilder key = new StringBuilder(endpoint).append('|').append(model).append('|');
+            for (byte b : hash) {
+                key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,625 @@
+package com.kincheung.ollama.simulator;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.kincheung.ollama.core.TokenEstimator;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http2.server.HTTP2CServerConnectionFactory;
+import org.eclipse.jetty.io.Content;
+import org.eclipse.jetty.server.Handler;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnectionFactory;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Response;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.unixdomain.server.UnixDomainServerConnector;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * In-process stand-in for an Ollama server, for tuning concurrency, caching and
+ * streaming without a GPU. Serves {@code /api/tags}, {@code /api/embed}, and
+ * {@code /api/generate} and {@code /api/chat} both streaming and non-streaming, with the load, prompt
+ * evaluation and decode delays, parallel slots and error rate of its
+ * {@link SimulatorConfig}. Answers come from a replay log when the prompt was
+ * recorded, from a real upstream server when recording, and are synthesized otherwise.
+ * <p>
+ * The TCP port accepts both HTTP/1.1 and HTTP/2 with prior knowledge (h2c), and the
+ * server can also listen on a Unix domain socket, so the client transports can be
+ * compared against the same server.
+ */
+public class FakeOllamaServer implements AutoCloseable {
+    private static final Gson gson = new GsonBuilder().disableHtmlEscaping().create();
+    private static final int CHARS_PER_TOKEN = 4;
+
+    private final SimulatorConfig config;
+    private final ExchangeLog exchanges;
+    private final Semaphore slots;
+    private final Random random;
+    private final Set<String> loadedModels = new HashSet<>();
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private final AtomicInteger errorCount = new AtomicInteger();
+    private final AtomicInteger replayCount = new AtomicInteger();
+    private final HttpClient upstream;
+    private final Server server;
+    private final ServerConnector tcpConnector;
+
+    /**
+     * Creates the server on localhost; call {@link #start()} to bind it and accept requests.
+     *
+     * @param config The simulated behaviour
+     * @throws IOException If the replay log could not be read
+     */
+    public FakeOllamaServer(@NotNull SimulatorConfig config) throws IOException {
+        config.validate();
+        this.config = config;
+        this.exchanges = new ExchangeLog(config.getReplayFile(), config.getRecordFile());
+        this.slots = new Semaphore(config.getParallelSlots(), true);
+        this.random = new Random(config.getSeed());
+        this.upstream = config.getUpstreamUrl() != null
+                ? HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build()
+                : null;
+
+        QueuedThreadPool threads = new QueuedThreadPool();
+        threads.setName("fake-ollama");
+        threads.setDaemon(true);
+        this.server = new Server(threads);
+        HttpConfiguration httpConfig = new HttpConfiguration();
+        this.tcpConnector = new ServerConnector(
+                server, new HttpConnectionFactory(httpConfig), new HTTP2CServerConnectionFactory(httpConfig));
+        tcpConnector.setHost("127.0.0.1");
+        tcpConnector.setPort(config.getPort());
+        tcpConnector.setAcceptQueueSize(128);
+        server.addConnector(tcpConnector);
+        if (config.getUnixSocket() != null) {
+            UnixDomainServerConnector unixConnector = new UnixDomainServerConnector(
+                    server, new HttpConnectionFactory(httpConfig), new HTTP2CServerConnectionFactory(httpConfig));
+            unixConnector.setUnixDomainPath(config.getUnixSocket());
+            server.addConnector(unixConnector);
+        }
+        server.setHandler(new Handler.Abstract() {
+            @Override
+            public boolean handle(Request request, Response response, Callback callback) {
+                Exchange exchange = new Exchange(request, response, callback);
+                try (exchange) {
+                    switch (Request.getPathInContext(request)) {
+                        case "/api/tags":
+                            handleTags(exchange);
+                            break;
+                        case "/api/generate":
+                            handleCompletion(exchange, "generate");
+                            break;
+                        case "/api/chat":
+                            handleCompletion(exchange, "chat");
+                            break;
+                        case "/api/embed":
+                            handleEmbed(exchange);
+                            break;
+                        default:
+                            sendError(exchange, 404, "not found");
+                    }
+                } catch (IOException e) {
+                    exchange.fail(e);
+                }
+                return true;
+            }
+        });
+    }
+
+    public static void main(String[] args) throws Exception {
+        SimulatorConfig config = new SimulatorConfig();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("--help") || args[i].equals("-h")) {
+                    System.out.println("Usage: fake-ollama [options]\n\n" + SimulatorConfig.USAGE);
+                    return;
+                }
+                int last = config.parseOption(args, i);
+                if (last < 0) {
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+                }
+                i = last;
+            }
+            config.validate();
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: fake-ollama [options]\n\n" + SimulatorConfig.USAGE);
+            System.exit(2);
+            return;
+        }
+
+        FakeOllamaServer server = new FakeOllamaServer(config).start();
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+        System.out.println("Fake Ollama listening on " + server.getBaseUrl() + " and " + server.getH2cUrl()
+                + (server.getUnixSocketUrl() != null ? " and " + server.getUnixSocketUrl() : ""));
+        Thread.currentThread().join();
+    }
+
+    /**
+     * Binds the server and starts accepting requests.
+     *
+     * @return This server
+     * @throws IOException If the port or the Unix domain socket could not be bound
+     */
+    public FakeOllamaServer start() throws IOException {
+        try {
+            server.start();
+        } catch (IOException e) {
+            close();
+            throw e;
+        } catch (Exception e) {
+            close();
+            throw new IOException("Could not start the simulator", e);
+        }
+        return this;
+    }
+
+    /**
+     * Returns the URL for HTTP/1.1 over TCP.
+     */
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + tcpConnector.getLocalPort();
+    }
+
+    /**
+     * Returns the URL for HTTP/2 with prior knowledge over TCP, in the form {@link com.kincheung.ollama.core.OllamaClient} accepts.
+     */
+    public String getH2cUrl() {
+        return "h2c://127.0.0.1:" + tcpConnector.getLocalPort();
+    }
+
+    /**
+     * Returns the URL for HTTP/1.1 over the Unix domain socket, or null if the server doesn't listen on one.
+     */
+    @Nullable
+    public String getUnixSocketUrl() {
+        return config.getUnixSocket() != null ? "unix://" + config.getUnixSocket().toAbsolutePath() : null;
+    }
+
+    public int getRequestCount() {
+        return requestCount.get();
+    }
+
+    public int getErrorCount() {
+        return errorCount.get();
+    }
+
+    public int getReplayCount() {
+        return replayCount.get();
+    }
+
+    @Override
+    public void close() {
+        try {
+            server.stop();
+        } catch (Exception e) {
+            // Closing anyway
+        }
+    }
+
+    private void handleTags(@NotNull Exchange exchange) throws IOException {
+        JsonArray models = new JsonArray();
+        for (String model : config.getModels()) {
+            JsonObject entry = new JsonObject();
+            entry.addProperty("name", model);
+            entry.addProperty("model", model);
+            entry.addProperty("modified_at", Instant.EPOCH.toString());
+            entry.addProperty("size", 0);
+            entry.addProperty("digest", "simulated");
+            models.add(entry);
+        }
+        JsonObject body = new JsonObject();
+        body.add("models", models);
+        sendJson(exchange, 200, body);
+    }
+
+    private void handleEmbed(@NotNull Exchange exchange) throws IOException {
+        try (exchange) {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                sendError(exchange, 405, "method not allowed");
+                return;
+            }
+            requestCount.incrementAndGet();
+
+            JsonObject request;
+            try (InputStream body = exchange.getRequestBody()) {
+                request = gson.fromJson(new String(body.readAllBytes(), StandardCharsets.UTF_8), JsonObject.class);
+            }
+            if (request == null || !request.has("input")) {
+                sendError(exchange, 400, "missing input");
+                return;
+            }
+            if (injectError()) {
+                errorCount.incrementAndGet();
+                sendError(exchange, 500, "simulated failure");
+                return;
+            }
+
+            List<String> inputs = new ArrayList<>();
+            JsonElement input = request.get("input");
+            if (input.isJsonArray()) {
+                input.getAsJsonArray().forEach(element -> inputs.add(element.getAsString()));
+            } else {
+                inputs.add(input.getAsString());
+            }
+
+            slots.acquire();
+            try {
+                long start = System.nanoTime();
+                int promptTokens = 0;
+                JsonArray embeddings = new JsonArray();
+                for (String text : inputs) {
+                    promptTokens += TokenEstimator.estimateTokens(text);
+                    JsonArray embedding = new JsonArray();
+                    for (float component : EmbeddingSynthesizer.embed(text)) {
+                        embedding.add(component);
+                    }
+                    embeddings.add(embedding);
+                }
+                pace(start, promptTokens, config.getPromptTokenMicros());
+
+                JsonObject response = new JsonObject();
+                response.addProperty("model", request.has("model") ? request.get("model").getAsString() : "");
+                response.add("embeddings", embeddings);
+                response.addProperty("total_duration", System.nanoTime() - start);
+                response.addProperty("prompt_eval_count", promptTokens);
+                sendJson(exchange, 200, response);
+            } finally {
+                slots.release();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            // The client went away
+        }
+    }
+
+    private void handleCompletion(@NotNull Exchange exchange, @NotNull String endpoint) throws IOException {
+        try (exchange) {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                sendError(exchange, 405, "method not allowed");
+                return;
+            }
+            requestCount.incrementAndGet();
+
+            JsonObject request;
+            try (InputStream body = exchange.getRequestBody()) {
+                request = gson.fromJson(new String(body.readAllBytes(), StandardCharsets.UTF_8), JsonObject.class);
+            }
+            if (request == null) {
+                sendError(exchange, 400, "missing request body");
+                return;
+            }
+            String model = request.has("model") ? request.get("model").getAsString() : config.getModels().get(0);
+            if (!config.getModels().contains(model) && config.getUpstreamUrl() == null) {
+                sendError(exchange, 404, "model '" + model + "' not found");
+                return;
+            }
+            // Like Ollama, responses are streamed unless the client opts out
+            boolean stream = !request.has("stream") || request.get("stream").getAsBoolean();
+            String prompt = "generate".equals(endpoint) ? stringOrEmpty(request, "prompt") : chatPrompt(request);
+
+            if (injectError()) {
+                errorCount.incrementAndGet();
+                sendError(exchange, 500, "simulated failure");
+                return;
+            }
+
+            slots.acquire();
+            try {
+                long start = System.nanoTime();
+                long loadNanos = loadModel(model);
+
+                long promptStart = System.nanoTime();
+                int promptTokens = TokenEstimator.estimateTokens(prompt);
+                String response;
+                try {
+                    response = answer(endpoint, model, prompt, request);
+                } catch (IOException e) {
+                    sendError(exchange, 502, "upstream request failed: " + e.getMessage());
+                    return;
+                }
+                pace(promptStart, 1, TimeUnit.MILLISECONDS.toMicros(config.getRequestMillis())
+                        + promptTokens * config.getPromptTokenMicros());
+                long promptNanos = System.nanoTime() - promptStart;
+
+                List<String> tokens = tokenize(response);
+                long evalStart = System.nanoTime();
+                if (stream) {
+                    streamTokens(exchange, endpoint, model, tokens, evalStart);
+                } else {
+                    pace(evalStart, tokens.size(), config.getTokenMicros());
+                }
+                long evalNanos = System.nanoTime() - evalStart;
+
+                JsonObject done = chunk(endpoint, model, stream ? "" : response, true);
+                done.addProperty("done_reason", "stop");
+                done.addProperty("total_duration", System.nanoTime() - start);
+                done.addProperty("load_duration", loadNanos);
+                done.addProperty("prompt_eval_count", promptTokens);
+                done.addProperty("prompt_eval_duration", promptNanos);
+                done.addProperty("eval_count", tokens.size());
+                done.addProperty("eval_duration", evalNanos);
+                if (stream) {
+                    writeLine(exchange.getResponseBody(), done);
+                } else {
+                    sendJson(exchange, 200, done);
+                }
+            } finally {
+                slots.release();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            // The client went away, e.g. after cancelling or hedging the request
+        }
+    }
+
+    private boolean injectError() {
+        if (config.getErrorRate() <= 0) {
+            return false;
+        }
+        synchronized (random) {
+            return random.nextDouble() < config.getErrorRate();
+        }
+    }
+
+    private long loadModel(@NotNull String model) throws InterruptedException {
+        synchronized (loadedModels) {
+            if (loadedModels.contains(model)) {
+                return 0;
+            }
+            // Loading blocks every other request, as it does on a single GPU
+            long start = System.nanoTime();
+            Thread.sleep(config.getLoadMillis());
+            loadedModels.add(model);
+            return System.nanoTime() - start;
+        }
+    }
+
+    @NotNull
+    private String answer(
+            @NotNull String endpoint,
+            @NotNull String model,
+            @NotNull String prompt,
+            @NotNull JsonObject request) throws IOException, InterruptedException {
+        String recorded = exchanges.find(endpoint, model, prompt);
+        if (recorded != null) {
+            replayCount.incrementAndGet();
+            return recorded;
+        }
+        if (upstream == null) {
+            return request.has("format") && request.get("format").isJsonObject()
+                    ? ResponseSynthesizer.respondStructured(prompt)
+                    : ResponseSynthesizer.respond(prompt);
+        }
+
+        JsonObject proxied = request.deepCopy();
+        proxied.addProperty("stream", false);
+        HttpResponse<String> response = upstream.send(
+                HttpRequest.newBuilder(URI.create(config.getUpstreamUrl() + "/api/" + endpoint))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString(gson.toJson(proxied)))
+                        .build(),
+                HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IOException("Upstream returned " + response.statusCode());
+        }
+        JsonObject body = gson.fromJson(response.body(), JsonObject.class);
+        String text = "generate".equals(endpoint)
+                ? stringOrEmpty(body, "response")
+                : stringOrEmpty(body.getAsJsonObject("message"), "content");
+        exchanges.record(endpoint, model, prompt, text);
+        return text;
+    }
+
+    private void streamTokens(
+            @NotNull Exchange exchange,
+            @NotNull String endpoint,
+            @NotNull String model,
+            @NotNull List<String> tokens,
+            long start) throws IOException {
+        exchange.setHeader("Content-Type", "application/x-ndjson");
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream out = exchange.getResponseBody();
+        for (int i = 0; i < tokens.size(); i++) {
+            pace(start, i + 1, config.getTokenMicros());
+            writeLine(out, chunk(endpoint, model, tokens.get(i), false));
+        }
+    }
+
+    @NotNull
+    private static JsonObject chunk(@NotNull String endpoint, @NotNull String model, @NotNull String text, boolean done) {
+        JsonObject chunk = new JsonObject();
+        chunk.addProperty("model", model);
+        chunk.addProperty("created_at", Instant.now().toString());
+        if ("generate".equals(endpoint)) {
+            chunk.addProperty("response", text);
+        } else {
+            JsonObject message = new JsonObject();
+            message.addProperty("role", "assistant");
+            message.addProperty("content", text);
+            chunk.add("message", message);
+        }
+        chunk.addProperty("done", done);
+        return chunk;
+    }
+
+    /**
+     * Sleeps until the given number of units, each taking the given time, have
+     * passed since the start. Waiting for a deadline rather than sleeping per unit
+     * keeps the overall rate accurate despite timer granularity.
+     */
+    private static void pace(long startNanos, int units, long microsPerUnit) {
+        long deadline = startNanos + TimeUnit.MICROSECONDS.toNanos(microsPerUnit * units);
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+        }
+    }
+
+    @NotNull
+    private static List<String> tokenize(@NotNull String text) {
+        List<String> tokens = new ArrayList<>(text.length() / CHARS_PER_TOKEN + 1);
+        for (int i = 0; i < text.length(); i += CHARS_PER_TOKEN) {
+            tokens.add(text.substring(i, Math.min(text.length(), i + CHARS_PER_TOKEN)));
+        }
+        return tokens;
+    }
+
+    @NotNull
+    private static String chatPrompt(@NotNull JsonObject request) {
+        StringBuilder prompt = new StringBuilder();
+        JsonArray messages = request.getAsJsonArray("messages");
+        if (messages != null) {
+            for (JsonElement message : messages) {
+                if (prompt.length() > 0) {
+                    prompt.append('\n');
+                }
+                prompt.append(stringOrEmpty(message.getAsJsonObject(), "content"));
+            }
+        }
+        return prompt.toString();
+    }
+
+    @NotNull
+    private static String stringOrEmpty(JsonObject object, @NotNull String member) {
+        return object != null && object.has(member) && !object.get(member).isJsonNull()
+                ? object.get(member).getAsString()
+                : "";
+    }
+
+    private static void writeLine(@NotNull OutputStream out, @NotNull JsonObject json) throws IOException {
+        out.write((gson.toJson(json) + "\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private static void sendError(@NotNull Exchange exchange, int status, @NotNull String message) throws IOException {
+        JsonObject body = new JsonObject();
+        body.addProperty("error", message);
+        sendJson(exchange, status, body);
+    }
+
+    private static void sendJson(@NotNull Exchange exchange, int status, @NotNull JsonObject json) throws IOException {
+        byte[] body = gson.toJson(json).getBytes(StandardCharsets.UTF_8);
+        exchange.setHeader("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * One request and its response, with the blocking, stream-based access the
+     * handlers use. Closing it completes the response.
+     */
+    private static class Exchange implements Closeable {
+        private final Request request;
+        private final Response response;
+        private final Callback callback;
+        private OutputStream responseBody;
+        private boolean completed;
+
+        Exchange(@NotNull Request request, @NotNull Response response, @NotNull Callback callback) {
+            this.request = request;
+            this.response = response;
+            this.callback = callback;
+        }
+
+        String getRequestMethod() {
+            return request.getMethod();
+        }
+
+        InputStream getRequestBody() {
+            return Content.Source.asInputStream(request);
+        }
+
+        void setHeader(@NotNull String name, @NotNull String value) {
+            response.getHeaders().put(name, value);
+        }
+
+        /**
+         * Sets the status and, if positive, the content length; zero means the body is streamed.
+         */
+        void sendResponseHeaders(int status, long length) {
+            response.setStatus(status);
+            if (length > 0) {
+                response.getHeaders().put(HttpHeader.CONTENT_LENGTH, length);
+            }
+        }
+
+        OutputStream getResponseBody() {
+            if (responseBody == null) {
+                responseBody = new FilterOutputStream(Content.Sink.asOutputStream(response)) {
+                    private boolean closed;
+
+                    @Override
+                    public void write(byte[] bytes, int offset, int length) throws IOException {
+                        out.write(bytes, offset, length);
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        if (!closed) {
+                            closed = true;
+                            super.close();
+                        }
+                    }
+                };
+            }
+            return responseBody;
+        }
+
+        void fail(@NotNull Throwable failure) {
+            if (!completed) {
+                completed = true;
+                callback.failed(failure);
+            }
+        }
+
+        @Override
+        public void close() {
+            if (completed) {
+                return;
+            }
+            try {
+                getResponseBody().close();
+                completed = true;
+                callback.succeeded();
+            } catch (IOException | RuntimeException e) {
+                fail(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.kincheung.ollama.simulator;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects latency samples of one pipeline stage and reports percentiles.
+ * Every sample is kept, which is fine for load tests of a few thousand requests.
+ */
+class LatencyRecorder {
+    private final String stage;
+    private long[] samples = new long[256];
+    private int count;
+
+    LatencyRecorder(String stage) {
+        this.stage = stage;
+    }
+
+    String getStage() {
+        return stage;
+    }
+
+    synchronized void record(long nanos) {
+        if (count == samples.length) {
+            samples = Arrays.copyOf(samples, count * 2);
+        }
+        samples[count++] = nanos;
+    }
+
+    synchronized int count() {
+        return count;
+    }
+
+    /**
+     * @param percentile The percentile, between 0 and 100
+     * @return The nearest-rank percentile in milliseconds, or 0 without samples
+     */
+    synchronized double percentileMillis(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(percentile / 100 * count);
+        return toMillis(sorted[Math.max(0, Math.min(count, rank) - 1)]);
+    }
+
+    synchronized double maxMillis() {
+        long max = 0;
+        for (int i = 0; i < count; i++) {
+            max = Math.max(max, samples[i]);
+        }
+        return toMillis(max);
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
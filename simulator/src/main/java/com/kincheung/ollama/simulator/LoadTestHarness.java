@@ -0,0 +1,281 @@
+package com.kincheung.ollama.simulator;
+
+import com.kincheung.ollama.core.GenerationTrace;
+import com.kincheung.ollama.core.JavaCodeExtractor;
+import com.kincheung.ollama.core.JavaSourceScanner;
+import com.kincheung.ollama.core.OllamaClient;
+import com.kincheung.ollama.core.PackedClass;
+import com.kincheung.ollama.core.PromptBuilder;
+import com.kincheung.ollama.core.PromptPacker;
+import com.kincheung.ollama.core.StructuredTest;
+import com.kincheung.ollama.core.StructuredTestParser;
+import com.kincheung.ollama.core.TestSourceWriter;
+import com.kincheung.ollama.core.TokenEstimator;
+import com.kincheung.ollama.model.OllamaRequest;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Replays a corpus of classes through the generation pipeline shared by the
+ * plugin and the headless runner, against a real server or an embedded
+ * {@link FakeOllamaServer}, and reports throughput and p50/p95/p99 latency
+ * for each stage: prompt building, the Ollama request, code extraction and
+ * writing the test file. With {@code --pack}, small classes share requests the way
+ * batch runs pack them. With {@code --structured}, the response is streamed as
+ * structured JSON and parsed as it arrives, and the time to the first complete
+ * test method is reported too.
+ */
+public class LoadTestHarness {
+    private final LoadTestOptions options;
+    private final LatencyRecorder prompt = new LatencyRecorder("prompt");
+    private final LatencyRecorder request = new LatencyRecorder("request");
+    private final LatencyRecorder firstMethod = new LatencyRecorder("first");
+    private final LatencyRecorder extract = new LatencyRecorder("extract");
+    private final LatencyRecorder write = new LatencyRecorder("write");
+    private final LatencyRecorder total = new LatencyRecorder("total");
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicInteger requests = new AtomicInteger();
+
+    LoadTestHarness(LoadTestOptions options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadTestOptions options;
+        try {
+            options = LoadTestOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(LoadTestOptions.USAGE);
+            System.exit(2);
+            return;
+        }
+        if (options.help) {
+            System.out.println(LoadTestOptions.USAGE);
+            return;
+        }
+        new LoadTestHarness(options).run();
+    }
+
+    /**
+     * Runs the load test and prints the report.
+     *
+     * @throws IOException If the corpus could not be scanned or the simulator could not be started
+     * @throws InterruptedException If the run was interrupted
+     */
+    void run() throws IOException, InterruptedException {
+        List<JavaSourceScanner.SourceClass> corpus = JavaSourceScanner.scan(options.corpus);
+        if (corpus.isEmpty()) {
+            System.out.println("No classes found in " + options.corpus);
+            return;
+        }
+        // Same order as the batch generator, so queueing effects match
+        corpus.sort(Comparator.comparingInt(sourceClass -> sourceClass.getSource().length()));
+
+        FakeOllamaServer simulator = null;
+        String endpoint = options.endpoint;
+        if (endpoint == null) {
+            if ("unix".equals(options.transport) && options.simulator.getUnixSocket() == null) {
+                options.simulator.setUnixSocket(Files.createTempDirectory("ollama-simulator").resolve("ollama.sock"));
+            }
+            simulator = new FakeOllamaServer(options.simulator).start();
+            switch (options.transport) {
+                case "h2c":
+                    endpoint = simulator.getH2cUrl();
+                    break;
+                case "unix":
+                    endpoint = simulator.getUnixSocketUrl();
+                    break;
+                default:
+                    endpoint = simulator.getBaseUrl();
+            }
+        }
+        Path outputRoot = Files.createTempDirectory("ollama-load-test");
+        OllamaClient client = new OllamaClient(endpoint, options.timeoutSeconds);
+
+        int jobs = corpus.size() * options.iterations;
+        System.out.println("Replaying " + corpus.size() + " classes x " + options.iterations + " against "
+                + endpoint + " with " + options.concurrency + " request(s) in flight");
+
+        List<List<JavaSourceScanner.SourceClass>> groups = new ArrayList<>();
+        if (options.packTokens > 0) {
+            groups.addAll(PromptPacker.pack(corpus, LoadTestHarness::estimateTokens, sourceClass -> options.model, options.packTokens));
+        } else {
+            corpus.forEach(sourceClass -> groups.add(List.of(sourceClass)));
+        }
+
+        long start = System.nanoTime();
+        ExecutorService workers = Executors.newFixedThreadPool(options.concurrency);
+        for (int iteration = 0; iteration < options.iterations; iteration++) {
+            for (List<JavaSourceScanner.SourceClass> group : groups) {
+                if (group.size() == 1) {
+                    workers.execute(() -> generate(client, group.get(0), outputRoot));
+                } else {
+                    workers.execute(() -> generatePacked(client, group, outputRoot));
+                }
+            }
+        }
+        workers.shutdown();
+        workers.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.println();
+        System.out.printf("%d classes in %.2f s: %.2f classes/s, %d requests, %d failed%n",
+                jobs, seconds, total.count() / seconds, requests.get(), failed.get());
+        if (simulator != null) {
+            System.out.printf("Simulator: %d requests, %d injected errors, %d replayed%n",
+                    simulator.getRequestCount(), simulator.getErrorCount(), simulator.getReplayCount());
+            simulator.close();
+        }
+        System.out.println();
+        System.out.printf("%-8s %8s %10s %10s %10s %10s%n", "stage", "count", "p50 ms", "p95 ms", "p99 ms", "max ms");
+        List<LatencyRecorder> stages = options.structured
+                ? List.of(prompt, firstMethod, request, extract, write, total)
+                : List.of(prompt, request, extract, write, total);
+        for (LatencyRecorder stage : stages) {
+            System.out.printf("%-8s %8d %10.2f %10.2f %10.2f %10.2f%n",
+                    stage.getStage(), stage.count(), stage.percentileMillis(50), stage.percentileMillis(95),
+                    stage.percentileMillis(99), stage.maxMillis());
+        }
+
+        deleteRecursively(outputRoot);
+    }
+
+    private void generate(OllamaClient client, JavaSourceScanner.SourceClass sourceClass, Path outputRoot) {
+        String testClassName = sourceClass.getClassName() + "Test";
+        GenerationTrace trace = GenerationTrace.start(testClassName);
+        trace.setModel(options.model);
+        String outcome = "failed";
+        try {
+            long start = System.nanoTime();
+            String promptText = PromptBuilder.buildPrompt(
+                    sourceClass.getClassName(), sourceClass.getSource(), "", true, true);
+            if (options.structured) {
+                promptText = PromptBuilder.withStructuredOutput(promptText);
+            }
+            TokenEstimator.estimateTokens(promptText);
+            long prompted = System.nanoTime();
+
+            OllamaRequest ollamaRequest = new OllamaRequest();
+            ollamaRequest.setModel(options.model);
+            ollamaRequest.setPrompt(promptText);
+            requests.incrementAndGet();
+            String testCode;
+            long responded;
+            if (options.structured) {
+                ollamaRequest.setFormat(StructuredTest.schema());
+                long[] firstMethodAt = new long[1];
+                StructuredTestParser parser = new StructuredTestParser((part, source) -> {
+                    if (part == StructuredTest.Part.TEST_METHOD && firstMethodAt[0] == 0) {
+                        firstMethodAt[0] = System.nanoTime();
+                    }
+                });
+                client.generateStream(ollamaRequest, parser::feed, trace).get();
+                responded = System.nanoTime();
+                if (firstMethodAt[0] != 0) {
+                    firstMethod.record(firstMethodAt[0] - prompted);
+                }
+                testCode = parser.getResult().toJavaSource(testClassName);
+            } else {
+                ollamaRequest.setStream(false);
+                String response = client.generate(ollamaRequest, trace).get().getResponse();
+                responded = System.nanoTime();
+                testCode = JavaCodeExtractor.extractJavaCode(response);
+            }
+            long extracted = System.nanoTime();
+
+            TestSourceWriter.write(outputRoot, sourceClass.getPackageName(), testClassName, testCode, true);
+            long written = System.nanoTime();
+
+            prompt.record(prompted - start);
+            request.record(responded - prompted);
+            extract.record(extracted - responded);
+            write.record(written - extracted);
+            total.record(written - start);
+            outcome = "written";
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            failed.incrementAndGet();
+        } finally {
+            trace.finish(outcome);
+        }
+    }
+
+    /**
+     * Generates the tests of several classes with one request, falling back to
+     * single requests for classes whose section of the answer can't be used.
+     */
+    private void generatePacked(OllamaClient client, List<JavaSourceScanner.SourceClass> group, Path outputRoot) {
+        try {
+            long start = System.nanoTime();
+            List<PackedClass> packedClasses = new ArrayList<>();
+            List<String> testClassNames = new ArrayList<>();
+            for (JavaSourceScanner.SourceClass sourceClass : group) {
+                packedClasses.add(new PackedClass(sourceClass.getClassName(), sourceClass.getSource(), ""));
+                testClassNames.add(sourceClass.getClassName() + "Test");
+            }
+            String promptText = PromptBuilder.buildPackedPrompt(packedClasses, true, true);
+            long prompted = System.nanoTime();
+
+            OllamaRequest ollamaRequest = new OllamaRequest();
+            ollamaRequest.setModel(options.model);
+            ollamaRequest.setPrompt(promptText);
+            ollamaRequest.setStream(false);
+            requests.incrementAndGet();
+            String response = client.generate(ollamaRequest).get().getResponse();
+            long responded = System.nanoTime();
+
+            Map<String, String> sections = JavaCodeExtractor.splitPackedResponse(response, testClassNames);
+            long extracted = System.nanoTime();
+
+            prompt.record(prompted - start);
+            request.record(responded - prompted);
+            extract.record(extracted - responded);
+            for (JavaSourceScanner.SourceClass sourceClass : group) {
+                String testCode = sections.get(sourceClass.getClassName() + "Test");
+                if (testCode == null) {
+                    generate(client, sourceClass, outputRoot);
+                    continue;
+                }
+                long writeStart = System.nanoTime();
+                TestSourceWriter.write(
+                        outputRoot, sourceClass.getPackageName(), sourceClass.getClassName() + "Test", testCode, true);
+                long written = System.nanoTime();
+                write.record(written - writeStart);
+                total.record(written - start);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            failed.addAndGet(group.size());
+        }
+    }
+
+    private static int estimateTokens(JavaSourceScanner.SourceClass sourceClass) {
+        int promptTokens = TokenEstimator.estimateTokens(sourceClass.getSource());
+        return promptTokens + TokenEstimator.estimateCompletionTokens(promptTokens);
+    }
+
+    private static void deleteRecursively(Path root) throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            List<Path> all = new ArrayList<>();
+            paths.forEach(all::add);
+            all.sort(Comparator.reverseOrder());
+            for (Path path : all) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
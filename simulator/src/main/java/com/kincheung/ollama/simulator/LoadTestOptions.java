@@ -0,0 +1,107 @@
+package com.kincheung.ollama.simulator;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Command line options of the load-test harness.
+ */
+class LoadTestOptions {
+    static final String USAGE = String.join("\n",
+            "Usage: ollama-load-test [options] [simulator options]",
+            "",
+            "  --corpus <dir>       Source root whose classes are replayed (default: src/main/java)",
+            "  --endpoint <url>     Ollama URL to test, http://, h2c:// or unix://; without it an embedded simulator is started",
+            "  --transport <name>   Transport to the embedded simulator: http, h2c or unix (default: http)",
+            "  --model <name>       Model name (default: qwen2.5-coder:7b)",
+            "  --concurrency <n>    Requests in flight (default: 4)",
+            "  --iterations <n>     Times the corpus is replayed (default: 1)",
+            "  --timeout <seconds>  Request timeout (default: 300)",
+            "  --pack <tokens>      Pack small classes into requests of up to this many tokens (default: 0, off)",
+            "  --structured         Request structured JSON output and parse it while it streams",
+            "  --help               Show this help",
+            "",
+            "Simulator options, used with the embedded simulator:",
+            SimulatorConfig.USAGE);
+
+    Path corpus = Paths.get("src/main/java");
+    String endpoint;
+    String transport = "http";
+    String model = "qwen2.5-coder:7b";
+    int concurrency = 4;
+    int iterations = 1;
+    int timeoutSeconds = 300;
+    int packTokens;
+    boolean structured;
+    boolean help;
+    final SimulatorConfig simulator = new SimulatorConfig();
+
+    /**
+     * Parses the command line.
+     *
+     * @param args The command line arguments
+     * @return The parsed options
+     * @throws IllegalArgumentException If an option is unknown or its value is missing or invalid
+     */
+    static LoadTestOptions parse(String[] args) {
+        LoadTestOptions options = new LoadTestOptions();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "--corpus":
+                    options.corpus = Paths.get(SimulatorConfig.value(args, ++i, arg));
+                    break;
+                case "--endpoint":
+                    options.endpoint = SimulatorConfig.stripTrailingSlash(SimulatorConfig.value(args, ++i, arg));
+                    break;
+                case "--transport":
+                    options.transport = SimulatorConfig.value(args, ++i, arg);
+                    if (!List.of("http", "h2c", "unix").contains(options.transport)) {
+                        throw new IllegalArgumentException("--transport must be http, h2c or unix: " + options.transport);
+                    }
+                    break;
+                case "--model":
+                    // Also the model the embedded simulator advertises
+                    options.model = SimulatorConfig.value(args, ++i, arg);
+                    options.simulator.addModel(options.model);
+                    break;
+                case "--concurrency":
+                    options.concurrency = positiveInt(SimulatorConfig.value(args, ++i, arg), arg);
+                    break;
+                case "--iterations":
+                    options.iterations = positiveInt(SimulatorConfig.value(args, ++i, arg), arg);
+                    break;
+                case "--timeout":
+                    options.timeoutSeconds = positiveInt(SimulatorConfig.value(args, ++i, arg), arg);
+                    break;
+                case "--pack":
+                    options.packTokens = SimulatorConfig.nonNegativeInt(SimulatorConfig.value(args, ++i, arg), arg);
+                    break;
+                case "--structured":
+                    options.structured = true;
+                    break;
+                case "--help":
+                case "-h":
+                    options.help = true;
+                    break;
+                default:
+                    int last = options.simulator.parseOption(args, i);
+                    if (last < 0) {
+                        throw new IllegalArgumentException("Unknown option: " + arg);
+                    }
+                    i = last;
+            }
+        }
+        options.simulator.validate();
+        return options;
+    }
+
+    private static int positiveInt(String value, String option) {
+        int parsed = SimulatorConfig.nonNegativeInt(value, option);
+        if (parsed == 0) {
+            throw new IllegalArgumentException(option + " must be a positive number: " + value);
+        }
+        return parsed;
+    }
+}
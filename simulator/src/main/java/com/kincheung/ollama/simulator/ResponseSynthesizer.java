@@ -0,0 +1,128 @@
+package com.kincheung.ollama.simulator;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.kincheung.ollama.core.JavaCodeExtractor;
+import com.kincheung.ollama.core.StructuredTest;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Produces a plausible model answer for a test generation prompt: a short
+ * introduction followed by a fenced JUnit 5 class with one test per public
+ * method found in the prompt. The answer grows with the class under test,
+ * so decode time in the simulator scales the way it does with a real model.
+ * Packed prompts are answered with one delimited section per class, and
+ * requests with a format schema with the structured JSON parts of the class.
+ */
+class ResponseSynthesizer {
+    private static final Pattern TEST_CLASS_NAME = Pattern.compile("test class named (\\w+)");
+    private static final Pattern PACKED_CLASS = Pattern.compile(
+            "(?m)^Class \\d+: \\w+, test class name (\\w+)\n\n```java\n(.*?)\n```", Pattern.DOTALL);
+    private static final Pattern METHODS_OF_CLASS = Pattern.compile("methods of the Java class (\\w+)");
+    private static final Pattern PUBLIC_METHOD = Pattern.compile(
+            "public\\s+(?:static\\s+|final\\s+|synchronized\\s+)*[\\w<>\\[\\],.? ]+?\\s+(\\w+)\\s*\\(");
+    private static final int MAX_TEST_METHODS = 40;
+    private static final List<String> IMPORTS = List.of(
+            "org.junit.jupiter.api.BeforeEach",
+            "org.junit.jupiter.api.Test",
+            "static org.junit.jupiter.api.Assertions.*");
+    private static final String SET_UP = "@BeforeEach\nvoid setUp() {\n    // Arrange shared fixtures\n}";
+    private static final Gson gson = new GsonBuilder().disableHtmlEscaping().setPrettyPrinting().create();
+
+    private ResponseSynthesizer() {
+    }
+
+    /**
+     * @param prompt The prompt sent by the client
+     * @return The simulated model response
+     */
+    @NotNull
+    static String respond(@NotNull String prompt) {
+        if (prompt.contains(JavaCodeExtractor.PACKED_SECTION_START)) {
+            StringBuilder response = new StringBuilder();
+            Matcher matcher = PACKED_CLASS.matcher(prompt);
+            while (matcher.find()) {
+                response.append(JavaCodeExtractor.PACKED_SECTION_START).append(matcher.group(1)).append('\n')
+                        .append(testClass(matcher.group(1), matcher.group(2)))
+                        .append(JavaCodeExtractor.PACKED_SECTION_END).append(matcher.group(1)).append("\n\n");
+            }
+            return response.toString();
+        }
+        return testClass(testClassName(prompt), prompt);
+    }
+
+    /**
+     * @param prompt The prompt sent by the client with a format schema
+     * @return The simulated JSON response, following {@link StructuredTest#schema()}
+     */
+    @NotNull
+    static String respondStructured(@NotNull String prompt) {
+        JsonObject response = new JsonObject();
+        JsonArray imports = new JsonArray();
+        IMPORTS.forEach(imports::add);
+        JsonArray fixtures = new JsonArray();
+        fixtures.add(SET_UP);
+        JsonArray testMethods = new JsonArray();
+        testMethods(prompt).forEach(testMethods::add);
+        response.add(StructuredTest.Part.IMPORT.getKey(), imports);
+        response.add(StructuredTest.Part.FIXTURE.getKey(), fixtures);
+        response.add(StructuredTest.Part.TEST_METHOD.getKey(), testMethods);
+        return gson.toJson(response);
+    }
+
+    @NotNull
+    private static String testClass(@NotNull String testClassName, @NotNull String source) {
+        List<String> testMethods = testMethods(source);
+        StringBuilder response = new StringBuilder(512 + testMethods.size() * 128);
+        response.append("Here is a JUnit 5 test class covering the public methods.\n\n```java\n")
+                .append(StructuredTest.toJavaSource(testClassName, IMPORTS, List.of(SET_UP), testMethods))
+                .append("```\n\nThe tests cover the normal path and invalid input for each method.\n");
+        return response.toString();
+    }
+
+    @NotNull
+    private static List<String> testMethods(@NotNull String source) {
+        Set<String> methods = new LinkedHashSet<>();
+        Matcher matcher = PUBLIC_METHOD.matcher(source);
+        while (matcher.find() && methods.size() < MAX_TEST_METHODS) {
+            methods.add(matcher.group(1));
+        }
+        if (methods.isEmpty()) {
+            methods.add("behaviour");
+        }
+
+        List<String> testMethods = new ArrayList<>();
+        for (String method : methods) {
+            String capitalized = Character.toUpperCase(method.charAt(0)) + method.substring(1);
+            testMethods.add("@Test\nvoid test" + capitalized + "ReturnsExpectedResult() {\n"
+                    + "    // Arrange\n    Object expected = null;\n\n"
+                    + "    // Act\n    Object actual = null;\n\n"
+                    + "    // Assert\n    assertEquals(expected, actual);\n}");
+            testMethods.add("@Test\nvoid test" + capitalized + "HandlesInvalidInput() {\n"
+                    + "    assertDoesNotThrow(() -> { });\n}");
+        }
+        return testMethods;
+    }
+
+    @NotNull
+    private static String testClassName(@NotNull String prompt) {
+        Matcher matcher = TEST_CLASS_NAME.matcher(prompt);
+        if (matcher.find()) {
+            return matcher.group(1);
+        }
+        matcher = METHODS_OF_CLASS.matcher(prompt);
+        if (matcher.find()) {
+            return matcher.group(1) + "Test";
+        }
+        return "GeneratedTest";
+    }
+}
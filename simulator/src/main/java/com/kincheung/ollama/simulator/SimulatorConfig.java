@@ -0,0 +1,245 @@
+package com.kincheung.ollama.simulator;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Behaviour of the fake Ollama server. Delays are modelled on how a real
+ * server spends its time: a one-off model load, prompt evaluation proportional
+ * to the prompt length and decoding proportional to the response length.
+ */
+public class SimulatorConfig {
+    static final String USAGE = String.join("\n",
+            "  --port <n>             Port to listen on, 0 for any free port (default: 0)",
+            "  --unix-socket <path>   Also listen on this Unix domain socket",
+            "  --model <name>         Model to advertise, repeatable (default: qwen2.5-coder:7b)",
+            "  --load-ms <n>          Time to load a model on its first request (default: 0)",
+            "  --request-ms <n>       Fixed time per request, e.g. scheduling and the system prompt (default: 0)",
+            "  --prompt-token-us <n>  Prompt evaluation time per prompt token (default: 0)",
+            "  --token-us <n>         Decode time per generated token (default: 0)",
+            "  --slots <n>            Requests served in parallel, others queue (default: 1)",
+            "  --error-rate <p>       Fraction of requests answered with HTTP 500 (default: 0)",
+            "  --seed <n>             Seed for error injection (default: 42)",
+            "  --replay <file>        Answer prompts recorded in this exchange log",
+            "  --record <file>        Append exchanges proxied from --upstream to this log",
+            "  --upstream <url>       Real Ollama server to proxy to when recording");
+
+    private int port;
+    private Path unixSocket;
+    private final List<String> models = new ArrayList<>();
+    private long loadMillis;
+    private long requestMillis;
+    private long promptTokenMicros;
+    private long tokenMicros;
+    private int parallelSlots = 1;
+    private double errorRate;
+    private long seed = 42;
+    private Path replayFile;
+    private Path recordFile;
+    private String upstreamUrl;
+
+    public int getPort() {
+        return port;
+    }
+
+    public void setPort(int port) {
+        this.port = port;
+    }
+
+    public Path getUnixSocket() {
+        return unixSocket;
+    }
+
+    public void setUnixSocket(Path unixSocket) {
+        this.unixSocket = unixSocket;
+    }
+
+    public List<String> getModels() {
+        return models.isEmpty() ? List.of("qwen2.5-coder:7b") : models;
+    }
+
+    public void addModel(String model) {
+        models.add(model);
+    }
+
+    public long getLoadMillis() {
+        return loadMillis;
+    }
+
+    public void setLoadMillis(long loadMillis) {
+        this.loadMillis = loadMillis;
+    }
+
+    public long getRequestMillis() {
+        return requestMillis;
+    }
+
+    public void setRequestMillis(long requestMillis) {
+        this.requestMillis = requestMillis;
+    }
+
+    public long getPromptTokenMicros() {
+        return promptTokenMicros;
+    }
+
+    public void setPromptTokenMicros(long promptTokenMicros) {
+        this.promptTokenMicros = promptTokenMicros;
+    }
+
+    public long getTokenMicros() {
+        return tokenMicros;
+    }
+
+    public void setTokenMicros(long tokenMicros) {
+        this.tokenMicros = tokenMicros;
+    }
+
+    public int getParallelSlots() {
+        return parallelSlots;
+    }
+
+    public void setParallelSlots(int parallelSlots) {
+        this.parallelSlots = parallelSlots;
+    }
+
+    public double getErrorRate() {
+        return errorRate;
+    }
+
+    public void setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public Path getReplayFile() {
+        return replayFile;
+    }
+
+    public void setReplayFile(Path replayFile) {
+        this.replayFile = replayFile;
+    }
+
+    public Path getRecordFile() {
+        return recordFile;
+    }
+
+    public void setRecordFile(Path recordFile) {
+        this.recordFile = recordFile;
+    }
+
+    public String getUpstreamUrl() {
+        return upstreamUrl;
+    }
+
+    public void setUpstreamUrl(String upstreamUrl) {
+        this.upstreamUrl = upstreamUrl;
+    }
+
+    /**
+     * Applies a simulator option from the command line.
+     *
+     * @param args The command line arguments
+     * @param index The index of the option
+     * @return The index of the last argument consumed, or -1 if the argument isn't a simulator option
+     * @throws IllegalArgumentException If the option's value is missing or invalid
+     */
+    int parseOption(String[] args, int index) {
+        String arg = args[index];
+        switch (arg) {
+            case "--port":
+                port = nonNegativeInt(value(args, index + 1, arg), arg);
+                return index + 1;
+            case "--unix-socket":
+                unixSocket = Paths.get(value(args, index + 1, arg));
+                return index + 1;
+            case "--model":
+                models.add(value(args, index + 1, arg));
+                return index + 1;
+            case "--load-ms":
+                loadMillis = nonNegativeInt(value(args, index + 1, arg), arg);
+                return index + 1;
+            case "--request-ms":
+                requestMillis = nonNegativeInt(value(args, index + 1, arg), arg);
+                return index + 1;
+            case "--prompt-token-us":
+                promptTokenMicros = nonNegativeInt(value(args, index + 1, arg), arg);
+                return index + 1;
+            case "--token-us":
+                tokenMicros = nonNegativeInt(value(args, index + 1, arg), arg);
+                return index + 1;
+            case "--slots":
+                parallelSlots = Math.max(1, nonNegativeInt(value(args, index + 1, arg), arg));
+                return index + 1;
+            case "--error-rate":
+                errorRate = fraction(value(args, index + 1, arg), arg);
+                return index + 1;
+            case "--seed":
+                seed = nonNegativeInt(value(args, index + 1, arg), arg);
+                return index + 1;
+            case "--replay":
+                replayFile = Paths.get(value(args, index + 1, arg));
+                return index + 1;
+            case "--record":
+                recordFile = Paths.get(value(args, index + 1, arg));
+                return index + 1;
+            case "--upstream":
+                upstreamUrl = stripTrailingSlash(value(args, index + 1, arg));
+                return index + 1;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException If recording is requested without an upstream server
+     */
+    void validate() {
+        if (recordFile != null && upstreamUrl == null) {
+            throw new IllegalArgumentException("--record requires --upstream");
+        }
+    }
+
+    static String value(String[] args, int index, String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + option);
+        }
+        return args[index];
+    }
+
+    static int nonNegativeInt(String value, String option) {
+        try {
+            int parsed = Integer.parseInt(value);
+            if (parsed >= 0) {
+                return parsed;
+            }
+        } catch (NumberFormatException ignored) {
+            // Reported below
+        }
+        throw new IllegalArgumentException(option + " must be zero or a positive number: " + value);
+    }
+
+    private static double fraction(String value, String option) {
+        try {
+            double parsed = Double.parseDouble(value);
+            if (parsed >= 0 && parsed <= 1) {
+                return parsed;
+            }
+        } catch (NumberFormatException ignored) {
+            // Reported below
+        }
+        throw new IllegalArgumentException(option + " must be between 0 and 1: " + value);
+    }
+
+    static String stripTrailingSlash(String url) {
+        return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    }
+}
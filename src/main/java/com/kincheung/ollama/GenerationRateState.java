@@ -0,0 +1,52 @@
+package com.kincheung.ollama;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.components.PersistentStateComponent;
+import com.intellij.openapi.components.RoamingType;
+import com.intellij.openapi.components.State;
+import com.intellij.openapi.components.Storage;
+import com.intellij.util.xmlb.XmlSerializerUtil;
+import com.kincheung.ollama.core.ModelRates;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Persistent, application-level record of the learned generation speed of each
+ * model, used to estimate progress and remaining time. The rates depend on the
+ * machine running Ollama, so they are not synchronized between IDE installations.
+ */
+@State(
+    name = "com.kincheung.ollama.GenerationRateState",
+    storages = @Storage(value = "OllamaTestGeneratorRates.xml", roamingType = RoamingType.DISABLED)
+)
+public class GenerationRateState implements PersistentStateComponent<GenerationRateState> {
+    public Map<String, ModelRates> models = new HashMap<>();
+
+    public static GenerationRateState getInstance() {
+        return ApplicationManager.getApplication().getService(GenerationRateState.class);
+    }
+
+    /**
+     * Returns the rates of a model, starting from typical rates for a new model.
+     *
+     * @param model The model name
+     * @return The live rates of the model
+     */
+    @NotNull
+    public synchronized ModelRates ratesFor(@NotNull String model) {
+        return models.computeIfAbsent(model, key -> new ModelRates());
+    }
+
+    @Override
+    public synchronized @Nullable GenerationRateState getState() {
+        return this;
+    }
+
+    @Override
+    public synchronized void loadState(@NotNull GenerationRateState state) {
+        XmlSerializerUtil.copyBean(state, this);
+    }
+}
@@ -0,0 +1,53 @@
+package com.kincheung.ollama;
+
+import com.intellij.openapi.actionSystem.ActionUpdateThread;
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.actionSystem.CommonDataKeys;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.kincheung.ollama.batch.BatchTestGenerationTask;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Action for generating unit tests with Ollama for every untested class under
+ * the selected files and directories.
+ * This action appears in the project view popup menu.
+ */
+public class OllamaBatchTestGeneratorAction extends AnAction {
+
+    @Override
+    public void actionPerformed(@NotNull AnActionEvent e) {
+        Project project = e.getProject();
+        VirtualFile[] files = e.getData(CommonDataKeys.VIRTUAL_FILE_ARRAY);
+        if (project == null || files == null || files.length == 0) {
+            return;
+        }
+
+        List<VirtualFile> roots = Arrays.asList(files);
+        OllamaSettingsState settings = OllamaSettingsState.getInstance();
+        ProgressManager.getInstance().run(new BatchTestGenerationTask(
+                project,
+                roots,
+                settings.includeMockito,
+                settings.includeComments
+        ));
+    }
+
+    @Override
+    public void update(@NotNull AnActionEvent e) {
+        VirtualFile[] files = e.getData(CommonDataKeys.VIRTUAL_FILE_ARRAY);
+        boolean enabled = e.getProject() != null && files != null && files.length > 0
+                && Arrays.stream(files).anyMatch(file -> file.isDirectory() || "java".equals(file.getExtension()));
+        e.getPresentation().setEnabledAndVisible(enabled);
+    }
+
+    @Override
+    public @NotNull ActionUpdateThread getActionUpdateThread() {
+        return ActionUpdateThread.BGT;
+    }
+}
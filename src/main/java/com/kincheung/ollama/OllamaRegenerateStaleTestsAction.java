@@ -0,0 +1,63 @@
+package com.kincheung.ollama;
+
+import com.intellij.openapi.actionSystem.ActionUpdateThread;
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.actionSystem.CommonDataKeys;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.Messages;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiJavaFile;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Action for regenerating the tests of the methods of a class that changed
+ * since their tests were generated.
+ * This action appears in the editor context menu and project view popup menu.
+ */
+public class OllamaRegenerateStaleTestsAction extends AnAction {
+
+    @Override
+    public void actionPerformed(@NotNull AnActionEvent e) {
+        Project project = e.getProject();
+        if (project == null) {
+            return;
+        }
+
+        PsiFile psiFile = e.getData(CommonDataKeys.PSI_FILE);
+        if (!(psiFile instanceof PsiJavaFile)) {
+            Messages.showErrorDialog(project, "Please select a Java file", "Cannot Regenerate Tests");
+            return;
+        }
+
+        PsiClass targetClass = OllamaTestGeneratorAction.getPsiClassFromContext(
+                (PsiJavaFile) psiFile, e.getData(CommonDataKeys.EDITOR));
+        if (targetClass == null) {
+            Messages.showErrorDialog(project, "No class found in the current context", "Cannot Regenerate Tests");
+            return;
+        }
+
+        OllamaSettingsState settings = OllamaSettingsState.getInstance();
+        ProgressManager.getInstance().run(new StaleTestRegenerationTask(
+                project,
+                targetClass,
+                settings.includeMockito,
+                settings.includeComments
+        ));
+    }
+
+    @Override
+    public void update(@NotNull AnActionEvent e) {
+        VirtualFile file = e.getData(CommonDataKeys.VIRTUAL_FILE);
+        e.getPresentation().setEnabledAndVisible(
+                e.getProject() != null && file != null && "java".equals(file.getExtension()));
+    }
+
+    @Override
+    public @NotNull ActionUpdateThread getActionUpdateThread() {
+        return ActionUpdateThread.BGT;
+    }
+}
@@ -1,166 +1,577 @@
 package com.kincheung.ollama;
 
-import com.google.gson.Gson;
-import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
-import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import com.kincheung.ollama.core.GenerationProgress;
+import com.kincheung.ollama.core.GenerationStage;
+import com.kincheung.ollama.core.GenerationTrace;
+import com.kincheung.ollama.core.HedgedRequest;
+import com.kincheung.ollama.core.JavaCodeExtractor;
+import com.kincheung.ollama.core.LatencyTracker;
+import com.kincheung.ollama.core.ModelRates;
+import com.kincheung.ollama.core.OllamaClient;
+import com.kincheung.ollama.core.PackedClass;
+import com.kincheung.ollama.core.PromptBuilder;
+import com.kincheung.ollama.core.SharedTestCache;
+import com.kincheung.ollama.core.StructuredTest;
+import com.kincheung.ollama.core.StructuredTestParser;
+import com.kincheung.ollama.core.TokenEstimator;
 import com.kincheung.ollama.model.OllamaRequest;
 import com.kincheung.ollama.model.OllamaResponse;
-import okhttp3.*;
-import org.jetbrains.annotations.NotNull;
+import com.kincheung.ollama.util.GeneratedTestCache;
 
 import java.io.IOException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
 /**
- * Service for interacting with the Ollama API.
+ * Service for interacting with the Ollama API from the IDE, using the plugin settings.
+ * Prompt building, the HTTP client and code extraction live in the IDE-independent
+ * core module. Returned futures are completed on OkHttp's dispatcher threads, never on the EDT;
+ * callers hop to the EDT themselves for UI work.
+ * <p>
+ * Interactive services can hedge: if a generation hasn't returned a usable class
+ * by the configured percentile of recent latencies, the same prompt is also sent
+ * to the hedge endpoint or model, the first usable result wins and the other
+ * request is cancelled.
+ * <p>
+ * With structured output enabled, the model returns the imports, fixtures and
+ * test methods as separate JSON fields, which are parsed while the response
+ * streams in and can be handed to a listener one by one.
+ * <p>
+ * Generations are recorded as Flight Recorder events (see {@link GenerationTrace});
+ * responses are always streamed so that the time to the first token can be told
+ * apart from decoding. The timings Ollama reports are recorded in the model's
+ * {@link ModelRates}, from which a {@link GenerationProgress} estimates how far
+ * a request has come.
+ * <p>
+ * If a shared test cache directory is configured, tests are looked up in and
+ * published to a {@link SharedTestCache} there, so that a class generated by one
+ * developer doesn't have to be generated again by the others.
  */
 public class OllamaService {
     private static final Logger LOG = Logger.getInstance(OllamaService.class);
-    private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
-    private static final Gson gson = new Gson();
-    private final OkHttpClient client;
+    private static final int LATENCY_WINDOW = 200;
+    private static final int MIN_LATENCY_SAMPLES = 20;
+    private static final Map<String, LatencyTracker> LATENCIES = new ConcurrentHashMap<>();
+    private static SharedTestCache sharedCache;
+
+    private final OllamaClient client;
+    private final String modelName;
+    private final boolean hedged;
 
     public OllamaService() {
+        this(OllamaSettingsState.getInstance().modelName);
+    }
+
+    /**
+     * @param modelName The model to generate with, instead of the configured one
+     */
+    public OllamaService(String modelName) {
+        this(modelName, false);
+    }
+
+    /**
+     * @param modelName The model to generate with, instead of the configured one
+     * @param hedged Whether to hedge slow generations if hedging is enabled in the settings;
+     *               meant for interactive generations only, since hedging adds load
+     */
+    public OllamaService(String modelName, boolean hedged) {
         OllamaSettingsState settings = OllamaSettingsState.getInstance();
-        client = new OkHttpClient.Builder()
-                .connectTimeout(10, TimeUnit.SECONDS)
-                .writeTimeout(settings.timeoutSeconds, TimeUnit.SECONDS)
-                .readTimeout(settings.timeoutSeconds, TimeUnit.SECONDS)
-                .build();
+        client = new OllamaClient(settings.ollamaUrl, settings.timeoutSeconds);
+        this.modelName = modelName;
+        this.hedged = hedged;
     }
 
     /**
-     * Generates a unit test for a Java class using Ollama.
+     * Generates a unit test for a Java class using Ollama, giving the model the
+     * signatures of the class's collaborators so it doesn't have to guess them.
+     * With structured output enabled, each part of the test is passed to the
+     * options' listener as soon as it has been decoded. The prompt build, the
+     * request and the extraction are recorded as stages of the options' trace.
      *
      * @param className The name of the class
      * @param classCode The source code of the class
+     * @param collaboratorContext Signature summaries of the class's collaborators, may be empty
      * @param usesMockito Whether to include Mockito in the generated test
      * @param includeComments Whether to include comments in the generated test
-     * @param indicator Progress indicator for UI feedback
+     * @param options Example tests, listener, trace and progress of the generation
      * @return A CompletableFuture with the generated test code
      */
     public CompletableFuture<String> generateTest(
             String className,
             String classCode,
+            String collaboratorContext,
             boolean usesMockito,
             boolean includeComments,
-            ProgressIndicator indicator) {
-        
+            GenerationOptions options) {
+        GenerationTrace generationTrace = options.trace != null ? options.trace : GenerationTrace.start(className + "Test");
+        GenerationTrace.Span span = generationTrace.stage(GenerationStage.PROMPT);
+        String prompt = PromptBuilder.buildPrompt(
+                className, classCode, collaboratorContext, options.exampleTests, usesMockito, includeComments);
+        endPromptStage(span, classCode, prompt);
+        return finishIfOwned(sendGenerateRequest(prompt, className + "Test", options.listener, generationTrace, options.progress),
+                options.trace, generationTrace);
+    }
+
+    /**
+     * Takes the test pre-generated for exactly this request, if there is one
+     * (see {@link GeneratedTestCache}).
+     *
+     * @param className The name of the class
+     * @param classCode The source code of the class
+     * @param collaboratorContext Signature summaries of the class's collaborators, may be empty
+     * @param exampleTests Source code of similar existing test classes, may be empty
+     * @param usesMockito Whether to include Mockito in the generated test
+     * @param includeComments Whether to include comments in the generated test
+     * @return The cached test code, or null if none was pre-generated
+     */
+    public String takeCachedTest(
+            String className,
+            String classCode,
+            String collaboratorContext,
+            List<String> exampleTests,
+            boolean usesMockito,
+            boolean includeComments) {
+        return GeneratedTestCache.getInstance().take(
+                cacheKey(className, classCode, collaboratorContext, exampleTests, usesMockito, includeComments));
+    }
+
+    /**
+     * Caches a pre-generated test under the request that
+     * {@link #generateTest(String, String, String, boolean, boolean, GenerationOptions)}
+     * would send for the same arguments.
+     *
+     * @param className The name of the class
+     * @param classCode The source code of the class
+     * @param collaboratorContext Signature summaries of the class's collaborators, may be empty
+     * @param exampleTests Source code of similar existing test classes, may be empty
+     * @param usesMockito Whether to include Mockito in the generated test
+     * @param includeComments Whether to include comments in the generated test
+     * @param testCode The generated test code
+     */
+    public void cacheTest(
+            String className,
+            String classCode,
+            String collaboratorContext,
+            List<String> exampleTests,
+            boolean usesMockito,
+            boolean includeComments,
+            String testCode) {
+        GeneratedTestCache.getInstance().put(
+                cacheKey(className, classCode, collaboratorContext, exampleTests, usesMockito, includeComments), testCode);
+    }
+
+    /**
+     * Looks up a test generated for the same class, model and options by anyone
+     * using the shared test cache directory. Reads the directory on the calling
+     * thread, so don't call it on the EDT.
+     *
+     * @param className The name of the class
+     * @param classCode The source code of the class
+     * @param collaboratorContext Signature summaries of the class's collaborators, may be empty
+     * @param usesMockito Whether to include Mockito in the generated test
+     * @param includeComments Whether to include comments in the generated test
+     * @return The shared test code, or null if there is none or no shared directory is configured
+     */
+    public String findSharedTest(
+            String className,
+            String classCode,
+            String collaboratorContext,
+            boolean usesMockito,
+            boolean includeComments) {
+        SharedTestCache cache = sharedCache();
+        if (cache == null) {
+            return null;
+        }
+        try {
+            return cache.get(sharedKey(className, classCode, collaboratorContext, usesMockito, includeComments));
+        } catch (IOException e) {
+            LOG.info("Could not read the shared test cache at " + cache.getDirectory(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Publishes a valid generated test to the shared test cache directory in the
+     * background, if one is configured. Example tests aren't part of the key,
+     * since they depend on each developer's index.
+     *
+     * @param className The name of the class
+     * @param classCode The source code of the class
+     * @param collaboratorContext Signature summaries of the class's collaborators, may be empty
+     * @param usesMockito Whether to include Mockito in the generated test
+     * @param includeComments Whether to include comments in the generated test
+     * @param testCode The generated test code
+     */
+    public void shareTest(
+            String className,
+            String classCode,
+            String collaboratorContext,
+            boolean usesMockito,
+            boolean includeComments,
+            String testCode) {
+        SharedTestCache cache = sharedCache();
+        if (cache == null) {
+            return;
+        }
+        String key = sharedKey(className, classCode, collaboratorContext, usesMockito, includeComments);
+        AppExecutorUtil.getAppExecutorService().execute(() -> {
+            try {
+                cache.put(key, testCode);
+            } catch (IOException e) {
+                LOG.info("Could not write to the shared test cache at " + cache.getDirectory(), e);
+            }
+        });
+    }
+
+    private String sharedKey(
+            String className,
+            String classCode,
+            String collaboratorContext,
+            boolean usesMockito,
+            boolean includeComments) {
+        return SharedTestCache.key(modelName, className, classCode, collaboratorContext,
+                String.valueOf(usesMockito), String.valueOf(includeComments));
+    }
+
+    /**
+     * Returns the shared test cache for the configured directory and size limit,
+     * or null if no directory is configured.
+     */
+    private static synchronized SharedTestCache sharedCache() {
         OllamaSettingsState settings = OllamaSettingsState.getInstance();
-        
-        // Build the prompt for the model
-        StringBuilder promptBuilder = new StringBuilder();
-        promptBuilder.append("Generate a JUnit 5 unit test for the following Java class.\n\n");
-        
-        if (usesMockito) {
-            promptBuilder.append("Use Mockito for mocking dependencies.\n");
+        if (settings.sharedCacheDirectory.isBlank()) {
+            return null;
         }
-        
-        if (includeComments) {
-            promptBuilder.append("Include clear comments explaining the tests.\n");
+        Path directory;
+        try {
+            directory = Path.of(settings.sharedCacheDirectory.trim());
+        } catch (InvalidPathException e) {
+            LOG.warn("Invalid shared test cache directory: " + settings.sharedCacheDirectory, e);
+            return null;
         }
-        
-        promptBuilder.append("\nHere is the class to test:\n\n```java\n");
-        promptBuilder.append(classCode);
-        promptBuilder.append("\n```\n\n");
-        promptBuilder.append("Generate a complete test class named ").append(className).append("Test with comprehensive test methods for each public method.");
-        
-        String prompt = promptBuilder.toString();
-        
-        // Create the request object
+        long maxBytes = settings.sharedCacheMaxMegabytes * 1024L * 1024L;
+        if (sharedCache == null || !sharedCache.getDirectory().equals(directory) || sharedCache.getMaxBytes() != maxBytes) {
+            sharedCache = new SharedTestCache(directory, maxBytes);
+        }
+        return sharedCache;
+    }
+
+    private String cacheKey(
+            String className,
+            String classCode,
+            String collaboratorContext,
+            List<String> exampleTests,
+            boolean usesMockito,
+            boolean includeComments) {
+        String prompt = PromptBuilder.buildPrompt(className, classCode, collaboratorContext, exampleTests, usesMockito, includeComments);
+        if (OllamaSettingsState.getInstance().structuredOutput) {
+            prompt = PromptBuilder.withStructuredOutput(prompt);
+        }
+        return GeneratedTestCache.key(modelName, prompt);
+    }
+
+    /**
+     * Generates the tests of several small classes with a single request.
+     * Classes whose section of the response is missing or incomplete are left
+     * out of the result, so the caller can generate them separately.
+     *
+     * @param classes The classes to test
+     * @param usesMockito Whether to include Mockito in the generated tests
+     * @param includeComments Whether to include comments in the generated tests
+     * @param progress Tracks the progress of the request, may be null
+     * @return A CompletableFuture with the generated test code keyed by test class name
+     */
+    public CompletableFuture<Map<String, String>> generatePackedTests(
+            List<PackedClass> classes,
+            boolean usesMockito,
+            boolean includeComments,
+            GenerationProgress progress) {
+        GenerationTrace trace = GenerationTrace.start(classes.size() + " packed test classes");
+        trace.setModel(modelName);
+        GenerationTrace.Span span = trace.stage(GenerationStage.PROMPT);
+        String prompt = PromptBuilder.buildPackedPrompt(classes, usesMockito, includeComments);
+        List<String> testClassNames = new ArrayList<>();
+        int inputChars = 0;
+        for (PackedClass packedClass : classes) {
+            testClassNames.add(packedClass.getTestClassName());
+            inputChars += packedClass.getClassCode().length();
+        }
+        span.setInputChars(inputChars);
+        endPromptStage(span, null, prompt);
+
         OllamaRequest request = new OllamaRequest();
-        request.setModel(settings.modelName);
+        request.setModel(modelName);
         request.setPrompt(prompt);
-        request.setStream(false);
-        
-        String requestJson = gson.toJson(request);
-        
-        // Create the HTTP request
-        RequestBody body = RequestBody.create(requestJson, JSON);
-        Request httpRequest = new Request.Builder()
-                .url(settings.ollamaUrl + "/api/generate")
-                .post(body)
-                .build();
-        
-        // Create a CompletableFuture to return the result asynchronously
-        CompletableFuture<String> future = new CompletableFuture<>();
-        
-        // Execute the request asynchronously
-        client.newCall(httpRequest).enqueue(new Callback() {
-            @Override
-            public void onFailure(@NotNull Call call, @NotNull IOException e) {
-                LOG.error("Error generating test with Ollama", e);
-                ApplicationManager.getApplication().invokeLater(() -> 
-                    future.completeExceptionally(e)
-                );
+
+        int promptTokens = TokenEstimator.estimateTokens(prompt);
+        ModelRates rates = GenerationRateState.getInstance().ratesFor(modelName);
+        CompletableFuture<OllamaResponse> response = client.generateStream(
+                request, trackFragments(rates, promptTokens, progress), trace);
+        CompletableFuture<Map<String, String>> future = response.thenApply(ollamaResponse -> {
+            recordRates(rates, promptTokens, ollamaResponse, progress);
+            GenerationTrace.Span extraction = trace.stage(GenerationStage.EXTRACTION);
+            Map<String, String> tests = JavaCodeExtractor.splitPackedResponse(ollamaResponse.getResponse(), testClassNames);
+            extraction.setInputChars(ollamaResponse.getResponse().length());
+            extraction.end();
+            return tests;
+        });
+        finishIfOwned(future, null, trace);
+        future.whenComplete((result, error) -> {
+            if (future.isCancelled()) {
+                response.cancel(true);
+            } else if (error != null) {
+                LOG.warn("Error generating packed tests with Ollama", error);
             }
+        });
+        return future;
+    }
 
-            @Override
-            public void onResponse(@NotNull Call call, @NotNull Response response) throws IOException {
-                try (ResponseBody responseBody = response.body()) {
-                    if (!response.isSuccessful() || responseBody == null) {
-                        String errorMsg = "Error from Ollama: " + response.code() + " - " + response.message();
-                        LOG.error(errorMsg);
-                        ApplicationManager.getApplication().invokeLater(() -> 
-                            future.completeExceptionally(new IOException(errorMsg))
-                        );
-                        return;
-                    }
-
-                    String responseJson = responseBody.string();
-                    OllamaResponse ollamaResponse = gson.fromJson(responseJson, OllamaResponse.class);
-                    
-                    // Extract the code from the response
-                    String testCode = ollamaResponse.getResponse();
-                    
-                    // Clean up the response to extract just the Java code if it's wrapped in markdown
-                    testCode = extractJavaCode(testCode);
-                    
-                    final String finalCode = testCode;
-                    ApplicationManager.getApplication().invokeLater(() -> 
-                        future.complete(finalCode)
-                    );
-                } catch (Exception e) {
-                    LOG.error("Error processing Ollama response", e);
-                    ApplicationManager.getApplication().invokeLater(() -> 
-                        future.completeExceptionally(e)
-                    );
+    /**
+     * Generates tests for selected methods of a class only, to be merged into an
+     * existing test class. Only the class skeleton and the bodies of the given
+     * methods are sent, so the cost is proportional to the number of methods.
+     * The options' example tests aren't used, since the existing test class
+     * already shows the conventions.
+     *
+     * @param className The name of the class
+     * @param classSkeleton The class declaration with its fields and constructor signatures
+     * @param methodsCode The source code of the methods to test
+     * @param existingFixture The fields and setup methods of the existing test class, may be empty
+     * @param usesMockito Whether to include Mockito in the generated test
+     * @param includeComments Whether to include comments in the generated test
+     * @param options Listener, trace and progress of the generation
+     * @return A CompletableFuture with the generated test code
+     */
+    public CompletableFuture<String> generateTestsForMethods(
+            String className,
+            String classSkeleton,
+            String methodsCode,
+            String existingFixture,
+            boolean usesMockito,
+            boolean includeComments,
+            GenerationOptions options) {
+        GenerationTrace generationTrace = options.trace != null ? options.trace : GenerationTrace.start(className + "Test");
+        GenerationTrace.Span span = generationTrace.stage(GenerationStage.PROMPT);
+        String prompt = PromptBuilder.buildMethodsPrompt(className, classSkeleton, methodsCode, existingFixture, usesMockito, includeComments);
+        endPromptStage(span, classSkeleton + methodsCode, prompt);
+        return finishIfOwned(sendGenerateRequest(prompt, className + "Test", options.listener, generationTrace, options.progress),
+                options.trace, generationTrace);
+    }
+
+    /**
+     * Sends a prompt to the Ollama generate endpoint and extracts the Java code
+     * from the response, or assembles it from the parts of a structured response.
+     *
+     * @param prompt The prompt to send
+     * @param testClassName The name of the test class, used to assemble structured responses
+     * @param listener Receives the parts of a structured response as they arrive, may be null
+     * @param trace The generation to record the request in
+     * @param progress Tracks the progress of the request, may be null
+     * @return A CompletableFuture with the extracted code
+     */
+    private CompletableFuture<String> sendGenerateRequest(
+            String prompt,
+            String testClassName,
+            StructuredTestParser.Listener listener,
+            GenerationTrace trace,
+            GenerationProgress progress) {
+        OllamaSettingsState settings = OllamaSettingsState.getInstance();
+        boolean structured = settings.structuredOutput;
+        // The network stages of a hedge request carry the hedge model themselves
+        trace.setModel(modelName);
+        String fullPrompt = structured ? PromptBuilder.withStructuredOutput(prompt) : prompt;
+        LatencyTracker latencies = LATENCIES.computeIfAbsent(
+                client.getBaseUrl() + "|" + modelName, key -> new LatencyTracker(LATENCY_WINDOW, MIN_LATENCY_SAMPLES));
+        long start = System.nanoTime();
+
+        CompletableFuture<String> future;
+        // Parts already passed to a listener can't be taken back, so those requests aren't hedged
+        if (hedged && settings.hedgeRequests && listener == null) {
+            String hedgeUrl = settings.hedgeOllamaUrl.isBlank() ? settings.ollamaUrl : settings.hedgeOllamaUrl.trim();
+            String hedgeModel = settings.hedgeModelName.isBlank() ? modelName : settings.hedgeModelName.trim();
+            long deadline = latencies.percentile(settings.hedgePercentile);
+            if (deadline < 0) {
+                // Not enough history yet, only hedge requests that are clearly stuck
+                deadline = settings.timeoutSeconds * 1000L / 2;
+            }
+            long hedgeAfter = deadline;
+            future = HedgedRequest.hedge(
+                    () -> generate(client, modelName, fullPrompt, testClassName, structured, true, null, trace, progress),
+                    () -> {
+                        LOG.info("No usable response from " + modelName + " after " + hedgeAfter + " ms, hedging with "
+                                + hedgeModel + " at " + hedgeUrl);
+                        return generate(new OllamaClient(hedgeUrl, settings.timeoutSeconds), hedgeModel, fullPrompt,
+                                testClassName, structured, true, null, trace, null);
+                    },
+                    hedgeAfter,
+                    AppExecutorUtil.getAppScheduledExecutorService());
+        } else {
+            future = generate(client, modelName, fullPrompt, testClassName, structured, false, listener, trace, progress);
+        }
+
+        future.whenComplete((result, error) -> {
+            if (error == null) {
+                latencies.record((System.nanoTime() - start) / 1_000_000);
+            } else if (!future.isCancelled()) {
+                LOG.error("Error generating test with Ollama", error);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Sends a prompt to one endpoint and model. When hedging, a response without
+     * a complete class fails so that the other request can still win. A structured
+     * response without any test method always fails. Free-form responses are
+     * streamed too, to record the time to the first token and follow the progress.
+     * The rates Ollama reports are learned for the model either way.
+     */
+    private static CompletableFuture<String> generate(
+            OllamaClient ollamaClient,
+            String model,
+            String prompt,
+            String testClassName,
+            boolean structured,
+            boolean requireClass,
+            StructuredTestParser.Listener listener,
+            GenerationTrace trace,
+            GenerationProgress progress) {
+        // Create the request object
+        OllamaRequest request = new OllamaRequest();
+        request.setModel(model);
+        request.setPrompt(prompt);
+        int promptTokens = TokenEstimator.estimateTokens(prompt);
+        ModelRates rates = GenerationRateState.getInstance().ratesFor(model);
+        Consumer<String> fragments = trackFragments(rates, promptTokens, progress);
+        
+        CompletableFuture<OllamaResponse> response;
+        CompletableFuture<String> future;
+        if (structured) {
+            request.setFormat(StructuredTest.schema());
+            StructuredTestParser parser = new StructuredTestParser(listener);
+            response = ollamaClient.generateStream(request, fragment -> {
+                parser.feed(fragment);
+                fragments.accept(fragment);
+            }, trace);
+            future = response.thenApply(ollamaResponse -> {
+                recordRates(rates, promptTokens, ollamaResponse, progress);
+                GenerationTrace.Span span = trace.stage(GenerationStage.EXTRACTION);
+                StructuredTest test = parser.getResult();
+                if (test.getTestMethods().isEmpty()) {
+                    span.end();
+                    throw new IllegalStateException(model + " did not return any test method");
                 }
+                String code = test.toJavaSource(testClassName);
+                span.setInputChars(ollamaResponse.getResponse().length());
+                span.setOutputChars(code.length());
+                span.end();
+                return code;
+            });
+        } else {
+            response = ollamaClient.generateStream(request, fragments, trace);
+            future = response.thenApply(ollamaResponse -> {
+                recordRates(rates, promptTokens, ollamaResponse, progress);
+                GenerationTrace.Span span = trace.stage(GenerationStage.EXTRACTION);
+                // Clean up the response to extract just the Java code if it's wrapped in markdown
+                String code = JavaCodeExtractor.extractJavaCode(ollamaResponse.getResponse());
+                span.setInputChars(ollamaResponse.getResponse().length());
+                span.setOutputChars(code.length());
+                span.end();
+                if (requireClass && !JavaCodeExtractor.looksLikeJavaClass(code)) {
+                    throw new IllegalStateException(model + " did not return a complete Java class");
+                }
+                return code;
+            });
+        }
+        
+        future.whenComplete((result, error) -> {
+            if (future.isCancelled()) {
+                response.cancel(true);
             }
         });
         
         return future;
     }
-    
+
     /**
-     * Extract Java code from the response, removing any markdown formatting.
-     * 
-     * @param text The response text that might contain markdown
-     * @return The cleaned Java code
-     */
-    private String extractJavaCode(String text) {
-        // If the response is wrapped in markdown code blocks, extract the Java code
-        if (text.contains("```java")) {
-            int start = text.indexOf("```java") + 7;
-            int end = text.lastIndexOf("```");
-            if (end > start) {
-                return text.substring(start, end).trim();
-            }
+     * Begins following a request and returns the consumer counting its streamed fragments.
+     */
+    private static Consumer<String> trackFragments(ModelRates rates, int promptTokens, GenerationProgress progress) {
+        if (progress == null) {
+            return fragment -> {};
         }
-        
-        // If there's just a generic code block
-        if (text.contains("```")) {
-            int start = text.indexOf("```") + 3;
-            int end = text.lastIndexOf("```");
-            if (end > start) {
-                return text.substring(start, end).trim();
+        progress.begin(rates, promptTokens);
+        return fragment -> progress.fragment();
+    }
+
+    /**
+     * Learns the model's rates from a completed response and completes its progress.
+     */
+    private static void recordRates(ModelRates rates, int promptTokens, OllamaResponse response, GenerationProgress progress) {
+        rates.record(promptTokens, response.getPromptEvalCount(), response.getPromptEvalDuration(),
+                response.getEvalCount(), response.getEvalDuration(), response.getTotalDuration());
+        if (progress != null) {
+            progress.finish();
+        }
+    }
+
+    /**
+     * Ends a prompt stage, counting the prompt tokens only if the stage is recorded.
+     */
+    private static void endPromptStage(GenerationTrace.Span span, String input, String prompt) {
+        if (span.isRecording()) {
+            if (input != null) {
+                span.setInputChars(input.length());
             }
+            span.setOutputChars(prompt.length());
+            span.setPromptTokens(TokenEstimator.estimateTokens(prompt));
         }
-        
-        // Otherwise return the whole text
-        return text;
+        span.end();
+    }
+
+    /**
+     * Finishes a trace the service started itself once the generation completes;
+     * traces passed in by the caller are finished by the caller.
+     */
+    private static <T> CompletableFuture<T> finishIfOwned(
+            CompletableFuture<T> future,
+            GenerationTrace callerTrace,
+            GenerationTrace trace) {
+        if (callerTrace == null) {
+            future.whenComplete((result, error) ->
+                    trace.finish(error == null ? "generated" : future.isCancelled() ? "cancelled" : "failed"));
+        }
+        return future;
+    }
+
+    /**
+     * Estimates the number of prompt tokens a generation request for a class will use,
+     * without contacting Ollama.
+     *
+     * @param className The name of the class
+     * @param classCode The source code of the class
+     * @param collaboratorContext Signature summaries of the class's collaborators, may be empty
+     * @param usesMockito Whether to include Mockito in the generated test
+     * @param includeComments Whether to include comments in the generated test
+     * @return The estimated prompt token count
+     */
+    public static int estimatePromptTokens(
+            String className,
+            String classCode,
+            String collaboratorContext,
+            boolean usesMockito,
+            boolean includeComments) {
+        return TokenEstimator.estimateTokens(
+                PromptBuilder.buildPrompt(className, classCode, collaboratorContext, usesMockito, includeComments));
     }
     
     /**
@@ -169,32 +580,51 @@ public class OllamaService {
      * @return A CompletableFuture that completes with true if Ollama is reachable
      */
     public CompletableFuture<Boolean> isOllamaAvailable() {
-        OllamaSettingsState settings = OllamaSettingsState.getInstance();
-        
-        Request request = new Request.Builder()
-                .url(settings.ollamaUrl + "/api/tags")
-                .build();
-        
-        CompletableFuture<Boolean> future = new CompletableFuture<>();
-        
-        client.newCall(request).enqueue(new Callback() {
-            @Override
-            public void onFailure(@NotNull Call call, @NotNull IOException e) {
-                ApplicationManager.getApplication().invokeLater(() -> 
-                    future.complete(false)
-                );
-            }
+        return client.isAvailable();
+    }
 
-            @Override
-            public void onResponse(@NotNull Call call, @NotNull Response response) {
-                boolean isAvailable = response.isSuccessful();
-                response.close();
-                ApplicationManager.getApplication().invokeLater(() -> 
-                    future.complete(isAvailable)
-                );
-            }
-        });
-        
-        return future;
+    /**
+     * The optional inputs and observers of a generation. All of them may be left
+     * out; {@code new GenerationOptions()} generates without examples, listener
+     * or progress, in a trace of its own.
+     */
+    public static class GenerationOptions {
+        private List<String> exampleTests = Collections.emptyList();
+        private StructuredTestParser.Listener listener;
+        private GenerationTrace trace;
+        private GenerationProgress progress;
+
+        /**
+         * @param exampleTests Source code of similar existing test classes to show the model
+         */
+        public GenerationOptions exampleTests(List<String> exampleTests) {
+            this.exampleTests = exampleTests;
+            return this;
+        }
+
+        /**
+         * @param listener Receives the parts of a structured response as they arrive;
+         *                 requests with a listener aren't hedged
+         */
+        public GenerationOptions listener(StructuredTestParser.Listener listener) {
+            this.listener = listener;
+            return this;
+        }
+
+        /**
+         * @param trace The generation to record the stages in; the caller finishes it
+         */
+        public GenerationOptions trace(GenerationTrace trace) {
+            this.trace = trace;
+            return this;
+        }
+
+        /**
+         * @param progress Tracks the progress of the request
+         */
+        public GenerationOptions progress(GenerationProgress progress) {
+            this.progress = progress;
+            return this;
+        }
     }
 }
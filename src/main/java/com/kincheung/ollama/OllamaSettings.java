@@ -1,5 +1,7 @@
 package com.kincheung.ollama;
 
+import com.kincheung.ollama.batch.BatchOrdering;
+
 /**
  * Interface defining Ollama settings methods.
  */
@@ -18,4 +20,85 @@ public interface OllamaSettings {
     
     int getTimeout();
     void setTimeout(int timeoutSeconds);
+    
+    boolean getMergeIntoExisting();
+    void setMergeIntoExisting(boolean mergeIntoExisting);
+    
+    BatchOrdering getBatchOrdering();
+    void setBatchOrdering(BatchOrdering batchOrdering);
+    
+    String getEmbeddingModel();
+    void setEmbeddingModel(String embeddingModel);
+    
+    int getExampleCount();
+    void setExampleCount(int exampleCount);
+    
+    String getSmallModelName();
+    void setSmallModelName(String smallModelName);
+    
+    int getSmallModelMaxLength();
+    void setSmallModelMaxLength(int smallModelMaxLength);
+    
+    int getSmallModelMaxMethods();
+    void setSmallModelMaxMethods(int smallModelMaxMethods);
+    
+    int getSmallModelMaxDependencies();
+    void setSmallModelMaxDependencies(int smallModelMaxDependencies);
+    
+    boolean getEscalateInvalidTests();
+    void setEscalateInvalidTests(boolean escalateInvalidTests);
+    
+    boolean getHedgeRequests();
+    void setHedgeRequests(boolean hedgeRequests);
+    
+    String getHedgeOllamaUrl();
+    void setHedgeOllamaUrl(String hedgeOllamaUrl);
+    
+    String getHedgeModelName();
+    void setHedgeModelName(String hedgeModelName);
+    
+    int getHedgePercentile();
+    void setHedgePercentile(int hedgePercentile);
+    
+    boolean getPackSmallClasses();
+    void setPackSmallClasses(boolean packSmallClasses);
+    
+    int getPackTokenBudget();
+    void setPackTokenBudget(int packTokenBudget);
+    
+    boolean getPauseBatchWhileBusy();
+    void setPauseBatchWhileBusy(boolean pauseBatchWhileBusy);
+    
+    int getBatchMaxCpuPercent();
+    void setBatchMaxCpuPercent(int batchMaxCpuPercent);
+    
+    boolean getStructuredOutput();
+    void setStructuredOutput(boolean structuredOutput);
+    
+    boolean getSpeculativeGeneration();
+    void setSpeculativeGeneration(boolean speculativeGeneration);
+    
+    int getSpeculativeIdleSeconds();
+    void setSpeculativeIdleSeconds(int speculativeIdleSeconds);
+    
+    int getSpeculativeMaxConcurrent();
+    void setSpeculativeMaxConcurrent(int speculativeMaxConcurrent);
+    
+    int getSpeculativeMaxCpuPercent();
+    void setSpeculativeMaxCpuPercent(int speculativeMaxCpuPercent);
+    
+    String getSharedCacheDirectory();
+    void setSharedCacheDirectory(String sharedCacheDirectory);
+    
+    int getSharedCacheMaxMegabytes();
+    void setSharedCacheMaxMegabytes(int sharedCacheMaxMegabytes);
+    
+    boolean getRunGeneratedTests();
+    void setRunGeneratedTests(boolean runGeneratedTests);
+    
+    int getTestWorkerCount();
+    void setTestWorkerCount(int testWorkerCount);
+    
+    boolean getFormatGeneratedCode();
+    void setFormatGeneratedCode(boolean formatGeneratedCode);
 }
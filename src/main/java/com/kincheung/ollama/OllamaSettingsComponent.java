@@ -4,6 +4,7 @@ import com.intellij.ui.components.JBCheckBox;
 import com.intellij.ui.components.JBLabel;
 import com.intellij.ui.components.JBTextField;
 import com.intellij.util.ui.FormBuilder;
+import com.kincheung.ollama.batch.BatchOrdering;
 
 import javax.swing.*;
 
@@ -16,19 +17,80 @@ public class OllamaSettingsComponent implements OllamaSettings {
     private final JBTextField modelNameField = new JBTextField();
     private final JBCheckBox includeMockitoCheckbox = new JBCheckBox("Include Mockito for mocking dependencies");
     private final JBCheckBox includeCommentsCheckbox = new JBCheckBox("Include comments in generated tests");
+    private final JBCheckBox mergeIntoExistingCheckbox = new JBCheckBox("Merge new tests into existing test classes");
     private final JSpinner timeoutSpinner = new JSpinner(new SpinnerNumberModel(60, 10, 300, 10));
+    private final JComboBox<BatchOrdering> batchOrderingComboBox = new JComboBox<>(BatchOrdering.values());
+    private final JBTextField embeddingModelField = new JBTextField();
+    private final JSpinner exampleCountSpinner = new JSpinner(new SpinnerNumberModel(2, 0, 5, 1));
+    private final JBTextField smallModelNameField = new JBTextField();
+    private final JSpinner smallModelMaxLengthSpinner = new JSpinner(new SpinnerNumberModel(3000, 500, 50000, 500));
+    private final JSpinner smallModelMaxMethodsSpinner = new JSpinner(new SpinnerNumberModel(8, 0, 100, 1));
+    private final JSpinner smallModelMaxDependenciesSpinner = new JSpinner(new SpinnerNumberModel(2, 0, 20, 1));
+    private final JBCheckBox escalateInvalidTestsCheckbox = new JBCheckBox("Regenerate invalid tests from the small model with the main model");
+    private final JBCheckBox hedgeRequestsCheckbox = new JBCheckBox("Hedge slow interactive generations");
+    private final JBTextField hedgeOllamaUrlField = new JBTextField();
+    private final JBTextField hedgeModelNameField = new JBTextField();
+    private final JSpinner hedgePercentileSpinner = new JSpinner(new SpinnerNumberModel(95, 50, 99, 1));
+    private final JBCheckBox packSmallClassesCheckbox = new JBCheckBox("Pack small classes into one request in batch runs");
+    private final JSpinner packTokenBudgetSpinner = new JSpinner(new SpinnerNumberModel(3000, 1000, 32000, 500));
+    private final JBCheckBox pauseBatchWhileBusyCheckbox = new JBCheckBox("Pause batch runs while the IDE is indexing or building");
+    private final JSpinner batchMaxCpuPercentSpinner = new JSpinner(new SpinnerNumberModel(50, 10, 100, 5));
+    private final JBCheckBox structuredOutputCheckbox = new JBCheckBox("Request structured output and insert test methods as they arrive (Ollama 0.5+)");
+    private final JBCheckBox speculativeGenerationCheckbox = new JBCheckBox("Pre-generate tests for edited untested classes in the background");
+    private final JSpinner speculativeIdleSecondsSpinner = new JSpinner(new SpinnerNumberModel(30, 5, 600, 5));
+    private final JSpinner speculativeMaxConcurrentSpinner = new JSpinner(new SpinnerNumberModel(1, 1, 4, 1));
+    private final JSpinner speculativeMaxCpuPercentSpinner = new JSpinner(new SpinnerNumberModel(25, 10, 100, 5));
+    private final JBTextField sharedCacheDirectoryField = new JBTextField();
+    private final JSpinner sharedCacheMaxMegabytesSpinner = new JSpinner(new SpinnerNumberModel(1024, 16, 102400, 64));
+    private final JBCheckBox runGeneratedTestsCheckbox = new JBCheckBox("Run generated tests and drop failing test methods (needs a built project)");
+    private final JSpinner testWorkerCountSpinner = new JSpinner(new SpinnerNumberModel(2, 1, 16, 1));
+    private final JBCheckBox formatGeneratedCodeCheckbox = new JBCheckBox("Format generated tests and optimize their imports");
 
     public OllamaSettingsComponent() {
         JPanel timeoutPanel = new JPanel();
         timeoutPanel.add(new JBLabel("Timeout (seconds):"));
         timeoutPanel.add(timeoutSpinner);
 
+        JPanel smallModelLimitsPanel = new JPanel();
+        smallModelLimitsPanel.add(new JBLabel("Up to"));
+        smallModelLimitsPanel.add(smallModelMaxLengthSpinner);
+        smallModelLimitsPanel.add(new JBLabel("characters,"));
+        smallModelLimitsPanel.add(smallModelMaxMethodsSpinner);
+        smallModelLimitsPanel.add(new JBLabel("methods,"));
+        smallModelLimitsPanel.add(smallModelMaxDependenciesSpinner);
+        smallModelLimitsPanel.add(new JBLabel("dependencies"));
+
         myMainPanel = FormBuilder.createFormBuilder()
                 .addLabeledComponent(new JBLabel("Ollama URL:"), ollamaUrlField, 1, false)
                 .addLabeledComponent(new JBLabel("Model name:"), modelNameField, 1, false)
                 .addComponent(includeMockitoCheckbox, 1)
                 .addComponent(includeCommentsCheckbox, 1)
+                .addComponent(mergeIntoExistingCheckbox, 1)
                 .addComponent(timeoutPanel, 1)
+                .addLabeledComponent(new JBLabel("Batch order:"), batchOrderingComboBox, 1, false)
+                .addLabeledComponent(new JBLabel("Embedding model:"), embeddingModelField, 1, false)
+                .addLabeledComponent(new JBLabel("Example tests per prompt:"), exampleCountSpinner, 1, false)
+                .addLabeledComponent(new JBLabel("Small model for simple classes:"), smallModelNameField, 1, false)
+                .addLabeledComponent(new JBLabel("Simple classes:"), smallModelLimitsPanel, 1, false)
+                .addComponent(escalateInvalidTestsCheckbox, 1)
+                .addComponent(hedgeRequestsCheckbox, 1)
+                .addLabeledComponent(new JBLabel("Hedge Ollama URL:"), hedgeOllamaUrlField, 1, false)
+                .addLabeledComponent(new JBLabel("Hedge model:"), hedgeModelNameField, 1, false)
+                .addLabeledComponent(new JBLabel("Hedge after latency percentile:"), hedgePercentileSpinner, 1, false)
+                .addComponent(packSmallClassesCheckbox, 1)
+                .addLabeledComponent(new JBLabel("Packed request token budget:"), packTokenBudgetSpinner, 1, false)
+                .addComponent(pauseBatchWhileBusyCheckbox, 1)
+                .addLabeledComponent(new JBLabel("Pause batch runs above IDE CPU load (%):"), batchMaxCpuPercentSpinner, 1, false)
+                .addComponent(structuredOutputCheckbox, 1)
+                .addComponent(speculativeGenerationCheckbox, 1)
+                .addLabeledComponent(new JBLabel("Pre-generate after idle (seconds):"), speculativeIdleSecondsSpinner, 1, false)
+                .addLabeledComponent(new JBLabel("Concurrent pre-generations:"), speculativeMaxConcurrentSpinner, 1, false)
+                .addLabeledComponent(new JBLabel("Pause pre-generation above IDE CPU load (%):"), speculativeMaxCpuPercentSpinner, 1, false)
+                .addLabeledComponent(new JBLabel("Shared test cache directory:"), sharedCacheDirectoryField, 1, false)
+                .addLabeledComponent(new JBLabel("Shared cache size limit (MB):"), sharedCacheMaxMegabytesSpinner, 1, false)
+                .addComponent(runGeneratedTestsCheckbox, 1)
+                .addLabeledComponent(new JBLabel("Test runner JVMs:"), testWorkerCountSpinner, 1, false)
+                .addComponent(formatGeneratedCodeCheckbox, 1)
                 .addComponentFillVertically(new JPanel(), 0)
                 .getPanel();
     }
@@ -77,6 +139,16 @@ public class OllamaSettingsComponent implements OllamaSettings {
         includeCommentsCheckbox.setSelected(includeComments);
     }
 
+    @Override
+    public boolean getMergeIntoExisting() {
+        return mergeIntoExistingCheckbox.isSelected();
+    }
+
+    @Override
+    public void setMergeIntoExisting(boolean mergeIntoExisting) {
+        mergeIntoExistingCheckbox.setSelected(mergeIntoExisting);
+    }
+
     @Override
     public int getTimeout() {
         return (Integer) timeoutSpinner.getValue();
@@ -86,4 +158,264 @@ public class OllamaSettingsComponent implements OllamaSettings {
     public void setTimeout(int timeoutSeconds) {
         timeoutSpinner.setValue(timeoutSeconds);
     }
+
+    @Override
+    public BatchOrdering getBatchOrdering() {
+        return (BatchOrdering) batchOrderingComboBox.getSelectedItem();
+    }
+
+    @Override
+    public void setBatchOrdering(BatchOrdering batchOrdering) {
+        batchOrderingComboBox.setSelectedItem(batchOrdering);
+    }
+
+    @Override
+    public String getEmbeddingModel() {
+        return embeddingModelField.getText();
+    }
+
+    @Override
+    public void setEmbeddingModel(String embeddingModel) {
+        embeddingModelField.setText(embeddingModel);
+    }
+
+    @Override
+    public int getExampleCount() {
+        return (Integer) exampleCountSpinner.getValue();
+    }
+
+    @Override
+    public void setExampleCount(int exampleCount) {
+        exampleCountSpinner.setValue(exampleCount);
+    }
+
+    @Override
+    public String getSmallModelName() {
+        return smallModelNameField.getText();
+    }
+
+    @Override
+    public void setSmallModelName(String smallModelName) {
+        smallModelNameField.setText(smallModelName);
+    }
+
+    @Override
+    public int getSmallModelMaxLength() {
+        return (Integer) smallModelMaxLengthSpinner.getValue();
+    }
+
+    @Override
+    public void setSmallModelMaxLength(int smallModelMaxLength) {
+        smallModelMaxLengthSpinner.setValue(smallModelMaxLength);
+    }
+
+    @Override
+    public int getSmallModelMaxMethods() {
+        return (Integer) smallModelMaxMethodsSpinner.getValue();
+    }
+
+    @Override
+    public void setSmallModelMaxMethods(int smallModelMaxMethods) {
+        smallModelMaxMethodsSpinner.setValue(smallModelMaxMethods);
+    }
+
+    @Override
+    public int getSmallModelMaxDependencies() {
+        return (Integer) smallModelMaxDependenciesSpinner.getValue();
+    }
+
+    @Override
+    public void setSmallModelMaxDependencies(int smallModelMaxDependencies) {
+        smallModelMaxDependenciesSpinner.setValue(smallModelMaxDependencies);
+    }
+
+    @Override
+    public boolean getEscalateInvalidTests() {
+        return escalateInvalidTestsCheckbox.isSelected();
+    }
+
+    @Override
+    public void setEscalateInvalidTests(boolean escalateInvalidTests) {
+        escalateInvalidTestsCheckbox.setSelected(escalateInvalidTests);
+    }
+
+    @Override
+    public boolean getHedgeRequests() {
+        return hedgeRequestsCheckbox.isSelected();
+    }
+
+    @Override
+    public void setHedgeRequests(boolean hedgeRequests) {
+        hedgeRequestsCheckbox.setSelected(hedgeRequests);
+    }
+
+    @Override
+    public String getHedgeOllamaUrl() {
+        return hedgeOllamaUrlField.getText();
+    }
+
+    @Override
+    public void setHedgeOllamaUrl(String hedgeOllamaUrl) {
+        hedgeOllamaUrlField.setText(hedgeOllamaUrl);
+    }
+
+    @Override
+    public String getHedgeModelName() {
+        return hedgeModelNameField.getText();
+    }
+
+    @Override
+    public void setHedgeModelName(String hedgeModelName) {
+        hedgeModelNameField.setText(hedgeModelName);
+    }
+
+    @Override
+    public int getHedgePercentile() {
+        return (Integer) hedgePercentileSpinner.getValue();
+    }
+
+    @Override
+    public void setHedgePercentile(int hedgePercentile) {
+        hedgePercentileSpinner.setValue(hedgePercentile);
+    }
+
+    @Override
+    public boolean getPackSmallClasses() {
+        return packSmallClassesCheckbox.isSelected();
+    }
+
+    @Override
+    public void setPackSmallClasses(boolean packSmallClasses) {
+        packSmallClassesCheckbox.setSelected(packSmallClasses);
+    }
+
+    @Override
+    public int getPackTokenBudget() {
+        return (Integer) packTokenBudgetSpinner.getValue();
+    }
+
+    @Override
+    public void setPackTokenBudget(int packTokenBudget) {
+        packTokenBudgetSpinner.setValue(packTokenBudget);
+    }
+
+    @Override
+    public boolean getStructuredOutput() {
+        return structuredOutputCheckbox.isSelected();
+    }
+
+    @Override
+    public void setStructuredOutput(boolean structuredOutput) {
+        structuredOutputCheckbox.setSelected(structuredOutput);
+    }
+
+    @Override
+    public boolean getSpeculativeGeneration() {
+        return speculativeGenerationCheckbox.isSelected();
+    }
+
+    @Override
+    public void setSpeculativeGeneration(boolean speculativeGeneration) {
+        speculativeGenerationCheckbox.setSelected(speculativeGeneration);
+    }
+
+    @Override
+    public int getSpeculativeIdleSeconds() {
+        return (Integer) speculativeIdleSecondsSpinner.getValue();
+    }
+
+    @Override
+    public void setSpeculativeIdleSeconds(int speculativeIdleSeconds) {
+        speculativeIdleSecondsSpinner.setValue(speculativeIdleSeconds);
+    }
+
+    @Override
+    public int getSpeculativeMaxConcurrent() {
+        return (Integer) speculativeMaxConcurrentSpinner.getValue();
+    }
+
+    @Override
+    public void setSpeculativeMaxConcurrent(int speculativeMaxConcurrent) {
+        speculativeMaxConcurrentSpinner.setValue(speculativeMaxConcurrent);
+    }
+
+    @Override
+    public int getSpeculativeMaxCpuPercent() {
+        return (Integer) speculativeMaxCpuPercentSpinner.getValue();
+    }
+
+    @Override
+    public void setSpeculativeMaxCpuPercent(int speculativeMaxCpuPercent) {
+        speculativeMaxCpuPercentSpinner.setValue(speculativeMaxCpuPercent);
+    }
+
+    @Override
+    public boolean getPauseBatchWhileBusy() {
+        return pauseBatchWhileBusyCheckbox.isSelected();
+    }
+
+    @Override
+    public void setPauseBatchWhileBusy(boolean pauseBatchWhileBusy) {
+        pauseBatchWhileBusyCheckbox.setSelected(pauseBatchWhileBusy);
+    }
+
+    @Override
+    public int getBatchMaxCpuPercent() {
+        return (Integer) batchMaxCpuPercentSpinner.getValue();
+    }
+
+    @Override
+    public void setBatchMaxCpuPercent(int batchMaxCpuPercent) {
+        batchMaxCpuPercentSpinner.setValue(batchMaxCpuPercent);
+    }
+
+    @Override
+    public String getSharedCacheDirectory() {
+        return sharedCacheDirectoryField.getText();
+    }
+
+    @Override
+    public void setSharedCacheDirectory(String sharedCacheDirectory) {
+        sharedCacheDirectoryField.setText(sharedCacheDirectory);
+    }
+
+    @Override
+    public int getSharedCacheMaxMegabytes() {
+        return (Integer) sharedCacheMaxMegabytesSpinner.getValue();
+    }
+
+    @Override
+    public void setSharedCacheMaxMegabytes(int sharedCacheMaxMegabytes) {
+        sharedCacheMaxMegabytesSpinner.setValue(sharedCacheMaxMegabytes);
+    }
+
+    @Override
+    public boolean getRunGeneratedTests() {
+        return runGeneratedTestsCheckbox.isSelected();
+    }
+
+    @Override
+    public void setRunGeneratedTests(boolean runGeneratedTests) {
+        runGeneratedTestsCheckbox.setSelected(runGeneratedTests);
+    }
+
+    @Override
+    public int getTestWorkerCount() {
+        return (Integer) testWorkerCountSpinner.getValue();
+    }
+
+    @Override
+    public void setTestWorkerCount(int testWorkerCount) {
+        testWorkerCountSpinner.setValue(testWorkerCount);
+    }
+
+    @Override
+    public boolean getFormatGeneratedCode() {
+        return formatGeneratedCodeCheckbox.isSelected();
+    }
+
+    @Override
+    public void setFormatGeneratedCode(boolean formatGeneratedCode) {
+        formatGeneratedCodeCheckbox.setSelected(formatGeneratedCode);
+    }
 }
@@ -5,6 +5,7 @@ import com.intellij.openapi.components.PersistentStateComponent;
 import com.intellij.openapi.components.State;
 import com.intellij.openapi.components.Storage;
 import com.intellij.util.xmlb.XmlSerializerUtil;
+import com.kincheung.ollama.batch.BatchOrdering;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -21,6 +22,33 @@ public class OllamaSettingsState implements PersistentStateComponent<OllamaSetti
     public boolean includeMockito = true;
     public boolean includeComments = true;
     public int timeoutSeconds = 60;
+    public boolean mergeIntoExisting = true;
+    public BatchOrdering batchOrdering = BatchOrdering.SHORTEST_FIRST;
+    public String embeddingModel = "nomic-embed-text";
+    public int exampleCount = 2;
+    public String smallModelName = "";
+    public int smallModelMaxLength = 3000;
+    public int smallModelMaxMethods = 8;
+    public int smallModelMaxDependencies = 2;
+    public boolean escalateInvalidTests = true;
+    public boolean hedgeRequests = false;
+    public String hedgeOllamaUrl = "";
+    public String hedgeModelName = "";
+    public int hedgePercentile = 95;
+    public boolean packSmallClasses = true;
+    public int packTokenBudget = 3000;
+    public boolean pauseBatchWhileBusy = true;
+    public int batchMaxCpuPercent = 50;
+    public boolean structuredOutput = false;
+    public boolean speculativeGeneration = false;
+    public int speculativeIdleSeconds = 30;
+    public int speculativeMaxConcurrent = 1;
+    public int speculativeMaxCpuPercent = 25;
+    public String sharedCacheDirectory = "";
+    public int sharedCacheMaxMegabytes = 1024;
+    public boolean runGeneratedTests = false;
+    public int testWorkerCount = 2;
+    public boolean formatGeneratedCode = true;
 
     public static OllamaSettingsState getInstance() {
         return ApplicationManager.getApplication().getService(OllamaSettingsState.class);
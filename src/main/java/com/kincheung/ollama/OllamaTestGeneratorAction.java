@@ -1,16 +1,17 @@
 package com.kincheung.ollama;
 
+import com.intellij.openapi.actionSystem.ActionUpdateThread;
 import com.intellij.openapi.actionSystem.AnAction;
 import com.intellij.openapi.actionSystem.AnActionEvent;
 import com.intellij.openapi.actionSystem.CommonDataKeys;
-import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.editor.Editor;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.Messages;
-import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiClass;
 import com.intellij.psi.PsiFile;
 import com.intellij.psi.PsiJavaFile;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
 import com.intellij.psi.util.PsiTreeUtil;
 import com.kincheung.ollama.util.JavaClassAnalyzer;
 import org.jetbrains.annotations.NotNull;
@@ -60,14 +61,32 @@ public class OllamaTestGeneratorAction extends AnAction {
 
     @Override
     public void update(@NotNull AnActionEvent e) {
-        // Use invokeLater to ensure this code runs off EDT
-        ApplicationManager.getApplication().invokeLater(() -> {
-            Project project = e.getProject();
-            VirtualFile file = e.getData(CommonDataKeys.VIRTUAL_FILE);
-
-            boolean enabled = project != null && file != null && "java".equals(file.getExtension());
-            e.getPresentation().setEnabledAndVisible(enabled);
-        });
+        // Runs on a background thread with read access, see getActionUpdateThread()
+        PsiFile psiFile = e.getData(CommonDataKeys.PSI_FILE);
+        if (e.getProject() == null || !(psiFile instanceof PsiJavaFile)) {
+            e.getPresentation().setEnabledAndVisible(false);
+            return;
+        }
+
+        PsiClass targetClass = getPsiClassFromContext((PsiJavaFile) psiFile, e.getData(CommonDataKeys.EDITOR));
+        e.getPresentation().setEnabledAndVisible(targetClass != null && !isTestClassCached(targetClass));
+    }
+
+    @Override
+    public @NotNull ActionUpdateThread getActionUpdateThread() {
+        return ActionUpdateThread.BGT;
+    }
+
+    /**
+     * Checks whether a class is a test class, caching the result until its file changes
+     * so repeated popup and toolbar updates don't re-resolve annotations.
+     *
+     * @param psiClass The class to check
+     * @return true if the class is a test class
+     */
+    private static boolean isTestClassCached(@NotNull PsiClass psiClass) {
+        return CachedValuesManager.getCachedValue(psiClass, () -> CachedValueProvider.Result.create(
+                JavaClassAnalyzer.isTestClass(psiClass), psiClass.getContainingFile()));
     }
 
     /**
@@ -78,7 +97,7 @@ public class OllamaTestGeneratorAction extends AnAction {
      * @param editor The editor, can be null if called from project view
      * @return The target PsiClass or null if none found
      */
-    private PsiClass getPsiClassFromContext(PsiJavaFile javaFile, Editor editor) {
+    static PsiClass getPsiClassFromContext(PsiJavaFile javaFile, Editor editor) {
         PsiClass[] classes = javaFile.getClasses();
         if (classes.length == 0) {
             return null;
@@ -33,7 +33,34 @@ public class OllamaTestGeneratorConfigurable implements Configurable {
                !mySettingsComponent.getModelName().equals(settings.modelName) ||
                mySettingsComponent.getIncludeMockito() != settings.includeMockito ||
                mySettingsComponent.getIncludeComments() != settings.includeComments ||
-               mySettingsComponent.getTimeout() != settings.timeoutSeconds;
+               mySettingsComponent.getMergeIntoExisting() != settings.mergeIntoExisting ||
+               mySettingsComponent.getTimeout() != settings.timeoutSeconds ||
+               mySettingsComponent.getBatchOrdering() != settings.batchOrdering ||
+               !mySettingsComponent.getEmbeddingModel().equals(settings.embeddingModel) ||
+               mySettingsComponent.getExampleCount() != settings.exampleCount ||
+               !mySettingsComponent.getSmallModelName().equals(settings.smallModelName) ||
+               mySettingsComponent.getSmallModelMaxLength() != settings.smallModelMaxLength ||
+               mySettingsComponent.getSmallModelMaxMethods() != settings.smallModelMaxMethods ||
+               mySettingsComponent.getSmallModelMaxDependencies() != settings.smallModelMaxDependencies ||
+               mySettingsComponent.getEscalateInvalidTests() != settings.escalateInvalidTests ||
+               mySettingsComponent.getHedgeRequests() != settings.hedgeRequests ||
+               !mySettingsComponent.getHedgeOllamaUrl().equals(settings.hedgeOllamaUrl) ||
+               !mySettingsComponent.getHedgeModelName().equals(settings.hedgeModelName) ||
+               mySettingsComponent.getHedgePercentile() != settings.hedgePercentile ||
+               mySettingsComponent.getPackSmallClasses() != settings.packSmallClasses ||
+               mySettingsComponent.getPackTokenBudget() != settings.packTokenBudget ||
+               mySettingsComponent.getPauseBatchWhileBusy() != settings.pauseBatchWhileBusy ||
+               mySettingsComponent.getBatchMaxCpuPercent() != settings.batchMaxCpuPercent ||
+               mySettingsComponent.getStructuredOutput() != settings.structuredOutput ||
+               mySettingsComponent.getSpeculativeGeneration() != settings.speculativeGeneration ||
+               mySettingsComponent.getSpeculativeIdleSeconds() != settings.speculativeIdleSeconds ||
+               mySettingsComponent.getSpeculativeMaxConcurrent() != settings.speculativeMaxConcurrent ||
+               mySettingsComponent.getSpeculativeMaxCpuPercent() != settings.speculativeMaxCpuPercent ||
+               !mySettingsComponent.getSharedCacheDirectory().equals(settings.sharedCacheDirectory) ||
+               mySettingsComponent.getSharedCacheMaxMegabytes() != settings.sharedCacheMaxMegabytes ||
+               mySettingsComponent.getRunGeneratedTests() != settings.runGeneratedTests ||
+               mySettingsComponent.getTestWorkerCount() != settings.testWorkerCount ||
+               mySettingsComponent.getFormatGeneratedCode() != settings.formatGeneratedCode;
     }
 
     @Override
@@ -43,7 +70,34 @@ public class OllamaTestGeneratorConfigurable implements Configurable {
         settings.modelName = mySettingsComponent.getModelName();
         settings.includeMockito = mySettingsComponent.getIncludeMockito();
         settings.includeComments = mySettingsComponent.getIncludeComments();
+        settings.mergeIntoExisting = mySettingsComponent.getMergeIntoExisting();
         settings.timeoutSeconds = mySettingsComponent.getTimeout();
+        settings.batchOrdering = mySettingsComponent.getBatchOrdering();
+        settings.embeddingModel = mySettingsComponent.getEmbeddingModel();
+        settings.exampleCount = mySettingsComponent.getExampleCount();
+        settings.smallModelName = mySettingsComponent.getSmallModelName();
+        settings.smallModelMaxLength = mySettingsComponent.getSmallModelMaxLength();
+        settings.smallModelMaxMethods = mySettingsComponent.getSmallModelMaxMethods();
+        settings.smallModelMaxDependencies = mySettingsComponent.getSmallModelMaxDependencies();
+        settings.escalateInvalidTests = mySettingsComponent.getEscalateInvalidTests();
+        settings.hedgeRequests = mySettingsComponent.getHedgeRequests();
+        settings.hedgeOllamaUrl = mySettingsComponent.getHedgeOllamaUrl();
+        settings.hedgeModelName = mySettingsComponent.getHedgeModelName();
+        settings.hedgePercentile = mySettingsComponent.getHedgePercentile();
+        settings.packSmallClasses = mySettingsComponent.getPackSmallClasses();
+        settings.packTokenBudget = mySettingsComponent.getPackTokenBudget();
+        settings.pauseBatchWhileBusy = mySettingsComponent.getPauseBatchWhileBusy();
+        settings.batchMaxCpuPercent = mySettingsComponent.getBatchMaxCpuPercent();
+        settings.structuredOutput = mySettingsComponent.getStructuredOutput();
+        settings.speculativeGeneration = mySettingsComponent.getSpeculativeGeneration();
+        settings.speculativeIdleSeconds = mySettingsComponent.getSpeculativeIdleSeconds();
+        settings.speculativeMaxConcurrent = mySettingsComponent.getSpeculativeMaxConcurrent();
+        settings.speculativeMaxCpuPercent = mySettingsComponent.getSpeculativeMaxCpuPercent();
+        settings.sharedCacheDirectory = mySettingsComponent.getSharedCacheDirectory();
+        settings.sharedCacheMaxMegabytes = mySettingsComponent.getSharedCacheMaxMegabytes();
+        settings.runGeneratedTests = mySettingsComponent.getRunGeneratedTests();
+        settings.testWorkerCount = mySettingsComponent.getTestWorkerCount();
+        settings.formatGeneratedCode = mySettingsComponent.getFormatGeneratedCode();
     }
 
     @Override
@@ -53,7 +107,34 @@ public class OllamaTestGeneratorConfigurable implements Configurable {
         mySettingsComponent.setModelName(settings.modelName);
         mySettingsComponent.setIncludeMockito(settings.includeMockito);
         mySettingsComponent.setIncludeComments(settings.includeComments);
+        mySettingsComponent.setMergeIntoExisting(settings.mergeIntoExisting);
         mySettingsComponent.setTimeout(settings.timeoutSeconds);
+        mySettingsComponent.setBatchOrdering(settings.batchOrdering);
+        mySettingsComponent.setEmbeddingModel(settings.embeddingModel);
+        mySettingsComponent.setExampleCount(settings.exampleCount);
+        mySettingsComponent.setSmallModelName(settings.smallModelName);
+        mySettingsComponent.setSmallModelMaxLength(settings.smallModelMaxLength);
+        mySettingsComponent.setSmallModelMaxMethods(settings.smallModelMaxMethods);
+        mySettingsComponent.setSmallModelMaxDependencies(settings.smallModelMaxDependencies);
+        mySettingsComponent.setEscalateInvalidTests(settings.escalateInvalidTests);
+        mySettingsComponent.setHedgeRequests(settings.hedgeRequests);
+        mySettingsComponent.setHedgeOllamaUrl(settings.hedgeOllamaUrl);
+        mySettingsComponent.setHedgeModelName(settings.hedgeModelName);
+        mySettingsComponent.setHedgePercentile(settings.hedgePercentile);
+        mySettingsComponent.setPackSmallClasses(settings.packSmallClasses);
+        mySettingsComponent.setPackTokenBudget(settings.packTokenBudget);
+        mySettingsComponent.setPauseBatchWhileBusy(settings.pauseBatchWhileBusy);
+        mySettingsComponent.setBatchMaxCpuPercent(settings.batchMaxCpuPercent);
+        mySettingsComponent.setStructuredOutput(settings.structuredOutput);
+        mySettingsComponent.setSpeculativeGeneration(settings.speculativeGeneration);
+        mySettingsComponent.setSpeculativeIdleSeconds(settings.speculativeIdleSeconds);
+        mySettingsComponent.setSpeculativeMaxConcurrent(settings.speculativeMaxConcurrent);
+        mySettingsComponent.setSpeculativeMaxCpuPercent(settings.speculativeMaxCpuPercent);
+        mySettingsComponent.setSharedCacheDirectory(settings.sharedCacheDirectory);
+        mySettingsComponent.setSharedCacheMaxMegabytes(settings.sharedCacheMaxMegabytes);
+        mySettingsComponent.setRunGeneratedTests(settings.runGeneratedTests);
+        mySettingsComponent.setTestWorkerCount(settings.testWorkerCount);
+        mySettingsComponent.setFormatGeneratedCode(settings.formatGeneratedCode);
     }
 
     @Override
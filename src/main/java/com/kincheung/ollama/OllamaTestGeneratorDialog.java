@@ -1,26 +1,18 @@
 package com.kincheung.ollama;
 
 import com.intellij.openapi.application.ApplicationManager;
-import com.intellij.openapi.progress.ProgressIndicator;
-import com.intellij.openapi.progress.ProgressManager;
-import com.intellij.openapi.progress.Task;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.DialogWrapper;
-import com.intellij.openapi.ui.Messages;
-import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiClass;
+import com.intellij.psi.SmartPointerManager;
 import com.intellij.ui.components.JBCheckBox;
 import com.intellij.ui.components.JBLabel;
 import com.intellij.ui.components.JBTextField;
 import com.intellij.util.ui.FormBuilder;
-import com.kincheung.ollama.util.JavaClassAnalyzer;
-import com.kincheung.ollama.util.TestFileCreator;
-import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
 import java.awt.*;
-import java.util.concurrent.CompletableFuture;
 
 /**
  * Dialog for configuring test generation options.
@@ -77,65 +69,19 @@ public class OllamaTestGeneratorDialog extends DialogWrapper {
     }
 
     /**
-     * Starts the test generation process with a progress indicator.
+     * Starts the test generation process with a progress indicator and returns immediately.
      */
     public void generateTests() {
         String testClassName = testClassNameField.getText();
         boolean useMockito = mockitoDependenciesCheckBox.isSelected();
         boolean includeComments = includeCommentsCheckBox.isSelected();
         
-        ProgressManager.getInstance().run(new Task.Backgroundable(project, "Generating Unit Tests", false) {
-            @Override
-            public void run(@NotNull ProgressIndicator indicator) {
-                indicator.setIndeterminate(true);
-                indicator.setText("Analyzing class...");
-
-                String className = ApplicationManager.getApplication().runReadAction((com.intellij.openapi.util.Computable<String>) targetClass::getName);
-                String classCode = ApplicationManager.getApplication().runReadAction((com.intellij.openapi.util.Computable<String>) targetClass::getText);
-
-                indicator.setText("Generating tests with Ollama...");
-                
-                OllamaService ollamaService = new OllamaService();
-                CompletableFuture<String> future = ollamaService.generateTest(
-                        className,
-                        classCode,
-                        useMockito,
-                        includeComments,
-                        indicator
-                );
-                
-                try {
-                    String testCode = future.get();
-                    indicator.setText("Creating test file...");
-                    
-                    ApplicationManager.getApplication().invokeLater(() -> {
-                        VirtualFile testFile = TestFileCreator.createTestFile(
-                                project, 
-                                targetClass, 
-                                testClassName, 
-                                testCode
-                        );
-                        
-                        if (testFile != null) {
-                            TestFileCreator.openFileInEditor(project, testFile);
-                        } else {
-                            Messages.showErrorDialog(
-                                    project,
-                                    "Could not create test file",
-                                    "Test Generation Failed"
-                            );
-                        }
-                    });
-                } catch (Exception e) {
-                    ApplicationManager.getApplication().invokeLater(() -> {
-                        Messages.showErrorDialog(
-                                project,
-                                "Error generating tests: " + e.getMessage(),
-                                "Test Generation Failed"
-                        );
-                    });
-                }
-            }
-        });
+        new TestGenerationTask(
+                project,
+                SmartPointerManager.createPointer(targetClass),
+                testClassName,
+                useMockito,
+                includeComments
+        ).start();
     }
 }
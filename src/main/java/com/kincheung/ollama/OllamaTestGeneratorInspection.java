@@ -44,27 +44,7 @@ public class OllamaTestGeneratorInspection extends AbstractBaseJavaLocalInspecti
      * @return true if the class should be skipped
      */
     private boolean shouldSkipClass(PsiClass aClass) {
-        // Skip anonymous classes
-        if (aClass.getName() == null) {
-            return true;
-        }
-        
-        // Skip interfaces, enums, records, and annotations
-        if (aClass.isInterface() || aClass.isEnum() || aClass.isRecord() || aClass.isAnnotationType()) {
-            return true;
-        }
-        
-        // Skip test classes
-        if (JavaClassAnalyzer.isTestClass(aClass)) {
-            return true;
-        }
-        
-        // Skip inner classes
-        if (aClass.getContainingClass() != null) {
-            return true;
-        }
-        
-        return false;
+        return !JavaClassAnalyzer.isGenerationCandidate(aClass);
     }
 
     /**
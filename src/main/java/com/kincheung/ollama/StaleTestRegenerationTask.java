@@ -0,0 +1,254 @@
+package com.kincheung.ollama;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.Task;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.Messages;
+import com.intellij.psi.*;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.kincheung.ollama.util.GeneratedCodeFormatter;
+import com.kincheung.ollama.util.GeneratedTestValidator;
+import com.kincheung.ollama.util.JavaClassAnalyzer;
+import com.kincheung.ollama.util.MethodFingerprinter;
+import com.kincheung.ollama.util.TestClassMerger;
+import com.kincheung.ollama.util.TestFileCreator;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Background task that regenerates tests only for the methods of a class whose
+ * fingerprint changed since its tests were generated. Test methods that call a
+ * changed method are replaced; all other test methods are left untouched.
+ * The class under test is held by a smart pointer and looked up again in each
+ * read and write action, since it may be reparsed while Ollama generates.
+ */
+public class StaleTestRegenerationTask extends Task.Backgroundable {
+    private final SmartPsiElementPointer<PsiClass> targetClassPointer;
+    private final String className;
+    private final String qualifiedName;
+    private final boolean useMockito;
+    private final boolean includeComments;
+
+    public StaleTestRegenerationTask(
+            @NotNull Project project,
+            @NotNull PsiClass targetClass,
+            boolean useMockito,
+            boolean includeComments) {
+        super(project, "Regenerating Stale Unit Tests", false);
+        this.targetClassPointer = SmartPointerManager.createPointer(targetClass);
+        this.className = targetClass.getName();
+        this.qualifiedName = targetClass.getQualifiedName();
+        this.useMockito = useMockito;
+        this.includeComments = includeComments;
+    }
+
+    @Override
+    public void run(@NotNull ProgressIndicator indicator) {
+        indicator.setIndeterminate(true);
+        indicator.setText("Comparing method fingerprints...");
+
+        TestFingerprintState fingerprintState = TestFingerprintState.getInstance(myProject);
+        TestFingerprintState.ClassFingerprints record = qualifiedName != null ? fingerprintState.get(qualifiedName) : null;
+        if (record == null || record.testClassName == null) {
+            showInfo("No generated tests are recorded for " + className + ". Generate tests for it first.");
+            return;
+        }
+
+        String testClassName = record.testClassName;
+        SmartPsiElementPointer<PsiClass> testClassPointer = ReadAction.compute(() -> {
+            PsiClass targetClass = targetClassPointer.getElement();
+            PsiClass testClass = targetClass != null ? JavaClassAnalyzer.findTestClass(targetClass, testClassName) : null;
+            return testClass != null ? SmartPointerManager.createPointer(testClass) : null;
+        });
+        if (testClassPointer == null) {
+            showInfo(testClassName + " no longer exists. Generate tests for " + className + " again.");
+            return;
+        }
+
+        Map<String, String> current = ReadAction.compute(() -> {
+            PsiClass targetClass = targetClassPointer.getElement();
+            return targetClass != null ? MethodFingerprinter.fingerprintMethods(targetClass) : null;
+        });
+        if (current == null) {
+            showInfo(className + " no longer exists.");
+            return;
+        }
+        List<String> removedKeys = new ArrayList<>(record.methods.keySet());
+        removedKeys.removeAll(current.keySet());
+
+        List<SmartPsiElementPointer<PsiMethod>> stalePointers = new ArrayList<>();
+        Map<String, String> staleFingerprints = new LinkedHashMap<>();
+        String[] staleCode = ReadAction.compute(() -> {
+            PsiClass targetClass = targetClassPointer.getElement();
+            if (targetClass == null) {
+                return null;
+            }
+            List<PsiMethod> stale = new ArrayList<>();
+            for (PsiMethod method : targetClass.getMethods()) {
+                String key = MethodFingerprinter.methodKey(method);
+                if (current.containsKey(key) && !current.get(key).equals(record.methods.get(key))) {
+                    stale.add(method);
+                    stalePointers.add(SmartPointerManager.createPointer(method));
+                    staleFingerprints.put(key, current.get(key));
+                }
+            }
+            return new String[] {
+                    stale.stream().map(PsiMethod::getText).collect(Collectors.joining("\n\n")),
+                    JavaClassAnalyzer.buildClassSkeleton(targetClass)
+            };
+        });
+        if (staleCode == null) {
+            showInfo(className + " no longer exists.");
+            return;
+        }
+        if (stalePointers.isEmpty()) {
+            fingerprintState.forget(qualifiedName, removedKeys);
+            showInfo("The tests in " + testClassName + " are up to date.");
+            return;
+        }
+        String methodsCode = staleCode[0];
+        String classSkeleton = staleCode[1];
+        String existingFixture = ReadAction.compute(() -> {
+            PsiClass testClass = testClassPointer.getElement();
+            return testClass != null ? JavaClassAnalyzer.buildTestFixture(testClass) : "";
+        });
+
+        indicator.setText("Regenerating tests for " + stalePointers.size() + " changed methods with Ollama...");
+        OllamaService ollamaService = new OllamaService(OllamaSettingsState.getInstance().modelName, true);
+        try {
+            String generatedCode = ollamaService.generateTestsForMethods(
+                    className,
+                    classSkeleton,
+                    methodsCode,
+                    existingFixture,
+                    useMockito,
+                    includeComments,
+                    new OllamaService.GenerationOptions()
+            ).get();
+            String testCode = format(generatedCode, indicator);
+
+            // Nothing is deleted from the test class unless the replacement is usable
+            GeneratedTestValidator.ValidationResult validation =
+                    ReadAction.compute(() -> GeneratedTestValidator.validate(myProject, testCode));
+            if (!validation.isValid()) {
+                showError(validation.hasClass()
+                        ? "The tests generated by Ollama have " + validation.getSyntaxErrors() + " syntax errors. "
+                                + testClassName + " was left unchanged."
+                        : "Ollama did not return a Java test class. " + testClassName + " was left unchanged.");
+                return;
+            }
+
+            indicator.setText("Updating test file...");
+            ApplicationManager.getApplication().invokeLater(() -> {
+                PsiClass testClass = testClassPointer.getElement();
+                if (testClass == null || !(testClass.getContainingFile() instanceof PsiJavaFile)) {
+                    Messages.showErrorDialog(myProject, "Could not update " + testClassName, "Test Generation Failed");
+                    return;
+                }
+                PsiJavaFile testFile = (PsiJavaFile) testClass.getContainingFile();
+                int[] added = new int[1];
+                WriteCommandAction.writeCommandAction(myProject, testFile)
+                        .withName("Regenerate Stale Tests")
+                        .run(() -> {
+                            List<PsiMethod> replaced = findTestsCalling(testClass, stalePointers);
+                            // The replaced tests don't block generated tests with the same signature
+                            added[0] = TestClassMerger.merge(testFile, testCode, replaced);
+                            if (added[0] > 0) {
+                                for (PsiMethod testMethod : replaced) {
+                                    testMethod.delete();
+                                }
+                            }
+                        });
+                if (added[0] <= 0) {
+                    Messages.showErrorDialog(
+                            myProject,
+                            added[0] < 0
+                                    ? "Could not merge the generated tests into " + testClassName + "."
+                                    : "The generated tests were all in " + testClassName + " already.",
+                            "Test Generation Failed");
+                    return;
+                }
+                fingerprintState.record(qualifiedName, testClassName, staleFingerprints);
+                fingerprintState.forget(qualifiedName, removedKeys);
+                TestFileCreator.openFileInEditor(myProject, testFile.getVirtualFile());
+            });
+        } catch (Exception e) {
+            showError("Error generating tests: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Formats the generated test methods and fixes their imports before they are
+     * merged, so that the write action only inserts them.
+     */
+    @NotNull
+    private String format(@NotNull String testCode, @NotNull ProgressIndicator indicator) {
+        if (!OllamaSettingsState.getInstance().formatGeneratedCode) {
+            return testCode;
+        }
+        indicator.setText("Formatting generated tests...");
+        return GeneratedCodeFormatter.formatInBackground(myProject, targetClassPointer, testCode);
+    }
+
+    /**
+     * Finds the test methods that call any of the stale methods, skipping setup methods.
+     * A call counts if it resolves to a stale method, or, when it doesn't resolve,
+     * if it has the name of a stale method and is made on an instance of the class
+     * under test, so that calls of same-named methods of other classes don't count.
+     */
+    @NotNull
+    private List<PsiMethod> findTestsCalling(
+            @NotNull PsiClass testClass,
+            @NotNull List<SmartPsiElementPointer<PsiMethod>> stalePointers) {
+        PsiClass targetClass = targetClassPointer.getElement();
+        Set<PsiMethod> staleMethods = new HashSet<>();
+        Set<String> staleNames = new HashSet<>();
+        for (SmartPsiElementPointer<PsiMethod> pointer : stalePointers) {
+            PsiMethod method = pointer.getElement();
+            if (method != null) {
+                staleMethods.add(method);
+                staleNames.add(method.getName());
+            }
+        }
+
+        List<PsiMethod> callers = new ArrayList<>();
+        for (PsiMethod testMethod : testClass.getMethods()) {
+            if (JavaClassAnalyzer.isLifecycleMethod(testMethod)) {
+                continue;
+            }
+            for (PsiMethodCallExpression call : PsiTreeUtil.findChildrenOfType(testMethod, PsiMethodCallExpression.class)) {
+                PsiMethod resolved = call.resolveMethod();
+                boolean callsStale = resolved != null
+                        ? staleMethods.contains(resolved)
+                        : targetClass != null
+                                && staleNames.contains(call.getMethodExpression().getReferenceName())
+                                && JavaClassAnalyzer.isCalledOn(call, targetClass);
+                if (callsStale) {
+                    callers.add(testMethod);
+                    break;
+                }
+            }
+        }
+        return callers;
+    }
+
+    private void showError(@NotNull String message) {
+        ApplicationManager.getApplication().invokeLater(() ->
+                Messages.showErrorDialog(myProject, message, "Test Generation Failed"));
+    }
+
+    private void showInfo(@NotNull String message) {
+        ApplicationManager.getApplication().invokeLater(() ->
+                Messages.showInfoMessage(myProject, message, "Regenerate Stale Tests"));
+    }
+}
@@ -0,0 +1,85 @@
+package com.kincheung.ollama;
+
+import com.intellij.openapi.components.PersistentStateComponent;
+import com.intellij.openapi.components.State;
+import com.intellij.openapi.components.Storage;
+import com.intellij.openapi.project.Project;
+import com.intellij.util.xmlb.XmlSerializerUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Persistent, project-level record of the method fingerprints each generated
+ * test was generated from. Stored in the project directory so it can be shared
+ * along with the generated tests.
+ */
+@State(
+    name = "com.kincheung.ollama.TestFingerprintState",
+    storages = @Storage("ollamaTestFingerprints.xml")
+)
+public class TestFingerprintState implements PersistentStateComponent<TestFingerprintState> {
+    public Map<String, ClassFingerprints> classes = new HashMap<>();
+
+    public static TestFingerprintState getInstance(@NotNull Project project) {
+        return project.getService(TestFingerprintState.class);
+    }
+
+    /**
+     * Records the fingerprints the test of a class was generated from. Existing
+     * fingerprints of other methods of the class are kept.
+     *
+     * @param qualifiedClassName The qualified name of the class under test
+     * @param testClassName The name of the test class
+     * @param fingerprints The method fingerprints, keyed by method key
+     */
+    public synchronized void record(
+            @NotNull String qualifiedClassName,
+            @NotNull String testClassName,
+            @NotNull Map<String, String> fingerprints) {
+        ClassFingerprints record = classes.computeIfAbsent(qualifiedClassName, key -> new ClassFingerprints());
+        record.testClassName = testClassName;
+        record.methods.putAll(fingerprints);
+    }
+
+    /**
+     * Forgets the fingerprints of methods that no longer exist.
+     *
+     * @param qualifiedClassName The qualified name of the class under test
+     * @param methodKeys The keys of the removed methods
+     */
+    public synchronized void forget(@NotNull String qualifiedClassName, @NotNull Iterable<String> methodKeys) {
+        ClassFingerprints record = classes.get(qualifiedClassName);
+        if (record != null) {
+            for (String methodKey : methodKeys) {
+                record.methods.remove(methodKey);
+            }
+        }
+    }
+
+    @Nullable
+    public synchronized ClassFingerprints get(@NotNull String qualifiedClassName) {
+        return classes.get(qualifiedClassName);
+    }
+
+    @Override
+    public synchronized @Nullable TestFingerprintState getState() {
+        return this;
+    }
+
+    @Override
+    public synchronized void loadState(@NotNull TestFingerprintState state) {
+        XmlSerializerUtil.copyBean(state, this);
+    }
+
+    /**
+     * Fingerprints of the methods of one class under test.
+     */
+    public static class ClassFingerprints {
+        public String testClassName;
+        public Map<String, String> methods = new LinkedHashMap<>();
+    }
+}
@@ -1,88 +1,569 @@
 package com.kincheung.ollama;
 
 import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ModalityState;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.progress.ProgressIndicator;
-import com.intellij.openapi.progress.Task;
+import com.intellij.openapi.progress.impl.BackgroundableProcessIndicator;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.Messages;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiMethod;
+import com.intellij.psi.SmartPsiElementPointer;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import com.kincheung.ollama.batch.BatchEtaEstimator;
+import com.kincheung.ollama.core.GenerationProgress;
+import com.kincheung.ollama.core.GenerationStage;
+import com.kincheung.ollama.core.GenerationTrace;
+import com.kincheung.ollama.examples.TestExampleIndex;
+import com.kincheung.ollama.speculative.SpeculativeTestGenerator;
+import com.kincheung.ollama.util.GeneratedCodeFormatter;
+import com.kincheung.ollama.util.GeneratedTestRunner;
+import com.kincheung.ollama.util.GeneratedTestValidator;
+import com.kincheung.ollama.util.JavaClassAnalyzer;
+import com.kincheung.ollama.util.MethodFingerprinter;
+import com.kincheung.ollama.util.ModelRouter;
+import com.kincheung.ollama.util.StreamingTestInserter;
 import com.kincheung.ollama.util.TestFileCreator;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 /**
- * Background task for generating test classes.
+ * Non-blocking test generation for a single class.
+ * The stages run as a chain of futures on background executors: read-action
+ * snapshot, prompt build and request, extraction (on the HTTP client's thread)
+ * and validation. Only the final file write and UI update run on the EDT, and
+ * no thread is ever blocked waiting for Ollama.
+ * If the test class already exists and merging is enabled, only the methods
+ * the existing test class doesn't cover are sent to Ollama.
+ * The model is chosen by {@link ModelRouter}; a test from the small model that
+ * fails validation is regenerated once with the main model, unless some of its
+ * test methods were already streamed into the file. Requests are hedged if
+ * enabled in the settings.
+ * With structured output, each test method is validated and inserted into the
+ * test file by a {@link StreamingTestInserter} as soon as it is decoded, so the
+ * whole class isn't parsed again at the end.
+ * Each stage is recorded in a {@link GenerationTrace} for Flight Recorder.
+ * A test pre-generated by the {@link SpeculativeTestGenerator} for the same
+ * prompt, or found in the shared test cache, is used without contacting Ollama;
+ * a valid new test is published to the shared test cache.
+ * If enabled, a whole generated test class is run by the {@link GeneratedTestRunner}
+ * before it is written, and its failing test methods are dropped.
+ * A whole test class is formatted and its imports fixed by the
+ * {@link GeneratedCodeFormatter} in the background, so writing it on the EDT is
+ * a plain insertion.
+ * While Ollama generates, the progress and the time left are estimated from the
+ * model's learned token rates and the tokens streamed so far.
  */
-public class TestGenerationTask extends Task.Backgroundable {
-    private final PsiClass targetClass;
+public class TestGenerationTask {
+    private static final Logger LOG = Logger.getInstance(TestGenerationTask.class);
+    private static final long PROGRESS_INTERVAL_MS = 500;
+
+    private final Project project;
+    private final SmartPsiElementPointer<PsiClass> classPointer;
     private final String testClassName;
     private final boolean useMockito;
     private final boolean includeComments;
+    private final GenerationProgress progress = new GenerationProgress();
+    private GenerationTrace trace;
 
     public TestGenerationTask(
             @NotNull Project project,
-            @NotNull PsiClass targetClass,
+            @NotNull SmartPsiElementPointer<PsiClass> classPointer,
             @NotNull String testClassName,
             boolean useMockito,
             boolean includeComments) {
-        super(project, "Generating Unit Tests", false);
-        this.targetClass = targetClass;
+        this.project = project;
+        this.classPointer = classPointer;
         this.testClassName = testClassName;
         this.useMockito = useMockito;
         this.includeComments = includeComments;
     }
 
-    @Override
-    public void run(@NotNull ProgressIndicator indicator) {
+    /**
+     * Starts the generation and returns immediately.
+     *
+     * @return A future completed with the test file, or with null if there was nothing to generate
+     */
+    public CompletableFuture<VirtualFile> start() {
+        BackgroundableProcessIndicator indicator = new BackgroundableProcessIndicator(
+                project, "Generating Unit Tests", null, null, false);
         indicator.setIndeterminate(true);
         indicator.setText("Analyzing class...");
-        
-        String className = targetClass.getName();
-        String classCode = targetClass.getText();
-        
-        indicator.setText("Generating tests with Ollama...");
-        
-        OllamaService ollamaService = new OllamaService();
-        CompletableFuture<String> future = ollamaService.generateTest(
-                className,
-                classCode,
-                useMockito,
-                includeComments,
-                indicator
-        );
-        
+        indicator.start();
+        trace = GenerationTrace.start(testClassName);
+        SpeculativeTestGenerator.getInstance(project).interactiveGenerationStarted();
+        ScheduledFuture<?> progressUpdates = AppExecutorUtil.getAppScheduledExecutorService().scheduleWithFixedDelay(
+                () -> showProgress(indicator), PROGRESS_INTERVAL_MS, PROGRESS_INTERVAL_MS, TimeUnit.MILLISECONDS);
+
+        Executor executor = AppExecutorUtil.getAppExecutorService();
+        CompletableFuture<VirtualFile> result = CompletableFuture
+                .supplyAsync(this::takeSnapshotInReadAction, executor)
+                .thenApply(this::findSharedTest)
+                .thenCompose(snapshot -> findExamples(snapshot, indicator))
+                .thenCompose(snapshot -> requestTests(snapshot, snapshot.model, indicator))
+                .thenComposeAsync(generated -> validate(generated, indicator), executor)
+                .thenCompose(generated -> runTests(generated, indicator))
+                .thenApply(this::share)
+                .thenApplyAsync(generated -> format(generated, indicator), executor)
+                .thenCompose(generated -> writeTestFile(generated, indicator));
+
+        result.whenComplete((testFile, error) -> progressUpdates.cancel(false));
+        result.whenComplete((testFile, error) ->
+                trace.finish(error != null ? "failed" : testFile != null ? "written" : "nothing to generate"));
+        result.whenComplete((testFile, error) -> ApplicationManager.getApplication().invokeLater(() -> {
+            indicator.stop();
+            indicator.processFinish();
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                LOG.warn("Error generating tests for " + testClassName, cause);
+                Messages.showErrorDialog(
+                        project,
+                        "Error generating tests: " + cause.getMessage(),
+                        "Test Generation Failed"
+                );
+            }
+        }, ModalityState.defaultModalityState()));
+
+        return result;
+    }
+
+    /**
+     * Shows the estimated progress of the request to Ollama. Before the first
+     * request, and for a pre-generated test, the indicator stays indeterminate.
+     */
+    private void showProgress(@NotNull ProgressIndicator indicator) {
+        if (!progress.isStarted()) {
+            return;
+        }
+        GenerationProgress.Estimate estimate = progress.estimate();
+        indicator.setIndeterminate(false);
+        indicator.setFraction(estimate.getFraction());
+        indicator.setText2(estimate.getRemainingSeconds() > 0
+                ? "About " + BatchEtaEstimator.formatDuration(estimate.getRemainingSeconds()) + " left"
+                : "");
+    }
+
+    @NotNull
+    private Snapshot takeSnapshotInReadAction() {
+        GenerationTrace.Span span = trace.stage(GenerationStage.SNAPSHOT);
         try {
-            String testCode = future.get();
-            indicator.setText("Creating test file...");
-            
-            ApplicationManager.getApplication().invokeLater(() -> {
-                VirtualFile testFile = TestFileCreator.createTestFile(
-                        myProject, 
-                        targetClass, 
-                        testClassName, 
-                        testCode
+            Snapshot snapshot = ReadAction.nonBlocking(this::takeSnapshot).executeSynchronously();
+            if (span.isRecording()) {
+                span.setOutputChars(snapshot.merge
+                        ? snapshot.classSkeleton.length() + snapshot.methodsCode.length()
+                        : snapshot.classCode.length());
+            }
+            return snapshot;
+        } finally {
+            span.end();
+        }
+    }
+
+    /**
+     * Captures everything the later stages need from PSI, so that no stage holds
+     * on to live PSI while waiting for Ollama.
+     */
+    @NotNull
+    private Snapshot takeSnapshot() {
+        PsiClass targetClass = classPointer.getElement();
+        if (targetClass == null) {
+            throw new IllegalStateException("The class no longer exists");
+        }
+
+        Snapshot snapshot = new Snapshot(targetClass.getName(), targetClass.getQualifiedName());
+        snapshot.model = ModelRouter.selectModel(JavaClassAnalyzer.computeMetrics(targetClass));
+        PsiClass existingTest = OllamaSettingsState.getInstance().mergeIntoExisting
+                ? JavaClassAnalyzer.findTestClass(targetClass, testClassName)
+                : null;
+
+        if (existingTest != null) {
+            List<PsiMethod> uncovered = JavaClassAnalyzer.findUncoveredMethods(targetClass, existingTest);
+            snapshot.merge = true;
+            snapshot.methodsCode = uncovered.stream().map(PsiMethod::getText).collect(Collectors.joining("\n\n"));
+            snapshot.classSkeleton = JavaClassAnalyzer.buildClassSkeleton(targetClass);
+            snapshot.existingFixture = JavaClassAnalyzer.buildTestFixture(existingTest);
+            for (PsiMethod method : uncovered) {
+                snapshot.fingerprints.put(MethodFingerprinter.methodKey(method), MethodFingerprinter.fingerprint(method));
+            }
+        } else {
+            snapshot.classCode = targetClass.getText();
+            snapshot.collaboratorContext = JavaClassAnalyzer.collectCollaboratorContext(targetClass);
+            if (OllamaSettingsState.getInstance().runGeneratedTests) {
+                snapshot.runTarget = GeneratedTestRunner.target(targetClass);
+            }
+            snapshot.fingerprints.putAll(MethodFingerprinter.fingerprintMethods(targetClass));
+        }
+        return snapshot;
+    }
+
+    /**
+     * Tests are pre-generated and shared under the default test class name only,
+     * and only whole test classes are.
+     */
+    private boolean isCacheable(@NotNull Snapshot snapshot) {
+        return !snapshot.merge && testClassName.equals(snapshot.className + "Test");
+    }
+
+    /**
+     * Looks the test up in the shared test cache, which doesn't depend on the examples.
+     */
+    @NotNull
+    private Snapshot findSharedTest(@NotNull Snapshot snapshot) {
+        if (isCacheable(snapshot)) {
+            snapshot.sharedTest = new OllamaService(snapshot.model).findSharedTest(
+                    snapshot.className, snapshot.classCode, snapshot.collaboratorContext, useMockito, includeComments);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Looks up similar existing tests to show the model the project's conventions.
+     * Not needed when merging, where the existing test class already sets them,
+     * or when a shared test is used.
+     */
+    @NotNull
+    private CompletableFuture<Snapshot> findExamples(@NotNull Snapshot snapshot, @NotNull ProgressIndicator indicator) {
+        int exampleCount = OllamaSettingsState.getInstance().exampleCount;
+        if (snapshot.merge || snapshot.sharedTest != null || exampleCount <= 0) {
+            return CompletableFuture.completedFuture(snapshot);
+        }
+        indicator.setText("Finding similar tests...");
+        return TestExampleIndex.getInstance(project)
+                .findExamples(snapshot.classCode, exampleCount)
+                .thenApply(examples -> {
+                    snapshot.exampleTests = examples;
+                    return snapshot;
+                });
+    }
+
+    @NotNull
+    private CompletableFuture<Generated> requestTests(
+            @NotNull Snapshot snapshot,
+            @NotNull String model,
+            @NotNull ProgressIndicator indicator) {
+        OllamaService ollamaService = new OllamaService(model, true);
+        if (snapshot.sharedTest != null) {
+            // Used once; if it doesn't validate here, the escalation asks Ollama
+            String shared = snapshot.sharedTest;
+            snapshot.sharedTest = null;
+            LOG.info("Using the shared test of " + testClassName);
+            return CompletableFuture.completedFuture(new Generated(snapshot, model, shared, null));
+        }
+        if (isCacheable(snapshot)) {
+            String cached = ollamaService.takeCachedTest(
+                    snapshot.className,
+                    snapshot.classCode,
+                    snapshot.collaboratorContext,
+                    snapshot.exampleTests,
+                    useMockito,
+                    includeComments);
+            if (cached != null) {
+                LOG.info("Using the test pre-generated for " + testClassName);
+                return CompletableFuture.completedFuture(new Generated(snapshot, model, cached, null));
+            }
+        }
+        StreamingTestInserter inserter = OllamaSettingsState.getInstance().structuredOutput
+                ? new StreamingTestInserter(project, classPointer, testClassName, indicator, trace)
+                : null;
+        CompletableFuture<String> future;
+
+        if (snapshot.merge) {
+            if (snapshot.methodsCode.isEmpty()) {
+                return CompletableFuture.completedFuture(new Generated(snapshot, model, null, null));
+            }
+            indicator.setText("Generating tests for uncovered methods with " + model + "...");
+            future = ollamaService.generateTestsForMethods(
+                    snapshot.className,
+                    snapshot.classSkeleton,
+                    snapshot.methodsCode,
+                    snapshot.existingFixture,
+                    useMockito,
+                    includeComments,
+                    new OllamaService.GenerationOptions().listener(inserter).trace(trace).progress(progress)
+            );
+        } else {
+            indicator.setText("Generating tests with " + model + "...");
+            future = ollamaService.generateTest(
+                    snapshot.className,
+                    snapshot.classCode,
+                    snapshot.collaboratorContext,
+                    useMockito,
+                    includeComments,
+                    new OllamaService.GenerationOptions()
+                            .exampleTests(snapshot.exampleTests)
+                            .listener(inserter)
+                            .trace(trace)
+                            .progress(progress)
+            );
+        }
+
+        return future.thenApply(testCode -> new Generated(snapshot, model, testCode, inserter));
+    }
+
+    /**
+     * Validates the generated test, regenerating it with the main model if it is
+     * invalid and came from the small one.
+     */
+    @NotNull
+    private CompletableFuture<Generated> validate(@NotNull Generated generated, @NotNull ProgressIndicator indicator) {
+        if (generated.testCode == null) {
+            return CompletableFuture.completedFuture(generated);
+        }
+        if (generated.inserter != null) {
+            // Every test method was validated on its own as it arrived, and the valid
+            // ones are in the test file already. Escalating would stream a second set
+            // of tests into the same file, so a partial result is kept as it is.
+            int dropped = generated.inserter.getDroppedCount();
+            if (generated.inserter.getInsertedCount() > 0) {
+                if (dropped > 0) {
+                    LOG.info("Kept the streamed tests of " + testClassName + " without escalating, "
+                            + dropped + " invalid test methods were dropped");
+                }
+                generated.valid = dropped == 0;
+                return CompletableFuture.completedFuture(generated);
+            }
+            // Nothing was written, so the escalated generation starts from an empty file
+        } else {
+            indicator.setText("Validating generated tests...");
+            GeneratedTestValidator.ValidationResult validation = validateInReadAction(generated.testCode);
+            if (validation.hasClass() && validation.isValid()) {
+                generated.valid = true;
+                return CompletableFuture.completedFuture(generated);
+            }
+        }
+
+        String escalationModel = ModelRouter.escalationModel(generated.model);
+        if (escalationModel != null) {
+            LOG.info("Generated " + testClassName + " with " + generated.model + " is invalid, retrying with " + escalationModel);
+            return requestTests(generated.snapshot, escalationModel, indicator)
+                    .thenApplyAsync(escalated -> checkValid(escalated, indicator), AppExecutorUtil.getAppExecutorService());
+        }
+        return CompletableFuture.completedFuture(checkValid(generated, indicator));
+    }
+
+    @NotNull
+    private Generated checkValid(@NotNull Generated generated, @NotNull ProgressIndicator indicator) {
+        if (generated.testCode == null) {
+            return generated;
+        }
+        if (generated.inserter != null) {
+            if (generated.inserter.getInsertedCount() == 0) {
+                throw new IllegalStateException("None of the " + generated.inserter.getDroppedCount()
+                        + " test methods generated by Ollama is valid Java");
+            }
+            generated.valid = generated.inserter.getDroppedCount() == 0;
+            return generated;
+        }
+        indicator.setText("Validating generated tests...");
+        GeneratedTestValidator.ValidationResult validation = validateInReadAction(generated.testCode);
+        if (!validation.hasClass()) {
+            throw new IllegalStateException("Ollama did not return a Java test class");
+        }
+        if (!validation.isValid()) {
+            LOG.info("Generated " + testClassName + " has " + validation.getSyntaxErrors() + " syntax errors");
+        }
+        generated.valid = validation.isValid();
+        return generated;
+    }
+
+    /**
+     * Runs the generated tests and drops the failing test methods. Streamed test
+     * methods are already in the file and methods merged into an existing class
+     * depend on it, so only whole, valid test classes are run.
+     */
+    @NotNull
+    private CompletableFuture<Generated> runTests(@NotNull Generated generated, @NotNull ProgressIndicator indicator) {
+        GeneratedTestRunner.Target target = generated.snapshot.runTarget;
+        if (target == null || generated.testCode == null || generated.inserter != null || !generated.valid) {
+            return CompletableFuture.completedFuture(generated);
+        }
+        indicator.setText("Running generated tests...");
+        GenerationTrace.Span span = trace.stage(GenerationStage.TEST_RUN);
+        span.setInputChars(generated.testCode.length());
+        return GeneratedTestRunner.getInstance()
+                .dropFailingMethods(project, target, testClassName, generated.testCode)
+                .whenComplete((testCode, error) -> {
+                    if (testCode != null) {
+                        span.setOutputChars(testCode.length());
+                    }
+                    span.end();
+                })
+                .thenApply(testCode -> {
+                    Generated run = new Generated(generated.snapshot, generated.model, testCode, null);
+                    run.valid = true;
+                    return run;
+                });
+    }
+
+    /**
+     * Publishes a valid test to the shared test cache, under the model the class
+     * was routed to so that the lookup finds it even if the test was escalated.
+     */
+    @NotNull
+    private Generated share(@NotNull Generated generated) {
+        Snapshot snapshot = generated.snapshot;
+        if (generated.valid && generated.testCode != null && isCacheable(snapshot)) {
+            new OllamaService(snapshot.model).shareTest(
+                    snapshot.className, snapshot.classCode, snapshot.collaboratorContext, useMockito, includeComments, generated.testCode);
+        }
+        return generated;
+    }
+
+    /**
+     * Formats the generated test with the project's code style and fixes its
+     * imports, after it was shared, since code styles differ between projects.
+     * Streamed test methods are already in the file.
+     */
+    @NotNull
+    private Generated format(@NotNull Generated generated, @NotNull ProgressIndicator indicator) {
+        if (generated.testCode == null || generated.inserter != null || !OllamaSettingsState.getInstance().formatGeneratedCode) {
+            return generated;
+        }
+        indicator.setText("Formatting generated tests...");
+        GenerationTrace.Span span = trace.stage(GenerationStage.FORMAT);
+        span.setInputChars(generated.testCode.length());
+        try {
+            String testCode = GeneratedCodeFormatter.formatInBackground(project, classPointer, generated.testCode);
+            span.setOutputChars(testCode.length());
+            Generated formatted = new Generated(generated.snapshot, generated.model, testCode, null);
+            formatted.valid = generated.valid;
+            return formatted;
+        } finally {
+            span.end();
+        }
+    }
+
+    @NotNull
+    private GeneratedTestValidator.ValidationResult validateInReadAction(@NotNull String testCode) {
+        GenerationTrace.Span span = trace.stage(GenerationStage.VALIDATION);
+        span.setInputChars(testCode.length());
+        try {
+            return ReadAction.compute(() -> GeneratedTestValidator.validate(project, testCode));
+        } finally {
+            span.end();
+        }
+    }
+
+    @NotNull
+    private CompletableFuture<VirtualFile> writeTestFile(@NotNull Generated generated, @NotNull ProgressIndicator indicator) {
+        CompletableFuture<VirtualFile> future = new CompletableFuture<>();
+        indicator.setText("Creating test file...");
+
+        GenerationTrace.Span edtWait = trace.stage(GenerationStage.EDT_WAIT);
+        ApplicationManager.getApplication().invokeLater(() -> {
+            edtWait.end();
+            Snapshot snapshot = generated.snapshot;
+            if (generated.testCode == null) {
+                Messages.showInfoMessage(
+                        project,
+                        testClassName + " already covers every public method of " + snapshot.className,
+                        "Nothing to Generate"
                 );
-                
-                if (testFile != null) {
-                    TestFileCreator.openFileInEditor(myProject, testFile);
-                } else {
-                    Messages.showErrorDialog(
-                            myProject,
-                            "Could not create test file",
-                            "Test Generation Failed"
+                future.complete(null);
+                return;
+            }
+
+            // Streamed test methods were inserted before this runs, since both are queued on the EDT in order
+            PsiClass targetClass = classPointer.getElement();
+            VirtualFile testFile;
+            if (generated.inserter != null) {
+                testFile = generated.inserter.getTestFile();
+            } else if (targetClass != null) {
+                GenerationTrace.Span write = trace.stage(GenerationStage.WRITE);
+                write.setInputChars(generated.testCode.length());
+                TestFileCreator.Result result = TestFileCreator.createTestFile(project, targetClass, testClassName, generated.testCode);
+                write.end();
+                if (result != null && !result.isWritten()) {
+                    Messages.showInfoMessage(
+                            project,
+                            OllamaSettingsState.getInstance().mergeIntoExisting
+                                    ? testClassName + " already has every generated test, nothing was added"
+                                    : testClassName + " already exists and merging into existing test classes is off",
+                            "Nothing to Generate"
                     );
+                    future.complete(null);
+                    return;
                 }
-            });
-        } catch (Exception e) {
-            ApplicationManager.getApplication().invokeLater(() -> {
-                Messages.showErrorDialog(
-                        myProject,
-                        "Error generating tests: " + e.getMessage(),
-                        "Test Generation Failed"
-                );
-            });
+                if (result != null && result.getOutcome() == TestFileCreator.Outcome.MERGED) {
+                    LOG.info("Merged " + result.getMergedMembers() + " generated members into " + testClassName);
+                }
+                testFile = result != null ? result.getFile() : null;
+            } else {
+                testFile = null;
+            }
+            if (testFile == null) {
+                future.completeExceptionally(new IllegalStateException("Could not create test file"));
+                return;
+            }
+
+            if (snapshot.qualifiedName != null) {
+                TestFingerprintState.getInstance(project).record(snapshot.qualifiedName, testClassName, snapshot.fingerprints);
+            }
+            if (generated.inserter == null) {
+                TestFileCreator.openFileInEditor(project, testFile);
+            }
+            future.complete(testFile);
+        }, ModalityState.defaultModalityState());
+
+        return future;
+    }
+
+    /**
+     * Read-action snapshot of the class under test.
+     */
+    private static class Snapshot {
+        private final String className;
+        private final String qualifiedName;
+        private final Map<String, String> fingerprints = new LinkedHashMap<>();
+        private boolean merge;
+        private String classCode;
+        private String collaboratorContext;
+        private String classSkeleton;
+        private String methodsCode;
+        private String existingFixture;
+        private List<String> exampleTests = Collections.emptyList();
+        private String model;
+        private String sharedTest;
+        private GeneratedTestRunner.Target runTarget;
+
+        Snapshot(String className, String qualifiedName) {
+            this.className = className;
+            this.qualifiedName = qualifiedName;
+        }
+    }
+
+    /**
+     * Generated test code together with the snapshot it was generated from, and
+     * the inserter that streamed it into the test file when structured output is on.
+     */
+    private static class Generated {
+        private final Snapshot snapshot;
+        private final String model;
+        @Nullable
+        private final String testCode;
+        @Nullable
+        private final StreamingTestInserter inserter;
+        private boolean valid;
+
+        Generated(Snapshot snapshot, String model, @Nullable String testCode, @Nullable StreamingTestInserter inserter) {
+            this.snapshot = snapshot;
+            this.model = model;
+            this.testCode = testCode;
+            this.inserter = inserter;
         }
     }
 }
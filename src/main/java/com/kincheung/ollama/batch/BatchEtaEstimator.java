@@ -0,0 +1,70 @@
+package com.kincheung.ollama.batch;
+
+import com.kincheung.ollama.GenerationRateState;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+/**
+ * Estimates when each job of a batch run will finish. Durations are estimated
+ * from the rates learned for each job's model in {@link GenerationRateState}
+ * and recalibrated against the wall time of every completed job, which also
+ * covers the client-side work around the requests.
+ */
+public class BatchEtaEstimator {
+    private final List<BatchGenerationJob> jobs;
+    private double estimatedSecondsDone;
+    private double actualSecondsDone;
+
+    public BatchEtaEstimator(@NotNull List<BatchGenerationJob> jobs) {
+        this.jobs = jobs;
+    }
+
+    /**
+     * Records the measured duration of a completed job.
+     *
+     * @param job The completed job
+     * @param actualSeconds The wall time it took
+     */
+    public void recordCompleted(@NotNull BatchGenerationJob job, double actualSeconds) {
+        estimatedSecondsDone += baseSeconds(job);
+        actualSecondsDone += actualSeconds;
+    }
+
+    /**
+     * Returns the estimated number of seconds until the job at the given index
+     * completes, assuming all jobs before it still have to run.
+     *
+     * @param fromIndex Index of the first job that has not completed yet
+     * @param jobIndex Index of the job to estimate
+     * @return The estimated seconds until completion
+     */
+    public long secondsUntilDone(int fromIndex, int jobIndex) {
+        double seconds = 0;
+        for (int i = fromIndex; i <= jobIndex && i < jobs.size(); i++) {
+            seconds += baseSeconds(jobs.get(i));
+        }
+        return Math.round(seconds * calibration());
+    }
+
+    /**
+     * Formats a number of seconds as a short human readable duration.
+     */
+    public static String formatDuration(long seconds) {
+        if (seconds < 60) {
+            return seconds + "s";
+        }
+        if (seconds < 3600) {
+            return (seconds / 60) + "m " + (seconds % 60) + "s";
+        }
+        return (seconds / 3600) + "h " + ((seconds % 3600) / 60) + "m";
+    }
+
+    private double calibration() {
+        return estimatedSecondsDone > 0 ? actualSecondsDone / estimatedSecondsDone : 1.0;
+    }
+
+    private static double baseSeconds(@NotNull BatchGenerationJob job) {
+        return GenerationRateState.getInstance().ratesFor(job.getModel()).estimateSeconds(job.getEstimatedPromptTokens());
+    }
+}
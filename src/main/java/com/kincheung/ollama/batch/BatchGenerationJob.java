@@ -0,0 +1,99 @@
+package com.kincheung.ollama.batch;
+
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.SmartPsiElementPointer;
+import com.kincheung.ollama.OllamaService;
+import com.kincheung.ollama.core.TokenEstimator;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Map;
+
+/**
+ * A single class queued for test generation in a batch run. The class text is
+ * snapshotted when the job is created so the batch never needs to hold a read
+ * action while waiting for Ollama.
+ */
+public class BatchGenerationJob {
+    private final SmartPsiElementPointer<PsiClass> classPointer;
+    private final String className;
+    private final String qualifiedClassName;
+    private final String classCode;
+    private final String collaboratorContext;
+    private final Map<String, String> fingerprints;
+    private final String model;
+    private final int estimatedPromptTokens;
+    private final int estimatedTokens;
+
+    public BatchGenerationJob(
+            @NotNull SmartPsiElementPointer<PsiClass> classPointer,
+            @NotNull String className,
+            @Nullable String qualifiedClassName,
+            @NotNull String classCode,
+            @NotNull String collaboratorContext,
+            @NotNull Map<String, String> fingerprints,
+            @NotNull String model,
+            boolean useMockito,
+            boolean includeComments) {
+        this.classPointer = classPointer;
+        this.className = className;
+        this.qualifiedClassName = qualifiedClassName;
+        this.classCode = classCode;
+        this.collaboratorContext = collaboratorContext;
+        this.fingerprints = fingerprints;
+        this.model = model;
+        this.estimatedPromptTokens = OllamaService.estimatePromptTokens(
+                className, classCode, collaboratorContext, useMockito, includeComments);
+        this.estimatedTokens = estimatedPromptTokens + TokenEstimator.estimateCompletionTokens(estimatedPromptTokens);
+    }
+
+    public SmartPsiElementPointer<PsiClass> getClassPointer() {
+        return classPointer;
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    @Nullable
+    public String getQualifiedClassName() {
+        return qualifiedClassName;
+    }
+
+    public String getTestClassName() {
+        return className + "Test";
+    }
+
+    public String getClassCode() {
+        return classCode;
+    }
+
+    public String getCollaboratorContext() {
+        return collaboratorContext;
+    }
+
+    /**
+     * Returns the fingerprints of the class's methods at the time the job was created.
+     */
+    public Map<String, String> getFingerprints() {
+        return fingerprints;
+    }
+
+    /**
+     * Returns the model the class was routed to.
+     */
+    public String getModel() {
+        return model;
+    }
+
+    public int getEstimatedPromptTokens() {
+        return estimatedPromptTokens;
+    }
+
+    /**
+     * Returns the estimated total cost of the job: prompt plus completion tokens.
+     */
+    public int getEstimatedTokens() {
+        return estimatedTokens;
+    }
+}
@@ -0,0 +1,490 @@
+package com.kincheung.ollama.batch;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.reflect.TypeToken;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of a batch run, so a run that dies halfway (IDE restart,
+ * Ollama running out of memory) can resume where it stopped instead of
+ * querying Ollama again for classes it already has tests for.
+ * <p>
+ * Each line is one record: a CRC32 of the JSON, a space and the JSON itself.
+ * Records are written straight to the file channel, so they survive a crash of
+ * the IDE, while fsyncs are batched to keep the journal cheap. A torn record at
+ * the end of the file fails its checksum and is dropped when the journal is read.
+ * Once a run completes, the journal is compacted to one final record per class
+ * without the generated code, and marked finished.
+ * <p>
+ * Journaling is best effort: if the file can't be written, the run continues without it.
+ */
+public class BatchJournal implements AutoCloseable {
+    private static final Logger LOG = Logger.getInstance(BatchJournal.class);
+    private static final Gson gson = new Gson();
+    private static final Type FINGERPRINTS_TYPE = new TypeToken<Map<String, String>>() {}.getType();
+    private static final int SYNC_EVERY_RECORDS = 32;
+    private static final long SYNC_EVERY_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+    private final Path file;
+    private final State state;
+    private FileChannel channel;
+    private int unsyncedRecords;
+    private long lastSync = System.nanoTime();
+
+    private BatchJournal(@NotNull Path file, @NotNull State state, @Nullable FileChannel channel) {
+        this.file = file;
+        this.state = state;
+        this.channel = channel;
+    }
+
+    /**
+     * Returns the journal file of the given project's batch runs.
+     */
+    @NotNull
+    public static Path journalFile(@NotNull Project project) {
+        return Paths.get(PathManager.getSystemPath(), "ollama-test-generator", "batch-" + project.getLocationHash() + ".journal");
+    }
+
+    /**
+     * Reads the journal of an interrupted run.
+     *
+     * @param file The journal file
+     * @return The state of the run, or null if there is no journal or its run has finished
+     */
+    @Nullable
+    public static State readUnfinished(@NotNull Path file) {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try {
+            State state = read(file);
+            return state != null && !state.finished ? state : null;
+        } catch (IOException e) {
+            LOG.warn("Could not read batch journal " + file, e);
+            return null;
+        }
+    }
+
+    /**
+     * Starts the journal of a new run, replacing any previous one.
+     *
+     * @param file The journal file
+     * @param rootUrls URLs of the files and directories the run covers
+     * @param useMockito Whether the run uses Mockito
+     * @param includeComments Whether the run includes comments
+     * @return The journal
+     */
+    @NotNull
+    public static BatchJournal start(@NotNull Path file, @NotNull List<String> rootUrls, boolean useMockito, boolean includeComments) {
+        State state = new State(rootUrls, useMockito, includeComments);
+        FileChannel channel = null;
+        try {
+            Files.createDirectories(file.getParent());
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        } catch (IOException e) {
+            LOG.warn("Could not create batch journal " + file + ", the run won't be resumable", e);
+        }
+        BatchJournal journal = new BatchJournal(file, state, channel);
+        journal.append(state.header());
+        return journal;
+    }
+
+    /**
+     * Reopens the journal of an interrupted run for appending.
+     *
+     * @param file The journal file
+     * @param state The state read with {@link #readUnfinished(Path)}
+     * @return The journal
+     */
+    @NotNull
+    public static BatchJournal resume(@NotNull Path file, @NotNull State state) {
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.WRITE);
+            // Drop a torn record left by the crash, so new records start on a clean line
+            channel.truncate(state.validLength);
+            channel.position(state.validLength);
+        } catch (IOException e) {
+            LOG.warn("Could not reopen batch journal " + file + ", the run won't be resumable", e);
+        }
+        return new BatchJournal(file, state, channel);
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * Records the number of classes the run will process.
+     */
+    public synchronized void planned(int classCount) {
+        state.planned = classCount;
+        JsonObject record = record("planned");
+        record.addProperty("count", classCount);
+        append(record);
+    }
+
+    /**
+     * Records a generated test before it is written, so it survives a crash until the write.
+     */
+    public synchronized void generated(
+            @NotNull String qualifiedClassName,
+            @NotNull String testClassName,
+            @NotNull Map<String, String> fingerprints,
+            @NotNull String testCode) {
+        Entry entry = new Entry(Status.GENERATED, testClassName, fingerprints);
+        entry.testCode = testCode;
+        state.entries.put(qualifiedClassName, entry);
+        append(entry.toRecord(qualifiedClassName));
+    }
+
+    /**
+     * Records that the test of a class has been written.
+     */
+    public synchronized void written(@NotNull String qualifiedClassName, @NotNull String path) {
+        Entry previous = state.entries.get(qualifiedClassName);
+        Entry entry = new Entry(Status.WRITTEN,
+                previous != null ? previous.testClassName : null,
+                previous != null ? previous.fingerprints : Collections.emptyMap());
+        entry.path = path;
+        state.entries.put(qualifiedClassName, entry);
+        append(entry.toRecord(qualifiedClassName));
+    }
+
+    /**
+     * Records that no test could be generated or written for a class; it is retried on resume.
+     */
+    public synchronized void failed(@NotNull String qualifiedClassName, @NotNull String testClassName) {
+        Entry entry = new Entry(Status.FAILED, testClassName, Collections.emptyMap());
+        state.entries.put(qualifiedClassName, entry);
+        append(entry.toRecord(qualifiedClassName));
+    }
+
+    /**
+     * Marks the run as finished and compacts the journal.
+     */
+    public synchronized void complete() {
+        state.finished = true;
+        close();
+
+        Path compacted = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            List<String> lines = new ArrayList<>();
+            lines.add(encode(state.header()));
+            if (state.planned > 0) {
+                JsonObject planned = record("planned");
+                planned.addProperty("count", state.planned);
+                lines.add(encode(planned));
+            }
+            for (Map.Entry<String, Entry> entry : state.entries.entrySet()) {
+                // Generated code is only needed to resume, and a finished run is never resumed
+                entry.getValue().testCode = null;
+                lines.add(encode(entry.getValue().toRecord(entry.getKey())));
+            }
+            lines.add(encode(record("finished")));
+            Files.write(compacted, lines, StandardCharsets.UTF_8);
+            Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOG.warn("Could not compact batch journal " + file, e);
+            try {
+                Files.deleteIfExists(compacted);
+                // Without the compacted copy, at least keep the run from being offered for resuming
+                try (FileChannel append = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                    append.write(ByteBuffer.wrap((encode(record("finished")) + "\n").getBytes(StandardCharsets.UTF_8)));
+                }
+            } catch (IOException ignored) {
+                // Already logged above
+            }
+        }
+    }
+
+    /**
+     * Syncs and closes the journal, leaving the run resumable.
+     */
+    @Override
+    public synchronized void close() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.force(false);
+            channel.close();
+        } catch (IOException e) {
+            LOG.warn("Could not close batch journal " + file, e);
+        }
+        channel = null;
+    }
+
+    private synchronized void append(@NotNull JsonObject record) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap((encode(record) + "\n").getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            unsyncedRecords++;
+            long now = System.nanoTime();
+            if (unsyncedRecords >= SYNC_EVERY_RECORDS || now - lastSync >= SYNC_EVERY_NANOS) {
+                channel.force(false);
+                unsyncedRecords = 0;
+                lastSync = now;
+            }
+        } catch (IOException e) {
+            LOG.warn("Could not write batch journal " + file + ", the run won't be resumable", e);
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // Already logged above
+            }
+            channel = null;
+        }
+    }
+
+    @Nullable
+    private static State read(@NotNull Path file) throws IOException {
+        State state = null;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            long length = 0;
+            while ((line = reader.readLine()) != null) {
+                JsonObject record = decode(line);
+                if (record == null) {
+                    // Torn or corrupt record; nothing after it can be trusted
+                    break;
+                }
+                length += line.getBytes(StandardCharsets.UTF_8).length + 1;
+
+                String type = record.get("type").getAsString();
+                if ("run".equals(type)) {
+                    state = State.fromHeader(record);
+                } else if (state == null) {
+                    return null;
+                } else if ("planned".equals(type)) {
+                    state.planned = record.get("count").getAsInt();
+                } else if ("finished".equals(type)) {
+                    state.finished = true;
+                } else {
+                    state.entries.put(record.get("class").getAsString(), Entry.fromRecord(record));
+                }
+                state.validLength = length;
+            }
+        }
+        return state;
+    }
+
+    @NotNull
+    private static JsonObject record(@NotNull String type) {
+        JsonObject record = new JsonObject();
+        record.addProperty("type", type);
+        return record;
+    }
+
+    @NotNull
+    private static String encode(@NotNull JsonObject record) {
+        String json = gson.toJson(record);
+        return Long.toHexString(checksum(json)) + " " + json;
+    }
+
+    @Nullable
+    private static JsonObject decode(@NotNull String line) {
+        int separator = line.indexOf(' ');
+        if (separator <= 0) {
+            return null;
+        }
+        String json = line.substring(separator + 1);
+        try {
+            if (Long.parseLong(line.substring(0, separator), 16) != checksum(json)) {
+                return null;
+            }
+            return gson.fromJson(json, JsonObject.class);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static long checksum(@NotNull String json) {
+        CRC32 crc = new CRC32();
+        crc.update(json.getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+
+    /**
+     * The progress of a class in a batch run.
+     */
+    public enum Status {
+        GENERATED,
+        WRITTEN,
+        FAILED
+    }
+
+    /**
+     * The state of a batch run as recorded in its journal.
+     */
+    public static class State {
+        private final List<String> rootUrls;
+        private final boolean useMockito;
+        private final boolean includeComments;
+        private final Map<String, Entry> entries = new LinkedHashMap<>();
+        private int planned;
+        private boolean finished;
+        private long validLength;
+
+        State(List<String> rootUrls, boolean useMockito, boolean includeComments) {
+            this.rootUrls = rootUrls;
+            this.useMockito = useMockito;
+            this.includeComments = includeComments;
+        }
+
+        public List<String> getRootUrls() {
+            return rootUrls;
+        }
+
+        public boolean isUseMockito() {
+            return useMockito;
+        }
+
+        public boolean isIncludeComments() {
+            return includeComments;
+        }
+
+        public int getPlanned() {
+            return planned;
+        }
+
+        /**
+         * Returns the number of classes whose test was generated, whether or not it was written yet.
+         */
+        public int getCompletedCount() {
+            int completed = 0;
+            for (Entry entry : entries.values()) {
+                if (entry.status != Status.FAILED) {
+                    completed++;
+                }
+            }
+            return completed;
+        }
+
+        @Nullable
+        public Entry getEntry(@NotNull String qualifiedClassName) {
+            return entries.get(qualifiedClassName);
+        }
+
+        JsonObject header() {
+            JsonObject header = record("run");
+            JsonArray roots = new JsonArray();
+            rootUrls.forEach(roots::add);
+            header.add("roots", roots);
+            header.addProperty("mockito", useMockito);
+            header.addProperty("comments", includeComments);
+            return header;
+        }
+
+        static State fromHeader(JsonObject header) {
+            List<String> roots = new ArrayList<>();
+            for (JsonElement root : header.getAsJsonArray("roots")) {
+                roots.add(root.getAsString());
+            }
+            return new State(roots, header.get("mockito").getAsBoolean(), header.get("comments").getAsBoolean());
+        }
+    }
+
+    /**
+     * The latest recorded progress of one class.
+     */
+    public static class Entry {
+        private final Status status;
+        private final String testClassName;
+        private final Map<String, String> fingerprints;
+        private String testCode;
+        private String path;
+
+        Entry(Status status, String testClassName, Map<String, String> fingerprints) {
+            this.status = status;
+            this.testClassName = testClassName;
+            this.fingerprints = fingerprints;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public String getTestClassName() {
+            return testClassName;
+        }
+
+        /**
+         * Returns the fingerprints of the class's methods the test was generated from.
+         */
+        public Map<String, String> getFingerprints() {
+            return fingerprints;
+        }
+
+        /**
+         * Returns the generated test code, kept until the test has been written.
+         */
+        @Nullable
+        public String getTestCode() {
+            return testCode;
+        }
+
+        JsonObject toRecord(String qualifiedClassName) {
+            JsonObject record = record(status.name().toLowerCase(Locale.ROOT));
+            record.addProperty("class", qualifiedClassName);
+            if (testClassName != null) {
+                record.addProperty("test", testClassName);
+            }
+            if (!fingerprints.isEmpty()) {
+                record.add("fingerprints", gson.toJsonTree(fingerprints, FINGERPRINTS_TYPE));
+            }
+            if (testCode != null) {
+                record.addProperty("code", testCode);
+            }
+            if (path != null) {
+                record.addProperty("path", path);
+            }
+            return record;
+        }
+
+        static Entry fromRecord(JsonObject record) {
+            Map<String, String> fingerprints = record.has("fingerprints")
+                    ? gson.fromJson(record.get("fingerprints"), FINGERPRINTS_TYPE)
+                    : Collections.emptyMap();
+            Entry entry = new Entry(
+                    Status.valueOf(record.get("type").getAsString().toUpperCase(Locale.ROOT)),
+                    record.has("test") ? record.get("test").getAsString() : null,
+                    fingerprints);
+            entry.testCode = record.has("code") ? record.get("code").getAsString() : null;
+            entry.path = record.has("path") ? record.get("path").getAsString() : null;
+            return entry;
+        }
+    }
+}
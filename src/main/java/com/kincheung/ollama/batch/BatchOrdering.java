@@ -0,0 +1,43 @@
+package com.kincheung.ollama.batch;
+
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Order in which the jobs of a batch generation run are sent to Ollama.
+ */
+public enum BatchOrdering {
+    /**
+     * Smallest estimated prompt first, which minimizes the mean time until each
+     * class's test is available.
+     */
+    SHORTEST_FIRST("Shortest job first"),
+
+    /**
+     * The order in which classes were found in the selected sources.
+     */
+    SOURCE_ORDER("Source order");
+
+    private final String displayName;
+
+    BatchOrdering(String displayName) {
+        this.displayName = displayName;
+    }
+
+    /**
+     * Sorts the jobs in place according to this ordering.
+     *
+     * @param jobs The jobs to sort
+     */
+    public void sort(List<BatchGenerationJob> jobs) {
+        if (this == SHORTEST_FIRST) {
+            // List.sort is stable, so equally sized jobs keep their source order
+            jobs.sort(Comparator.comparingInt(BatchGenerationJob::getEstimatedTokens));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return displayName;
+    }
+}
@@ -0,0 +1,552 @@
+package com.kincheung.ollama.batch;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.Task;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.Messages;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.SmartPsiElementPointer;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import com.kincheung.ollama.OllamaService;
+import com.kincheung.ollama.OllamaSettingsState;
+import com.kincheung.ollama.core.GenerationProgress;
+import com.kincheung.ollama.core.GenerationStage;
+import com.kincheung.ollama.core.GenerationTrace;
+import com.kincheung.ollama.core.PackedClass;
+import com.kincheung.ollama.core.PromptPacker;
+import com.kincheung.ollama.examples.TestExampleIndex;
+import com.kincheung.ollama.util.BulkTestFileWriter;
+import com.kincheung.ollama.util.GeneratedTestRunner;
+import com.kincheung.ollama.util.GeneratedTestValidator;
+import com.kincheung.ollama.util.IdeActivityMonitor;
+import com.kincheung.ollama.util.JavaClassAnalyzer;
+import com.kincheung.ollama.util.MethodFingerprinter;
+import com.kincheung.ollama.util.ModelRouter;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background task that generates tests for all untested classes under the given
+ * files and directories, one Ollama request at a time, in the order configured by {@link OllamaSettingsState#batchOrdering}.
+ * Progress is kept in a {@link BatchJournal}; if the previous run was interrupted,
+ * the user can resume it instead, reusing every test it already generated.
+ * Each class is generated with the model {@link ModelRouter} picks for it, and a
+ * test from the small model that fails validation is regenerated with the main model.
+ * Small classes routed to the same model are packed into shared requests, with a
+ * single-class request for any class whose part of the answer can't be used.
+ * While a request runs, the progress moves with the tokens Ollama has streamed.
+ * Tests found in the shared test cache are used without a request, and valid
+ * generated tests are published to it. If enabled, valid tests are run by the
+ * {@link GeneratedTestRunner} while the next classes are generated, and their
+ * failing test methods are dropped before they are written.
+ * Between requests the run pauses while the IDE is indexing or building or the
+ * CPU is busier than configured, so that neither slows the other down.
+ */
+public class BatchTestGenerationTask extends Task.Backgroundable {
+    private static final Logger LOG = Logger.getInstance(BatchTestGenerationTask.class);
+    private static final long PROGRESS_INTERVAL_MS = 500;
+    private static final long PAUSE_POLL_MS = 1000;
+    // Load from outside the IDE may never drop, so it only holds the run back this long
+    private static final long MAX_CPU_PAUSE_SECONDS = 120;
+
+    private final Map<String, OllamaService> ollamaServices = new HashMap<>();
+    private List<VirtualFile> roots;
+    private boolean useMockito;
+    private boolean includeComments;
+    private BatchJournal journal;
+    private BulkTestFileWriter writer;
+    private TestExampleIndex exampleIndex;
+    private int exampleCount;
+    private final List<CompletableFuture<Void>> testRuns = new ArrayList<>();
+
+    public BatchTestGenerationTask(
+            @NotNull Project project,
+            @NotNull List<VirtualFile> roots,
+            boolean useMockito,
+            boolean includeComments) {
+        super(project, "Generating Unit Tests", true);
+        this.roots = roots;
+        this.useMockito = useMockito;
+        this.includeComments = includeComments;
+    }
+
+    @Override
+    public void run(@NotNull ProgressIndicator indicator) {
+        indicator.setIndeterminate(false);
+        indicator.setText("Analyzing classes...");
+
+        Path journalFile = BatchJournal.journalFile(myProject);
+        BatchJournal.State previousRun = BatchJournal.readUnfinished(journalFile);
+        if (previousRun != null && !resumePreviousRun(previousRun)) {
+            previousRun = null;
+        }
+
+        List<SmartPsiElementPointer<PsiClass>> classes = new ArrayList<>();
+        for (VirtualFile root : roots) {
+            indicator.checkCanceled();
+            classes.addAll(JavaClassAnalyzer.findUntestedClasses(myProject, root));
+        }
+
+        List<BatchGenerationJob> jobs = new ArrayList<>();
+        for (SmartPsiElementPointer<PsiClass> pointer : classes) {
+            indicator.checkCanceled();
+            // Gives way to write actions and waits out indexing, like the scan
+            BatchGenerationJob job = ReadAction.nonBlocking(() -> createJob(pointer))
+                    .inSmartMode(myProject)
+                    .executeSynchronously();
+            if (job != null) {
+                jobs.add(job);
+            }
+        }
+
+        OllamaSettingsState.getInstance().batchOrdering.sort(jobs);
+
+        if (previousRun != null) {
+            journal = BatchJournal.resume(journalFile, previousRun);
+        } else {
+            List<String> rootUrls = new ArrayList<>();
+            for (VirtualFile root : roots) {
+                rootUrls.add(root.getUrl());
+            }
+            journal = BatchJournal.start(journalFile, rootUrls, useMockito, includeComments);
+            journal.planned(jobs.size());
+        }
+
+        OllamaSettingsState settings = OllamaSettingsState.getInstance();
+        List<List<BatchGenerationJob>> groups = new ArrayList<>();
+        if (settings.packSmallClasses) {
+            groups.addAll(PromptPacker.pack(
+                    jobs, BatchGenerationJob::getEstimatedTokens, BatchGenerationJob::getModel, settings.packTokenBudget));
+        } else {
+            jobs.forEach(job -> groups.add(List.of(job)));
+        }
+        // Packing may move jobs slightly, so estimate in the order they actually run
+        List<BatchGenerationJob> ordered = new ArrayList<>();
+        groups.forEach(ordered::addAll);
+
+        BatchEtaEstimator etaEstimator = new BatchEtaEstimator(ordered);
+        exampleIndex = TestExampleIndex.getInstance(myProject);
+        exampleCount = settings.exampleCount;
+        writer = new BulkTestFileWriter(myProject, new BulkTestFileWriter.WriteListener() {
+            @Override
+            public void written(@NotNull String qualifiedClassName, @NotNull VirtualFile testFile) {
+                journal.written(qualifiedClassName, testFile.getPath());
+            }
+
+            @Override
+            public void unchanged(@NotNull String qualifiedClassName, @NotNull VirtualFile testFile) {
+                // Nothing is left to write, so a resumed run doesn't retry it
+                journal.written(qualifiedClassName, testFile.getPath());
+            }
+
+            @Override
+            public void failed(@NotNull String qualifiedClassName, @NotNull String testClassName) {
+                journal.failed(qualifiedClassName, testClassName);
+            }
+        });
+
+        boolean completed = false;
+        try {
+            int i = 0;
+            for (List<BatchGenerationJob> group : groups) {
+                // Stop quietly on cancel so tests generated so far are still written
+                if (indicator.isCanceled()) {
+                    break;
+                }
+                int first = i;
+                i += group.size();
+
+                List<BatchGenerationJob> pending = new ArrayList<>();
+                for (BatchGenerationJob job : group) {
+                    String qualifiedClassName = job.getQualifiedClassName();
+                    BatchJournal.Entry journaled = previousRun != null && qualifiedClassName != null
+                            ? previousRun.getEntry(qualifiedClassName)
+                            : null;
+                    if (journaled != null && journaled.getStatus() == BatchJournal.Status.WRITTEN) {
+                        continue;
+                    }
+                    // Generated before the interruption but not written yet; reuse it unless the class changed since
+                    if (journaled != null && journaled.getStatus() == BatchJournal.Status.GENERATED
+                            && journaled.getTestCode() != null && journaled.getFingerprints().equals(job.getFingerprints())) {
+                        writer.add(job.getClassPointer(), job.getTestClassName(), journaled.getTestCode(), job.getFingerprints());
+                        continue;
+                    }
+                    String shared = ollamaService(job.getModel()).findSharedTest(
+                            job.getClassName(), job.getClassCode(), job.getCollaboratorContext(), useMockito, includeComments);
+                    if (shared != null) {
+                        accept(job, shared);
+                        continue;
+                    }
+                    pending.add(job);
+                }
+                if (pending.isEmpty()) {
+                    continue;
+                }
+                try {
+                    waitUntilIdle(indicator);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                if (indicator.isCanceled()) {
+                    break;
+                }
+
+                indicator.setFraction((double) first / ordered.size());
+                String names = pending.size() == 1
+                        ? pending.get(0).getTestClassName()
+                        : pending.get(0).getTestClassName() + " and " + (pending.size() - 1) + " more";
+                String position = pending.size() == 1 ? String.valueOf(i) : (first + 1) + "-" + i;
+                indicator.setText("Generating " + names + " (" + position + "/" + ordered.size() + ")");
+                indicator.setText2("ETA " + BatchEtaEstimator.formatDuration(etaEstimator.secondsUntilDone(first, i - 1))
+                        + ", batch done in ~" + BatchEtaEstimator.formatDuration(etaEstimator.secondsUntilDone(first, ordered.size() - 1)));
+
+                GenerationProgress progress = new GenerationProgress();
+                int end = i;
+                long secondsAfter = etaEstimator.secondsUntilDone(end, ordered.size() - 1);
+                ScheduledFuture<?> progressUpdates = AppExecutorUtil.getAppScheduledExecutorService().scheduleWithFixedDelay(
+                        () -> showProgress(indicator, progress, first, end, ordered.size(), secondsAfter),
+                        PROGRESS_INTERVAL_MS, PROGRESS_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                long start = System.nanoTime();
+                try {
+                    List<BatchGenerationJob> remaining = pending.size() > 1 ? generatePacked(pending, indicator, progress) : pending;
+                    for (BatchGenerationJob job : remaining) {
+                        generateSingle(job, indicator, progress);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } finally {
+                    progressUpdates.cancel(false);
+                }
+                recordCompleted(etaEstimator, pending, (System.nanoTime() - start) / 1_000_000_000.0);
+            }
+
+            if (!testRuns.isEmpty()) {
+                indicator.setText("Running generated tests...");
+                CompletableFuture.allOf(testRuns.toArray(new CompletableFuture[0])).join();
+            }
+            indicator.setFraction(1.0);
+            indicator.setText("Creating test files...");
+            writer.finish();
+            completed = !indicator.isCanceled() && !Thread.currentThread().isInterrupted();
+        } finally {
+            // An interrupted run keeps its journal open for resuming
+            if (completed) {
+                journal.complete();
+            } else {
+                journal.close();
+            }
+        }
+    }
+
+    /**
+     * Waits while {@link IdeActivityMonitor} reports the IDE as busy,
+     * within the limits configured for batch runs. Returns early if the run is cancelled.
+     */
+    private void waitUntilIdle(@NotNull ProgressIndicator indicator) throws InterruptedException {
+        OllamaSettingsState settings = OllamaSettingsState.getInstance();
+        long pauseStart = System.nanoTime();
+        while (!indicator.isCanceled()) {
+            boolean cpuPauseOver = System.nanoTime() - pauseStart > TimeUnit.SECONDS.toNanos(MAX_CPU_PAUSE_SECONDS);
+            String reason = IdeActivityMonitor.busyReason(
+                    myProject, settings.pauseBatchWhileBusy, cpuPauseOver ? 100 : settings.batchMaxCpuPercent);
+            if (reason == null) {
+                return;
+            }
+            indicator.setText2("Paused while " + reason);
+            Thread.sleep(PAUSE_POLL_MS);
+        }
+    }
+
+    /**
+     * Shows the estimated progress of the running request within the batch.
+     *
+     * @param first Index of the first job of the request's group
+     * @param end Index after the last job of the group
+     * @param total Number of jobs in the batch
+     * @param secondsAfter Estimated seconds the jobs after the group take
+     */
+    private static void showProgress(
+            @NotNull ProgressIndicator indicator,
+            @NotNull GenerationProgress progress,
+            int first,
+            int end,
+            int total,
+            long secondsAfter) {
+        if (!progress.isStarted()) {
+            return;
+        }
+        GenerationProgress.Estimate estimate = progress.estimate();
+        indicator.setFraction((first + estimate.getFraction() * (end - first)) / total);
+        long remaining = estimate.getRemainingSeconds();
+        if (remaining >= 0) {
+            indicator.setText2("ETA " + BatchEtaEstimator.formatDuration(remaining)
+                    + ", batch done in ~" + BatchEtaEstimator.formatDuration(remaining + secondsAfter));
+        }
+    }
+
+    /**
+     * Generates the tests of several small classes with one request.
+     *
+     * @return The jobs whose tests still have to be generated on their own,
+     *         because their section of the response was missing or invalid
+     */
+    @NotNull
+    private List<BatchGenerationJob> generatePacked(
+            @NotNull List<BatchGenerationJob> pending,
+            @NotNull ProgressIndicator indicator,
+            @NotNull GenerationProgress progress) throws InterruptedException {
+        List<BatchGenerationJob> remaining = new ArrayList<>();
+        List<BatchGenerationJob> packed = new ArrayList<>();
+        List<PackedClass> packedClasses = new ArrayList<>();
+        Set<String> testClassNames = new HashSet<>();
+        for (BatchGenerationJob job : pending) {
+            // Sections are matched by test class name, so same-named classes from other packages go alone
+            if (testClassNames.add(job.getTestClassName())) {
+                packed.add(job);
+                packedClasses.add(new PackedClass(job.getClassName(), job.getClassCode(), job.getCollaboratorContext()));
+            } else {
+                remaining.add(job);
+            }
+        }
+
+        Map<String, String> sections;
+        try {
+            sections = ollamaService(packed.get(0).getModel())
+                    .generatePackedTests(packedClasses, useMockito, includeComments, progress)
+                    .get();
+        } catch (ExecutionException e) {
+            LOG.warn("Error generating packed tests, generating them one by one", e);
+            remaining.addAll(packed);
+            return remaining;
+        }
+
+        for (BatchGenerationJob job : packed) {
+            String testCode = sections.get(job.getTestClassName());
+            if (testCode != null && isValid(testCode)) {
+                acceptValid(job, testCode);
+            } else {
+                remaining.add(job);
+            }
+        }
+        return remaining;
+    }
+
+    /**
+     * Generates the test of a single class, escalating to the main model if the
+     * test from the small model is invalid.
+     */
+    private void generateSingle(
+            @NotNull BatchGenerationJob job,
+            @NotNull ProgressIndicator indicator,
+            @NotNull GenerationProgress progress) throws InterruptedException {
+        GenerationTrace trace = GenerationTrace.start(job.getTestClassName());
+        try {
+            List<String> exampleTests = exampleIndex.findExamples(job.getClassCode(), exampleCount).get();
+            String model = job.getModel();
+            String testCode = generate(model, job, exampleTests, trace, progress);
+            boolean valid = isValid(testCode, trace);
+            String escalationModel = ModelRouter.escalationModel(model);
+            if (escalationModel != null && !valid) {
+                LOG.info("Generated " + job.getTestClassName() + " with " + model + " is invalid, retrying with " + escalationModel);
+                indicator.setText("Regenerating " + job.getTestClassName() + " with " + escalationModel);
+                testCode = generate(escalationModel, job, exampleTests, trace, progress);
+                valid = isValid(testCode, trace);
+            }
+            if (valid) {
+                acceptValid(job, testCode);
+            } else {
+                accept(job, testCode);
+            }
+            trace.finish("generated");
+        } catch (InterruptedException e) {
+            trace.finish("cancelled");
+            throw e;
+        } catch (Exception e) {
+            trace.finish("failed");
+            LOG.warn("Error generating test for " + job.getClassName(), e);
+            if (job.getQualifiedClassName() != null) {
+                journal.failed(job.getQualifiedClassName(), job.getTestClassName());
+            }
+            writer.addFailure(job.getTestClassName());
+        }
+    }
+
+    private void accept(@NotNull BatchGenerationJob job, @NotNull String testCode) {
+        if (job.getQualifiedClassName() != null) {
+            journal.generated(job.getQualifiedClassName(), job.getTestClassName(), job.getFingerprints(), testCode);
+        }
+        writer.add(job.getClassPointer(), job.getTestClassName(), testCode, job.getFingerprints());
+    }
+
+    /**
+     * Accepts a valid test and publishes it to the shared test cache. If enabled,
+     * the test is first run in the background while the batch goes on, and its
+     * failing test methods are dropped.
+     */
+    private void acceptValid(@NotNull BatchGenerationJob job, @NotNull String testCode) {
+        GeneratedTestRunner.Target target = OllamaSettingsState.getInstance().runGeneratedTests
+                ? ReadAction.compute(() -> {
+                    PsiClass psiClass = job.getClassPointer().getElement();
+                    return psiClass != null ? GeneratedTestRunner.target(psiClass) : null;
+                })
+                : null;
+        if (target == null) {
+            accept(job, testCode);
+            share(job, testCode);
+            return;
+        }
+        testRuns.add(GeneratedTestRunner.getInstance()
+                .dropFailingMethods(myProject, target, job.getTestClassName(), testCode)
+                .exceptionally(error -> {
+                    LOG.warn("Error running the generated tests of " + job.getClassName(), error);
+                    return testCode;
+                })
+                // Writing may wait for the EDT, which shouldn't hold up a test worker
+                .thenAcceptAsync(runCode -> {
+                    accept(job, runCode);
+                    share(job, runCode);
+                }, AppExecutorUtil.getAppExecutorService()));
+    }
+
+    /**
+     * Publishes a valid test to the shared test cache under the model the class was routed to.
+     */
+    private void share(@NotNull BatchGenerationJob job, @NotNull String testCode) {
+        ollamaService(job.getModel()).shareTest(
+                job.getClassName(), job.getClassCode(), job.getCollaboratorContext(), useMockito, includeComments, testCode);
+    }
+
+    /**
+     * Attributes the time of a request to its jobs in proportion to their estimated size.
+     */
+    private static void recordCompleted(
+            @NotNull BatchEtaEstimator etaEstimator,
+            @NotNull List<BatchGenerationJob> jobs,
+            double seconds) {
+        long totalTokens = 0;
+        for (BatchGenerationJob job : jobs) {
+            totalTokens += job.getEstimatedTokens();
+        }
+        for (BatchGenerationJob job : jobs) {
+            double share = totalTokens > 0 ? (double) job.getEstimatedTokens() / totalTokens : 1.0 / jobs.size();
+            etaEstimator.recordCompleted(job, seconds * share);
+        }
+    }
+
+    @NotNull
+    private OllamaService ollamaService(@NotNull String model) {
+        return ollamaServices.computeIfAbsent(model, OllamaService::new);
+    }
+
+    private String generate(
+            @NotNull String model,
+            @NotNull BatchGenerationJob job,
+            @NotNull List<String> exampleTests,
+            @NotNull GenerationTrace trace,
+            @NotNull GenerationProgress progress) throws Exception {
+        return ollamaService(model).generateTest(
+                job.getClassName(),
+                job.getClassCode(),
+                job.getCollaboratorContext(),
+                useMockito,
+                includeComments,
+                new OllamaService.GenerationOptions().exampleTests(exampleTests).trace(trace).progress(progress)
+        ).get();
+    }
+
+    private boolean isValid(@NotNull String testCode) {
+        GeneratedTestValidator.ValidationResult validation = ReadAction.compute(
+                () -> GeneratedTestValidator.validate(myProject, testCode));
+        return validation.hasClass() && validation.isValid();
+    }
+
+    private boolean isValid(@NotNull String testCode, @NotNull GenerationTrace trace) {
+        GenerationTrace.Span span = trace.stage(GenerationStage.VALIDATION);
+        span.setInputChars(testCode.length());
+        try {
+            return isValid(testCode);
+        } finally {
+            span.end();
+        }
+    }
+
+    /**
+     * Asks whether to resume the interrupted run and, if so, switches this task to
+     * that run's files and settings.
+     *
+     * @return True if the previous run is resumed
+     */
+    private boolean resumePreviousRun(@NotNull BatchJournal.State previousRun) {
+        List<VirtualFile> previousRoots = new ArrayList<>();
+        for (String url : previousRun.getRootUrls()) {
+            VirtualFile root = VirtualFileManager.getInstance().findFileByUrl(url);
+            if (root != null && root.isValid()) {
+                previousRoots.add(root);
+            }
+        }
+        if (previousRoots.isEmpty()) {
+            return false;
+        }
+
+        String message = "The previous batch run was interrupted after generating tests for "
+                + previousRun.getCompletedCount()
+                + (previousRun.getPlanned() > 0 ? " of " + previousRun.getPlanned() : "")
+                + " classes. Resume it? Starting a new run discards its progress.";
+        boolean[] resume = new boolean[1];
+        ApplicationManager.getApplication().invokeAndWait(() -> resume[0] = Messages.showYesNoDialog(
+                myProject,
+                message,
+                "Resume Test Generation",
+                "Resume",
+                "Start New Run",
+                Messages.getQuestionIcon()) == Messages.YES);
+        if (!resume[0]) {
+            return false;
+        }
+
+        roots = previousRoots;
+        useMockito = previousRun.isUseMockito();
+        includeComments = previousRun.isIncludeComments();
+        return true;
+    }
+
+    /**
+     * Captures what generating the test of a class needs. Runs in a non-blocking
+     * read action, so it may be restarted and must have no side effects.
+     */
+    private BatchGenerationJob createJob(@NotNull SmartPsiElementPointer<PsiClass> pointer) {
+        PsiClass psiClass = pointer.getElement();
+        if (psiClass == null || psiClass.getName() == null) {
+            return null;
+        }
+        return new BatchGenerationJob(
+                pointer,
+                psiClass.getName(),
+                psiClass.getQualifiedName(),
+                psiClass.getText(),
+                JavaClassAnalyzer.collectCollaboratorContext(psiClass),
+                MethodFingerprinter.fingerprintMethods(psiClass),
+                ModelRouter.selectModel(JavaClassAnalyzer.computeMetrics(psiClass)),
+                useMockito,
+                includeComments
+        );
+    }
+}
@@ -0,0 +1,328 @@
+package com.kincheung.ollama.examples;
+
+import com.intellij.ide.highlighter.JavaFileType;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ProjectFileIndex;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VfsUtilCore;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.openapi.vfs.newvfs.BulkFileListener;
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileMoveEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFilePropertyChangeEvent;
+import com.intellij.psi.search.FileTypeIndex;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import com.kincheung.ollama.OllamaSettingsState;
+import com.kincheung.ollama.core.OllamaClient;
+import com.kincheung.ollama.core.VectorIndex;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Project-level index of the embeddings of the project's existing test classes,
+ * used to pick the most similar tests as examples of the project's conventions
+ * when generating a new test.
+ * <p>
+ * The index is built the first time examples are requested and persisted in
+ * the IDE system directory, one file per embedding model. From then on it is
+ * updated incrementally: only test files that were created, changed, moved or
+ * deleted since are re-embedded. All indexing runs on a single minimum-priority
+ * thread; until the index has content, generation proceeds without examples.
+ */
+public class TestExampleIndex implements Disposable {
+    private static final Logger LOG = Logger.getInstance(TestExampleIndex.class);
+    private static final int EMBED_BATCH_SIZE = 16;
+    private static final int MAX_EMBEDDED_CHARS = 6000;
+    private static final int MAX_EXAMPLE_CHARS = 4000;
+    private static final int SAVE_EVERY_EMBEDDINGS = 500;
+    private static final long REFRESH_DELAY_SECONDS = 10;
+    private static final long EMBED_TIMEOUT_SECONDS = 120;
+
+    private final Project project;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Ollama Test Example Index");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+    private final Set<String> changedPaths = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final AtomicBoolean refreshScheduled = new AtomicBoolean();
+    private volatile VectorIndex index;
+    private volatile String indexedModel;
+    private volatile boolean fullScanNeeded = true;
+    private volatile boolean disposed;
+
+    public TestExampleIndex(@NotNull Project project) {
+        this.project = project;
+        project.getMessageBus().connect(this).subscribe(VirtualFileManager.VFS_CHANGES, new BulkFileListener() {
+            @Override
+            public void after(@NotNull List<? extends VFileEvent> events) {
+                if (!started.get()) {
+                    return;
+                }
+                boolean changed = false;
+                for (VFileEvent event : events) {
+                    if (!event.getPath().endsWith(".java")) {
+                        continue;
+                    }
+                    changedPaths.add(event.getPath());
+                    if (event instanceof VFileMoveEvent) {
+                        changedPaths.add(((VFileMoveEvent) event).getOldPath());
+                    } else if (event instanceof VFilePropertyChangeEvent) {
+                        changedPaths.add(((VFilePropertyChangeEvent) event).getOldPath());
+                    }
+                    changed = true;
+                }
+                if (changed) {
+                    scheduleRefresh(REFRESH_DELAY_SECONDS);
+                }
+            }
+        });
+    }
+
+    public static TestExampleIndex getInstance(@NotNull Project project) {
+        return project.getService(TestExampleIndex.class);
+    }
+
+    /**
+     * Finds the existing test classes most similar to a class.
+     * The lookup never fails: if the index isn't ready or the embedding request
+     * fails, the future completes with an empty list.
+     *
+     * @param classCode The source code of the class under test
+     * @param count The maximum number of examples
+     * @return A CompletableFuture with the source code of the similar tests, most similar first
+     */
+    public CompletableFuture<List<String>> findExamples(@NotNull String classCode, int count) {
+        if (count <= 0) {
+            return CompletableFuture.completedFuture(Collections.emptyList());
+        }
+        if (started.compareAndSet(false, true)) {
+            scheduleRefresh(0);
+        }
+
+        OllamaSettingsState settings = OllamaSettingsState.getInstance();
+        VectorIndex current = index;
+        if (current == null || current.size() == 0 || !settings.embeddingModel.equals(indexedModel)) {
+            return CompletableFuture.completedFuture(Collections.emptyList());
+        }
+
+        OllamaClient client = new OllamaClient(settings.ollamaUrl, settings.timeoutSeconds);
+        return client.embed(settings.embeddingModel, List.of(truncate(classCode, MAX_EMBEDDED_CHARS)))
+                .thenApply(embeddings -> {
+                    List<String> examples = new ArrayList<>();
+                    for (VectorIndex.Match match : current.search(embeddings[0], count)) {
+                        String text = loadText(match.getKey());
+                        if (text != null) {
+                            examples.add(truncate(text, MAX_EXAMPLE_CHARS));
+                        }
+                    }
+                    return examples;
+                })
+                .exceptionally(error -> {
+                    LOG.info("Could not find example tests with " + settings.embeddingModel, error);
+                    return Collections.emptyList();
+                });
+    }
+
+    @Override
+    public void dispose() {
+        disposed = true;
+        executor.shutdownNow();
+    }
+
+    private void scheduleRefresh(long delaySeconds) {
+        if (disposed || !refreshScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        AppExecutorUtil.getAppScheduledExecutorService().schedule(() -> {
+            if (!disposed) {
+                executor.execute(this::refresh);
+            }
+        }, delaySeconds, TimeUnit.SECONDS);
+    }
+
+    private void refresh() {
+        refreshScheduled.set(false);
+        OllamaSettingsState settings = OllamaSettingsState.getInstance();
+        if (disposed || settings.exampleCount <= 0) {
+            return;
+        }
+
+        String model = settings.embeddingModel;
+        if (!model.equals(indexedModel)) {
+            index = readIndex(model);
+            indexedModel = model;
+            fullScanNeeded = true;
+        }
+
+        Set<String> paths = new LinkedHashSet<>();
+        if (fullScanNeeded) {
+            changedPaths.clear();
+            paths.addAll(collectTestFilePaths());
+            VectorIndex current = index;
+            if (current != null) {
+                // Files deleted while the IDE was closed
+                paths.addAll(current.keys());
+            }
+            fullScanNeeded = false;
+        } else {
+            for (String path : changedPaths) {
+                changedPaths.remove(path);
+                paths.add(path);
+            }
+        }
+
+        try {
+            update(paths, model, settings);
+        } catch (Exception e) {
+            LOG.info("Could not update the test example index", e);
+        }
+    }
+
+    private void update(@NotNull Set<String> paths, @NotNull String model, @NotNull OllamaSettingsState settings) throws Exception {
+        List<VirtualFile> stale = new ArrayList<>();
+        boolean modified = false;
+        for (String path : paths) {
+            VirtualFile file = LocalFileSystem.getInstance().findFileByPath(path);
+            VectorIndex current = index;
+            if (file == null || !ReadAction.compute(() -> isTestFile(file))) {
+                modified |= current != null && current.remove(path);
+            } else if (current == null || current.getVersion(path) != file.getTimeStamp()) {
+                stale.add(file);
+            }
+        }
+
+        OllamaClient client = new OllamaClient(settings.ollamaUrl, settings.timeoutSeconds);
+        int sinceSave = 0;
+        for (int start = 0; start < stale.size(); start += EMBED_BATCH_SIZE) {
+            if (disposed || !model.equals(OllamaSettingsState.getInstance().embeddingModel)) {
+                return;
+            }
+            List<VirtualFile> batch = stale.subList(start, Math.min(stale.size(), start + EMBED_BATCH_SIZE));
+            List<String> texts = new ArrayList<>();
+            for (VirtualFile file : batch) {
+                String text = loadText(file.getPath());
+                texts.add(text != null ? truncate(text, MAX_EMBEDDED_CHARS) : "");
+            }
+
+            float[][] embeddings = client.embed(model, texts).get(EMBED_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            VectorIndex current = index;
+            if (current == null || current.getDimension() != embeddings[0].length) {
+                current = new VectorIndex(embeddings[0].length);
+                index = current;
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                current.put(batch.get(i).getPath(), batch.get(i).getTimeStamp(), embeddings[i]);
+            }
+            if (current.needsTraining()) {
+                current.train();
+            }
+
+            modified = true;
+            sinceSave += batch.size();
+            if (sinceSave >= SAVE_EVERY_EMBEDDINGS) {
+                writeIndex(current, model);
+                sinceSave = 0;
+                modified = false;
+            }
+        }
+
+        VectorIndex current = index;
+        if (modified && current != null) {
+            writeIndex(current, model);
+        }
+    }
+
+    @NotNull
+    private List<String> collectTestFilePaths() {
+        return ReadAction.nonBlocking(() -> {
+                    List<String> paths = new ArrayList<>();
+                    for (VirtualFile file : FileTypeIndex.getFiles(JavaFileType.INSTANCE, GlobalSearchScope.projectScope(project))) {
+                        if (isTestFile(file)) {
+                            paths.add(file.getPath());
+                        }
+                    }
+                    return paths;
+                })
+                .inSmartMode(project)
+                .expireWith(this)
+                .executeSynchronously();
+    }
+
+    private boolean isTestFile(@NotNull VirtualFile file) {
+        return file.isValid()
+                && !file.isDirectory()
+                && "java".equals(file.getExtension())
+                && ProjectFileIndex.getInstance(project).isInTestSourceContent(file);
+    }
+
+    @Nullable
+    private VectorIndex readIndex(@NotNull String model) {
+        Path file = indexFile(model);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try {
+            return VectorIndex.read(file);
+        } catch (IOException e) {
+            LOG.info("Could not read the test example index " + file + ", rebuilding it", e);
+            return null;
+        }
+    }
+
+    private void writeIndex(@NotNull VectorIndex current, @NotNull String model) {
+        try {
+            current.write(indexFile(model));
+        } catch (IOException e) {
+            LOG.warn("Could not save the test example index", e);
+        }
+    }
+
+    @NotNull
+    private Path indexFile(@NotNull String model) {
+        return Paths.get(PathManager.getSystemPath(), "ollama-test-generator",
+                "test-index-" + project.getLocationHash() + "-" + model.replaceAll("[^A-Za-z0-9._-]", "_") + ".bin");
+    }
+
+    @Nullable
+    private static String loadText(@NotNull String path) {
+        VirtualFile file = LocalFileSystem.getInstance().findFileByPath(path);
+        if (file == null || !file.isValid()) {
+            return null;
+        }
+        try {
+            return VfsUtilCore.loadText(file);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    @NotNull
+    private static String truncate(@NotNull String text, int maxChars) {
+        return text.length() <= maxChars ? text : text.substring(0, maxChars);
+    }
+}
@@ -0,0 +1,18 @@
+package com.kincheung.ollama.speculative;
+
+import com.intellij.openapi.project.DumbAware;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.startup.StartupActivity;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Creates the {@link SpeculativeTestGenerator} when a project opens, so that it
+ * sees edits from the start. Whether it pre-generates anything is decided per
+ * edit from the settings.
+ */
+public class SpeculativeGenerationStartup implements StartupActivity, DumbAware {
+    @Override
+    public void runActivity(@NotNull Project project) {
+        SpeculativeTestGenerator.getInstance(project);
+    }
+}
@@ -0,0 +1,331 @@
+package com.kincheung.ollama.speculative;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.EditorFactory;
+import com.intellij.openapi.editor.event.DocumentEvent;
+import com.intellij.openapi.editor.event.DocumentListener;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ProjectFileIndex;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiJavaFile;
+import com.intellij.psi.PsiManager;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import com.kincheung.ollama.OllamaService;
+import com.kincheung.ollama.OllamaSettingsState;
+import com.kincheung.ollama.examples.TestExampleIndex;
+import com.kincheung.ollama.util.GeneratedTestCache;
+import com.kincheung.ollama.util.GeneratedTestValidator;
+import com.kincheung.ollama.util.IdeActivityMonitor;
+import com.kincheung.ollama.util.JavaClassAnalyzer;
+import com.kincheung.ollama.util.ModelRouter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pre-generates tests for untested classes while the user is editing them, so
+ * that generating the test afterwards, e.g. from the inspection's quick fix,
+ * finds it ready in the {@link GeneratedTestCache}.
+ * <p>
+ * A source file that was edited and then left alone for the configured idle time
+ * is snapshotted and its test generated with the same prompt an interactive
+ * generation would send. Every further edit of the file cancels the pending or
+ * running pre-generation and restarts the idle timer. Pre-generation is opt-in
+ * and stays within a budget: at most the configured number run at once, none
+ * start while the IDE is indexing or building or its CPU load is above
+ * the configured limit (see {@link IdeActivityMonitor}), and running
+ * ones are cancelled whenever an interactive generation starts so that they
+ * don't hold up Ollama; all of these are retried later. The client-side work
+ * runs on a single minimum-priority thread.
+ */
+public class SpeculativeTestGenerator implements Disposable {
+    private static final Logger LOG = Logger.getInstance(SpeculativeTestGenerator.class);
+    private static final long RETRY_DELAY_SECONDS = 30;
+
+    private final Project project;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Ollama Speculative Test Generation");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+    private final Map<VirtualFile, Speculation> speculations = new ConcurrentHashMap<>();
+    private final AtomicInteger runningCount = new AtomicInteger();
+    private volatile boolean disposed;
+
+    public SpeculativeTestGenerator(@NotNull Project project) {
+        this.project = project;
+        EditorFactory.getInstance().getEventMulticaster().addDocumentListener(new DocumentListener() {
+            @Override
+            public void documentChanged(@NotNull DocumentEvent event) {
+                edited(event.getDocument());
+            }
+        }, this);
+    }
+
+    public static SpeculativeTestGenerator getInstance(@NotNull Project project) {
+        return project.getService(SpeculativeTestGenerator.class);
+    }
+
+    /**
+     * Cancels the running pre-generations so they don't compete with an
+     * interactive generation for Ollama, and retries them later.
+     */
+    public void interactiveGenerationStarted() {
+        for (Map.Entry<VirtualFile, Speculation> entry : speculations.entrySet()) {
+            if (entry.getValue().started) {
+                schedule(entry.getKey(), RETRY_DELAY_SECONDS);
+            }
+        }
+    }
+
+    @Override
+    public void dispose() {
+        disposed = true;
+        for (Speculation speculation : speculations.values()) {
+            speculation.cancel();
+        }
+        speculations.clear();
+        executor.shutdownNow();
+    }
+
+    private void edited(@NotNull Document document) {
+        if (disposed || project.isDisposed()) {
+            return;
+        }
+        VirtualFile file = FileDocumentManager.getInstance().getFile(document);
+        if (file == null || !"java".equals(file.getExtension())) {
+            return;
+        }
+        // The multicaster reports the documents of every open project
+        ProjectFileIndex fileIndex = ProjectFileIndex.getInstance(project);
+        if (!fileIndex.isInSourceContent(file) || fileIndex.isInTestSourceContent(file)) {
+            return;
+        }
+
+        OllamaSettingsState settings = OllamaSettingsState.getInstance();
+        if (settings.speculativeGeneration) {
+            schedule(file, settings.speculativeIdleSeconds);
+        } else {
+            Speculation speculation = speculations.remove(file);
+            if (speculation != null) {
+                speculation.cancel();
+            }
+        }
+    }
+
+    /**
+     * Replaces any pending or running pre-generation of the file with one that
+     * starts after the delay.
+     */
+    private void schedule(@NotNull VirtualFile file, long delaySeconds) {
+        if (disposed) {
+            return;
+        }
+        Speculation speculation = new Speculation();
+        Speculation previous = speculations.put(file, speculation);
+        if (previous != null) {
+            previous.cancel();
+        }
+        speculation.timer = AppExecutorUtil.getAppScheduledExecutorService().schedule(
+                () -> {
+                    if (!disposed) {
+                        executor.execute(() -> start(file, speculation));
+                    }
+                }, delaySeconds, TimeUnit.SECONDS);
+    }
+
+    private void start(@NotNull VirtualFile file, @NotNull Speculation speculation) {
+        if (speculation.cancelled || disposed || speculations.get(file) != speculation) {
+            return;
+        }
+        OllamaSettingsState settings = OllamaSettingsState.getInstance();
+        if (!settings.speculativeGeneration) {
+            speculations.remove(file, speculation);
+            return;
+        }
+        if (runningCount.get() >= settings.speculativeMaxConcurrent
+                || IdeActivityMonitor.busyReason(project, true, settings.speculativeMaxCpuPercent) != null) {
+            schedule(file, RETRY_DELAY_SECONDS);
+            return;
+        }
+
+        Snapshot snapshot = ReadAction.nonBlocking(() -> takeSnapshot(file)).executeSynchronously();
+        if (snapshot == null) {
+            speculations.remove(file, speculation);
+            return;
+        }
+
+        OllamaService ollamaService = new OllamaService(snapshot.model);
+        // An interactive generation will find a shared test without asking Ollama either
+        if (ollamaService.findSharedTest(snapshot.className, snapshot.classCode, snapshot.collaboratorContext,
+                settings.includeMockito, settings.includeComments) != null) {
+            speculations.remove(file, speculation);
+            return;
+        }
+
+        speculation.started = true;
+        runningCount.incrementAndGet();
+        CompletableFuture<String> future = speculation.run(ollamaService.isOllamaAvailable())
+                .thenCompose(available -> available
+                        ? speculation.run(TestExampleIndex.getInstance(project).findExamples(snapshot.classCode, settings.exampleCount))
+                        : CompletableFuture.<List<String>>completedFuture(null))
+                .thenCompose(examples -> examples == null
+                        ? CompletableFuture.<String>completedFuture(null)
+                        : generate(snapshot, examples, speculation).thenApply(testCode -> {
+                            if (testCode != null && !speculation.cancelled) {
+                                ollamaService.cacheTest(snapshot.className, snapshot.classCode, snapshot.collaboratorContext,
+                                        examples, settings.includeMockito, settings.includeComments, testCode);
+                                ollamaService.shareTest(snapshot.className, snapshot.classCode, snapshot.collaboratorContext,
+                                        settings.includeMockito, settings.includeComments, testCode);
+                                LOG.info("Pre-generated the test of " + snapshot.className);
+                            }
+                            return testCode;
+                        }));
+        future.whenComplete((testCode, error) -> {
+            runningCount.decrementAndGet();
+            speculations.remove(file, speculation);
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            if (cause != null && !(cause instanceof CancellationException)) {
+                LOG.info("Pre-generating the test of " + snapshot.className + " failed", cause);
+            }
+        });
+    }
+
+    /**
+     * Generates the test with the routed model, escalating an invalid test from
+     * the small model as an interactive generation would.
+     *
+     * @return A future with the valid test code, or with null if none could be generated
+     */
+    @NotNull
+    private CompletableFuture<String> generate(
+            @NotNull Snapshot snapshot,
+            @NotNull List<String> examples,
+            @NotNull Speculation speculation) {
+        return request(snapshot, snapshot.model, examples, speculation)
+                .thenComposeAsync(testCode -> {
+                    if (isValid(testCode)) {
+                        return CompletableFuture.completedFuture(testCode);
+                    }
+                    String escalationModel = ModelRouter.escalationModel(snapshot.model);
+                    if (escalationModel == null) {
+                        return CompletableFuture.completedFuture(null);
+                    }
+                    return request(snapshot, escalationModel, examples, speculation)
+                            .thenApplyAsync(escalated -> isValid(escalated) ? escalated : null, executor);
+                }, executor);
+    }
+
+    @NotNull
+    private CompletableFuture<String> request(
+            @NotNull Snapshot snapshot,
+            @NotNull String model,
+            @NotNull List<String> examples,
+            @NotNull Speculation speculation) {
+        OllamaSettingsState settings = OllamaSettingsState.getInstance();
+        return speculation.run(new OllamaService(model).generateTest(
+                snapshot.className,
+                snapshot.classCode,
+                snapshot.collaboratorContext,
+                settings.includeMockito,
+                settings.includeComments,
+                new OllamaService.GenerationOptions().exampleTests(examples)));
+    }
+
+    private boolean isValid(@NotNull String testCode) {
+        GeneratedTestValidator.ValidationResult validation = ReadAction.compute(
+                () -> GeneratedTestValidator.validate(project, testCode));
+        return validation.hasClass() && validation.isValid();
+    }
+
+    /**
+     * Captures the first untested class of the file, as the interactive
+     * generation would see it. Java files normally declare one top-level class.
+     */
+    @Nullable
+    private Snapshot takeSnapshot(@NotNull VirtualFile file) {
+        if (project.isDisposed() || !file.isValid()) {
+            return null;
+        }
+        PsiFile psiFile = PsiManager.getInstance(project).findFile(file);
+        if (!(psiFile instanceof PsiJavaFile)) {
+            return null;
+        }
+        for (PsiClass psiClass : ((PsiJavaFile) psiFile).getClasses()) {
+            if (JavaClassAnalyzer.isGenerationCandidate(psiClass) && !JavaClassAnalyzer.hasTestClass(psiClass)) {
+                return new Snapshot(
+                        psiClass.getName(),
+                        psiClass.getText(),
+                        JavaClassAnalyzer.collectCollaboratorContext(psiClass),
+                        ModelRouter.selectModel(JavaClassAnalyzer.computeMetrics(psiClass)));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Read-action snapshot of the class to pre-generate a test for.
+     */
+    private static class Snapshot {
+        private final String className;
+        private final String classCode;
+        private final String collaboratorContext;
+        private final String model;
+
+        Snapshot(String className, String classCode, String collaboratorContext, String model) {
+            this.className = className;
+            this.classCode = classCode;
+            this.collaboratorContext = collaboratorContext;
+            this.model = model;
+        }
+    }
+
+    /**
+     * One pending or running pre-generation of a file. Cancelling it stops the
+     * idle timer or the step in progress, which cancels the Ollama request.
+     */
+    private static class Speculation {
+        private volatile Future<?> timer;
+        private volatile CompletableFuture<?> step;
+        private volatile boolean started;
+        private volatile boolean cancelled;
+
+        <T> CompletableFuture<T> run(@NotNull CompletableFuture<T> future) {
+            step = future;
+            if (cancelled) {
+                future.cancel(true);
+            }
+            return future;
+        }
+
+        void cancel() {
+            cancelled = true;
+            Future<?> pendingTimer = timer;
+            if (pendingTimer != null) {
+                pendingTimer.cancel(false);
+            }
+            CompletableFuture<?> pendingStep = step;
+            if (pendingStep != null) {
+                pendingStep.cancel(true);
+            }
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package com.kincheung.ollama.util;
+
+import com.intellij.notification.NotificationGroupManager;
+import com.intellij.notification.NotificationType;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiJavaFile;
+import com.intellij.psi.SmartPsiElementPointer;
+import com.kincheung.ollama.OllamaSettingsState;
+import com.kincheung.ollama.TestFingerprintState;
+import com.kincheung.ollama.core.GenerationStage;
+import com.kincheung.ollama.core.GenerationTrace;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects generated tests from a bulk run and writes them to disk in batches.
+ * Each batch is a single write action and a single undoable command, and no
+ * editor tabs are opened; a summary notification is shown once the run finishes.
+ * Target directories are resolved, and the tests formatted by the
+ * {@link GeneratedCodeFormatter}, in read actions on the calling thread so the
+ * work done on the EDT is limited to the actual file creation.
+ */
+public class BulkTestFileWriter {
+    private static final Logger LOG = Logger.getInstance(BulkTestFileWriter.class);
+    private static final int BATCH_SIZE = 25;
+    private static final int MAX_LISTED_CLASSES = 10;
+
+    private final Project project;
+    private final List<PendingTestFile> pending = new ArrayList<>();
+    private final List<String> createdClasses = new ArrayList<>();
+    private final List<String> mergedClasses = new ArrayList<>();
+    private final List<String> unchangedClasses = new ArrayList<>();
+    private final List<String> failedClasses = new ArrayList<>();
+    private final WriteListener listener;
+
+    public BulkTestFileWriter(@NotNull Project project) {
+        this(project, null);
+    }
+
+    /**
+     * @param project The project
+     * @param listener Notified of each written or failed file on the thread that flushed it, may be null
+     */
+    public BulkTestFileWriter(@NotNull Project project, @Nullable WriteListener listener) {
+        this.project = project;
+        this.listener = listener;
+    }
+
+    /**
+     * Queues a generated test for writing, flushing the queue once a full batch
+     * has been gathered.
+     *
+     * @param sourceClass Pointer to the class under test
+     * @param testClassName The name of the test class
+     * @param testCode The generated test code
+     * @param fingerprints The fingerprints of the methods the test was generated from
+     */
+    public void add(
+            @NotNull SmartPsiElementPointer<PsiClass> sourceClass,
+            @NotNull String testClassName,
+            @NotNull String testCode,
+            @NotNull Map<String, String> fingerprints) {
+        // Taken first, so that the listener hears of the failure even if the class is gone by the time it's resolved
+        String qualifiedClassName = ReadAction.compute(() -> {
+            PsiClass psiClass = sourceClass.getElement();
+            return psiClass != null ? psiClass.getQualifiedName() : null;
+        });
+        String formatted = OllamaSettingsState.getInstance().formatGeneratedCode
+                ? GeneratedCodeFormatter.formatInBackground(project, sourceClass, testCode)
+                : testCode;
+        PendingTestFile file = ReadAction.compute(() -> resolve(sourceClass, testClassName, formatted, qualifiedClassName, fingerprints));
+        if (file == null) {
+            synchronized (this) {
+                failedClasses.add(testClassName);
+            }
+            if (listener != null && qualifiedClassName != null) {
+                listener.failed(qualifiedClassName, testClassName);
+            }
+            return;
+        }
+        synchronized (this) {
+            pending.add(file);
+            if (pending.size() < BATCH_SIZE) {
+                return;
+            }
+        }
+        flush();
+    }
+
+    /**
+     * Records a class whose test could not be generated, so it shows up in the summary.
+     *
+     * @param testClassName The name of the test class
+     */
+    public synchronized void addFailure(@NotNull String testClassName) {
+        failedClasses.add(testClassName);
+    }
+
+    /**
+     * Writes all queued tests in one write command.
+     */
+    public void flush() {
+        List<PendingTestFile> batch;
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = new ArrayList<>(pending);
+            pending.clear();
+        }
+
+        Map<PendingTestFile, TestFileCreator.Result> results = new LinkedHashMap<>();
+        GenerationTrace trace = GenerationTrace.start(batch.size() + " test files");
+        GenerationTrace.Span edtWait = trace.stage(GenerationStage.EDT_WAIT);
+        ApplicationManager.getApplication().invokeAndWait(() -> {
+            edtWait.end();
+            if (project.isDisposed()) {
+                return;
+            }
+            GenerationTrace.Span write = trace.stage(GenerationStage.WRITE);
+            WriteCommandAction.writeCommandAction(project)
+                    .withName("Create " + batch.size() + " Generated Tests")
+                    .run(() -> {
+                        for (PendingTestFile file : batch) {
+                            results.put(file, write(file));
+                        }
+                    });
+            write.end();
+        });
+        trace.finish("written");
+
+        // Outside the write action, so listeners may do I/O without blocking the EDT
+        if (listener != null) {
+            for (Map.Entry<PendingTestFile, TestFileCreator.Result> result : results.entrySet()) {
+                PendingTestFile file = result.getKey();
+                TestFileCreator.Result written = result.getValue();
+                if (file.qualifiedClassName == null) {
+                    continue;
+                }
+                if (written == null) {
+                    listener.failed(file.qualifiedClassName, file.testClassName);
+                } else if (written.isWritten()) {
+                    listener.written(file.qualifiedClassName, written.getFile());
+                } else {
+                    listener.unchanged(file.qualifiedClassName, written.getFile());
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes any remaining tests and shows a summary of the whole run.
+     */
+    public void finish() {
+        flush();
+
+        List<String> created;
+        List<String> merged;
+        List<String> unchanged;
+        List<String> failed;
+        synchronized (this) {
+            created = new ArrayList<>(createdClasses);
+            merged = new ArrayList<>(mergedClasses);
+            unchanged = new ArrayList<>(unchangedClasses);
+            failed = new ArrayList<>(failedClasses);
+        }
+        if (created.isEmpty() && merged.isEmpty() && unchanged.isEmpty() && failed.isEmpty()) {
+            return;
+        }
+
+        StringBuilder content = new StringBuilder();
+        content.append("Created ").append(created.size()).append(" test classes");
+        if (!created.isEmpty()) {
+            content.append(": ").append(summarize(created));
+        }
+        if (!merged.isEmpty()) {
+            content.append("<br>Added tests to ").append(merged.size()).append(" existing test classes: ").append(summarize(merged));
+        }
+        if (!unchanged.isEmpty()) {
+            content.append("<br>Left ").append(unchanged.size()).append(" existing test classes unchanged: ").append(summarize(unchanged));
+        }
+        if (!failed.isEmpty()) {
+            content.append("<br>Failed ").append(failed.size()).append(": ").append(summarize(failed));
+        }
+
+        NotificationGroupManager.getInstance()
+                .getNotificationGroup("Ollama Test Generator")
+                .createNotification(
+                        "Test generation finished",
+                        content.toString(),
+                        failed.isEmpty() ? NotificationType.INFORMATION : NotificationType.WARNING)
+                .notify(project);
+    }
+
+    @Nullable
+    private TestFileCreator.Result write(@NotNull PendingTestFile file) {
+        TestFileCreator.Result result = null;
+        try {
+            result = TestFileCreator.createTestFileInWriteAction(
+                    project, file.testDirectory, file.packageName, file.testClassName, file.testCode);
+        } catch (Exception e) {
+            LOG.warn("Could not create " + file.testClassName, e);
+        }
+        // Fingerprints say which methods the test class covers, so they are only recorded for real writes
+        if (result != null && result.isWritten() && file.qualifiedClassName != null) {
+            TestFingerprintState.getInstance(project).record(file.qualifiedClassName, file.testClassName, file.fingerprints);
+        }
+        synchronized (this) {
+            if (result == null) {
+                failedClasses.add(file.testClassName);
+            } else if (result.getOutcome() == TestFileCreator.Outcome.CREATED) {
+                createdClasses.add(file.testClassName);
+            } else if (result.getOutcome() == TestFileCreator.Outcome.MERGED) {
+                mergedClasses.add(file.testClassName);
+            } else {
+                unchangedClasses.add(file.testClassName);
+            }
+        }
+        return result;
+    }
+
+    private static PendingTestFile resolve(
+            @NotNull SmartPsiElementPointer<PsiClass> sourceClass,
+            @NotNull String testClassName,
+            @NotNull String testCode,
+            @Nullable String qualifiedClassName,
+            @NotNull Map<String, String> fingerprints) {
+        PsiClass psiClass = sourceClass.getElement();
+        if (psiClass == null) {
+            return null;
+        }
+        PsiFile sourceFile = psiClass.getContainingFile();
+        if (!(sourceFile instanceof PsiJavaFile)) {
+            return null;
+        }
+        VirtualFile testDirectory = JavaClassAnalyzer.findTestDirectory(psiClass);
+        if (testDirectory == null) {
+            return null;
+        }
+        return new PendingTestFile(
+                testDirectory,
+                ((PsiJavaFile) sourceFile).getPackageName(),
+                testClassName,
+                testCode,
+                qualifiedClassName,
+                fingerprints);
+    }
+
+    private static String summarize(@NotNull List<String> classNames) {
+        if (classNames.size() <= MAX_LISTED_CLASSES) {
+            return String.join(", ", classNames);
+        }
+        return String.join(", ", classNames.subList(0, MAX_LISTED_CLASSES))
+                + " and " + (classNames.size() - MAX_LISTED_CLASSES) + " more";
+    }
+
+    /**
+     * Receives the outcome of each queued test once its batch has been written.
+     */
+    public interface WriteListener {
+        /**
+         * The test file was created, or tests were merged into it.
+         */
+        void written(@NotNull String qualifiedClassName, @NotNull VirtualFile testFile);
+
+        /**
+         * The test file existed and was left as it was.
+         */
+        void unchanged(@NotNull String qualifiedClassName, @NotNull VirtualFile testFile);
+
+        void failed(@NotNull String qualifiedClassName, @NotNull String testClassName);
+    }
+
+    /**
+     * A generated test waiting to be written.
+     */
+    private static class PendingTestFile {
+        private final VirtualFile testDirectory;
+        private final String packageName;
+        private final String testClassName;
+        private final String testCode;
+        private final String qualifiedClassName;
+        private final Map<String, String> fingerprints;
+
+        PendingTestFile(
+                VirtualFile testDirectory,
+                String packageName,
+                String testClassName,
+                String testCode,
+                String qualifiedClassName,
+                Map<String, String> fingerprints) {
+            this.testDirectory = testDirectory;
+            this.packageName = packageName;
+            this.testClassName = testClassName;
+            this.testCode = testCode;
+            this.qualifiedClassName = qualifiedClassName;
+            this.fingerprints = fingerprints;
+        }
+    }
+}
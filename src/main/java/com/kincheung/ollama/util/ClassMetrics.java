@@ -0,0 +1,37 @@
+package com.kincheung.ollama.util;
+
+/**
+ * Size and coupling of a class under test.
+ */
+public class ClassMetrics {
+    private final int sourceLength;
+    private final int methodCount;
+    private final int dependencyCount;
+
+    public ClassMetrics(int sourceLength, int methodCount, int dependencyCount) {
+        this.sourceLength = sourceLength;
+        this.methodCount = methodCount;
+        this.dependencyCount = dependencyCount;
+    }
+
+    /**
+     * Returns the length of the class source in characters.
+     */
+    public int getSourceLength() {
+        return sourceLength;
+    }
+
+    /**
+     * Returns the number of methods declared by the class, not counting constructors.
+     */
+    public int getMethodCount() {
+        return methodCount;
+    }
+
+    /**
+     * Returns the number of distinct project types injected into or held by the class.
+     */
+    public int getDependencyCount() {
+        return dependencyCount;
+    }
+}
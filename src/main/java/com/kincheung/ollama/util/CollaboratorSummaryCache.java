@@ -0,0 +1,184 @@
+package com.kincheung.ollama.util;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.psi.*;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Application-wide cache of compact signature summaries for collaborator types.
+ * Entries are keyed by qualified class name and are invalidated when the
+ * containing file's modification stamp changes, so a commonly injected type
+ * is only summarized once per edit rather than once per generated test.
+ */
+public class CollaboratorSummaryCache {
+    private static final int MAX_ENTRIES = 256;
+    private static final int MAX_MEMBERS_PER_TYPE = 25;
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    public static CollaboratorSummaryCache getInstance() {
+        return ApplicationManager.getApplication().getService(CollaboratorSummaryCache.class);
+    }
+
+    /**
+     * Returns the summary for the given collaborator type, rendering it with the
+     * methods the class under test actually calls listed first.
+     * Must be called inside a read action.
+     *
+     * @param collaborator The collaborator type
+     * @param calledMethods Names of the collaborator methods called by the class under test
+     * @return The rendered summary, or null if the class has no qualified name
+     */
+    @Nullable
+    public String getSummary(@NotNull PsiClass collaborator, @NotNull Set<String> calledMethods) {
+        String qualifiedName = collaborator.getQualifiedName();
+        if (qualifiedName == null) {
+            return null;
+        }
+
+        long stamp = modificationStamp(collaborator);
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(qualifiedName);
+        }
+        if (entry == null || entry.stamp != stamp) {
+            entry = summarize(collaborator, stamp);
+            synchronized (entries) {
+                entries.put(qualifiedName, entry);
+            }
+        }
+
+        return entry.render(calledMethods);
+    }
+
+    /**
+     * Drops all cached summaries.
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    private static long modificationStamp(@NotNull PsiClass psiClass) {
+        PsiFile file = psiClass.getContainingFile();
+        return file != null ? file.getModificationStamp() : -1;
+    }
+
+    @NotNull
+    private static Entry summarize(@NotNull PsiClass psiClass, long stamp) {
+        String kind = psiClass.isInterface() ? "interface" : psiClass.isEnum() ? "enum" : "class";
+        String header = kind + " " + psiClass.getName();
+
+        List<String> members = new ArrayList<>();
+        for (PsiMethod constructor : psiClass.getConstructors()) {
+            if (constructor.hasModifierProperty(PsiModifier.PUBLIC)) {
+                members.add(formatSignature(constructor));
+            }
+        }
+        for (PsiField field : psiClass.getFields()) {
+            if (field.hasModifierProperty(PsiModifier.PUBLIC)) {
+                members.add(field.getType().getPresentableText() + " " + field.getName());
+            }
+        }
+
+        Map<String, List<String>> methods = new LinkedHashMap<>();
+        for (PsiMethod method : psiClass.getMethods()) {
+            if (method.isConstructor()) {
+                continue;
+            }
+            if (!psiClass.isInterface() && !method.hasModifierProperty(PsiModifier.PUBLIC)) {
+                continue;
+            }
+            methods.computeIfAbsent(method.getName(), name -> new ArrayList<>()).add(formatSignature(method));
+        }
+
+        return new Entry(stamp, header, members, methods);
+    }
+
+    @NotNull
+    private static String formatSignature(@NotNull PsiMethod method) {
+        StringBuilder builder = new StringBuilder();
+        PsiType returnType = method.getReturnType();
+        if (returnType != null) {
+            builder.append(returnType.getPresentableText()).append(' ');
+        }
+        builder.append(method.getName()).append('(');
+        PsiParameter[] parameters = method.getParameterList().getParameters();
+        for (int i = 0; i < parameters.length; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append(parameters[i].getType().getPresentableText()).append(' ').append(parameters[i].getName());
+        }
+        builder.append(')');
+        PsiClassType[] thrown = method.getThrowsList().getReferencedTypes();
+        for (int i = 0; i < thrown.length; i++) {
+            builder.append(i == 0 ? " throws " : ", ").append(thrown[i].getPresentableText());
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Cached summary of a single collaborator type.
+     */
+    private static class Entry {
+        private final long stamp;
+        private final String header;
+        private final List<String> members;
+        private final Map<String, List<String>> methods;
+
+        Entry(long stamp, String header, List<String> members, Map<String, List<String>> methods) {
+            this.stamp = stamp;
+            this.header = header;
+            this.members = Collections.unmodifiableList(members);
+            this.methods = Collections.unmodifiableMap(methods);
+        }
+
+        String render(Set<String> calledMethods) {
+            List<String> lines = new ArrayList<>();
+            for (String called : calledMethods) {
+                List<String> signatures = methods.get(called);
+                if (signatures != null) {
+                    lines.addAll(signatures);
+                }
+            }
+            for (String member : members) {
+                if (lines.size() >= MAX_MEMBERS_PER_TYPE) {
+                    break;
+                }
+                lines.add(member);
+            }
+            for (Map.Entry<String, List<String>> method : methods.entrySet()) {
+                if (calledMethods.contains(method.getKey())) {
+                    continue;
+                }
+                for (String signature : method.getValue()) {
+                    if (lines.size() >= MAX_MEMBERS_PER_TYPE) {
+                        break;
+                    }
+                    lines.add(signature);
+                }
+            }
+
+            StringBuilder builder = new StringBuilder(header).append(" {\n");
+            for (String line : lines) {
+                builder.append("    ").append(line).append(";\n");
+            }
+            return builder.append("}\n").toString();
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.kincheung.ollama.util;
+
+import com.intellij.lang.java.JavaLanguage;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.module.ModuleUtilCore;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.project.Project;
+import com.intellij.psi.*;
+import com.intellij.psi.codeStyle.CodeStyleManager;
+import com.intellij.psi.codeStyle.JavaCodeStyleManager;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.psi.search.PsiShortNamesCache;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.kincheung.ollama.core.TestSourceWriter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Formats generated test code before it is written: fully qualified references
+ * are shortened to imports, missing imports are added where a name matches a
+ * single class, unused imports are removed and the code is reformatted with the
+ * project's code style. It all happens on a non-physical copy in a background
+ * read action, so that writing the result on the EDT is a single text insertion,
+ * however large the test class.
+ */
+public class GeneratedCodeFormatter {
+    private static final Logger LOG = Logger.getInstance(GeneratedCodeFormatter.class);
+    // Classes whose static methods generated tests often call without importing them
+    private static final List<String> STATIC_IMPORT_CLASSES = List.of(
+            "org.junit.jupiter.api.Assertions",
+            "org.junit.jupiter.api.Assumptions",
+            "org.mockito.Mockito",
+            "org.mockito.ArgumentMatchers");
+
+    /**
+     * Formats the code in a non-blocking read action, which gives way to write
+     * actions and is restarted after them.
+     *
+     * @param project The project
+     * @param sourceClass Pointer to the class under test, whose module the test's imports are resolved in
+     * @param testCode The generated test code, without the package declaration
+     * @return The formatted code, or the code unchanged if it isn't valid Java or the class no longer exists
+     */
+    @NotNull
+    public static String formatInBackground(
+            @NotNull Project project,
+            @NotNull SmartPsiElementPointer<PsiClass> sourceClass,
+            @NotNull String testCode) {
+        try {
+            if (ApplicationManager.getApplication().isReadAccessAllowed()) {
+                return format(project, sourceClass, testCode);
+            }
+            return ReadAction.nonBlocking(() -> format(project, sourceClass, testCode)).executeSynchronously();
+        } catch (ProcessCanceledException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            LOG.warn("Could not format the generated test, keeping it as generated", e);
+            return testCode;
+        }
+    }
+
+    @NotNull
+    private static String format(
+            @NotNull Project project,
+            @NotNull SmartPsiElementPointer<PsiClass> sourceClass,
+            @NotNull String testCode) {
+        PsiClass psiClass = sourceClass.getElement();
+        if (psiClass == null || !(psiClass.getContainingFile() instanceof PsiJavaFile)) {
+            return testCode;
+        }
+        String packageName = ((PsiJavaFile) psiClass.getContainingFile()).getPackageName();
+        return format(project, ModuleUtilCore.findModuleForPsiElement(psiClass), packageName, testCode);
+    }
+
+    /**
+     * Formats the code on a non-physical copy. Must be called inside a read action.
+     *
+     * @param project The project
+     * @param module The module of the class under test, or null to only reformat the code
+     * @param packageName The package of the test class
+     * @param testCode The generated test code, without the package declaration
+     * @return The formatted code, without the package declaration
+     */
+    @NotNull
+    public static String format(
+            @NotNull Project project,
+            @Nullable Module module,
+            @NotNull String packageName,
+            @NotNull String testCode) {
+        PsiFile parsed = PsiFileFactory.getInstance(project).createFileFromText(
+                "Generated.java", JavaLanguage.INSTANCE, TestSourceWriter.assembleTestFile(packageName, testCode));
+        // The formatter would have to guess at the structure of broken code
+        if (!(parsed instanceof PsiJavaFile) || PsiTreeUtil.hasErrorElements(parsed)) {
+            return testCode;
+        }
+        PsiJavaFile file = (PsiJavaFile) parsed;
+
+        // Resolving needs the indexes; without them the code is only reformatted
+        if (module != null && !DumbService.isDumb(project)) {
+            JavaCodeStyleManager styleManager = JavaCodeStyleManager.getInstance(project);
+            for (PsiClass psiClass : file.getClasses()) {
+                styleManager.shortenClassReferences(psiClass);
+            }
+            addMissingImports(file, GlobalSearchScope.moduleWithDependenciesAndLibrariesScope(module, true));
+            styleManager.optimizeImports(file);
+        }
+        CodeStyleManager.getInstance(project).reformat(file);
+
+        PsiPackageStatement packageStatement = file.getPackageStatement();
+        String text = file.getText();
+        return packageStatement != null
+                ? text.substring(packageStatement.getTextRange().getEndOffset()).stripLeading()
+                : text;
+    }
+
+    /**
+     * Imports the classes of unresolved simple names that match exactly one class
+     * visible to the tests of the module, and statically imports unresolved calls
+     * of the common assertion and mocking methods.
+     */
+    private static void addMissingImports(@NotNull PsiJavaFile file, @NotNull GlobalSearchScope scope) {
+        PsiImportList importList = file.getImportList();
+        if (importList == null) {
+            return;
+        }
+        Project project = file.getProject();
+        JavaPsiFacade facade = JavaPsiFacade.getInstance(project);
+        PsiElementFactory factory = facade.getElementFactory();
+        Set<String> handled = new HashSet<>();
+        List<PsiImportStatementBase> imports = new ArrayList<>();
+
+        for (PsiJavaCodeReferenceElement reference : PsiTreeUtil.findChildrenOfType(file, PsiJavaCodeReferenceElement.class)) {
+            String name = reference.getReferenceName();
+            if (name == null || reference.isQualified() || reference.resolve() != null || !handled.add(name)) {
+                continue;
+            }
+            if (reference instanceof PsiReferenceExpression && reference.getParent() instanceof PsiMethodCallExpression) {
+                PsiClass holder = findStaticImportClass(facade, scope, name);
+                if (holder != null) {
+                    imports.add(factory.createImportStaticStatement(holder, name));
+                }
+            } else if (Character.isUpperCase(name.charAt(0))) {
+                PsiClass imported = findSingleClass(project, scope, name);
+                if (imported != null) {
+                    imports.add(factory.createImportStatement(imported));
+                }
+            }
+        }
+        for (PsiImportStatementBase statement : imports) {
+            importList.add(statement);
+        }
+    }
+
+    @Nullable
+    private static PsiClass findStaticImportClass(
+            @NotNull JavaPsiFacade facade,
+            @NotNull GlobalSearchScope scope,
+            @NotNull String methodName) {
+        for (String qualifiedName : STATIC_IMPORT_CLASSES) {
+            PsiClass holder = facade.findClass(qualifiedName, scope);
+            if (holder != null && holder.findMethodsByName(methodName, true).length > 0) {
+                return holder;
+            }
+        }
+        return null;
+    }
+
+    @Nullable
+    private static PsiClass findSingleClass(@NotNull Project project, @NotNull GlobalSearchScope scope, @NotNull String name) {
+        PsiClass found = null;
+        for (PsiClass candidate : PsiShortNamesCache.getInstance(project).getClassesByName(name, scope)) {
+            if (candidate.getQualifiedName() == null
+                    || candidate.getContainingClass() != null
+                    || !candidate.hasModifierProperty(PsiModifier.PUBLIC)) {
+                continue;
+            }
+            if (found != null) {
+                // Ambiguous; leave it to the user's import assistant
+                return null;
+            }
+            found = candidate;
+        }
+        return found;
+    }
+}
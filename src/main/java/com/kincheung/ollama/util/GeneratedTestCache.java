@@ -0,0 +1,82 @@
+package com.kincheung.ollama.util;
+
+import com.intellij.openapi.application.ApplicationManager;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Application-wide cache of tests generated ahead of time, keyed by a hash of
+ * the model and the full prompt. A class that is edited after its test was
+ * cached produces a different prompt, so stale entries are never returned;
+ * they are simply evicted once the cache is full. An entry is handed out once,
+ * so asking for a test again generates a fresh one.
+ */
+public class GeneratedTestCache {
+    private static final int MAX_ENTRIES = 64;
+
+    private final Map<String, String> entries = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    public static GeneratedTestCache getInstance() {
+        return ApplicationManager.getApplication().getService(GeneratedTestCache.class);
+    }
+
+    /**
+     * Computes the cache key of a generation request.
+     *
+     * @param model The model the prompt is sent to
+     * @param prompt The full prompt
+     * @return The hex-encoded SHA-256 hash of both
+     */
+    @NotNull
+    public static String key(@NotNull String model, @NotNull String prompt) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(model.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(prompt.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    public synchronized void put(@NotNull String key, @NotNull String testCode) {
+        entries.put(key, testCode);
+    }
+
+    /**
+     * Removes and returns the test cached under the key.
+     *
+     * @return The test code, or null if none is cached
+     */
+    @Nullable
+    public synchronized String take(@NotNull String key) {
+        return entries.remove(key);
+    }
+
+    public synchronized boolean contains(@NotNull String key) {
+        return entries.containsKey(key);
+    }
+
+    /**
+     * Drops all cached tests.
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+}
@@ -0,0 +1,192 @@
+package com.kincheung.ollama.util;
+
+import com.intellij.lang.java.JavaLanguage;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.module.ModuleUtilCore;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.projectRoots.JavaSdkType;
+import com.intellij.openapi.projectRoots.Sdk;
+import com.intellij.openapi.roots.ModuleRootManager;
+import com.intellij.openapi.roots.OrderEnumerator;
+import com.intellij.openapi.util.TextRange;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiFileFactory;
+import com.intellij.psi.PsiJavaFile;
+import com.intellij.psi.PsiMethod;
+import com.kincheung.ollama.OllamaSettingsState;
+import com.kincheung.ollama.core.TestWorkerPool;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Runs generated tests before they are written and drops the test methods that
+ * fail, so that tests which compile but fail at runtime don't reach the project.
+ * The tests run in the warm forked JVMs of a {@link TestWorkerPool}, with the JDK
+ * and test classpath of the module of the class under test, including its
+ * compiled classes, so the project must have been built.
+ * <p>
+ * A test class that can't be compiled or set up against the module is kept as
+ * generated, since that more often means the build is out of date than that
+ * every test is wrong; so is a class whose test methods all fail.
+ */
+public class GeneratedTestRunner implements Disposable {
+    private static final Logger LOG = Logger.getInstance(GeneratedTestRunner.class);
+
+    private TestWorkerPool pool;
+
+    public static GeneratedTestRunner getInstance() {
+        return ApplicationManager.getApplication().getService(GeneratedTestRunner.class);
+    }
+
+    /**
+     * Captures what running the tests of a class needs.
+     * Must be called inside a read action.
+     *
+     * @param psiClass The class under test
+     * @return The target, or null if the class's module has no Java SDK to run tests with
+     */
+    @Nullable
+    public static Target target(@NotNull PsiClass psiClass) {
+        Module module = ModuleUtilCore.findModuleForPsiElement(psiClass);
+        if (module == null) {
+            return null;
+        }
+        Sdk sdk = ModuleRootManager.getInstance(module).getSdk();
+        if (sdk == null || !(sdk.getSdkType() instanceof JavaSdkType)) {
+            return null;
+        }
+        String javaExecutable = ((JavaSdkType) sdk.getSdkType()).getVMExecutablePath(sdk);
+        if (javaExecutable == null) {
+            return null;
+        }
+        List<Path> classpath = new ArrayList<>();
+        for (String path : OrderEnumerator.orderEntries(module).withoutSdk().recursively().getPathsList().getPathList()) {
+            classpath.add(Path.of(path));
+        }
+        PsiFile file = psiClass.getContainingFile();
+        String packageName = file instanceof PsiJavaFile ? ((PsiJavaFile) file).getPackageName() : "";
+        return new Target(Path.of(javaExecutable), classpath, packageName);
+    }
+
+    /**
+     * Runs a generated test class and removes its failing test methods.
+     *
+     * @param project The project
+     * @param target The module to run the test in, from {@link #target(PsiClass)}
+     * @param testClassName The name of the test class
+     * @param testCode The generated test code
+     * @return A future with the test code without the failing test methods
+     */
+    @NotNull
+    public CompletableFuture<String> dropFailingMethods(
+            @NotNull Project project,
+            @NotNull Target target,
+            @NotNull String testClassName,
+            @NotNull String testCode) {
+        return pool().run(target.javaExecutable, target.classpath, target.packageName, testClassName, testCode)
+                .thenApply(result -> {
+                    if (result.getError() != null) {
+                        LOG.info("Could not run " + testClassName + ", keeping it as generated: " + result.getError());
+                        return testCode;
+                    }
+                    Map<String, String> failures = result.getFailures();
+                    if (failures.isEmpty()) {
+                        return testCode;
+                    }
+                    if (result.getPassed().isEmpty()) {
+                        LOG.warn("Every test method of " + testClassName + " failed, keeping it as generated");
+                        return testCode;
+                    }
+                    for (Map.Entry<String, String> failure : failures.entrySet()) {
+                        LOG.info("Dropping failing test " + testClassName + "." + failure.getKey() + ": " + failure.getValue());
+                    }
+                    return ReadAction.compute(() -> removeMethods(project, testCode, failures.keySet()));
+                });
+    }
+
+    /**
+     * Removes the methods with the given names from the classes of the code.
+     * Must be called inside a read action.
+     */
+    @NotNull
+    static String removeMethods(@NotNull Project project, @NotNull String testCode, @NotNull Set<String> methodNames) {
+        PsiFile file = PsiFileFactory.getInstance(project)
+                .createFileFromText("Generated.java", JavaLanguage.INSTANCE, testCode);
+        if (!(file instanceof PsiJavaFile)) {
+            return testCode;
+        }
+        List<TextRange> ranges = new ArrayList<>();
+        for (PsiClass psiClass : ((PsiJavaFile) file).getClasses()) {
+            for (PsiMethod method : psiClass.getMethods()) {
+                if (methodNames.contains(method.getName())) {
+                    ranges.add(method.getTextRange());
+                }
+            }
+        }
+        ranges.sort(Comparator.comparingInt(TextRange::getStartOffset).reversed());
+        StringBuilder code = new StringBuilder(testCode);
+        for (TextRange range : ranges) {
+            // Take the indentation and the line break before the method along
+            int start = range.getStartOffset();
+            while (start > 0 && (code.charAt(start - 1) == ' ' || code.charAt(start - 1) == '\t')) {
+                start--;
+            }
+            if (start > 0 && code.charAt(start - 1) == '\n') {
+                start--;
+            }
+            code.delete(start, range.getEndOffset());
+        }
+        return code.toString();
+    }
+
+    /**
+     * Returns the worker pool, restarting it if the configured number of workers changed.
+     */
+    @NotNull
+    private synchronized TestWorkerPool pool() {
+        int workers = OllamaSettingsState.getInstance().testWorkerCount;
+        if (pool == null || pool.getMaxWorkers() != workers) {
+            if (pool != null) {
+                pool.close();
+            }
+            pool = new TestWorkerPool(workers);
+        }
+        return pool;
+    }
+
+    @Override
+    public synchronized void dispose() {
+        if (pool != null) {
+            pool.close();
+            pool = null;
+        }
+    }
+
+    /**
+     * The JDK, test classpath and package to run the tests of a class with.
+     */
+    public static class Target {
+        private final Path javaExecutable;
+        private final List<Path> classpath;
+        private final String packageName;
+
+        Target(Path javaExecutable, List<Path> classpath, String packageName) {
+            this.javaExecutable = javaExecutable;
+            this.classpath = classpath;
+            this.packageName = packageName;
+        }
+    }
+}
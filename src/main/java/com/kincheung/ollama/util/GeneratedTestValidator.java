@@ -0,0 +1,66 @@
+package com.kincheung.ollama.util;
+
+import com.intellij.lang.java.JavaLanguage;
+import com.intellij.openapi.project.Project;
+import com.intellij.psi.PsiErrorElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiFileFactory;
+import com.intellij.psi.PsiJavaFile;
+import com.intellij.psi.util.PsiTreeUtil;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Checks generated test code by parsing it into a non-physical PSI file.
+ * Parsing doesn't touch the project model, so it can run on any background
+ * thread inside a read action.
+ */
+public class GeneratedTestValidator {
+
+    /**
+     * Validates the generated code.
+     * Must be called inside a read action.
+     *
+     * @param project The project
+     * @param code The generated test code
+     * @return The validation result
+     */
+    @NotNull
+    public static ValidationResult validate(@NotNull Project project, @NotNull String code) {
+        PsiFile file = PsiFileFactory.getInstance(project)
+                .createFileFromText("Generated.java", JavaLanguage.INSTANCE, code);
+        boolean hasClass = file instanceof PsiJavaFile && ((PsiJavaFile) file).getClasses().length > 0;
+        int syntaxErrors = PsiTreeUtil.findChildrenOfType(file, PsiErrorElement.class).size();
+        return new ValidationResult(hasClass, syntaxErrors);
+    }
+
+    /**
+     * Outcome of validating generated test code.
+     */
+    public static class ValidationResult {
+        private final boolean hasClass;
+        private final int syntaxErrors;
+
+        ValidationResult(boolean hasClass, int syntaxErrors) {
+            this.hasClass = hasClass;
+            this.syntaxErrors = syntaxErrors;
+        }
+
+        /**
+         * Returns whether the code declares at least one class.
+         */
+        public boolean hasClass() {
+            return hasClass;
+        }
+
+        public int getSyntaxErrors() {
+            return syntaxErrors;
+        }
+
+        /**
+         * Returns whether the code declares a class and parses without errors.
+         */
+        public boolean isValid() {
+            return hasClass && syntaxErrors == 0;
+        }
+    }
+}
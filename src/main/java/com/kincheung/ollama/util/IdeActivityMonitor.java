@@ -0,0 +1,63 @@
+package com.kincheung.ollama.util;
+
+import com.intellij.openapi.compiler.CompilerManager;
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.project.Project;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+
+/**
+ * Tells whether the IDE is busy with work that competes with a local Ollama for
+ * the CPU: indexing, building, or a high CPU load of the IDE process. The load of
+ * the IDE process is used rather than the system-wide load, which includes
+ * Ollama's own and would hold generations back because of themselves.
+ * Generations that nobody is waiting for check it before each request and hold
+ * back while it lasts. Interactive generations are never held back.
+ */
+public class IdeActivityMonitor {
+
+    /**
+     * Returns why a background generation should wait, or null if it can go ahead.
+     *
+     * @param project The project the generation runs in
+     * @param ideWork Whether indexing and builds count as busy
+     * @param maxCpuPercent The IDE's CPU load in percent above which to wait; 100 ignores the load
+     * @return A short description of the activity, e.g. "indexing", or null
+     */
+    @Nullable
+    public static String busyReason(@NotNull Project project, boolean ideWork, int maxCpuPercent) {
+        if (ideWork) {
+            if (DumbService.isDumb(project)) {
+                return "indexing";
+            }
+            if (CompilerManager.getInstance(project).isCompilationActive()) {
+                return "building";
+            }
+        }
+        if (maxCpuPercent < 100) {
+            double load = cpuLoadPercent();
+            if (load > maxCpuPercent) {
+                return "the IDE's CPU load is at " + Math.round(load) + "%";
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the recent CPU load of the IDE process in percent of all cores, or 0
+     * if the JVM doesn't report it.
+     */
+    public static double cpuLoadPercent() {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            double load = ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuLoad();
+            if (load >= 0) {
+                return load * 100;
+            }
+        }
+        return 0;
+    }
+}
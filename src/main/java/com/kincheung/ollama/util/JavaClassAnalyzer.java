@@ -1,19 +1,44 @@
 package com.kincheung.ollama.util;
 
+import com.intellij.openapi.application.ReadAction;
 import com.intellij.openapi.module.Module;
 import com.intellij.openapi.module.ModuleUtilCore;
+import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ProjectFileIndex;
+import com.intellij.openapi.vfs.VfsUtilCore;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.*;
 import com.intellij.psi.search.GlobalSearchScope;
 import com.intellij.psi.search.PsiShortNamesCache;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.psi.util.PsiUtil;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 /**
  * Utility class for analyzing Java classes.
  */
 public class JavaClassAnalyzer {
+    private static final Set<String> LIFECYCLE_ANNOTATIONS = Set.of(
+            "org.junit.jupiter.api.BeforeEach",
+            "org.junit.jupiter.api.AfterEach",
+            "org.junit.jupiter.api.BeforeAll",
+            "org.junit.jupiter.api.AfterAll",
+            "org.junit.Before",
+            "org.junit.After",
+            "org.junit.BeforeClass",
+            "org.junit.AfterClass");
+    // Files looked at per read action by the untested class scan
+    private static final int SCAN_CHUNK_FILES = 20;
     
     /**
      * Checks if the given class is a test class.
@@ -67,6 +92,33 @@ public class JavaClassAnalyzer {
         return false;
     }
     
+    /**
+     * Checks if tests should be generated for the given class. Anonymous, inner and
+     * test classes as well as interfaces, enums, records and annotations are skipped.
+     * 
+     * @param psiClass The class to check
+     * @return true if the class is a candidate for test generation
+     */
+    public static boolean isGenerationCandidate(@NotNull PsiClass psiClass) {
+        // Skip anonymous classes
+        if (psiClass.getName() == null) {
+            return false;
+        }
+        
+        // Skip interfaces, enums, records, and annotations
+        if (psiClass.isInterface() || psiClass.isEnum() || psiClass.isRecord() || psiClass.isAnnotationType()) {
+            return false;
+        }
+        
+        // Skip inner classes
+        if (psiClass.getContainingClass() != null) {
+            return false;
+        }
+        
+        // Skip test classes
+        return !isTestClass(psiClass);
+    }
+    
     /**
      * Checks if a test class exists for the given class.
      * 
@@ -74,14 +126,28 @@ public class JavaClassAnalyzer {
      * @return true if a test class exists
      */
     public static boolean hasTestClass(@NotNull PsiClass psiClass) {
-        Project project = psiClass.getProject();
         String className = psiClass.getName();
         if (className == null) {
             return false;
         }
         
         // Look for class with the same name + "Test"
-        String testClassName = className + "Test";
+        return findTestClass(psiClass, className + "Test") != null;
+    }
+    
+    /**
+     * Finds the test class with the given name in the same package as the class.
+     * 
+     * @param psiClass The class under test
+     * @param testClassName The name of the test class
+     * @return The test class, or null if none exists
+     */
+    @Nullable
+    public static PsiClass findTestClass(@NotNull PsiClass psiClass, @NotNull String testClassName) {
+        Project project = psiClass.getProject();
+        if (!(psiClass.getContainingFile() instanceof PsiJavaFile)) {
+            return null;
+        }
         
         // Try to find the test class in the same package but in test directory
         String packageName = ((PsiJavaFile) psiClass.getContainingFile()).getPackageName();
@@ -98,14 +164,308 @@ public class JavaClassAnalyzer {
             if (containingFile instanceof PsiJavaFile) {
                 String testPackageName = ((PsiJavaFile) containingFile).getPackageName();
                 if (testPackageName.equals(packageName)) {
-                    return true;
+                    return testClass;
                 }
             }
         }
         
+        return null;
+    }
+    
+    /**
+     * Finds the public methods of a class that its test class never calls.
+     * Calls are resolved, so that a call of a method with the same name on a mock
+     * or a collection doesn't count; calls that don't resolve count if their
+     * qualifier is of the class. Overloads are treated as covered as soon as one
+     * of them is called.
+     * 
+     * @param psiClass The class under test
+     * @param testClass The existing test class
+     * @return The uncovered methods, in declaration order
+     */
+    @NotNull
+    public static List<PsiMethod> findUncoveredMethods(@NotNull PsiClass psiClass, @NotNull PsiClass testClass) {
+        PsiManager manager = psiClass.getManager();
+        Set<String> calledNames = new HashSet<>();
+        for (PsiMethodCallExpression call : PsiTreeUtil.findChildrenOfType(testClass, PsiMethodCallExpression.class)) {
+            PsiMethod called = call.resolveMethod();
+            boolean onClass = called != null
+                    ? manager.areElementsEquivalent(called.getContainingClass(), psiClass)
+                    : isCalledOn(call, psiClass);
+            if (onClass) {
+                calledNames.add(call.getMethodExpression().getReferenceName());
+            }
+        }
+        
+        List<PsiMethod> uncovered = new ArrayList<>();
+        for (PsiMethod method : psiClass.getMethods()) {
+            if (!method.isConstructor()
+                    && method.hasModifierProperty(PsiModifier.PUBLIC)
+                    && !calledNames.contains(method.getName())) {
+                uncovered.add(method);
+            }
+        }
+        return uncovered;
+    }
+    
+    /**
+     * Tells whether a call is made on an instance of the class, or statically on
+     * the class itself, going by its qualifier. Meant for calls that don't resolve,
+     * e.g. because the rest of the test doesn't compile.
+     * 
+     * @param call The method call
+     * @param psiClass The class the call may be made on
+     * @return true if the qualifier is of the class or names it
+     */
+    public static boolean isCalledOn(@NotNull PsiMethodCallExpression call, @NotNull PsiClass psiClass) {
+        PsiExpression qualifier = call.getMethodExpression().getQualifierExpression();
+        if (qualifier == null) {
+            return false;
+        }
+        PsiElement qualifierClass = null;
+        if (qualifier.getType() instanceof PsiClassType) {
+            qualifierClass = ((PsiClassType) qualifier.getType()).resolve();
+        } else if (qualifier instanceof PsiReferenceExpression) {
+            qualifierClass = ((PsiReferenceExpression) qualifier).resolve();
+        }
+        return qualifierClass instanceof PsiClass && psiClass.getManager().areElementsEquivalent(qualifierClass, psiClass);
+    }
+    
+    /**
+     * Builds an outline of a class: its declaration, fields and constructor
+     * signatures, without any method bodies.
+     * 
+     * @param psiClass The class to outline
+     * @return The class outline as Java-like source text
+     */
+    @NotNull
+    public static String buildClassSkeleton(@NotNull PsiClass psiClass) {
+        StringBuilder skeleton = new StringBuilder();
+        PsiModifierList modifiers = psiClass.getModifierList();
+        if (modifiers != null && !modifiers.getText().isEmpty()) {
+            skeleton.append(modifiers.getText()).append(' ');
+        }
+        skeleton.append(psiClass.isInterface() ? "interface " : "class ").append(psiClass.getName());
+        PsiReferenceList extendsList = psiClass.getExtendsList();
+        if (extendsList != null && extendsList.getReferencedTypes().length > 0) {
+            skeleton.append(' ').append(extendsList.getText());
+        }
+        PsiReferenceList implementsList = psiClass.getImplementsList();
+        if (implementsList != null && implementsList.getReferencedTypes().length > 0) {
+            skeleton.append(' ').append(implementsList.getText());
+        }
+        skeleton.append(" {\n");
+        
+        for (PsiField field : psiClass.getFields()) {
+            skeleton.append("    ").append(field.getText()).append('\n');
+        }
+        for (PsiMethod constructor : psiClass.getConstructors()) {
+            String text = constructor.getText();
+            PsiCodeBlock body = constructor.getBody();
+            if (body != null) {
+                text = text.substring(0, body.getStartOffsetInParent()).trim() + " { ... }";
+            }
+            skeleton.append("    ").append(text).append('\n');
+        }
+        
+        return skeleton.append("    // ...\n}").toString();
+    }
+    
+    /**
+     * Collects the fields and lifecycle methods of an existing test class, so new
+     * test methods can reuse its mocks and setup.
+     * 
+     * @param testClass The existing test class
+     * @return The fixture source text, or an empty string if there is none
+     */
+    @NotNull
+    public static String buildTestFixture(@NotNull PsiClass testClass) {
+        StringBuilder fixture = new StringBuilder();
+        for (PsiField field : testClass.getFields()) {
+            fixture.append(field.getText()).append('\n');
+        }
+        for (PsiMethod method : testClass.getMethods()) {
+            if (isLifecycleMethod(method)) {
+                fixture.append(method.getText()).append('\n');
+            }
+        }
+        return fixture.toString();
+    }
+    
+    /**
+     * Checks if a method is a JUnit setup or teardown method.
+     * 
+     * @param method The method to check
+     * @return true if the method has a JUnit lifecycle annotation
+     */
+    public static boolean isLifecycleMethod(@NotNull PsiMethod method) {
+        for (PsiAnnotation annotation : method.getAnnotations()) {
+            String qualifiedName = annotation.getQualifiedName();
+            if (qualifiedName != null && LIFECYCLE_ANNOTATIONS.contains(qualifiedName)) {
+                return true;
+            }
+        }
         return false;
     }
     
+    /**
+     * Finds all classes under the given file or directory that are candidates for
+     * test generation and don't have a test class yet. Only production sources of
+     * the project are scanned. The files are listed first and then looked at a few
+     * at a time, each chunk in a non-blocking read action that waits for smart mode,
+     * so that the scan gives way to write actions and can be cancelled between
+     * chunks. Must be called on a background thread, outside a read action.
+     * 
+     * @param project The project
+     * @param root The file or directory to scan
+     * @return Pointers to the untested classes, in source order
+     */
+    @NotNull
+    public static List<SmartPsiElementPointer<PsiClass>> findUntestedClasses(
+            @NotNull Project project,
+            @NotNull VirtualFile root) {
+        List<VirtualFile> files = ReadAction.nonBlocking(() -> findProductionJavaFiles(project, root))
+                .executeSynchronously();
+        List<SmartPsiElementPointer<PsiClass>> result = new ArrayList<>();
+        for (int from = 0; from < files.size(); from += SCAN_CHUNK_FILES) {
+            ProgressManager.checkCanceled();
+            List<VirtualFile> chunk = files.subList(from, Math.min(from + SCAN_CHUNK_FILES, files.size()));
+            result.addAll(ReadAction.nonBlocking(() -> findUntestedClasses(project, chunk))
+                    .inSmartMode(project)
+                    .executeSynchronously());
+        }
+        return result;
+    }
+
+    @NotNull
+    private static List<VirtualFile> findProductionJavaFiles(@NotNull Project project, @NotNull VirtualFile root) {
+        ProjectFileIndex fileIndex = ProjectFileIndex.getInstance(project);
+        List<VirtualFile> files = new ArrayList<>();
+        VfsUtilCore.iterateChildrenRecursively(root, fileIndex::isInSourceContent, file -> {
+            ProgressManager.checkCanceled();
+            if (!file.isDirectory() && "java".equals(file.getExtension()) && !fileIndex.isInTestSourceContent(file)) {
+                files.add(file);
+            }
+            return true;
+        });
+        return files;
+    }
+
+    @NotNull
+    private static List<SmartPsiElementPointer<PsiClass>> findUntestedClasses(
+            @NotNull Project project,
+            @NotNull List<VirtualFile> files) {
+        PsiManager psiManager = PsiManager.getInstance(project);
+        SmartPointerManager pointerManager = SmartPointerManager.getInstance(project);
+        List<SmartPsiElementPointer<PsiClass>> result = new ArrayList<>();
+        for (VirtualFile file : files) {
+            ProgressManager.checkCanceled();
+            PsiFile psiFile = file.isValid() ? psiManager.findFile(file) : null;
+            if (psiFile instanceof PsiJavaFile) {
+                for (PsiClass psiClass : ((PsiJavaFile) psiFile).getClasses()) {
+                    if (isGenerationCandidate(psiClass) && !hasTestClass(psiClass)) {
+                        result.add(pointerManager.createSmartPsiElementPointer(psiClass));
+                    }
+                }
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Collects compact signature summaries of the collaborator types of a class:
+     * the types of its constructor parameters and fields, with the methods the
+     * class calls on them listed first. Must be called inside a read action.
+     *
+     * @param psiClass The class to analyze
+     * @return The collaborator summaries, or an empty string if there are none
+     */
+    @NotNull
+    public static String collectCollaboratorContext(@NotNull PsiClass psiClass) {
+        Map<PsiClass, Set<String>> collaborators = collectCollaborators(psiClass);
+        if (collaborators.isEmpty()) {
+            return "";
+        }
+
+        // Record which collaborator methods the class actually calls
+        for (PsiMethodCallExpression call : PsiTreeUtil.findChildrenOfType(psiClass, PsiMethodCallExpression.class)) {
+            PsiExpression qualifier = call.getMethodExpression().getQualifierExpression();
+            if (qualifier == null) {
+                continue;
+            }
+            Set<String> calledMethods = collaborators.get(PsiUtil.resolveClassInType(qualifier.getType()));
+            if (calledMethods != null) {
+                calledMethods.add(call.getMethodExpression().getReferenceName());
+            }
+        }
+
+        CollaboratorSummaryCache cache = CollaboratorSummaryCache.getInstance();
+        StringBuilder context = new StringBuilder();
+        for (Map.Entry<PsiClass, Set<String>> collaborator : collaborators.entrySet()) {
+            String summary = cache.getSummary(collaborator.getKey(), collaborator.getValue());
+            if (summary != null) {
+                context.append(summary);
+            }
+        }
+        return context.toString();
+    }
+
+    /**
+     * Measures the size and coupling of a class, used to route it to a model.
+     * Must be called inside a read action.
+     *
+     * @param psiClass The class to measure
+     * @return The metrics of the class
+     */
+    @NotNull
+    public static ClassMetrics computeMetrics(@NotNull PsiClass psiClass) {
+        int methodCount = 0;
+        for (PsiMethod method : psiClass.getMethods()) {
+            if (!method.isConstructor()) {
+                methodCount++;
+            }
+        }
+        return new ClassMetrics(psiClass.getTextLength(), methodCount, collectCollaborators(psiClass).size());
+    }
+
+    /**
+     * Returns the project types injected through constructors or held in instance fields.
+     */
+    @NotNull
+    private static Map<PsiClass, Set<String>> collectCollaborators(@NotNull PsiClass psiClass) {
+        Map<PsiClass, Set<String>> collaborators = new LinkedHashMap<>();
+        for (PsiMethod constructor : psiClass.getConstructors()) {
+            for (PsiParameter parameter : constructor.getParameterList().getParameters()) {
+                addCollaborator(psiClass, parameter.getType(), collaborators);
+            }
+        }
+        for (PsiField field : psiClass.getFields()) {
+            if (!field.hasModifierProperty(PsiModifier.STATIC)) {
+                addCollaborator(psiClass, field.getType(), collaborators);
+            }
+        }
+        return collaborators;
+    }
+
+    /**
+     * Adds the class referenced by the given type to the collaborators, skipping
+     * primitives, JDK types and the class itself.
+     */
+    private static void addCollaborator(
+            @NotNull PsiClass owner,
+            @NotNull PsiType type,
+            @NotNull Map<PsiClass, Set<String>> collaborators) {
+        PsiClass resolved = PsiUtil.resolveClassInType(type);
+        if (resolved == null || resolved.equals(owner) || resolved instanceof PsiTypeParameter) {
+            return;
+        }
+        String qualifiedName = resolved.getQualifiedName();
+        if (qualifiedName == null || qualifiedName.startsWith("java.") || qualifiedName.startsWith("javax.")) {
+            return;
+        }
+        collaborators.computeIfAbsent(resolved, key -> new LinkedHashSet<>());
+    }
+
     /**
      * Determines the appropriate test directory for a class.
      * 
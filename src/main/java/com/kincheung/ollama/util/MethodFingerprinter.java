@@ -0,0 +1,100 @@
+package com.kincheung.ollama.util;
+
+import com.intellij.psi.*;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Computes structural fingerprints of methods. The fingerprint covers every
+ * token of the method, including its signature and annotations, but ignores
+ * whitespace and comments, so reformatting or re-documenting a method doesn't
+ * make its tests stale.
+ */
+public class MethodFingerprinter {
+
+    /**
+     * Fingerprints all public methods of a class.
+     * Must be called inside a read action.
+     *
+     * @param psiClass The class to fingerprint
+     * @return Fingerprints keyed by {@link #methodKey(PsiMethod)}, in declaration order
+     */
+    @NotNull
+    public static Map<String, String> fingerprintMethods(@NotNull PsiClass psiClass) {
+        Map<String, String> fingerprints = new LinkedHashMap<>();
+        for (PsiMethod method : psiClass.getMethods()) {
+            if (!method.isConstructor() && method.hasModifierProperty(PsiModifier.PUBLIC)) {
+                fingerprints.put(methodKey(method), fingerprint(method));
+            }
+        }
+        return fingerprints;
+    }
+
+    /**
+     * Returns a key identifying a method by name and parameter types, e.g. {@code save(User)}.
+     *
+     * @param method The method
+     * @return The method key
+     */
+    @NotNull
+    public static String methodKey(@NotNull PsiMethod method) {
+        StringBuilder key = new StringBuilder(method.getName()).append('(');
+        PsiParameter[] parameters = method.getParameterList().getParameters();
+        for (int i = 0; i < parameters.length; i++) {
+            if (i > 0) {
+                key.append(',');
+            }
+            key.append(parameters[i].getType().getPresentableText());
+        }
+        return key.append(')').toString();
+    }
+
+    /**
+     * Computes the whitespace- and comment-insensitive fingerprint of a method.
+     *
+     * @param method The method
+     * @return The fingerprint as a hex string
+     */
+    @NotNull
+    public static String fingerprint(@NotNull PsiMethod method) {
+        MessageDigest digest = newDigest();
+        method.accept(new PsiRecursiveElementWalkingVisitor() {
+            @Override
+            public void visitElement(@NotNull PsiElement element) {
+                // Skipping a comment also skips the tokens inside Javadoc comments
+                if (element instanceof PsiWhiteSpace || element instanceof PsiComment) {
+                    return;
+                }
+                if (element.getFirstChild() == null) {
+                    digest.update(element.getText().getBytes(StandardCharsets.UTF_8));
+                    // Separate tokens so that e.g. "a b" and "ab" hash differently
+                    digest.update((byte) 0);
+                }
+                super.visitElement(element);
+            }
+        });
+        return toHex(digest.digest(), 16);
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes, int length) {
+        StringBuilder hex = new StringBuilder(length * 2);
+        for (int i = 0; i < length && i < bytes.length; i++) {
+            hex.append(Character.forDigit((bytes[i] >> 4) & 0xF, 16));
+            hex.append(Character.forDigit(bytes[i] & 0xF, 16));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,52 @@
+package com.kincheung.ollama.util;
+
+import com.kincheung.ollama.OllamaSettingsState;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Picks the model for a class based on its metrics. Simple classes (small
+ * sources, few methods, few collaborators) go to the configured small model,
+ * which handles DTOs and utilities in a fraction of the time; everything else
+ * goes to the main model. A test from the small model that fails validation
+ * can be escalated to the main model.
+ */
+public class ModelRouter {
+
+    /**
+     * Selects the model to generate the test of a class with.
+     *
+     * @param metrics The metrics of the class
+     * @return The model name
+     */
+    @NotNull
+    public static String selectModel(@NotNull ClassMetrics metrics) {
+        OllamaSettingsState settings = OllamaSettingsState.getInstance();
+        if (isSimple(metrics, settings)) {
+            return settings.smallModelName.trim();
+        }
+        return settings.modelName;
+    }
+
+    /**
+     * Returns the model to retry with after a test from the given model failed validation.
+     *
+     * @param usedModel The model that generated the invalid test
+     * @return The larger model, or null if there is nothing to escalate to
+     */
+    @Nullable
+    public static String escalationModel(@NotNull String usedModel) {
+        OllamaSettingsState settings = OllamaSettingsState.getInstance();
+        if (!settings.escalateInvalidTests || usedModel.equals(settings.modelName)) {
+            return null;
+        }
+        return settings.modelName;
+    }
+
+    private static boolean isSimple(@NotNull ClassMetrics metrics, @NotNull OllamaSettingsState settings) {
+        return !settings.smallModelName.isBlank()
+                && metrics.getSourceLength() <= settings.smallModelMaxLength
+                && metrics.getMethodCount() <= settings.smallModelMaxMethods
+                && metrics.getDependencyCount() <= settings.smallModelMaxDependencies;
+    }
+}
@@ -0,0 +1,168 @@
+package com.kincheung.ollama.util;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ModalityState;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiJavaFile;
+import com.intellij.psi.PsiManager;
+import com.intellij.psi.SmartPsiElementPointer;
+import com.kincheung.ollama.OllamaSettingsState;
+import com.kincheung.ollama.core.GenerationStage;
+import com.kincheung.ollama.core.GenerationTrace;
+import com.kincheung.ollama.core.StructuredTest;
+import com.kincheung.ollama.core.StructuredTestParser;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Inserts the test methods of a structured response into the test file while
+ * later ones are still being generated. Each test method is parsed on its own,
+ * together with the imports and fixtures received before it, on the thread that
+ * reads the response; methods that don't parse are dropped. The first valid
+ * method creates the test file, or is merged into the existing one, and opens it
+ * in the editor; later ones are merged in. All insertions of a generation form
+ * one undoable command. The validation of and wait for each insertion are
+ * recorded as stages of the generation's trace.
+ */
+public class StreamingTestInserter implements StructuredTestParser.Listener {
+    private static final Logger LOG = Logger.getInstance(StreamingTestInserter.class);
+
+    private final Project project;
+    private final SmartPsiElementPointer<PsiClass> sourceClass;
+    private final String testClassName;
+    private final ProgressIndicator indicator;
+    private final GenerationTrace trace;
+    private final Object commandGroup = new Object();
+    private final List<String> imports = new ArrayList<>();
+    private final List<String> fixtures = new ArrayList<>();
+    private final AtomicInteger insertedCount = new AtomicInteger();
+    private final AtomicInteger droppedCount = new AtomicInteger();
+    // Only accessed on the EDT
+    private VirtualFile testFile;
+    private boolean stopped;
+
+    public StreamingTestInserter(
+            @NotNull Project project,
+            @NotNull SmartPsiElementPointer<PsiClass> sourceClass,
+            @NotNull String testClassName,
+            @NotNull ProgressIndicator indicator,
+            @NotNull GenerationTrace trace) {
+        this.project = project;
+        this.sourceClass = sourceClass;
+        this.testClassName = testClassName;
+        this.indicator = indicator;
+        this.trace = trace;
+    }
+
+    @Override
+    public void onPart(@NotNull StructuredTest.Part part, @NotNull String source) {
+        switch (part) {
+            case IMPORT:
+                imports.add(source);
+                break;
+            case FIXTURE:
+                fixtures.add(source);
+                break;
+            case TEST_METHOD:
+                insertTestMethod(source);
+                break;
+        }
+    }
+
+    /**
+     * Returns the number of test methods that parsed and were queued for insertion.
+     */
+    public int getInsertedCount() {
+        return insertedCount.get();
+    }
+
+    /**
+     * Returns the number of test methods dropped because they didn't parse.
+     */
+    public int getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * Returns the test file the methods were inserted into. Must be called on the
+     * EDT; insertions queued before the call have been applied by then.
+     */
+    @Nullable
+    public VirtualFile getTestFile() {
+        ApplicationManager.getApplication().assertIsDispatchThread();
+        return testFile;
+    }
+
+    private void insertTestMethod(@NotNull String testMethod) {
+        String code = StructuredTest.toJavaSource(testClassName, imports, fixtures, List.of(testMethod));
+        GenerationTrace.Span validationSpan = trace.stage(GenerationStage.VALIDATION);
+        validationSpan.setInputChars(code.length());
+        GeneratedTestValidator.ValidationResult validation = ReadAction.compute(
+                () -> GeneratedTestValidator.validate(project, code));
+        validationSpan.end();
+        if (!validation.isValid()) {
+            droppedCount.incrementAndGet();
+            LOG.info("Dropped a generated test method of " + testClassName + " with " + validation.getSyntaxErrors() + " syntax errors");
+            return;
+        }
+
+        int inserted = insertedCount.incrementAndGet();
+        indicator.setText("Inserted " + inserted + " test methods, generating more...");
+        GenerationTrace.Span edtWait = trace.stage(GenerationStage.EDT_WAIT);
+        ApplicationManager.getApplication().invokeLater(() -> {
+            edtWait.end();
+            GenerationTrace.Span write = trace.stage(GenerationStage.WRITE);
+            write.setInputChars(testMethod.length());
+            WriteCommandAction.writeCommandAction(project)
+                    .withName("Insert Generated Tests")
+                    .withGroupId(commandGroup)
+                    .run(() -> insert(code));
+            write.end();
+        }, ModalityState.defaultModalityState(), project.getDisposed());
+    }
+
+    private void insert(@NotNull String code) {
+        if (stopped) {
+            return;
+        }
+        if (testFile != null) {
+            PsiFile file = PsiManager.getInstance(project).findFile(testFile);
+            if (file instanceof PsiJavaFile) {
+                TestClassMerger.merge((PsiJavaFile) file, code);
+            }
+            return;
+        }
+
+        PsiClass psiClass = sourceClass.getElement();
+        if (psiClass == null || !(psiClass.getContainingFile() instanceof PsiJavaFile)) {
+            stopped = true;
+            return;
+        }
+        VirtualFile testDirectory = JavaClassAnalyzer.findTestDirectory(psiClass);
+        if (testDirectory == null) {
+            stopped = true;
+            return;
+        }
+
+        // An existing test class is only changed if merging is enabled, as for whole classes
+        boolean existed = JavaClassAnalyzer.findTestClass(psiClass, testClassName) != null;
+        TestFileCreator.Result result = TestFileCreator.createTestFileInWriteAction(
+                project, testDirectory, ((PsiJavaFile) psiClass.getContainingFile()).getPackageName(), testClassName, code);
+        testFile = result != null ? result.getFile() : null;
+        stopped = testFile == null || existed && !OllamaSettingsState.getInstance().mergeIntoExisting;
+        if (testFile != null) {
+            TestFileCreator.openFileInEditor(project, testFile);
+        }
+    }
+}
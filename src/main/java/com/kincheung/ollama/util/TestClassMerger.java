@@ -0,0 +1,134 @@
+package com.kincheung.ollama.util;
+
+import com.intellij.lang.java.JavaLanguage;
+import com.intellij.openapi.project.Project;
+import com.intellij.psi.*;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Merges generated test code into an existing test class, adding only the
+ * imports, fields and methods that aren't there yet.
+ */
+public class TestClassMerger {
+
+    /**
+     * Merges the generated code into the existing test file.
+     * Must be called inside a write action.
+     *
+     * @param existingFile The existing test file
+     * @param generatedCode The generated test code
+     * @return The number of fields and methods added, or -1 if the code could not be merged
+     */
+    public static int merge(@NotNull PsiJavaFile existingFile, @NotNull String generatedCode) {
+        return merge(existingFile, generatedCode, Collections.emptySet());
+    }
+
+    /**
+     * Merges the generated code into the existing test file, adding generated
+     * methods even if they have the signature of one of the methods the caller
+     * is about to replace. The generated imports are only added if at least one
+     * member is, so a merge that returns 0 leaves the file untouched; they don't
+     * count towards the result.
+     * Must be called inside a write action.
+     *
+     * @param existingFile The existing test file
+     * @param generatedCode The generated test code
+     * @param replacedMethods Methods of the existing test class the caller deletes after merging
+     * @return The number of fields and methods added, or -1 if the code could not be merged
+     */
+    public static int merge(
+            @NotNull PsiJavaFile existingFile,
+            @NotNull String generatedCode,
+            @NotNull Collection<PsiMethod> replacedMethods) {
+        Project project = existingFile.getProject();
+        PsiFile parsed = PsiFileFactory.getInstance(project)
+                .createFileFromText("Generated.java", JavaLanguage.INSTANCE, generatedCode);
+        if (!(parsed instanceof PsiJavaFile)) {
+            return -1;
+        }
+        PsiJavaFile generatedFile = (PsiJavaFile) parsed;
+
+        PsiClass targetClass = firstClass(existingFile);
+        PsiClass generatedClass = firstClass(generatedFile);
+        if (targetClass == null || generatedClass == null) {
+            return -1;
+        }
+
+        int added = mergeMembers(targetClass, generatedClass, replacedMethods);
+        // A merge that adds nothing leaves the file as it was
+        if (added > 0) {
+            mergeImports(existingFile, generatedFile);
+        }
+        return added;
+    }
+
+    private static void mergeImports(@NotNull PsiJavaFile existingFile, @NotNull PsiJavaFile generatedFile) {
+        PsiImportList targetImports = existingFile.getImportList();
+        PsiImportList generatedImports = generatedFile.getImportList();
+        if (targetImports == null || generatedImports == null) {
+            return;
+        }
+
+        Set<String> existing = new HashSet<>();
+        for (PsiImportStatementBase statement : targetImports.getAllImportStatements()) {
+            existing.add(normalize(statement.getText()));
+        }
+
+        for (PsiImportStatementBase statement : generatedImports.getAllImportStatements()) {
+            if (existing.add(normalize(statement.getText()))) {
+                targetImports.add(statement.copy());
+            }
+        }
+    }
+
+    private static int mergeMembers(
+            @NotNull PsiClass targetClass,
+            @NotNull PsiClass generatedClass,
+            @NotNull Collection<PsiMethod> replacedMethods) {
+        int added = 0;
+
+        for (PsiField field : generatedClass.getFields()) {
+            if (targetClass.findFieldByName(field.getName(), false) == null) {
+                targetClass.add(field.copy());
+                added++;
+            }
+        }
+
+        boolean hasLifecycleMethods = false;
+        for (PsiMethod method : targetClass.getMethods()) {
+            hasLifecycleMethods |= JavaClassAnalyzer.isLifecycleMethod(method);
+        }
+
+        for (PsiMethod method : generatedClass.getMethods()) {
+            PsiMethod existing = targetClass.findMethodBySignature(method, false);
+            if (existing != null && !replacedMethods.contains(existing)) {
+                continue;
+            }
+            // Keep the existing setup; a second one would re-create the fixtures
+            if (hasLifecycleMethods && JavaClassAnalyzer.isLifecycleMethod(method)) {
+                continue;
+            }
+            targetClass.add(method.copy());
+            added++;
+        }
+
+        return added;
+    }
+
+    @Nullable
+    private static PsiClass firstClass(@NotNull PsiJavaFile file) {
+        PsiClass[] classes = file.getClasses();
+        return classes.length > 0 ? classes[0] : null;
+    }
+
+    @NotNull
+    private static String normalize(@NotNull String text) {
+        return text.replaceAll("\\s+", "");
+    }
+}
@@ -9,7 +9,8 @@ import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.*;
 import com.intellij.psi.search.GlobalSearchScope;
-import com.intellij.lang.java.JavaLanguage;
+import com.kincheung.ollama.OllamaSettingsState;
+import com.kincheung.ollama.core.TestSourceWriter;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -25,10 +26,10 @@ public class TestFileCreator {
      * @param sourceClass The source class to create a test for
      * @param testClassName The name of the test class
      * @param testCode The generated test code
-     * @return The created virtual file, or null if creation failed
+     * @return What was written to which file, or null if creation failed
      */
     @Nullable
-    public static VirtualFile createTestFile(
+    public static Result createTestFile(
             @NotNull Project project,
             @NotNull PsiClass sourceClass,
             @NotNull String testClassName,
@@ -39,8 +40,7 @@ public class TestFileCreator {
             return null;
         }
         
-        final PsiJavaFile sourceJavaFile = (PsiJavaFile) sourceFile;
-        final String packageName = sourceJavaFile.getPackageName();
+        final String packageName = ((PsiJavaFile) sourceFile).getPackageName();
         
         // Find or create the test directory
         VirtualFile testDirectory = JavaClassAnalyzer.findTestDirectory(sourceClass);
@@ -48,66 +48,78 @@ public class TestFileCreator {
             return null;
         }
         
-        // Create package directories if needed
-        PsiManager psiManager = PsiManager.getInstance(project);
-        PsiDirectory directory = psiManager.findDirectory(testDirectory);
+        final Result[] result = new Result[1];
+        WriteCommandAction.runWriteCommandAction(project, () -> {
+            result[0] = createTestFileInWriteAction(project, testDirectory, packageName, testClassName, testCode);
+        });
+        
+        return result[0];
+    }
+    
+    /**
+     * Creates the package directories and the test file below the given test root.
+     * Must be called inside a write action; callers decide how writes are grouped
+     * into commands. If the test file already exists, the generated tests are merged
+     * into it when merging is enabled in the settings, otherwise it is left unchanged.
+     * 
+     * @param project The project
+     * @param testDirectory The test source root
+     * @param packageName The package of the test class
+     * @param testClassName The name of the test class
+     * @param testCode The generated test code
+     * @return What was written to which file, or null if creation failed or the
+     *         generated code could not be merged into the existing file
+     */
+    @Nullable
+    public static Result createTestFileInWriteAction(
+            @NotNull Project project,
+            @NotNull VirtualFile testDirectory,
+            @NotNull String packageName,
+            @NotNull String testClassName,
+            @NotNull String testCode) {
+        
+        PsiDirectory directory = PsiManager.getInstance(project).findDirectory(testDirectory);
         if (directory == null) {
             return null;
         }
         
-        String[] packageParts = packageName.split("\\.");
-        PsiDirectory currentDirectory = directory;
-        for (String part : packageParts) {
+        // Create package directories if needed
+        for (String part : packageName.split("\\.")) {
             if (part.isEmpty()) {
                 continue;
             }
             
-            PsiDirectory subDir = currentDirectory.findSubdirectory(part);
-            if (subDir == null) {
-                final PsiDirectory dirToModify = currentDirectory;
-                final String dirPart = part;
-                final PsiDirectory[] resultDir = new PsiDirectory[1];
-                WriteCommandAction.runWriteCommandAction(project, () -> {
-                    resultDir[0] = dirToModify.createSubdirectory(dirPart);
-                });
-                currentDirectory = resultDir[0];
-            } else {
-                currentDirectory = subDir;
-            }
+            PsiDirectory subDir = directory.findSubdirectory(part);
+            directory = subDir != null ? subDir : directory.createSubdirectory(part);
         }
-        directory = currentDirectory;
         
-        // Check if test file already exists
+        // Check if test file already exists, and merge the new tests into it if enabled
         PsiFile existingFile = directory.findFile(testClassName + ".java");
         if (existingFile != null) {
-            return existingFile.getVirtualFile();
+            if (!(existingFile instanceof PsiJavaFile) || !OllamaSettingsState.getInstance().mergeIntoExisting) {
+                return new Result(existingFile.getVirtualFile(), Outcome.UNCHANGED, 0);
+            }
+            int merged = TestClassMerger.merge((PsiJavaFile) existingFile, testCode);
+            if (merged < 0) {
+                return null;
+            }
+            return new Result(existingFile.getVirtualFile(), merged > 0 ? Outcome.MERGED : Outcome.UNCHANGED, merged);
         }
         
-        // Create the test file
-        final PsiFile[] createdFile = new PsiFile[1];
-        final PsiDirectory targetDirectory = directory;
+        // Prepare the content with package declaration
+        String content = TestSourceWriter.assembleTestFile(packageName, testCode);
         
-        WriteCommandAction.runWriteCommandAction(project, () -> {
-            // Prepare the content with package declaration
-            StringBuilder content = new StringBuilder();
-            if (!packageName.isEmpty()) {
-                content.append("package ").append(packageName).append(";\n\n");
-            }
-            
-            // Add the test code
-            content.append(testCode);
-            
-            // Create the file
-            PsiFileFactory factory = PsiFileFactory.getInstance(project);
-            PsiFile file = factory.createFileFromText(testClassName + ".java", JavaLanguage.INSTANCE, content);
-            createdFile[0] = (PsiFile) targetDirectory.add(file);
-        });
-        
-        if (createdFile[0] != null) {
-            return createdFile[0].getVirtualFile();
+        // Create the file and set its text in one document change; the code was
+        // formatted in the background, so nothing is parsed or reformatted here
+        PsiFile createdFile = directory.createFile(testClassName + ".java");
+        PsiDocumentManager documentManager = PsiDocumentManager.getInstance(project);
+        Document document = documentManager.getDocument(createdFile);
+        if (document == null) {
+            return null;
         }
-        
-        return null;
+        document.setText(content);
+        documentManager.commitDocument(document);
+        return new Result(createdFile.getVirtualFile(), Outcome.CREATED, 0);
     }
     
     /**
@@ -121,4 +133,55 @@ public class TestFileCreator {
             FileEditorManager.getInstance(project).openFile(file, true);
         });
     }
+
+    /**
+     * What writing a generated test did to the test file.
+     */
+    public enum Outcome {
+        /** A new test file was created. */
+        CREATED,
+        /** Generated members were merged into the existing test file. */
+        MERGED,
+        /** The test file existed and was left as it was: merging is off, or it had every generated member. */
+        UNCHANGED
+    }
+
+    /**
+     * The test file a generated test was written to, and what was written.
+     */
+    public static class Result {
+        private final VirtualFile file;
+        private final Outcome outcome;
+        private final int mergedMembers;
+
+        Result(@NotNull VirtualFile file, @NotNull Outcome outcome, int mergedMembers) {
+            this.file = file;
+            this.outcome = outcome;
+            this.mergedMembers = mergedMembers;
+        }
+
+        @NotNull
+        public VirtualFile getFile() {
+            return file;
+        }
+
+        @NotNull
+        public Outcome getOutcome() {
+            return outcome;
+        }
+
+        /**
+         * Returns the number of fields and methods merged into an existing test file.
+         */
+        public int getMergedMembers() {
+            return mergedMembers;
+        }
+
+        /**
+         * Returns whether the test file was created or changed.
+         */
+        public boolean isWritten() {
+            return outcome != Outcome.UNCHANGED;
+        }
+    }
 }
@@ -0,0 +1,109 @@
+package com.kincheung.ollama.perf;
+
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.SmartPointerManager;
+import com.kincheung.ollama.util.BulkTestFileWriter;
+import com.kincheung.ollama.util.TestFileCreator;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures writing generated tests into growing projects, one file per command
+ * as after an interactive generation and in batches as after a batch run.
+ */
+public class FileCreationPerformanceTest extends ProjectScaleTestCase {
+    private static final int SINGLE_FILES_PER_SCALE = 20;
+    private static final int BULK_FILES_PER_SCALE = 100;
+    private static final double SINGLE_BUDGET_MS = 50;
+    private static final double BULK_BUDGET_MS_PER_FILE = 10;
+
+    public void testSingleFileCreationTime() throws Exception {
+        double smallest = -1;
+        int from = 0;
+        for (int scale : scales()) {
+            growTo(scale);
+            List<Double> millis = new ArrayList<>();
+            for (int index : syntheticProject.sample(from, scale, SINGLE_FILES_PER_SCALE, false)) {
+                PsiClass psiClass = psiClass(index);
+                String testClassName = SyntheticProject.className(index) + "Test";
+
+                long start = System.nanoTime();
+                TestFileCreator.Result created = TestFileCreator.createTestFile(getProject(), psiClass, testClassName, testCode(testClassName));
+                millis.add(PerformanceBudget.millisSince(start));
+                assertNotNull(testClassName, created);
+                assertEquals(testClassName, TestFileCreator.Outcome.CREATED, created.getOutcome());
+            }
+
+            double median = PerformanceBudget.median(millis);
+            PerformanceBudget.assertWithin("Creating one test file in " + scale + " classes", median, SINGLE_BUDGET_MS);
+            if (smallest < 0) {
+                smallest = median;
+            } else {
+                PerformanceBudget.assertFlat("Creating one test file up to " + scale + " classes", smallest, median);
+            }
+            from = scale;
+        }
+    }
+
+    public void testBulkFileCreationTime() throws Exception {
+        double smallest = -1;
+        int from = 0;
+        for (int scale : scales()) {
+            growTo(scale);
+            AtomicInteger written = new AtomicInteger();
+            AtomicInteger unchanged = new AtomicInteger();
+            AtomicInteger failed = new AtomicInteger();
+            BulkTestFileWriter writer = new BulkTestFileWriter(getProject(), new BulkTestFileWriter.WriteListener() {
+                @Override
+                public void written(@NotNull String qualifiedClassName, @NotNull VirtualFile testFile) {
+                    written.incrementAndGet();
+                }
+
+                @Override
+                public void unchanged(@NotNull String qualifiedClassName, @NotNull VirtualFile testFile) {
+                    unchanged.incrementAndGet();
+                }
+
+                @Override
+                public void failed(@NotNull String qualifiedClassName, @NotNull String testClassName) {
+                    failed.incrementAndGet();
+                }
+            });
+            List<Integer> sample = syntheticProject.sample(from, scale, BULK_FILES_PER_SCALE, false);
+            SmartPointerManager pointers = SmartPointerManager.getInstance(getProject());
+
+            long start = System.nanoTime();
+            for (int index : sample) {
+                String testClassName = SyntheticProject.className(index) + "Test";
+                writer.add(pointers.createSmartPsiElementPointer(psiClass(index)), testClassName,
+                        testCode(testClassName), Collections.emptyMap());
+            }
+            writer.finish();
+            double perFile = PerformanceBudget.millisSince(start) / sample.size();
+
+            assertEquals(0, failed.get());
+            assertEquals(0, unchanged.get());
+            assertEquals(sample.size(), written.get());
+            PerformanceBudget.assertWithin("Bulk creation in " + scale + " classes, per file", perFile, BULK_BUDGET_MS_PER_FILE);
+            if (smallest < 0) {
+                smallest = perFile;
+            } else {
+                PerformanceBudget.assertFlat("Bulk creation up to " + scale + " classes, per file", smallest, perFile);
+            }
+            from = scale;
+        }
+    }
+
+    @NotNull
+    private static String testCode(@NotNull String testClassName) {
+        return "public class " + testClassName + " {\n"
+                + "    void generated() {\n"
+                + "    }\n"
+                + "}\n";
+    }
+}
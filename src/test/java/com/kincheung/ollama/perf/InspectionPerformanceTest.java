@@ -0,0 +1,124 @@
+package com.kincheung.ollama.perf;
+
+import com.intellij.codeInsight.daemon.impl.HighlightInfo;
+import com.intellij.ide.IdeEventQueue;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.actionSystem.CommonDataKeys;
+import com.intellij.openapi.actionSystem.DataContext;
+import com.intellij.openapi.actionSystem.impl.SimpleDataContext;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiManager;
+import com.intellij.testFramework.TestActionEvent;
+import com.kincheung.ollama.OllamaTestGeneratorAction;
+import com.kincheung.ollama.OllamaTestGeneratorInspection;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Measures the editor-facing paths against growing projects: highlighting a file
+ * with the missing-test inspection enabled, and updating the generate action as
+ * a context menu does each time it opens.
+ */
+public class InspectionPerformanceTest extends ProjectScaleTestCase {
+    private static final String PROBLEM = "Class doesn't have a corresponding test class";
+    private static final int FILES_PER_SCALE = 20;
+    private static final int UPDATES_PER_FILE = 50;
+    private static final double HIGHLIGHTING_BUDGET_MS = 150;
+    private static final double UPDATE_BUDGET_MS = 2;
+
+    public void testHighlightingTimePerFile() throws Exception {
+        myFixture.enableInspections(new OllamaTestGeneratorInspection());
+        double smallest = -1;
+        int from = 0;
+        for (int scale : scales()) {
+            growTo(scale);
+            List<Double> millis = new ArrayList<>();
+            // Files of the newest classes, which haven't been highlighted before
+            List<Integer> untested = syntheticProject.sample(from, scale, FILES_PER_SCALE / 2, false);
+            List<Integer> tested = syntheticProject.sample(from, scale, FILES_PER_SCALE / 2, true);
+            for (List<Integer> sample : List.of(untested, tested)) {
+                for (int index : sample) {
+                    myFixture.configureFromExistingVirtualFile(mainFile(index));
+                    long start = System.nanoTime();
+                    List<HighlightInfo> infos = myFixture.doHighlighting();
+                    millis.add(PerformanceBudget.millisSince(start));
+                    boolean reported = infos.stream().anyMatch(info -> PROBLEM.equals(info.getDescription()));
+                    assertEquals(SyntheticProject.className(index), !SyntheticProject.isTested(index), reported);
+                }
+            }
+
+            double median = PerformanceBudget.median(millis);
+            PerformanceBudget.assertWithin("Highlighting one file of " + scale + " classes", median, HIGHLIGHTING_BUDGET_MS);
+            if (smallest < 0) {
+                smallest = median;
+            } else {
+                PerformanceBudget.assertFlat("Highlighting one file up to " + scale + " classes", smallest, median);
+            }
+            from = scale;
+        }
+    }
+
+    /**
+     * The action updates run on a pooled thread, as they do for a popup. Work an
+     * update handed to the EDT with invokeLater wouldn't show up in its time, so
+     * the events the updating thread posts to the event queue are counted too,
+     * and there must be none.
+     */
+    public void testGenerateActionUpdateTimePerPopup() throws Exception {
+        OllamaTestGeneratorAction action = new OllamaTestGeneratorAction();
+        AtomicReference<Thread> updater = new AtomicReference<>();
+        AtomicInteger postedEvents = new AtomicInteger();
+        IdeEventQueue.getInstance().addPostEventListener(event -> {
+            if (Thread.currentThread() == updater.get()) {
+                postedEvents.incrementAndGet();
+            }
+            return false;
+        }, getTestRootDisposable());
+        double smallest = -1;
+        int from = 0;
+        for (int scale : scales()) {
+            growTo(scale);
+            List<Double> millis = new ArrayList<>();
+            for (int index : syntheticProject.sample(from, scale, FILES_PER_SCALE, false)) {
+                PsiFile file = PsiManager.getInstance(getProject()).findFile(mainFile(index));
+                DataContext context = SimpleDataContext.builder()
+                        .add(CommonDataKeys.PROJECT, getProject())
+                        .add(CommonDataKeys.PSI_FILE, file)
+                        .build();
+                Future<?> updates = ApplicationManager.getApplication().executeOnPooledThread(() -> {
+                    updater.set(Thread.currentThread());
+                    try {
+                        for (int i = 0; i < UPDATES_PER_FILE; i++) {
+                            AnActionEvent event = TestActionEvent.createTestEvent(action, context);
+                            long start = System.nanoTime();
+                            ReadAction.run(() -> action.update(event));
+                            millis.add(PerformanceBudget.millisSince(start));
+                            assertTrue(event.getPresentation().isEnabledAndVisible());
+                        }
+                    } finally {
+                        updater.set(null);
+                    }
+                });
+                updates.get(30, TimeUnit.SECONDS);
+            }
+            assertEquals("Events posted to the EDT by " + FILES_PER_SCALE * UPDATES_PER_FILE + " updates in " + scale + " classes",
+                    0, postedEvents.get());
+
+            double median = PerformanceBudget.median(millis);
+            PerformanceBudget.assertWithin("Generate action update in " + scale + " classes", median, UPDATE_BUDGET_MS);
+            if (smallest < 0) {
+                smallest = median;
+            } else {
+                PerformanceBudget.assertFlat("Generate action update up to " + scale + " classes", smallest, median);
+            }
+            from = scale;
+        }
+    }
+}
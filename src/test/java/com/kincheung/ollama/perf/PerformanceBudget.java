@@ -0,0 +1,64 @@
+package com.kincheung.ollama.perf;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static junit.framework.TestCase.assertTrue;
+
+/**
+ * Time budgets of the performance tests. Budgets are multiplied by the
+ * {@code ollama.perf.budgetFactor} system property, so slow build agents can
+ * loosen them without editing the tests. Every measurement is printed, so the
+ * build log shows how close a run came to its budgets.
+ */
+final class PerformanceBudget {
+    // How much slower an operation may get from the smallest to the largest project
+    private static final double MAX_GROWTH = 3.0;
+    // Absolute slack for the growth check, so sub-millisecond timings don't trip it on noise
+    private static final double GROWTH_SLACK_MILLIS = 2.0;
+
+    private PerformanceBudget() {
+    }
+
+    static double factor() {
+        return Double.parseDouble(System.getProperty("ollama.perf.budgetFactor", "1"));
+    }
+
+    static double millisSince(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000.0;
+    }
+
+    static double median(@NotNull List<Double> millis) {
+        List<Double> sorted = new ArrayList<>(millis);
+        Collections.sort(sorted);
+        return sorted.get(sorted.size() / 2);
+    }
+
+    /**
+     * Fails if a measurement exceeds its budget.
+     *
+     * @param what What was measured, for the log and the failure message
+     * @param millis The measured time
+     * @param budgetMillis The budget, before applying the factor
+     */
+    static void assertWithin(@NotNull String what, double millis, double budgetMillis) {
+        double budget = budgetMillis * factor();
+        System.out.printf("%-60s %10.3f ms (budget %.1f ms)%n", what, millis, budget);
+        assertTrue(String.format("%s took %.3f ms, over the budget of %.1f ms", what, millis, budget), millis <= budget);
+    }
+
+    /**
+     * Fails if an operation got more than a constant factor slower between the
+     * smallest and the largest project, which points at work that grows with the
+     * size of the project rather than with the size of the file.
+     */
+    static void assertFlat(@NotNull String what, double smallestMillis, double largestMillis) {
+        double limit = smallestMillis * MAX_GROWTH * factor() + GROWTH_SLACK_MILLIS;
+        System.out.printf("%-60s %10.3f -> %.3f ms (limit %.3f ms)%n", what, smallestMillis, largestMillis, limit);
+        assertTrue(String.format("%s grew from %.3f ms to %.3f ms with the project size, over the limit of %.3f ms",
+                what, smallestMillis, largestMillis, limit), largestMillis <= limit);
+    }
+}
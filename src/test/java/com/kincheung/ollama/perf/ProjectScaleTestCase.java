@@ -0,0 +1,151 @@
+package com.kincheung.ollama.perf;
+
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ContentEntry;
+import com.intellij.openapi.roots.ModuleRootModificationUtil;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VfsUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiJavaFile;
+import com.intellij.psi.PsiManager;
+import com.intellij.testFramework.IndexingTestUtil;
+import com.intellij.testFramework.UsefulTestCase;
+import com.intellij.testFramework.builders.JavaModuleFixtureBuilder;
+import com.intellij.testFramework.fixtures.IdeaProjectTestFixture;
+import com.intellij.testFramework.fixtures.IdeaTestFixtureFactory;
+import com.intellij.testFramework.fixtures.JavaCodeInsightTestFixture;
+import com.intellij.testFramework.fixtures.JavaTestFixtureFactory;
+import com.intellij.testFramework.fixtures.ModuleFixture;
+import com.intellij.testFramework.fixtures.TestFixtureBuilder;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Base class of the performance tests. Sets up a project with several modules,
+ * each with a main and a test source root, that tests fill with a
+ * {@link SyntheticProject} and grow through the sizes given by the
+ * {@code ollama.perf.scales} system property.
+ * <p>
+ * Uses a heavy project fixture, since the light fixture has a single module and
+ * keeps its files in memory, so neither module scopes nor the source root lookup
+ * would be exercised.
+ */
+abstract class ProjectScaleTestCase extends UsefulTestCase {
+    private static final int MODULES = 4;
+
+    protected JavaCodeInsightTestFixture myFixture;
+    protected SyntheticProject syntheticProject;
+    private final List<ModuleFixture> moduleFixtures = new ArrayList<>();
+    private final List<Path> moduleRoots = new ArrayList<>();
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        TestFixtureBuilder<IdeaProjectTestFixture> projectBuilder =
+                IdeaTestFixtureFactory.getFixtureFactory().createFixtureBuilder(getName());
+        myFixture = JavaTestFixtureFactory.getFixtureFactory().createCodeInsightFixture(projectBuilder.getFixture());
+        Path tempDir = Path.of(myFixture.getTempDirPath());
+        for (int i = 0; i < MODULES; i++) {
+            Path moduleRoot = tempDir.resolve("module" + i);
+            Files.createDirectories(moduleRoot.resolve(SyntheticProject.MAIN_ROOT));
+            Files.createDirectories(moduleRoot.resolve(SyntheticProject.TEST_ROOT));
+            JavaModuleFixtureBuilder<?> moduleBuilder = projectBuilder.addModule(JavaModuleFixtureBuilder.class);
+            moduleBuilder.addContentRoot(moduleRoot.toString());
+            moduleFixtures.add(moduleBuilder.getFixture());
+            moduleRoots.add(moduleRoot);
+        }
+        myFixture.setUp();
+
+        for (int i = 0; i < MODULES; i++) {
+            Path moduleRoot = moduleRoots.get(i);
+            VirtualFile mainRoot = findFile(moduleRoot.resolve(SyntheticProject.MAIN_ROOT));
+            VirtualFile testRoot = findFile(moduleRoot.resolve(SyntheticProject.TEST_ROOT));
+            Module module = moduleFixtures.get(i).getModule();
+            ModuleRootModificationUtil.updateModel(module, model -> {
+                ContentEntry entry = model.getContentEntries()[0];
+                entry.addSourceFolder(mainRoot, false);
+                entry.addSourceFolder(testRoot, true);
+            });
+        }
+        syntheticProject = new SyntheticProject(moduleRoots);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        try {
+            myFixture.tearDown();
+        } catch (Throwable e) {
+            addSuppressedException(e);
+        } finally {
+            myFixture = null;
+            super.tearDown();
+        }
+    }
+
+    @NotNull
+    protected Project getProject() {
+        return myFixture.getProject();
+    }
+
+    /**
+     * Returns the project sizes to measure, in classes, smallest first.
+     */
+    @NotNull
+    protected static int[] scales() {
+        return Arrays.stream(System.getProperty("ollama.perf.scales", "1000,5000").split(","))
+                .mapToInt(scale -> Integer.parseInt(scale.trim()))
+                .sorted()
+                .toArray();
+    }
+
+    /**
+     * Writes classes until the project has the given number of classes and waits
+     * until they are indexed.
+     */
+    protected void growTo(int classes) throws IOException {
+        syntheticProject.growTo(classes);
+        VirtualFile[] roots = new VirtualFile[moduleRoots.size()];
+        for (int i = 0; i < roots.length; i++) {
+            roots[i] = findFile(moduleRoots.get(i));
+        }
+        VfsUtil.markDirtyAndRefresh(false, true, true, roots);
+        IndexingTestUtil.waitUntilIndexesAreReady(getProject());
+    }
+
+    @NotNull
+    protected List<VirtualFile> mainRoots() {
+        List<VirtualFile> roots = new ArrayList<>();
+        for (Path moduleRoot : moduleRoots) {
+            roots.add(findFile(moduleRoot.resolve(SyntheticProject.MAIN_ROOT)));
+        }
+        return roots;
+    }
+
+    @NotNull
+    protected VirtualFile mainFile(int index) {
+        return findFile(syntheticProject.mainFile(index));
+    }
+
+    @NotNull
+    protected PsiClass psiClass(int index) {
+        PsiFile file = PsiManager.getInstance(getProject()).findFile(mainFile(index));
+        assertInstanceOf(file, PsiJavaFile.class);
+        return ((PsiJavaFile) file).getClasses()[0];
+    }
+
+    @NotNull
+    private static VirtualFile findFile(@NotNull Path path) {
+        VirtualFile file = LocalFileSystem.getInstance().refreshAndFindFileByNioFile(path);
+        assertNotNull("Not found: " + path, file);
+        return file;
+    }
+}
@@ -0,0 +1,83 @@
+package com.kincheung.ollama.perf;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiClass;
+import com.kincheung.ollama.util.JavaClassAnalyzer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the scan for untested classes that batch runs and the stale test
+ * regeneration start with, and the per-class lookups it is made of, against
+ * growing projects.
+ */
+public class ScanPerformanceTest extends ProjectScaleTestCase {
+    private static final int CLASSES_PER_SCALE = 200;
+    private static final double SCAN_BUDGET_MS_PER_CLASS = 2;
+    private static final double LOOKUP_BUDGET_MS = 1;
+
+    /**
+     * The scan runs in non-blocking read actions, which can't be run synchronously
+     * on the EDT, so it runs on a pooled thread as it does in a batch run.
+     */
+    public void testBatchScanTime() throws Exception {
+        for (int scale : scales()) {
+            growTo(scale);
+            List<VirtualFile> roots = mainRoots();
+            long start = System.nanoTime();
+            int untested = ApplicationManager.getApplication().executeOnPooledThread(() -> {
+                int found = 0;
+                for (VirtualFile root : roots) {
+                    found += JavaClassAnalyzer.findUntestedClasses(getProject(), root).size();
+                }
+                return found;
+            }).get(5, TimeUnit.MINUTES);
+            double millis = PerformanceBudget.millisSince(start);
+
+            assertEquals(syntheticProject.getUntestedCount(), untested);
+            PerformanceBudget.assertWithin("Scan of " + scale + " classes, per class", millis / scale, SCAN_BUDGET_MS_PER_CLASS);
+        }
+    }
+
+    public void testTestClassLookupTime() throws Exception {
+        double smallestHasTest = -1;
+        double smallestDirectory = -1;
+        int from = 0;
+        for (int scale : scales()) {
+            growTo(scale);
+            List<Integer> sample = new ArrayList<>(syntheticProject.sample(from, scale, CLASSES_PER_SCALE / 2, false));
+            sample.addAll(syntheticProject.sample(from, scale, CLASSES_PER_SCALE / 2, true));
+            List<Double> hasTestMillis = new ArrayList<>();
+            List<Double> directoryMillis = new ArrayList<>();
+            for (int index : sample) {
+                PsiClass psiClass = psiClass(index);
+
+                long start = System.nanoTime();
+                boolean hasTest = JavaClassAnalyzer.hasTestClass(psiClass);
+                hasTestMillis.add(PerformanceBudget.millisSince(start));
+                assertEquals(SyntheticProject.className(index), SyntheticProject.isTested(index), hasTest);
+
+                start = System.nanoTime();
+                VirtualFile directory = JavaClassAnalyzer.findTestDirectory(psiClass);
+                directoryMillis.add(PerformanceBudget.millisSince(start));
+                assertNotNull(directory);
+            }
+
+            double hasTest = PerformanceBudget.median(hasTestMillis);
+            double directory = PerformanceBudget.median(directoryMillis);
+            PerformanceBudget.assertWithin("hasTestClass in " + scale + " classes", hasTest, LOOKUP_BUDGET_MS);
+            PerformanceBudget.assertWithin("findTestDirectory in " + scale + " classes", directory, LOOKUP_BUDGET_MS);
+            if (smallestHasTest < 0) {
+                smallestHasTest = hasTest;
+                smallestDirectory = directory;
+            } else {
+                PerformanceBudget.assertFlat("hasTestClass up to " + scale + " classes", smallestHasTest, hasTest);
+                PerformanceBudget.assertFlat("findTestDirectory up to " + scale + " classes", smallestDirectory, directory);
+            }
+            from = scale;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.kincheung.ollama.perf;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes synthetic Java sources into the content roots of several modules. Classes
+ * are numbered and dealt round-robin over the modules, fifty to a package; each
+ * class takes the previous class of its module as a constructor collaborator, and
+ * every third class already has a test class in the module's test root.
+ * The project can be grown in steps, so one fixture is measured at several sizes.
+ */
+final class SyntheticProject {
+    static final String MAIN_ROOT = "src/main/java";
+    static final String TEST_ROOT = "src/test/java";
+    private static final int CLASSES_PER_PACKAGE = 50;
+    private static final int TESTED_EVERY = 3;
+
+    private final List<Path> moduleRoots;
+    private int classCount;
+
+    /**
+     * @param moduleRoots The content roots of the modules, each with a main and a test root
+     */
+    SyntheticProject(@NotNull List<Path> moduleRoots) {
+        this.moduleRoots = moduleRoots;
+    }
+
+    /**
+     * Writes classes until the project has the given number of classes.
+     */
+    void growTo(int classes) throws IOException {
+        for (; classCount < classes; classCount++) {
+            write(classCount);
+        }
+    }
+
+    int getClassCount() {
+        return classCount;
+    }
+
+    /**
+     * Returns the number of written classes without a test class.
+     */
+    int getUntestedCount() {
+        return classCount - (classCount + TESTED_EVERY - 1) / TESTED_EVERY;
+    }
+
+    static boolean isTested(int index) {
+        return index % TESTED_EVERY == 0;
+    }
+
+    @NotNull
+    static String className(int index) {
+        return "Service" + index;
+    }
+
+    @NotNull
+    String packageName(int index) {
+        return "com.example.m" + module(index) + ".p" + index / (moduleRoots.size() * CLASSES_PER_PACKAGE);
+    }
+
+    @NotNull
+    Path mainFile(int index) {
+        return sourceFile(MAIN_ROOT, index, className(index));
+    }
+
+    /**
+     * Picks evenly spread class indices from a range.
+     *
+     * @param from The first index of the range
+     * @param to The end of the range, exclusive
+     * @param count The number of indices to pick
+     * @param tested Whether to pick classes with or without a test class
+     */
+    @NotNull
+    List<Integer> sample(int from, int to, int count, boolean tested) {
+        List<Integer> candidates = new ArrayList<>();
+        for (int index = from; index < to; index++) {
+            if (isTested(index) == tested) {
+                candidates.add(index);
+            }
+        }
+        List<Integer> sample = new ArrayList<>();
+        int step = Math.max(1, candidates.size() / Math.max(1, count));
+        for (int i = 0; i < candidates.size() && sample.size() < count; i += step) {
+            sample.add(candidates.get(i));
+        }
+        return sample;
+    }
+
+    private void write(int index) throws IOException {
+        String name = className(index);
+        String packageName = packageName(index);
+        int previous = index - moduleRoots.size();
+
+        StringBuilder code = new StringBuilder();
+        code.append("package ").append(packageName).append(";\n\n");
+        code.append("public class ").append(name).append(" {\n");
+        if (previous >= 0) {
+            String collaborator = packageName(previous) + "." + className(previous);
+            code.append("    private final ").append(collaborator).append(" collaborator;\n");
+            code.append("    private int calls;\n\n");
+            code.append("    public ").append(name).append("(").append(collaborator).append(" collaborator) {\n");
+            code.append("        this.collaborator = collaborator;\n");
+            code.append("    }\n\n");
+            code.append("    public int handle(int value) {\n");
+            code.append("        calls++;\n");
+            code.append("        return value < 0 ? -1 : collaborator.handle(value) + ").append(index).append(";\n");
+            code.append("    }\n\n");
+        } else {
+            code.append("    private int calls;\n\n");
+            code.append("    public int handle(int value) {\n");
+            code.append("        calls++;\n");
+            code.append("        return value;\n");
+            code.append("    }\n\n");
+        }
+        code.append("    public int getCalls() {\n");
+        code.append("        return calls;\n");
+        code.append("    }\n");
+        code.append("}\n");
+        writeFile(mainFile(index), code.toString());
+
+        if (isTested(index)) {
+            String testCode = "package " + packageName + ";\n\n"
+                    + "public class " + name + "Test {\n"
+                    + "    private " + name + " subject;\n\n"
+                    + "    void handlesValues() {\n"
+                    + "        subject.handle(1);\n"
+                    + "    }\n"
+                    + "}\n";
+            writeFile(sourceFile(TEST_ROOT, index, name + "Test"), testCode);
+        }
+    }
+
+    private int module(int index) {
+        return index % moduleRoots.size();
+    }
+
+    @NotNull
+    private Path sourceFile(@NotNull String root, int index, @NotNull String name) {
+        return moduleRoots.get(module(index))
+                .resolve(root)
+                .resolve(packageName(index).replace('.', '/'))
+                .resolve(name + ".java");
+    }
+
+    private static void writeFile(@NotNull Path file, @NotNull String content) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, content, StandardCharsets.UTF_8);
+    }
+}